@@ -21,8 +21,6 @@
 package org.hermit.clusterer;
 
 
-import java.util.ArrayList;
-
 import org.hermit.geometry.Graph;
 import org.hermit.geometry.Point;
 import org.hermit.geometry.Region;
@@ -31,7 +29,7 @@ import org.hermit.geometry.cluster.FuzzyClusterer;
 import org.hermit.geometry.cluster.KMeansClusterer;
 import org.hermit.geometry.generator.Generator;
 import org.hermit.geometry.generator.NuclearGenerator;
-import org.hermit.geometry.voronoi.Fortune;
+import org.hermit.geometry.voronoi.IncrementalVoronoi;
 
 import android.content.Intent;
 import android.widget.Toast;
@@ -116,6 +114,7 @@ public class ClusterTest
             clusterer.prepare(dataPoints, clusterIds, clusterMeans, screenRegion);
 
             clusterGraph = null;
+            meanDiagram = null;
             iterateCount = 0;
             hasConverged = false;
             clusterDuration = 0;
@@ -152,13 +151,28 @@ public class ClusterTest
 
 
     /**
-     * Compute the Voronoi graph for the given set of data points.
+     * Compute the Voronoi graph for the given set of data points.  Only
+     * the means move from one step to the next, so we keep the diagram
+     * and move its sites, rather than computing it from scratch.
      */
     private Graph computeVoronoi(double[][] means) {
-        ArrayList<Point> meanVecs = new ArrayList<Point>(means.length);
-        for (int i = 0; i < means.length; ++i)
-            meanVecs.add(new Point(means[i][0], means[i][1]));
-        return Fortune.ComputeVoronoiGraph(meanVecs);
+        if (meanDiagram == null) {
+            meanDiagram = new IncrementalVoronoi();
+            meanSites = new int[means.length];
+            for (int i = 0; i < means.length; ++i)
+                meanSites[i] = meanDiagram.insert(new Point(means[i][0], means[i][1]));
+        } else {
+            for (int i = 0; i < means.length; ++i)
+                meanSites[i] = meanDiagram.move(meanSites[i],
+                                                new Point(means[i][0], means[i][1]));
+        }
+        Graph graph = meanDiagram.getGraph();
+
+        // If two means have landed on the same spot, they share a site;
+        // start again next time, so they can separate.
+        if (meanDiagram.getNumSites() != means.length)
+            meanDiagram = null;
+        return graph;
     }
 
 
@@ -318,6 +332,11 @@ public class ClusterTest
     // The IDs of the clusters to which each point has been assigned.
     private int[] clusterIds = null;
 
+    // The Voronoi diagram of the cluster means, and the index of each
+    // mean's site in it.
+    private IncrementalVoronoi meanDiagram = null;
+    private int[] meanSites = null;
+
     // The Voronoi diagram of the computed clusters.
     private Graph clusterGraph = null;
     
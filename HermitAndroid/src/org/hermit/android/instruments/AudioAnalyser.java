@@ -22,9 +22,15 @@ package org.hermit.android.instruments;
 
 import org.hermit.android.core.SurfaceRunner;
 import org.hermit.android.io.AudioReader;
+import org.hermit.dsp.Decimator;
 import org.hermit.dsp.FFTTransformer;
-import org.hermit.dsp.SignalPower;
+import org.hermit.dsp.LevelMeter;
+import org.hermit.dsp.PcmConverter;
+import org.hermit.dsp.SampleSource;
+import org.hermit.dsp.SampleStats;
+import org.hermit.dsp.SpectrumSmoother;
 import org.hermit.dsp.Window;
+import org.hermit.utils.SampleRingBuffer;
 
 import android.os.Bundle;
 
@@ -57,10 +63,8 @@ public class AudioAnalyser
         
         // Allocate the spectrum data.
         spectrumData = new float[inputBlockSize / 2];
-        spectrumHist = new float[inputBlockSize / 2][historyLen];
-        spectrumIndex = 0;
-
-        biasRange = new float[2];
+        makeAverager();
+        decimatedData = new float[inputBlockSize];
     }
 
 
@@ -75,14 +79,39 @@ public class AudioAnalyser
      */
     public void setSampleRate(int rate) {
         sampleRate = rate;
+        setGaugeRates();
+    }
+    
+
+    /**
+     * Tell the spectrum and sonagram gauges the sample rate of the data
+     * they display, which is reduced by the decimation.
+     */
+    private void setGaugeRates() {
+        final int rate = sampleRate / sampleDecimate;
              
         // The spectrum gauge needs to know this.
         if (spectrumGauge != null)
-            spectrumGauge.setSampleRate(sampleRate);
+            spectrumGauge.setSampleRate(rate);
         
         // The sonagram gauge needs to know this.
         if (sonagramGauge != null)
-            sonagramGauge.setSampleRate(sampleRate);
+            sonagramGauge.setSampleRate(rate);
+    }
+    
+
+    /**
+     * Set the source of the audio for this instrument.  By default,
+     * we record from the mic.  This can be used to analyse a recording,
+     * for example.  It must be called while measurement is stopped.
+     * 
+     * @param   source      The audio source.  If it has a fixed sample
+     *                      rate, that becomes this instrument's rate.
+     */
+    public void setSampleSource(SampleSource source) {
+        audioReader = new AudioReader(source);
+        if (source.getSampleRate() > 0)
+            setSampleRate(source.getSampleRate());
     }
     
 
@@ -100,7 +129,8 @@ public class AudioAnalyser
 
         // Allocate the spectrum data.
         spectrumData = new float[inputBlockSize / 2];
-        spectrumHist = new float[inputBlockSize / 2][historyLen];
+        makeAverager();
+        decimatedData = new float[inputBlockSize];
     }
     
 
@@ -118,13 +148,57 @@ public class AudioAnalyser
     
 
     /**
-     * Set the decimation rate for this instrument.
+     * Set the decimation rate for this instrument.  The audio is
+     * low-pass filtered and its sample rate divided by this before the
+     * spectrum is calculated, so that the spectrum and sonagram show
+     * the bottom 1 / rate of the frequency range at rate times the
+     * resolution.  The waveform and power gauges see the full audio.
      * 
-     * @param   rate        The desired decimation.  Only 1 in rate blocks
-     *                      will actually be processed.
+     * @param   rate        The desired decimation.  1 means none.
      */
     public void setDecimation(int rate) {
         sampleDecimate = rate;
+        decimator = rate > 1 ? new Decimator(rate) : null;
+        setGaugeRates();
+    }
+    
+    
+    /**
+     * Set the frequency weighting used for the power gauge.  This takes
+     * effect from the next call to {@link #measureStart()}.
+     * 
+     * @param   weighting   The desired weighting.  The default, Z, is
+     *                      no weighting.
+     */
+    public void setPowerWeighting(LevelMeter.Weighting weighting) {
+        powerWeighting = weighting;
+    }
+    
+    
+    /**
+     * Enable or disable performance metrics for this instrument.  When
+     * enabled, the latency of each stage of the processing is recorded
+     * in an {@link AudioMetrics}, which can be queried or dumped to a file.
+     * 
+     * @param   enable      true to enable metrics, false to disable them.
+     *                      Enabling them when they are already enabled
+     *                      leaves the existing figures alone.
+     */
+    public void setMetricsEnabled(boolean enable) {
+        if (enable && metrics == null)
+            metrics = new AudioMetrics();
+        else if (!enable)
+            metrics = null;
+    }
+    
+    
+    /**
+     * Get the performance metrics for this instrument.
+     * 
+     * @return              The metrics; null if they are not enabled.
+     */
+    public AudioMetrics getMetrics() {
+        return metrics;
     }
     
     
@@ -135,10 +209,41 @@ public class AudioAnalyser
      */
     public void setAverageLen(int len) {
         historyLen = len;
-        
-        // Set up the history buffer.
-        spectrumHist = new float[inputBlockSize / 2][historyLen];
-        spectrumIndex = 0;
+        makeAverager();
+    }
+    
+
+    /**
+     * Set the histogram averaging window and method for this instrument.
+     * 
+     * @param   len         The averaging interval.  1 means no averaging.
+     * @param   mode        The smoothing method to use; see
+     *                      {@link SpectrumSmoother} for the meaning of
+     *                      len in each mode.  If null, use a rolling
+     *                      mean over the last len spectra, which needs
+     *                      len values of history per frequency.
+     */
+    public void setAverageLen(int len, SpectrumSmoother.Mode mode) {
+        historyLen = len;
+        averageMode = mode;
+        makeAverager();
+    }
+    
+    
+    /**
+     * Set up the history buffer or smoother for the current block
+     * size and averaging settings.
+     */
+    private void makeAverager() {
+        if (averageMode == null) {
+            spectrumSmoother = null;
+            spectrumHist = new float[inputBlockSize / 2][historyLen];
+            spectrumIndex = 0;
+        } else {
+            spectrumHist = null;
+            spectrumSmoother = new SpectrumSmoother(inputBlockSize / 2,
+                                                    averageMode, historyLen);
+        }
     }
     
 
@@ -162,13 +267,30 @@ public class AudioAnalyser
      */
     @Override
     public void measureStart() {
-        audioProcessed = audioSequence = 0;
         readError = AudioReader.Listener.ERR_OK;
         
-        audioReader.startReader(sampleRate, inputBlockSize * sampleDecimate, new AudioReader.Listener() {
+        // We process the audio in buffers of inputBlockSize * sampleDecimate
+        // samples.  The ring holds a few of these, so that the reader can
+        // get ahead of us a little without losing data.
+        final int len = inputBlockSize * sampleDecimate;
+        audioData = new short[len];
+        audioRing = new SampleRingBuffer(len * RING_BUFFERS);
+
+        // The level meter's window covers each buffer we process.
+        levelMeter = new LevelMeter(sampleRate, len, powerWeighting);
+
+        // Describe the configuration, so that metrics can be compared.
+        final AudioMetrics m = metrics;
+        if (m != null)
+            m.setDescription("rate " + sampleRate + " block " + inputBlockSize +
+                             " decimate " + sampleDecimate +
+                             " window " + windowFunction);
+        pendingAudioTime = 0;
+
+        audioReader.startReader(sampleRate, len, audioRing, new AudioReader.Listener() {
             @Override
-            public final void onReadComplete(short[] buffer) {
-                receiveAudio(buffer);
+            public void onReadComplete(short[] buffer) {
+                // Not called; the data goes into the ring.
             }
             @Override
             public void onReadError(int error) {
@@ -224,7 +346,7 @@ public class AudioAnalyser
         if (spectrumGauge != null)
             throw new RuntimeException("Already have a SpectrumGauge" +
                                        " for this AudioAnalyser");
-        spectrumGauge = new SpectrumGauge(surface, sampleRate);
+        spectrumGauge = new SpectrumGauge(surface, sampleRate / sampleDecimate);
         return spectrumGauge;
     }
     
@@ -240,7 +362,8 @@ public class AudioAnalyser
         if (sonagramGauge != null)
             throw new RuntimeException("Already have a SonagramGauge" +
                                        " for this AudioAnalyser");
-        sonagramGauge = new SonagramGauge(surface, sampleRate, inputBlockSize);
+        sonagramGauge = new SonagramGauge(surface, sampleRate / sampleDecimate,
+                                          inputBlockSize);
         return sonagramGauge;
     }
     
@@ -278,21 +401,6 @@ public class AudioAnalyser
     // Audio Processing.
     // ******************************************************************** //
 
-    /**
-     * Handle audio input.  This is called on the thread of the audio
-     * reader.
-     * 
-     * @param   buffer      Audio data that was just read.
-     */
-    private final void receiveAudio(short[] buffer) {
-        // Lock to protect updates to these local variables.  See run().
-        synchronized (this) {
-            audioData = buffer;
-            ++audioSequence;
-        }
-    }
-    
-    
     /**
      * An error has occurred.  The reader has been terminated.
      * 
@@ -314,25 +422,36 @@ public class AudioAnalyser
      * This method must be invoked from the doUpdate() method of the
      * application's {@link SurfaceRunner}.
      * 
-     * <p>Since this is called frequently, we first check whether new
-     * audio data has actually arrived.
+     * <p>Since this is called frequently, we first check whether a
+     * new buffer of audio data has actually arrived.  If more than one
+     * has arrived, we only have time for the latest; older data is
+     * skipped, and counted in stats counter 1 as dropped buffers.
      * 
      * @param   now         Nominal time of the current frame in ms.
      */
     @Override
     public final void doUpdate(long now) {
-        short[] buffer = null;
-        synchronized (this) {
-            if (audioData != null && audioSequence > audioProcessed) {
-                parentSurface.statsCount(1, (int) (audioSequence - audioProcessed - 1));
-                audioProcessed = audioSequence;
-                buffer = audioData;
+        final SampleRingBuffer ring = audioRing;
+        if (ring != null) {
+            final short[] buffer = audioData;
+            final int skipped = ring.readLatest(buffer, 0, buffer.length);
+            if (skipped >= 0) {
+                final int len = buffer.length;
+                parentSurface.statsCount(1, skipped / len);
+
+                // The write time may be from a later buffer if the
+                // reader has just added one, but that's rare.
+                final AudioMetrics m = metrics;
+                if (m != null) {
+                    final long arrived = ring.getWriteTime();
+                    m.record(AudioMetrics.Stage.READ, System.nanoTime() - arrived);
+                    m.countBuffers(1, skipped / len, ring.getOverruns() / len);
+                    pendingAudioTime = arrived;
+                }
+
+                processAudio(buffer);
             }
         }
-
-        // If we got data, process it without the lock.
-        if (buffer != null)
-            processAudio(buffer);
         
         if (readError != AudioReader.Listener.ERR_OK)
             processError(readError);
@@ -343,53 +462,85 @@ public class AudioAnalyser
      * Handle audio input.  This is called on the thread of the
      * parent surface.
      * 
-     * @param   buffer      Audio data that was just read.
+     * @param   buffer      Audio data that was just read.  This is our
+     *                      own copy, so there's no need to lock it.
      */
     private final void processAudio(short[] buffer) {
-        // Process the buffer.  While reading it, it needs to be locked.
-        synchronized (buffer) {
-            // Calculate the power now, while we have the input
-            // buffer; this is pretty cheap.
-            final int len = buffer.length;
-
-            // Draw the waveform now, while we have the raw data.
-            if (waveformGauge != null) {
-                SignalPower.biasAndRange(buffer, len - inputBlockSize, inputBlockSize, biasRange);
-                final float bias = biasRange[0];
-                float range = biasRange[1];
-                if (range < 1f)
-                    range = 1f;
-                
-//                long wavStart = System.currentTimeMillis();
-                waveformGauge.update(buffer, len - inputBlockSize, inputBlockSize, bias, range);
-//                long wavEnd = System.currentTimeMillis();
-//                parentSurface.statsTime(1, (wavEnd - wavStart) * 1000);
-            }
+        final AudioMetrics m = metrics;
+        long start = System.nanoTime();
+        long post = 0;
+
+        final int len = buffer.length;
+        final boolean spectrum = spectrumGauge != null || sonagramGauge != null;
+        final SampleStats stats = waveformGauge != null ? waveformStats : null;
+        if (stats != null)
+            stats.reset();
+        long end;
+
+        // If we have a spectrum or sonagram analyser and aren't
+        // decimating, set up the FFT input now; this gets the waveform's
+        // bias and range in the same pass.  Otherwise, take a separate
+        // pass for them.
+        if (spectrum && decimator == null) {
+            spectrumAnalyser.setInput(buffer, len - inputBlockSize, inputBlockSize, stats);
+            end = System.nanoTime();
+            if (m != null)
+                m.record(AudioMetrics.Stage.WINDOW, end - start);
+            start = end;
+        } else if (stats != null)
+            PcmConverter.accumulate(buffer, len - inputBlockSize, inputBlockSize, stats);
+
+        // Draw the waveform now, while we have the raw data.
+        if (waveformGauge != null) {
+            final float bias = stats.getBias();
+            float range = stats.getRange();
+            if (range < 1f)
+                range = 1f;
             
-            // If we have a power gauge, calculate the signal power.
-            if (powerGauge != null)
-                currentPower = SignalPower.calculatePowerDb(buffer, 0, len);
-
-            // If we have a spectrum or sonagram analyser, set up the FFT input data.
-            if (spectrumGauge != null || sonagramGauge != null)
-                spectrumAnalyser.setInput(buffer, len - inputBlockSize, inputBlockSize);
+            waveformGauge.update(buffer, len - inputBlockSize, inputBlockSize, bias, range);
+        }
+        
+        // If we have a power gauge, calculate the signal power; this is
+        // pretty cheap.  The level meter applies the power weighting.
+        if (powerGauge != null) {
+            levelMeter.update(buffer, 0, len);
+            currentPower = levelMeter.getPowerDb();
+        }
 
-            // Tell the reader we're done with the buffer.
-            buffer.notify();
+        end = System.nanoTime();
+        post += end - start;
+        start = end;
+
+        // If we're decimating, the whole buffer goes through the
+        // decimator, which leaves exactly one FFT block.
+        if (spectrum && decimator != null) {
+            decimator.process(buffer, 0, len, decimatedData, 0);
+            end = System.nanoTime();
+            if (m != null)
+                m.record(AudioMetrics.Stage.DECIMATE, end - start);
+            start = end;
+            spectrumAnalyser.setInput(decimatedData, 0, inputBlockSize);
+            end = System.nanoTime();
+            if (m != null)
+                m.record(AudioMetrics.Stage.WINDOW, end - start);
+            start = end;
         }
 
         // If we have a spectrum or sonagram analyser, perform the FFT.
         if (spectrumGauge != null || sonagramGauge != null) {
             // Do the (expensive) transformation.
-            // The transformer has its own state, no need to lock here.
-            long specStart = System.currentTimeMillis();
             spectrumAnalyser.transform();
-            long specEnd = System.currentTimeMillis();
-            parentSurface.statsTime(0, (specEnd - specStart) * 1000);
+            end = System.nanoTime();
+            parentSurface.statsTime(0, (end - start) / 1000);
+            if (m != null)
+                m.record(AudioMetrics.Stage.FFT, end - start);
+            start = end;
 
             // Get the FFT output.
             if (historyLen <= 1)
                 spectrumAnalyser.getResults(spectrumData);
+            else if (spectrumSmoother != null)
+                spectrumSmoother.update(spectrumAnalyser.getResults(spectrumData));
             else
                 spectrumIndex = spectrumAnalyser.getResults(spectrumData,
                                                             spectrumHist,
@@ -407,6 +558,30 @@ public class AudioAnalyser
         // If we have a power gauge, display the signal power.
         if (powerGauge != null)
             powerGauge.update(currentPower);
+
+        if (m != null)
+            m.record(AudioMetrics.Stage.POST_PROCESS, post + System.nanoTime() - start);
+    }
+    
+
+    /**
+     * Notification that a frame has been drawn.  Record the draw time,
+     * and if the frame shows new audio data, the end-to-end latency.
+     * 
+     * @param   drawStart   Time at which drawing started, as given by
+     *                      System.nanoTime().
+     * @param   drawEnd     Time at which drawing finished, likewise.
+     */
+    @Override
+    protected void frameDrawn(long drawStart, long drawEnd) {
+        final AudioMetrics m = metrics;
+        if (m == null)
+            return;
+        m.record(AudioMetrics.Stage.DRAW, drawEnd - drawStart);
+        if (pendingAudioTime != 0) {
+            m.record(AudioMetrics.Stage.END_TO_END, drawEnd - pendingAudioTime);
+            pendingAudioTime = 0;
+        }
     }
     
 
@@ -463,6 +638,9 @@ public class AudioAnalyser
 	@SuppressWarnings("unused")
 	private static final String TAG = "instrument";
 
+    // Number of processing buffers which the audio ring buffer holds.
+    private static final int RING_BUFFERS = 4;
+
 	
 	// ******************************************************************** //
 	// Private Data.
@@ -480,15 +658,24 @@ public class AudioAnalyser
     // The selected windowing function.
     private Window.Function windowFunction = Window.Function.BLACKMAN_HARRIS;
 
-    // The desired decimation rate for this analyser.  Only 1 in
-    // sampleDecimate blocks will actually be processed.
+    // The desired decimation rate for this analyser.  We read
+    // sampleDecimate blocks at a time, and decimate them down to one
+    // block for the spectrum.
     private int sampleDecimate = 1;
+
+    // The decimator, if sampleDecimate > 1, and the decimated data.
+    private Decimator decimator = null;
+    private float[] decimatedData;
    
     // The desired histogram averaging window.  1 means no averaging.
     private int historyLen = 4;
+    
+    // The spectrum smoothing method.  If null, we keep a history and
+    // do a rolling mean.
+    private SpectrumSmoother.Mode averageMode = null;
 
     // Our audio input device.
-    private final AudioReader audioReader;
+    private AudioReader audioReader;
 
     // Fourier Transform calculator we use for calculating the spectrum
     // and sonagram.
@@ -501,15 +688,13 @@ public class AudioAnalyser
     private SonagramGauge sonagramGauge = null;
     private PowerGauge powerGauge = null;
     
-    // Buffered audio data, and sequence number of the latest block.
+    // Ring buffer which the audio reader writes into, and our buffer
+    // for the latest data taken from it.
+    private SampleRingBuffer audioRing = null;
     private short[] audioData;
-    private long audioSequence = 0;
     
     // If we got a read error, the error code.
     private int readError = AudioReader.Listener.ERR_OK;
-    
-    // Sequence number of the last block we processed.
-    private long audioProcessed = 0;
 
     // Analysed audio spectrum data; history data for each frequency
     // in the spectrum; index into the history data; and buffer for
@@ -517,12 +702,30 @@ public class AudioAnalyser
     private float[] spectrumData;
     private float[][] spectrumHist;
     private int spectrumIndex;
+    
+    // Smoother for the spectrum data, if averageMode is set; in that case
+    // spectrumHist is not used.
+    private SpectrumSmoother spectrumSmoother = null;
    
+    // Frequency weighting for the power gauge.
+    private LevelMeter.Weighting powerWeighting = LevelMeter.Weighting.Z;
+
+    // Level meter used to calculate the power.  Created when we start
+    // measuring.
+    private LevelMeter levelMeter = null;
+
+    // Statistics of the displayed waveform, giving its bias and range.
+    private final SampleStats waveformStats = new SampleStats();
+
     // Current signal power level, in dB relative to max. input power.
     private double currentPower = 0f;
 
-    // Temp. buffer for calculated bias and range.
-    private float[] biasRange = null;
+    // Performance metrics, if enabled; else null.
+    private AudioMetrics metrics = null;
+
+    // Arrival time of the latest audio processed, as System.nanoTime(),
+    // if it has not yet been drawn; else 0.
+    private long pendingAudioTime = 0;
 
 }
 
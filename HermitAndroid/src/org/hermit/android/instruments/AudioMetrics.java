@@ -0,0 +1,272 @@
+/**
+ * org.hermit.android.instrument: graphical instruments for Android.
+ * <br>Copyright 2009 Ian Cameron Smith
+ *
+ * <p>These classes provide input and display functions for creating on-screen
+ * instruments of various kinds in Android apps.
+ *
+ * <p>This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+
+package org.hermit.android.instruments;
+
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import org.hermit.utils.LatencyHistogram;
+
+
+/**
+ * Performance metrics for the {@link AudioAnalyser} pipeline.  This
+ * keeps a latency histogram for each processing stage, plus counts of
+ * the buffers processed and dropped, so that devices and configurations
+ * can be compared objectively.
+ *
+ * <p>All times are in nanoseconds.  The histograms have fixed memory,
+ * and recording allocates nothing.  The metrics are recorded on the
+ * surface's thread; they can be read or dumped from any thread, but
+ * the figures may then be slightly inconsistent with each other.
+ */
+public class AudioMetrics
+{
+
+    // ******************************************************************** //
+    // Public Constants.
+    // ******************************************************************** //
+
+    /**
+     * The stages of the pipeline which are timed.
+     */
+    public enum Stage {
+        /** The age of each audio buffer when the analyser takes it from
+         * the reader; this is the time it spent waiting in the ring. */
+        READ,
+
+        /** Decimation of the audio buffer, if enabled. */
+        DECIMATE,
+
+        /** Windowing the audio into the FFT's input. */
+        WINDOW,
+
+        /** The FFT itself. */
+        FFT,
+
+        /** Everything else done with each buffer: level metering, and
+         * extracting and averaging the spectrum and passing the results
+         * to the gauges. */
+        POST_PROCESS,
+
+        /** Drawing all the gauges on the surface. */
+        DRAW,
+
+        /** The time from the arrival of the newest sample in a buffer
+         * to the end of drawing the frame which shows it. */
+        END_TO_END,
+    }
+
+
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create a set of metrics.
+     */
+    public AudioMetrics() {
+        final Stage[] stages = Stage.values();
+        histograms = new LatencyHistogram[stages.length];
+        for (int i = 0; i < stages.length; ++i)
+            histograms[i] = new LatencyHistogram(MAX_TIME);
+    }
+
+
+    // ******************************************************************** //
+    // Recording.
+    // ******************************************************************** //
+
+    /**
+     * Record the time taken by a stage.
+     *
+     * @param   stage       The stage.
+     * @param   nanos       Its latency in ns.
+     */
+    void record(Stage stage, long nanos) {
+        histograms[stage.ordinal()].record(nanos);
+    }
+
+
+    /**
+     * Count the buffers taken from the audio ring.
+     *
+     * @param   processed   Number of buffers processed.
+     * @param   skipped     Number of older buffers skipped because
+     *                      we were behind.
+     * @param   overruns    Total number of buffers which the ring has
+     *                      discarded since it was created.  Only the
+     *                      increase since the last call is counted.
+     */
+    void countBuffers(int processed, int skipped, long overruns) {
+        buffersProcessed += processed;
+        buffersSkipped += skipped;
+
+        // If the total went down, this is a new ring.
+        buffersOverrun += overruns >= ringOverruns ? overruns - ringOverruns : overruns;
+        ringOverruns = overruns;
+    }
+
+
+    /**
+     * Set a description of the configuration being measured, to be
+     * included in dumps.
+     *
+     * @param   desc        The description.
+     */
+    public void setDescription(String desc) {
+        description = desc;
+    }
+
+
+    /**
+     * Clear all the metrics.
+     */
+    public void reset() {
+        for (LatencyHistogram h : histograms)
+            h.reset();
+        buffersProcessed = 0;
+        buffersSkipped = 0;
+        buffersOverrun = 0;
+    }
+
+
+    // ******************************************************************** //
+    // Queries.
+    // ******************************************************************** //
+
+    /**
+     * Get the latency histogram for a stage.  This is live, and must
+     * not be modified.
+     *
+     * @param   stage       The stage of interest.
+     * @return              The histogram of its latency, in ns.
+     */
+    public LatencyHistogram getHistogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+
+    /**
+     * Get the number of audio buffers processed.
+     *
+     * @return              The number of buffers analysed and passed
+     *                      to the gauges.
+     */
+    public long getBuffersProcessed() {
+        return buffersProcessed;
+    }
+
+
+    /**
+     * Get the number of audio buffers dropped.
+     *
+     * @return              The number of buffers which were read but not
+     *                      analysed; either skipped because the analyser
+     *                      fell behind, or discarded because the ring
+     *                      buffer was full.
+     */
+    public long getBuffersDropped() {
+        return buffersSkipped + buffersOverrun;
+    }
+
+
+    // ******************************************************************** //
+    // Output.
+    // ******************************************************************** //
+
+    /**
+     * Write a report of the metrics to a file.  Any existing file is
+     * replaced.
+     *
+     * @param   file        The file to write.
+     * @throws  IOException Failed to write the file.
+     */
+    public void dump(File file) throws IOException {
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+        try {
+            dump(out);
+        } finally {
+            out.close();
+        }
+        if (out.checkError())
+            throw new IOException("failed to write " + file);
+    }
+
+
+    /**
+     * Write a report of the metrics.  This is plain text, with one line
+     * per stage; times are in microseconds.
+     *
+     * @param   out         The writer to write to.
+     */
+    public void dump(PrintWriter out) {
+        if (description != null)
+            out.println("# " + description);
+        out.format("buffers processed %d skipped %d overrun %d\n",
+                   buffersProcessed, buffersSkipped, buffersOverrun);
+        out.format("%-12s %8s %9s %9s %9s %9s %9s %9s %9s\n",
+                   "stage", "count", "min", "mean", "p50", "p90", "p99", "p99.9", "max");
+        for (Stage s : Stage.values()) {
+            final LatencyHistogram h = histograms[s.ordinal()];
+            out.format("%-12s %8d %9.1f %9.1f %9.1f %9.1f %9.1f %9.1f %9.1f\n",
+                       s.toString(), h.getCount(),
+                       h.getMin() / 1000.0, h.getMean() / 1000.0,
+                       h.getPercentile(50) / 1000.0,
+                       h.getPercentile(90) / 1000.0,
+                       h.getPercentile(99) / 1000.0,
+                       h.getPercentile(99.9) / 1000.0,
+                       h.getMax() / 1000.0);
+        }
+        out.flush();
+    }
+
+
+    // ******************************************************************** //
+    // Private Constants.
+    // ******************************************************************** //
+
+    // The longest time we track, in ns.  Anything longer is a stall,
+    // and is recorded as this.
+    private static final long MAX_TIME = 10000000000L;
+
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // The latency histogram for each stage, indexed by ordinal.
+    private final LatencyHistogram[] histograms;
+
+    // Number of buffers processed, and skipped by us; and number of
+    // buffers discarded by the ring, since the last reset.
+    private long buffersProcessed = 0;
+    private long buffersSkipped = 0;
+    private long buffersOverrun = 0;
+
+    // The ring's own total of buffers discarded, at the last call to
+    // countBuffers(); our count is the increase from this.
+    private long ringOverruns = 0;
+
+    // Description of the configuration, for dumps; null if not set.
+    private String description = null;
+
+}
@@ -96,6 +96,19 @@ public class Instrument
     }
 
 
+    /**
+     * Notification that a frame has been drawn.  This is called after
+     * all the gauges on the surface have been drawn; instruments may
+     * override it to measure drawing performance.
+     * 
+     * @param   drawStart   Time at which drawing started, as given by
+     *                      System.nanoTime().
+     * @param   drawEnd     Time at which drawing finished, likewise.
+     */
+    protected void frameDrawn(long drawStart, long drawEnd) {
+    }
+
+
 	// ******************************************************************** //
 	// Utilities.
 	// ******************************************************************** //
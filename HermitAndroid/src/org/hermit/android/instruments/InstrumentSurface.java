@@ -321,6 +321,8 @@ public abstract class InstrumentSurface
      */
     @Override
     protected void doDraw(Canvas canvas, long now) {
+        final long drawStart = System.nanoTime();
+
         // Draw the background on to the screen.
         if (backgroundBitmap != null)
             canvas.drawBitmap(backgroundBitmap, 0, 0, null);
@@ -332,6 +334,12 @@ public abstract class InstrumentSurface
         final int gl = gaugeArray.length;
         for (int g = 0; g < gl; ++g)
             gaugeArray[g].draw(canvas, now, needBg);
+
+        // Let the instruments know, for performance measurement.
+        final long drawEnd = System.nanoTime();
+        final int il = instrumentArray.length;
+        for (int i = 0; i < il; ++i)
+            instrumentArray[i].frameDrawn(drawStart, drawEnd);
     }
 
 
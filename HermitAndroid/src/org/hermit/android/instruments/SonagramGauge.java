@@ -65,9 +65,66 @@ public class SonagramGauge
 	    	paintColors[i]= Color.rgb((i-100)*3, (i-50)*2 , 0);
 	    for (int i=150;i<=250;i++) 
 	    	paintColors[i]= Color.rgb(i, 550-i*2 , 0);
+
+	    makeColorTable();
 	}
 
 
+    /**
+     * Build the table which maps magnitudes straight to colours.
+     * 
+     * <p>The colour scale is logarithmic in the magnitude, so we index
+     * the table by the exponent and top mantissa bits of the float
+     * value; this splits each octave into LUT_STEPS steps.  Each entry
+     * holds the colour for the magnitude in the middle of its step.
+     * Only the octaves which span the colour scale are in the table;
+     * magnitudes below or above them get the end colours.
+     */
+    private void makeColorTable() {
+        // The colour scale runs from 10^(TOP_BELS - RANGE_BELS) to
+        // 10^TOP_BELS; find the octaves which cover that.
+        final double log2of10 = Math.log(10) / Math.log(2);
+        final float bottom = TOP_BELS - RANGE_BELS;
+        lutMinExp = (int) Math.floor(bottom * log2of10);
+        final int maxExp = (int) Math.ceil(TOP_BELS * log2of10);
+        lutMaxExp = maxExp;
+        colorTable = new int[(maxExp - lutMinExp) << LUT_BITS];
+
+        for (int i = 0; i < colorTable.length; ++i) {
+            final int exp = lutMinExp + (i >> LUT_BITS);
+            final double mant = 1.0 + ((i & (LUT_STEPS - 1)) + 0.5) / LUT_STEPS;
+            final double log2 = exp + Math.log(mant) / Math.log(2);
+            final double v = (log2 / log2of10 - bottom) / RANGE_BELS;
+            int colorIndex = (int) (v * maxColors);
+            if (colorIndex < 0)
+                colorIndex = 0;
+            if (colorIndex > maxColors)
+                colorIndex = maxColors;
+            colorTable[i] = paintColors[colorIndex];
+        }
+    }
+
+
+    /**
+     * Look up the colour for a magnitude.
+     * 
+     * @param   mag         The magnitude.
+     * @return              The colour to display.
+     */
+    private int magnitudeColor(float mag) {
+        if (mag <= 0f)
+            return paintColors[0];
+        final int bits = Float.floatToRawIntBits(mag);
+        final int exp = ((bits >>> 23) & 0xff) - 127;
+        if (exp < lutMinExp)
+            return paintColors[0];
+        if (exp >= lutMaxExp)
+            return paintColors[maxColors];
+        final int mant = (bits >>> (23 - LUT_BITS)) & (LUT_STEPS - 1);
+        return colorTable[((exp - lutMinExp) << LUT_BITS) | mant];
+    }
+
+
     // ******************************************************************** //
     // Configuration.
     // ******************************************************************** //
@@ -140,15 +197,18 @@ public class SonagramGauge
         sonaGraphWidth = mw - labelSize * 2;
         sonaGraphHeight = mh - labelSize - 6 ;
 
-        // Create the bitmap for the sonagram display,
-        // and the Canvas for drawing into it.
-        finalBitmap = getSurface().getBitmap(dispWidth, dispHeight);
-        finalCanvas = new Canvas(finalBitmap);
-
-        // Create the bitmap for the sonagram display,
-        // and the Canvas for drawing into it.
-        sonaBitmap = getSurface().getBitmap((int) sonaGraphWidth, (int) sonaGraphHeight);
-        sonaCanvas = new Canvas(sonaBitmap);
+        // Create the pixel ring for the sonagram display, and clear it
+        // to black.  We'll work out which bins go in which rows when we
+        // get some data.
+        synchronized (this) {
+            ringWidth = (int) sonaGraphWidth;
+            ringHeight = (int) sonaGraphHeight;
+            ringPixels = new int[ringWidth * ringHeight];
+            for (int i = 0; i < ringPixels.length; ++i)
+                ringPixels[i] = 0xff000000;
+            ringColumn = 0;
+            rowFirstBin = null;
+        }
         
         // Create the bitmap for the background,
         // and the Canvas for drawing into it.
@@ -226,59 +286,83 @@ public class SonagramGauge
 	 * New data from the instrument has arrived.  This method is called
 	 * on the thread of the instrument.
 	 * 
+	 * <p>The new data goes into one column of the pixel ring, which
+	 * holds the displayed image with its columns rotated; the newest
+	 * column moves one place left each time.  So the cost is
+	 * proportional to the height of the display, not its area.
+	 * 
      * @param   data        An array of floats defining the signal power
      *                      at each frequency in the sonagram.
 	 */
 	final void update(float[] data) {
-        final Canvas canvas = finalCanvas;
-        final Paint paint = getPaint();
-        
-        // Now actually do the drawing.
         synchronized (this) {
-            //Background
-        	canvas.drawBitmap(bgBitmap, 0, 0, paint);
+            if (ringPixels == null)
+                return;
+            if (rowFirstBin == null || rowBins != data.length)
+                mapRows(data.length);
+
+            // Move the newest column left, wrapping round.
+            if (--ringColumn < 0)
+                ringColumn = ringWidth - 1;
             
-        	//Scroll
-            sonaCanvas.drawBitmap(sonaBitmap, 1, 0, paint);       
-            
-            //Add Current Data
-            linearGraph(data, sonaCanvas, paint);                   
-            canvas.drawBitmap(sonaBitmap, sonaGraphX, sonaGraphY, paint);
+            // Add the current data.
+            linearGraph(data);
         }
     }
    
+
 	/**
-	 * Draw a linear sonagram graph.
+	 * Work out which spectrum bins are displayed in each row of the
+	 * sonagram.
+	 * 
+	 * @param  bins         The number of bins in the spectrum data.
+	 */
+	private void mapRows(int bins) {
+	    final int rows = ringHeight;
+	    rowBins = bins;
+	    rowFirstBin = new int[rows];
+	    rowLastBin = new int[rows];
+
+	    // Row 0 is at the top, so it shows the highest frequencies.
+	    // Element 0 isn't a frequency bucket; skip it.
+	    final float bpr = (float) (bins - 1) / (float) rows;
+	    for (int r = 0; r < rows; ++r) {
+	        final int y = rows - 1 - r;
+	        int first = 1 + (int) (y * bpr);
+	        int last = 1 + (int) ((y + 1) * bpr) - 1;
+	        if (first > bins - 1)
+	            first = bins - 1;
+	        if (last < first)
+	            last = first;
+	        rowFirstBin[r] = first;
+	        rowLastBin[r] = last;
+	    }
+	}
+
+
+	/**
+	 * Draw a column of a linear sonagram graph into the pixel ring.
+	 * Where several bins go into one row, we show the strongest, so
+	 * that narrow peaks don't get lost.
 	 * 
      * @param   data        An array of floats defining the signal power
      *                      at each frequency in the sonagram.
-	 * @param  canvas       Canvas to draw into.
-	 * @param  paint        Paint to draw with.
 	 */
-	private void linearGraph(float[] data, Canvas canvas, Paint paint) {
-        paint.setStyle(Style.FILL);
-        final int len = data.length;
-        final float bh = (float) sonaGraphHeight / (float) len;
-        
-        // Element 0 isn't a frequency bucket; skip it.
-        for (int i = 1; i < len; ++i) {
-            // Draw the new line.
-            final float y = sonaGraphHeight- i * bh + 1;
-
-            // Cycle the hue angle from 0° to 300°; i.e. red to purple.
-            float v = (float) (Math.log10(data[i]) / RANGE_BELS + 2f);
-            int colorIndex=(int)(v*maxColors);
-            if (colorIndex<0)
-            	colorIndex=0;
-            if (colorIndex>maxColors)
-            	colorIndex=maxColors;
-            paint.setColor(paintColors[colorIndex]);
-            
-            if (bh <= 1.0f)
-                canvas.drawPoint(0, y, paint);
-            else
-                canvas.drawLine(0, y, 0, y - bh, paint);
-        }
+	private void linearGraph(float[] data) {
+	    final int[] pixels = ringPixels;
+	    final int stride = ringWidth;
+	    final int rows = ringHeight;
+	    final int[] first = rowFirstBin;
+	    final int[] last = rowLastBin;
+	    
+	    int p = ringColumn;
+	    for (int r = 0; r < rows; ++r, p += stride) {
+	        float mag = data[first[r]];
+	        for (int b = first[r] + 1; b <= last[r]; ++b)
+	            if (data[b] > mag)
+	                mag = data[b];
+	        pixels[p] = magnitudeColor(mag);
+	    }
 	}
 	
 
@@ -300,8 +384,20 @@ public class SonagramGauge
     protected final void drawBody(Canvas canvas, Paint paint, long now) {
 	    // Since drawBody may be called more often than we get audio
 	    // data, it makes sense to just draw the buffered image here.
+	    // The newest column is at ringColumn; draw from there to the
+	    // end of the ring, then wrap round to the oldest.
+	    canvas.drawBitmap(bgBitmap, dispX, dispY, null);
 	    synchronized (this) {
-	        canvas.drawBitmap(finalBitmap, dispX, dispY, null);
+	        if (ringPixels == null)
+	            return;
+	        final int x = dispX + (int) sonaGraphX;
+	        final int y = dispY + (int) sonaGraphY;
+	        final int w = ringWidth;
+	        final int h = ringHeight;
+	        final int c = ringColumn;
+	        canvas.drawBitmap(ringPixels, c, w, x, y, w - c, h, false, null);
+	        if (c > 0)
+	            canvas.drawBitmap(ringPixels, 0, w, x + w - c, y, c, h, false, null);
 	    }
 	}
 	
@@ -314,9 +410,18 @@ public class SonagramGauge
 	@SuppressWarnings("unused")
 	private static final String TAG = "instrument";
 	
-    // Vertical range of the graph in bels.
+    // Magnitude at the top of the colour scale, in bels; a full-scale
+    // sinusoid centred on a bin is 0.
+    private static final float TOP_BELS = -1f;
+
+    // Range of the colour scale in bels.
     private static final float RANGE_BELS = 2f;
 
+    // Number of mantissa bits used to index the colour table, and
+    // hence the number of table entries per octave of magnitude.
+    private static final int LUT_BITS = 6;
+    private static final int LUT_STEPS = 1 << LUT_BITS;
+
 
 	// ******************************************************************** //
 	// Private Data.
@@ -350,20 +455,29 @@ public class SonagramGauge
     private Bitmap bgBitmap = null;
     private Canvas bgCanvas = null;
 
-    // Bitmap in which we draw the audio sonagram display,
-    // and the Canvas and Paint for drawing into it.
-    private Bitmap sonaBitmap = null;
-    private Canvas sonaCanvas = null;
-
-    // Bitmap in which we draw the audio sonagram display,
-    // and the Canvas and Paint for drawing into it.
-    private Bitmap finalBitmap = null;
-    private Canvas finalCanvas = null;
-
+    // Pixel ring holding the sonagram image, row by row, with its
+    // size; and the column in it which holds the newest data.  The
+    // columns to its right are progressively older, wrapping round.
+    private int[] ringPixels = null;
+    private int ringWidth = 0;
+    private int ringHeight = 0;
+    private int ringColumn = 0;
+
+    // For each row of the ring, the range of spectrum bins it shows;
+    // and the number of bins in the spectrum this was calculated for.
+    private int[] rowFirstBin = null;
+    private int[] rowLastBin = null;
+    private int rowBins = 0;
     
     // Buffer for calculating the draw colour from H,S,V values.
     private final int[] paintColors= new int[251];
     private final int maxColors=250;
 
+    // Table mapping magnitudes to colours, and the range of binary
+    // exponents it covers.
+    private int[] colorTable = null;
+    private int lutMinExp = 0;
+    private int lutMaxExp = 0;
+
 }
 
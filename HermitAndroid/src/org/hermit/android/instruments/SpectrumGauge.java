@@ -21,6 +21,8 @@ package org.hermit.android.instruments;
 
 
 import org.hermit.android.core.SurfaceRunner;
+import org.hermit.dsp.FastLog;
+import org.hermit.dsp.FilterBank;
 
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
@@ -129,6 +131,9 @@ public class SpectrumGauge
         spectGraphY = 0;
         spectGraphWidth = mw - spectGraphMargin * 2;
         spectGraphHeight = mh - labelSize - 6;
+        
+        // The log graph's bar positions depend on the layout.
+        logBands = null;
 
         // Create the bitmap for the spectrum display,
         // and the Canvas for drawing into it.
@@ -228,7 +233,8 @@ public class SpectrumGauge
 
 	   
     /**
-     * Draw a linear spectrum graph.
+     * Draw a logarithmic spectrum graph.  The spectrum is aggregated
+     * into 1/3-octave bands, and one bar is drawn per band.
      * 
      * @param   data        An array of floats defining the signal power
      *                      at each frequency in the spectrum.
@@ -239,44 +245,68 @@ public class SpectrumGauge
         paint.setStyle(Style.FILL);
         paintColor[1] = 1f;
         paintColor[2] = 1f;
-        final int len = data.length;
-        final float bw = (float) (spectGraphWidth - 2) / (float) len;
         final float bh = spectGraphHeight - 2;
         final float be = spectGraphY + spectGraphHeight - 1;
         
-        // Determine the first and last frequencies we have.
-        final float lf = nyquistFreq / len;
-        final float rf = nyquistFreq;
-        
-        // Now, how many octaves is that.  Round down.  Calculate pixels/oct.
-        final int octaves = (int) Math.floor(log2(rf / lf)) - 2;
-        final float octWidth = (float) (spectGraphWidth - 2) / (float) octaves;
+        // Make sure the bands match the current data size and rate.
+        if (logBands == null || logBandsBins != data.length ||
+                                        logBandsNyquist != nyquistFreq)
+            makeLogBands(data.length);
+        logBands.getBands(data, logBandData, true);
         
-        // Calculate the base frequency for the graph, which isn't lf.
-        final float bf = rf / (float) Math.pow(2, octaves);
-            
-        // Element 0 isn't a frequency bucket; skip it.
-        for (int i = 1; i < len; ++i) {
+        final int nb = logBandData.length;
+        for (int b = 0; b < nb; ++b) {
             // Cycle the hue angle from 0° to 300°; i.e. red to purple.
-            paintColor[0] = (float) i / (float) len * 300f;
+            paintColor[0] = (float) b / (float) nb * 300f;
             paint.setColor(Color.HSVToColor(paintColor));
 
-            // What frequency bucket are we in.
-            final float f = lf * i;
-
-            // For freq f, calculate x.
-            final float x = spectGraphX + (float) (log2(f) - log2(bf)) * octWidth;
-
             // Draw the bar.
-            float y = be - (float) (Math.log10(data[i]) / RANGE_BELS + 1f) * bh;
+            float y = be - (FastLog.log10(logBandData[b]) / RANGE_BELS + 1f) * bh;
             if (y > be)
                 y = be;
             else if (y < spectGraphY)
                 y = spectGraphY;
-            if (bw <= 1.0f)
-                canvas.drawLine(x, y, x, be, paint);
-            else
-                canvas.drawRect(x, y, x + bw, be, paint);
+            canvas.drawRect(logBandLeft[b], y, logBandRight[b], be, paint);
+        }
+    }
+    
+    
+    /**
+     * Set up the filter bank and bar positions for the log graph.
+     * 
+     * @param   len         The number of values in the spectrum data.
+     */
+    private void makeLogBands(int len) {
+        // Determine the first and last frequencies we have.
+        final float lf = (float) nyquistFreq / (float) len;
+        final float rf = nyquistFreq;
+        
+        // Now, how many octaves is that.  Round down.  Calculate pixels/oct.
+        int octaves = (int) Math.floor(log2(rf / lf)) - 2;
+        if (octaves < 1)
+            octaves = 1;
+        final float octWidth = (float) (spectGraphWidth - 2) / (float) octaves;
+        
+        // Calculate the base frequency for the graph, which isn't lf.
+        final float bf = rf / (float) Math.pow(2, octaves);
+        
+        logBands = new FilterBank(FilterBank.Scale.THIRD_OCTAVE,
+                                  len * 2, nyquistFreq * 2, bf, rf);
+        logBandsBins = len;
+        logBandsNyquist = nyquistFreq;
+        
+        // Calculate the x positions of the band edges.
+        final int nb = logBands.getBandCount();
+        final float gl = spectGraphX + 1;
+        final float gr = spectGraphX + spectGraphWidth - 1;
+        logBandData = new float[nb];
+        logBandLeft = new float[nb];
+        logBandRight = new float[nb];
+        for (int b = 0; b < nb; ++b) {
+            float l = spectGraphX + (float) (log2(logBands.getLowFreq(b)) - log2(bf)) * octWidth;
+            float r = spectGraphX + (float) (log2(logBands.getHighFreq(b)) - log2(bf)) * octWidth;
+            logBandLeft[b] = Math.max(gl, l);
+            logBandRight[b] = Math.min(gr, r - 1);
         }
     }
     
@@ -311,7 +341,7 @@ public class SpectrumGauge
 
             // Draw the bar.
             final float x = spectGraphX + i * bw + 1;
-            float y = be - (float) (Math.log10(data[i]) / RANGE_BELS + 1f) * bh;
+            float y = be - (FastLog.log10(data[i]) / RANGE_BELS + 1f) * bh;
             if (y > be)
                 y = be;
             else if (y < spectGraphY)
@@ -406,5 +436,17 @@ public class SpectrumGauge
     // Buffer for calculating the draw colour from H,S,V values.
     private float[] paintColor = { 0, 1, 1 };
 
+    // Filter bank used to aggregate the spectrum into bands for the
+    // log graph, and the data size and Nyquist frequency it was made for.
+    private FilterBank logBands = null;
+    private int logBandsBins = 0;
+    private int logBandsNyquist = 0;
+    
+    // Band values for the log graph, and the left and right x positions
+    // of each band's bar.
+    private float[] logBandData = null;
+    private float[] logBandLeft = null;
+    private float[] logBandRight = null;
+
 }
 
@@ -21,17 +21,26 @@
 package org.hermit.android.io;
 
 
-import android.media.AudioFormat;
-import android.media.AudioRecord;
-import android.media.MediaRecorder;
+import java.io.IOException;
+
+import org.hermit.dsp.SampleSource;
+import org.hermit.utils.SampleRingBuffer;
+
 import android.util.Log;
 
 
 /**
- * A class which reads audio input from the mic in a background thread and
- * passes it to the caller when ready.
+ * A class which reads audio input from the mic, or another
+ * {@link SampleSource}, in a background thread and passes it to the
+ * caller when ready.
  * 
- * <p>To use this class, your application must have permission RECORD_AUDIO.
+ * <p>The data can either be passed to a {@link Listener} as each block
+ * is read, or written into a {@link SampleRingBuffer}, from which the
+ * client can take it on its own thread.  Either way, the reader never
+ * waits for the client.
+ * 
+ * <p>To use this class with the mic, your application must have
+ * permission RECORD_AUDIO.
  */
 public class AudioReader
 {
@@ -60,7 +69,11 @@ public class AudioReader
         public static final int ERR_READ_FAILED = 2;
         
         /**
-         * An audio read has completed.
+         * An audio read has completed.  The buffer is re-used for the
+         * next read as soon as this returns, so the data must be
+         * copied out if it is needed later.  This is not called if
+         * the reader is writing to a ring buffer.
+         * 
          * @param   buffer      Buffer containing the data.
          */
         public abstract void onReadComplete(short[] buffer);
@@ -78,10 +91,20 @@ public class AudioReader
     // ******************************************************************** //
 
 	/**
-	 * Create an AudioReader instance.
+	 * Create an AudioReader instance which reads from the mic.
 	 */
     public AudioReader() {
-//        audioManager = (AudioManager) app.getSystemService(Context.AUDIO_SERVICE);
+        this(new AudioRecordSource());
+    }
+
+
+	/**
+	 * Create an AudioReader instance which reads from a given source.
+	 * 
+     * @param   source      The source of the audio data.
+	 */
+    public AudioReader(SampleSource source) {
+        audioSource = source;
     }
 
 
@@ -99,24 +122,33 @@ public class AudioReader
      * @param   listener    Listener to be notified on each completed read.
      */
     public void startReader(int rate, int block, Listener listener) {
+        startReader(rate, block, null, listener);
+    }
+    
+
+    /**
+     * Start this reader, writing the audio into a ring buffer.
+     * 
+     * @param   rate        The audio sampling rate, in samples / sec.
+     * @param   block       Number of samples of input to read at a time.
+     *                      This is different from the system audio
+     *                      buffer size.
+     * @param   ring        Ring buffer to write each block to.  If null,
+     *                      blocks are passed to the listener instead.
+     *                      This reader must be the ring's only producer.
+     * @param   listener    Listener to be notified of errors, and of
+     *                      each completed read if ring is null.
+     */
+    public void startReader(int rate, int block, SampleRingBuffer ring,
+                            Listener listener)
+    {
         Log.i(TAG, "Reader: Start Thread");
         synchronized (this) {
-            // Calculate the required I/O buffer size.
-            int audioBuf = AudioRecord.getMinBufferSize(rate,
-                                         AudioFormat.CHANNEL_CONFIGURATION_MONO,
-                                         AudioFormat.ENCODING_PCM_16BIT) * 2;
-
-            // Set up the audio input.
-            audioInput = new AudioRecord(MediaRecorder.AudioSource.MIC,
-                                         rate,
-                                         AudioFormat.CHANNEL_CONFIGURATION_MONO,
-                                         AudioFormat.ENCODING_PCM_16BIT,
-                                         audioBuf);
+            inputRate = rate;
             inputBlockSize = block;
-            sleepTime = (long) (1000f / ((float) rate / (float) block));
-            inputBuffer = new short[2][inputBlockSize];
-            inputBufferWhich = 0;
+            inputBuffer = new short[inputBlockSize];
             inputBufferIndex = 0;
+            inputRing = ring;
             inputListener = listener;
             running = true;
             readerThread = new Thread(new Runnable() {
@@ -144,14 +176,6 @@ public class AudioReader
         }
         readerThread = null;
         
-        // Kill the audio input.
-        synchronized (this) {
-            if (audioInput != null) {
-                audioInput.release();
-                audioInput = null;
-            }
-        }
-        
         Log.i(TAG, "Reader: Thread Stopped");
     }
 
@@ -164,85 +188,48 @@ public class AudioReader
      * Main loop of the audio reader.  This runs in our own thread.
      */
     private void readerRun() {
-        short[] buffer;
-        int index, readSize;
-        
-        int timeout = 200;
         try {
-            while (timeout > 0 && audioInput.getState() != AudioRecord.STATE_INITIALIZED) {
-                Thread.sleep(50);
-                timeout -= 50;
-            }
-        } catch (InterruptedException e) { }
-
-        if (audioInput.getState() != AudioRecord.STATE_INITIALIZED) {
-            Log.e(TAG, "Audio reader failed to initialize");
+            audioSource.start(inputRate);
+        } catch (IOException e) {
+            Log.e(TAG, "Reader: failed to start input", e);
             readError(Listener.ERR_INIT_FAILED);
             running = false;
+            audioSource.stop();
             return;
         }
 
         try {
             Log.i(TAG, "Reader: Start Recording");
-            audioInput.startRecording();
+            final short[] buffer = inputBuffer;
             while (running) {
-                long stime = System.currentTimeMillis();
+                // Read until the block is full.  We never wait for the
+                // client, so lag can't build up here; if the client
+                // can't keep up, the ring buffer drops the data.
+                int index = inputBufferIndex;
+                int nread = audioSource.read(buffer, index, inputBlockSize - index);
 
                 if (!running)
                     break;
 
-                readSize = inputBlockSize;
-                int space = inputBlockSize - inputBufferIndex;
-                if (readSize > space)
-                    readSize = space;
-                buffer = inputBuffer[inputBufferWhich];
-                index = inputBufferIndex;
-
-                synchronized (buffer) {
-                    int nread = audioInput.read(buffer, index, readSize);
-
-                    boolean done = false;
-                    if (!running)
-                        break;
-                    
-                    if (nread < 0) {
-                        Log.e(TAG, "Audio read failed: error " + nread);
-                        readError(Listener.ERR_READ_FAILED);
-                        running = false;
-                        break;
-                    }
-                    int end = inputBufferIndex + nread;
-                    if (end >= inputBlockSize) {
-                        inputBufferWhich = (inputBufferWhich + 1) % 2;
-                        inputBufferIndex = 0;
-                        done = true;
-                    } else
-                        inputBufferIndex = end;
-
-                    if (done) {
-                        readDone(buffer);
-
-                        // Because our block size is way smaller than the audio
-                        // buffer, we get blocks in bursts, which messes up
-                        // the audio analyzer.  We don't want to be forced to
-                        // wait until the analysis is done, because if
-                        // the analysis is slow, lag will build up.  Instead
-                        // wait, but with a timeout which lets us keep the
-                        // input serviced.
-                        long etime = System.currentTimeMillis();
-                        long sleep = sleepTime - (etime - stime);
-                        if (sleep < 5)
-                            sleep = 5;
-                        try {
-                            buffer.wait(sleep);
-                        } catch (InterruptedException e) { }
-                    }
+                if (nread < 0) {
+                    Log.i(TAG, "Reader: End of input");
+                    running = false;
+                    break;
                 }
+                index += nread;
+                if (index >= inputBlockSize) {
+                    readDone(buffer);
+                    index = 0;
+                }
+                inputBufferIndex = index;
             }
+        } catch (IOException e) {
+            Log.e(TAG, "Reader: failed to read input", e);
+            readError(Listener.ERR_READ_FAILED);
+            running = false;
         } finally {
             Log.i(TAG, "Reader: Stop Recording");
-            if (audioInput.getState() == AudioRecord.RECORDSTATE_RECORDING)
-                audioInput.stop();
+            audioSource.stop();
         }
     }
 
@@ -253,7 +240,10 @@ public class AudioReader
      * @param   buffer      Buffer containing the data.
      */
     private void readDone(short[] buffer) {
-        inputListener.onReadComplete(buffer);
+        if (inputRing != null)
+            inputRing.write(buffer, 0, inputBlockSize);
+        else
+            inputListener.onReadComplete(buffer);
     }
     
     
@@ -280,25 +270,28 @@ public class AudioReader
 	// Private Data.
 	// ******************************************************************** //
     
-    // Our audio input device.
-    private AudioRecord audioInput;
+    // Our audio input source.
+    private final SampleSource audioSource;
+
+    // The sample rate we were asked for.
+    private int inputRate = 0;
 
     // Our audio input buffer, and the index of the next item to go in.
-    private short[][] inputBuffer = null;
-    private int inputBufferWhich = 0;
+    private short[] inputBuffer = null;
     private int inputBufferIndex = 0;
 
     // Size of the block to read each time.
     private int inputBlockSize = 0;
     
-    // Time in ms to sleep between blocks, to meter the supply rate.
-    private long sleepTime = 0;
+    // Ring buffer to write the input to.  If null, we pass each block
+    // to the listener.
+    private SampleRingBuffer inputRing = null;
     
     // Listener for input.
     private Listener inputListener = null;
     
     // Flag whether the thread should be running.
-    private boolean running = false;
+    private volatile boolean running = false;
     
     // The thread, if any, which is currently reading.  Null if not running.
     private Thread readerThread = null;
@@ -0,0 +1,132 @@
+
+/**
+ * org.hermit.android.io: Android utilities for accessing peripherals.
+ * 
+ * These classes provide some basic utilities for accessing the audio
+ * interface, at present.
+ *
+ * <br>Copyright 2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation (see COPYING).
+ * 
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package org.hermit.android.io;
+
+
+import java.io.IOException;
+
+import org.hermit.dsp.SampleSource;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+
+
+/**
+ * A {@link SampleSource} which records from the mic.
+ * 
+ * <p>To use this class, your application must have permission RECORD_AUDIO.
+ */
+public class AudioRecordSource
+    implements SampleSource
+{
+
+    // ******************************************************************** //
+    // Sample Source.
+    // ******************************************************************** //
+
+    /**
+     * Get the sample rate of this source.
+     * 
+     * @return              0, since we can record at any rate.
+     */
+    @Override
+    public int getSampleRate() {
+        return 0;
+    }
+
+
+    /**
+     * Set up the audio input and start recording.
+     * 
+     * @param   rate        The audio sampling rate, in samples / sec.
+     * @throws  IOException The audio input failed to initialise.
+     */
+    @Override
+    public void start(int rate) throws IOException {
+        // Calculate the required I/O buffer size.
+        int audioBuf = AudioRecord.getMinBufferSize(rate,
+                                     AudioFormat.CHANNEL_CONFIGURATION_MONO,
+                                     AudioFormat.ENCODING_PCM_16BIT) * 2;
+
+        // Set up the audio input.
+        audioInput = new AudioRecord(MediaRecorder.AudioSource.MIC,
+                                     rate,
+                                     AudioFormat.CHANNEL_CONFIGURATION_MONO,
+                                     AudioFormat.ENCODING_PCM_16BIT,
+                                     audioBuf);
+
+        int timeout = 200;
+        try {
+            while (timeout > 0 && audioInput.getState() != AudioRecord.STATE_INITIALIZED) {
+                Thread.sleep(50);
+                timeout -= 50;
+            }
+        } catch (InterruptedException e) { }
+
+        if (audioInput.getState() != AudioRecord.STATE_INITIALIZED) {
+            stop();
+            throw new IOException("Audio reader failed to initialize");
+        }
+
+        audioInput.startRecording();
+    }
+
+
+    /**
+     * Read audio samples.  This blocks until data is available.
+     * 
+     * @param   buffer      Buffer for the samples.
+     * @param   off         Offset in buffer at which to store them.
+     * @param   count       Maximum number of samples to read.
+     * @return              The number of samples read.
+     * @throws  IOException The read failed.
+     */
+    @Override
+    public int read(short[] buffer, int off, int count) throws IOException {
+        int nread = audioInput.read(buffer, off, count);
+        if (nread < 0)
+            throw new IOException("Audio read failed: error " + nread);
+        return nread;
+    }
+
+
+    /**
+     * Stop recording and release the audio input.
+     */
+    @Override
+    public void stop() {
+        if (audioInput != null) {
+            if (audioInput.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING)
+                audioInput.stop();
+            audioInput.release();
+            audioInput = null;
+        }
+    }
+
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+    
+    // Our audio input device.  Null if not started.
+    private AudioRecord audioInput = null;
+
+}
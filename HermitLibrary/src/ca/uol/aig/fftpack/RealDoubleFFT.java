@@ -31,6 +31,24 @@ public class RealDoubleFFT
         rffti(ndim, wavetable);
     }
 
+
+    /**
+     * Construct an FFT transform which shares the wavenumber table of
+     * another transform of the same size.  The table is not modified by
+     * the transforms, so this is cheap; the new transform gets its own
+     * working storage, so it can be used concurrently with
+     * <em>table</em> from a different thread.
+     *
+     * @param  table  the transform whose wavenumber table is to be shared.
+     */
+    public RealDoubleFFT(RealDoubleFFT table)
+    {
+        ndim = table.ndim;
+        norm_factor = table.norm_factor;
+        wavetable = table.wavetable;
+        rfftw(ndim);
+    }
+
     
     /**
      * Forward real FFT transform.  It computes the discrete transform
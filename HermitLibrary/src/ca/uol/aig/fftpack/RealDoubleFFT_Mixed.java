@@ -24,6 +24,16 @@ class RealDoubleFFT_Mixed
     }
 
     
+    /**
+     * Allocate the working storage for a Real FFT whose wavenumber
+     * table has already been initialized.
+     */
+    void rfftw(int n)
+    {
+        tempData = new double[n];
+    }
+
+    
     /*---------------------------------------------------------
    rffti1: further initialization of Real FFT
   --------------------------------------------------------*/
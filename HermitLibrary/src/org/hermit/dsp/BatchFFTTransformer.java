@@ -0,0 +1,394 @@
+/**
+ * dsp: various digital signal processing algorithms
+ * <br>Copyright 2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+
+package org.hermit.dsp;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * An FFT transformer which processes many blocks of data in one call.
+ * This is intended for offline analysis of multi-channel or long
+ * recordings, where the alternative would be to create one
+ * {@link FFTTransformer} per channel and call it once per block.
+ *
+ * <p>The input to each call is a run of M frames, each of N samples,
+ * laid out contiguously in a float array or FloatBuffer; the output is
+ * M spectra, each of N/2 values, laid out contiguously in the same way.
+ * Each output spectrum is exactly what {@link FFTTransformer#getResults(float[])}
+ * would produce for the corresponding frame.  The frames may be
+ * successive blocks of one channel, or the same block from several
+ * channels, or any mixture; they are all transformed independently.
+ *
+ * <p>All the work is done by {@link FFTTransformer} instances which
+ * share a single set of pre-computed tables and window function.  If
+ * a ForkJoinPool is supplied, the frames are split into contiguous
+ * slices which are transformed in parallel, one working transformer
+ * per slice.  Since each frame is transformed independently, the
+ * results are identical however the work is split.
+ *
+ * <p>An instance of this class may be used by only one calling
+ * thread at a time.
+ */
+public final class BatchFFTTransformer {
+
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create a batch FFT transformer for a given frame size.
+     *
+     * @param   size        The number of samples in each frame that we will
+     *                      be asked to transform.  Must be a power of 2.
+     * @throws  IllegalArgumentException    Invalid parameter.
+     */
+    public BatchFFTTransformer(int size) {
+        this(new FFTTransformer(size));
+    }
+
+
+    /**
+     * Create a batch FFT transformer for a given frame size.  A specified
+     * window function will be applied to each frame.
+     *
+     * @param   size        The number of samples in each frame that we will
+     *                      be asked to transform.  Must be a power of 2.
+     * @param   winfunc     Window function to apply to all input data.
+     * @throws  IllegalArgumentException    Invalid parameter.
+     */
+    public BatchFFTTransformer(int size, Window.Function winfunc) {
+        this(new FFTTransformer(size, winfunc));
+    }
+
+
+    /**
+     * Create a batch FFT transformer for a given frame size.  A specified
+     * window function will be applied to each frame.
+     *
+     * @param   size        The number of samples in each frame that we will
+     *                      be asked to transform.  Must be a power of 2.
+     * @param   window      Window function to apply to all input data.
+     *                      Its block size must be the same as the size
+     *                      parameter.
+     * @throws  IllegalArgumentException    Invalid parameter.
+     */
+    public BatchFFTTransformer(int size, Window window) {
+        this(new FFTTransformer(size, window));
+    }
+
+
+    /**
+     * Create a batch FFT transformer based on a given prototype.
+     *
+     * @param   proto       The transformer which defines our configuration.
+     */
+    private BatchFFTTransformer(FFTTransformer proto) {
+        blockSize = proto.getBlockSize();
+        workers = new FFTTransformer[] { proto };
+    }
+
+
+    // ******************************************************************** //
+    // Configuration.
+    // ******************************************************************** //
+
+    /**
+     * Set a new windowing function for this transformer.
+     *
+     * @param   func        The desired windowing function.
+     */
+    public void setWindowFunc(Window.Function func) {
+        // Re-base all the workers on the new configuration.
+        FFTTransformer proto = workers[0];
+        proto.setWindowFunc(func);
+        workers = new FFTTransformer[] { proto };
+    }
+
+
+    /**
+     * Get the frame size of this transformer.
+     *
+     * @return              The number of samples in each input frame.
+     *                      Each output spectrum is half this size.
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+
+    // ******************************************************************** //
+    // Transform.
+    // ******************************************************************** //
+
+    /**
+     * Transform a batch of frames on the calling thread.
+     *
+     * @param   input       The input data buffer.
+     * @param   inOff       Offset in input of the first sample of the
+     *                      first frame.
+     * @param   frames      Number of frames to transform.
+     * @param   output      Buffer in which the results will be placed.
+     *                      frames * N/2 values will be written.
+     * @param   outOff      Offset in output at which the first result
+     *                      will be placed.
+     * @throws  IllegalArgumentException    Invalid buffer size.
+     */
+    public void transform(float[] input, int inOff, int frames,
+                          float[] output, int outOff)
+    {
+        checkArgs(inOff, input.length, frames, outOff, output.length);
+        transformFrames(workers[0], input, null, inOff,
+                        output, null, outOff, 0, frames);
+    }
+
+
+    /**
+     * Transform a batch of frames on the calling thread.  The buffers'
+     * positions and limits are not used or modified.
+     *
+     * @param   input       The input data buffer.  This may be a direct
+     *                      buffer.
+     * @param   inOff       Absolute index in input of the first sample of
+     *                      the first frame.
+     * @param   frames      Number of frames to transform.
+     * @param   output      Buffer in which the results will be placed.
+     *                      This may be a direct buffer.
+     *                      frames * N/2 values will be written.
+     * @param   outOff      Absolute index in output at which the first
+     *                      result will be placed.
+     * @throws  IllegalArgumentException    Invalid buffer size.
+     */
+    public void transform(FloatBuffer input, int inOff, int frames,
+                          FloatBuffer output, int outOff)
+    {
+        checkArgs(inOff, input.capacity(), frames, outOff, output.capacity());
+        transformFrames(workers[0], null, input, inOff,
+                        null, output, outOff, 0, frames);
+    }
+
+
+    /**
+     * Transform a batch of frames, splitting the work across the
+     * threads of a ForkJoinPool.  This method returns when all
+     * the frames have been transformed.
+     *
+     * @param   input       The input data buffer.
+     * @param   inOff       Offset in input of the first sample of the
+     *                      first frame.
+     * @param   frames      Number of frames to transform.
+     * @param   output      Buffer in which the results will be placed.
+     *                      frames * N/2 values will be written.
+     * @param   outOff      Offset in output at which the first result
+     *                      will be placed.
+     * @param   pool        The pool to run the transforms in.
+     * @throws  IllegalArgumentException    Invalid buffer size.
+     */
+    public void transform(float[] input, int inOff, int frames,
+                          float[] output, int outOff, ForkJoinPool pool)
+    {
+        checkArgs(inOff, input.length, frames, outOff, output.length);
+        int slices = prepareWorkers(frames, pool.getParallelism());
+        pool.invoke(new Slice(input, null, inOff, output, null, outOff,
+                              0, frames, 0, slices));
+    }
+
+
+    /**
+     * Transform a batch of frames, splitting the work across the
+     * threads of a ForkJoinPool.  This method returns when all
+     * the frames have been transformed.  The buffers' positions and
+     * limits are not used or modified.
+     *
+     * @param   input       The input data buffer.  This may be a direct
+     *                      buffer.
+     * @param   inOff       Absolute index in input of the first sample of
+     *                      the first frame.
+     * @param   frames      Number of frames to transform.
+     * @param   output      Buffer in which the results will be placed.
+     *                      This may be a direct buffer.
+     *                      frames * N/2 values will be written.
+     * @param   outOff      Absolute index in output at which the first
+     *                      result will be placed.
+     * @param   pool        The pool to run the transforms in.
+     * @throws  IllegalArgumentException    Invalid buffer size.
+     */
+    public void transform(FloatBuffer input, int inOff, int frames,
+                          FloatBuffer output, int outOff, ForkJoinPool pool)
+    {
+        checkArgs(inOff, input.capacity(), frames, outOff, output.capacity());
+        int slices = prepareWorkers(frames, pool.getParallelism());
+        pool.invoke(new Slice(null, input, inOff, null, output, outOff,
+                              0, frames, 0, slices));
+    }
+
+
+    // ******************************************************************** //
+    // Private Methods.
+    // ******************************************************************** //
+
+    /**
+     * Check that the given input and output buffers are big enough
+     * for a batch.
+     */
+    private void checkArgs(int inOff, int inLen, int frames, int outOff, int outLen) {
+        if (frames < 0)
+            throw new IllegalArgumentException("bad frame count in batch FFT: " +
+                                               frames);
+        long inEnd = inOff + (long) frames * blockSize;
+        if (inOff < 0 || inEnd > inLen)
+            throw new IllegalArgumentException("bad input buffer size in batch FFT:" +
+                                               " need " + inEnd +
+                                               "; given " + inLen);
+        long outEnd = outOff + (long) frames * (blockSize / 2);
+        if (outOff < 0 || outEnd > outLen)
+            throw new IllegalArgumentException("bad output buffer size in batch FFT:" +
+                                               " need " + outEnd +
+                                               "; given " + outLen);
+    }
+
+
+    /**
+     * Make sure we have enough working transformers to split a batch
+     * into slices.  This is done up front, on the calling thread, so
+     * that the slices don't have to synchronize.
+     *
+     * @param   frames      Number of frames in the batch.
+     * @param   threads     Number of threads available.
+     * @return              The number of slices to split the batch into.
+     */
+    private int prepareWorkers(int frames, int threads) {
+        int slices = Math.max(1, Math.min(frames, threads));
+        if (workers.length < slices) {
+            FFTTransformer[] nw = new FFTTransformer[slices];
+            System.arraycopy(workers, 0, nw, 0, workers.length);
+            for (int i = workers.length; i < slices; ++i)
+                nw[i] = new FFTTransformer(workers[0]);
+            workers = nw;
+        }
+        return slices;
+    }
+
+
+    /**
+     * Transform a range of frames from a batch.  Exactly one of each of
+     * the array and buffer references for input and output must be
+     * non-null.
+     *
+     * @param   fft         The transformer to use.
+     * @param   inArr       The input array, or null.
+     * @param   inBuf       The input buffer, or null.
+     * @param   inOff       Offset in the input of the batch.
+     * @param   outArr      The output array, or null.
+     * @param   outBuf      The output buffer, or null.
+     * @param   outOff      Offset in the output of the batch.
+     * @param   from        Index of the first frame to do.
+     * @param   to          Index of the frame after the last to do.
+     */
+    private void transformFrames(FFTTransformer fft,
+                                 float[] inArr, FloatBuffer inBuf, int inOff,
+                                 float[] outArr, FloatBuffer outBuf, int outOff,
+                                 int from, int to)
+    {
+        final int n = blockSize;
+        final int h = blockSize / 2;
+        for (int f = from; f < to; ++f) {
+            if (inArr != null)
+                fft.setInput(inArr, inOff + f * n, n);
+            else
+                fft.setInput(inBuf, inOff + f * n, n);
+            fft.transform();
+            if (outArr != null)
+                fft.getResults(outArr, outOff + f * h);
+            else
+                fft.getResults(outBuf, outOff + f * h);
+        }
+    }
+
+
+    // ******************************************************************** //
+    // Parallel Task.
+    // ******************************************************************** //
+
+    /**
+     * A ForkJoin task which transforms a range of frames from a batch,
+     * using a range of the workers.  The task splits itself in half
+     * until it has one worker, then does its frames.
+     */
+    private final class Slice
+        extends RecursiveAction
+    {
+        Slice(float[] inArr, FloatBuffer inBuf, int inOff,
+              float[] outArr, FloatBuffer outBuf, int outOff,
+              int from, int to, int wfrom, int wto)
+        {
+            this.inArr = inArr;
+            this.inBuf = inBuf;
+            this.inOff = inOff;
+            this.outArr = outArr;
+            this.outBuf = outBuf;
+            this.outOff = outOff;
+            this.from = from;
+            this.to = to;
+            this.wfrom = wfrom;
+            this.wto = wto;
+        }
+
+        @Override
+        protected void compute() {
+            if (wto - wfrom <= 1) {
+                transformFrames(workers[wfrom], inArr, inBuf, inOff,
+                                outArr, outBuf, outOff, from, to);
+                return;
+            }
+
+            // Split the frames in proportion to the workers.
+            int wmid = (wfrom + wto) >>> 1;
+            int mid = from + (int) ((long) (to - from) * (wmid - wfrom) / (wto - wfrom));
+            invokeAll(new Slice(inArr, inBuf, inOff, outArr, outBuf, outOff,
+                                from, mid, wfrom, wmid),
+                      new Slice(inArr, inBuf, inOff, outArr, outBuf, outOff,
+                                mid, to, wmid, wto));
+        }
+
+        private static final long serialVersionUID = 1L;
+
+        private final float[] inArr;
+        private final FloatBuffer inBuf;
+        private final int inOff;
+        private final float[] outArr;
+        private final FloatBuffer outBuf;
+        private final int outOff;
+        private final int from;
+        private final int to;
+        private final int wfrom;
+        private final int wto;
+    }
+
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // The size of an input frame.
+    private final int blockSize;
+
+    // Working transformers, one per parallel slice.  Element 0 is the
+    // prototype, whose tables are shared by all the others.
+    private FFTTransformer[] workers;
+
+}
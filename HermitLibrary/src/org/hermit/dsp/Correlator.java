@@ -0,0 +1,290 @@
+/**
+ * dsp: various digital signal processing algorithms
+ * <br>Copyright 2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+
+package org.hermit.dsp;
+
+
+import org.hermit.utils.Bitwise;
+
+import ca.uol.aig.fftpack.RealDoubleFFT;
+
+
+/**
+ * Cross-correlation and autocorrelation of fixed-size blocks, calculated
+ * with FFTs, so the cost is O(n log n) in the block size rather than
+ * O(n * m) for m lags.  This also provides time-delay estimation
+ * between two signals, such as a pair of microphones.
+ *
+ * <p>The cross-correlation of x and y computed here is
+ * r[t] = sum over i of x[i + t] * y[i], for lags t from -maxLag to
+ * maxLag.  So if x is a copy of y delayed by d samples, r peaks at t = d.
+ * The blocks are zero-padded so that there is no circular wrap-around.
+ *
+ * <p>Usage: create a Correlator for the block size and the range of
+ * lags of interest, then pass in blocks as they are read.  No memory is
+ * allocated after construction.  A Correlator is not thread-safe.
+ */
+public final class Correlator {
+
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create a correlator.
+     *
+     * @param   blockSize   The number of samples in each block that we
+     *                      will be given.
+     * @param   maxLag      The largest lag, in samples, which is of
+     *                      interest.  Must be less than blockSize.
+     * @throws  IllegalArgumentException    Invalid parameters.
+     */
+    public Correlator(int blockSize, int maxLag) {
+        if (blockSize < 1)
+            throw new IllegalArgumentException("bad block size in Correlator: " + blockSize);
+        if (maxLag < 0 || maxLag >= blockSize)
+            throw new IllegalArgumentException("bad max lag in Correlator:" +
+                                               " must be 0 to " + (blockSize - 1) +
+                                               "; given " + maxLag);
+        this.blockSize = blockSize;
+        this.maxLag = maxLag;
+
+        // Pad enough that lags up to maxLag don't wrap around.
+        fftSize = Bitwise.nextPowerOf2(blockSize + maxLag);
+        fft = new RealDoubleFFT(fftSize);
+        xBuf = new double[fftSize];
+        yBuf = new double[fftSize];
+    }
+
+
+    // ******************************************************************** //
+    // Accessors.
+    // ******************************************************************** //
+
+    /**
+     * Get the block size.
+     *
+     * @return              The number of samples in each block.
+     */
+    public final int getBlockSize() {
+        return blockSize;
+    }
+
+
+    /**
+     * Get the largest lag which is computed.
+     *
+     * @return              The maximum lag, in samples.
+     */
+    public final int getMaxLag() {
+        return maxLag;
+    }
+
+
+    // ******************************************************************** //
+    // Correlation.
+    // ******************************************************************** //
+
+    /**
+     * Compute the cross-correlation of two blocks.
+     *
+     * @param   x           Buffer containing the first signal.
+     * @param   xOff        Offset in x of the block.
+     * @param   y           Buffer containing the second signal.
+     * @param   yOff        Offset in y of the block.
+     * @param   out         Buffer for the result.  r[t] is placed in
+     *                      out[maxLag + t], for t from -maxLag to maxLag;
+     *                      so this must be at least 2 * maxLag + 1 long.
+     */
+    public void crossCorrelate(float[] x, int xOff, float[] y, int yOff, float[] out) {
+        crossSpectrum(x, xOff, y, yOff);
+        fft.bt(xBuf);
+        unwrap(xBuf, out, 1.0 / fftSize);
+    }
+
+
+    /**
+     * Compute the autocorrelation of a block.  This is symmetrical, so
+     * only the non-negative lags are returned.
+     *
+     * @param   x           Buffer containing the signal.
+     * @param   off         Offset in x of the block.
+     * @param   out         Buffer for the result.  r[t] is placed in
+     *                      out[t], for t from 0 to maxLag; so this must be
+     *                      at least maxLag + 1 long.
+     */
+    public void autocorrelate(float[] x, int off, float[] out) {
+        final int n = fftSize;
+        final double[] a = xBuf;
+        load(x, off, a);
+        fft.ft(a);
+
+        // Power spectrum.
+        a[0] *= a[0];
+        for (int i = 1; i < n - 1; i += 2) {
+            a[i] = a[i] * a[i] + a[i + 1] * a[i + 1];
+            a[i + 1] = 0;
+        }
+        a[n - 1] *= a[n - 1];
+
+        fft.bt(a);
+        final double scale = 1.0 / n;
+        for (int t = 0; t <= maxLag; ++t)
+            out[t] = (float) (a[t] * scale);
+    }
+
+
+    // ******************************************************************** //
+    // Time-Delay Estimation.
+    // ******************************************************************** //
+
+    /**
+     * Estimate the delay of one signal relative to another.
+     *
+     * <p>With phase weighting, this is the generalized cross-correlation
+     * with phase transform (GCC-PHAT): the cross spectrum is normalised
+     * to unit magnitude before the inverse transform, which whitens both
+     * signals and gives a much sharper peak in reverberant conditions.
+     * Without, it is the plain cross-correlation peak.  The peak is
+     * refined by parabolic interpolation, for sub-sample accuracy.
+     *
+     * @param   x           Buffer containing the first signal.
+     * @param   xOff        Offset in x of the block.
+     * @param   y           Buffer containing the second signal.
+     * @param   yOff        Offset in y of the block.
+     * @param   phat        If true, use phase weighting.
+     * @return              The delay of x relative to y, in samples;
+     *                      positive if x lags y.  The result is in the
+     *                      range -maxLag to maxLag.
+     */
+    public float estimateDelay(float[] x, int xOff, float[] y, int yOff, boolean phat) {
+        crossSpectrum(x, xOff, y, yOff);
+
+        final int n = fftSize;
+        final double[] a = xBuf;
+        if (phat) {
+            a[0] = Math.signum(a[0]);
+            for (int i = 1; i < n - 1; i += 2) {
+                final double mag = Math.sqrt(a[i] * a[i] + a[i + 1] * a[i + 1]);
+                if (mag > PHAT_FLOOR) {
+                    a[i] /= mag;
+                    a[i + 1] /= mag;
+                } else {
+                    a[i] = a[i + 1] = 0;
+                }
+            }
+            a[n - 1] = Math.signum(a[n - 1]);
+        }
+        fft.bt(a);
+
+        // Find the peak.  Lag t is at index t mod n.
+        int best = 0;
+        double bestVal = a[0];
+        for (int t = -maxLag; t <= maxLag; ++t) {
+            final double v = a[t < 0 ? t + n : t];
+            if (v > bestVal) {
+                bestVal = v;
+                best = t;
+            }
+        }
+
+        // Parabolic interpolation, if the neighbours are in range.
+        if (best <= -maxLag || best >= maxLag)
+            return best;
+        final double l = a[best - 1 < 0 ? best - 1 + n : best - 1];
+        final double r = a[best + 1 < 0 ? best + 1 + n : best + 1];
+        final double den = l - 2 * bestVal + r;
+        if (den >= 0)
+            return best;
+        return (float) (best + 0.5 * (l - r) / den);
+    }
+
+
+    // ******************************************************************** //
+    // Private Methods.
+    // ******************************************************************** //
+
+    /**
+     * Compute the cross spectrum X * conj(Y) of two blocks into xBuf.
+     */
+    private void crossSpectrum(float[] x, int xOff, float[] y, int yOff) {
+        final int n = fftSize;
+        final double[] a = xBuf;
+        final double[] b = yBuf;
+        load(x, xOff, a);
+        load(y, yOff, b);
+        fft.ft(a);
+        fft.ft(b);
+
+        a[0] *= b[0];
+        for (int i = 1; i < n - 1; i += 2) {
+            final double ar = a[i], ai = a[i + 1];
+            final double br = b[i], bi = b[i + 1];
+            a[i] = ar * br + ai * bi;
+            a[i + 1] = ai * br - ar * bi;
+        }
+        a[n - 1] *= b[n - 1];
+    }
+
+
+    /**
+     * Copy a block into a transform buffer, zero-padded.
+     */
+    private void load(float[] src, int off, double[] dest) {
+        final int len = blockSize;
+        for (int i = 0; i < len; ++i)
+            dest[i] = src[off + i];
+        for (int i = len; i < fftSize; ++i)
+            dest[i] = 0;
+    }
+
+
+    /**
+     * Copy a circular correlation out into lag order, scaling it.
+     */
+    private void unwrap(double[] corr, float[] out, double scale) {
+        final int n = fftSize;
+        final int m = maxLag;
+        for (int t = -m; t <= m; ++t)
+            out[m + t] = (float) (corr[t < 0 ? t + n : t] * scale);
+    }
+
+
+    // ******************************************************************** //
+    // Private Constants.
+    // ******************************************************************** //
+
+    // Cross spectrum magnitudes below this are treated as zero in
+    // phase weighting, to avoid amplifying rounding noise.
+    private static final double PHAT_FLOOR = 1e-20;
+
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // The block size, and the largest lag of interest.
+    private final int blockSize;
+    private final int maxLag;
+
+    // The transform size, and the FFT.
+    private final int fftSize;
+    private final RealDoubleFFT fft;
+
+    // Transform buffers for the two signals.
+    private final double[] xBuf;
+    private final double[] yBuf;
+
+}
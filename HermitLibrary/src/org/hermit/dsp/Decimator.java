@@ -0,0 +1,338 @@
+/**
+ * dsp: various digital signal processing algorithms
+ * <br>Copyright 2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+
+package org.hermit.dsp;
+
+
+import java.util.Arrays;
+
+
+/**
+ * A streaming sample rate reducer.  The input is low-pass filtered to
+ * remove everything which would alias into the output band, and then
+ * only 1 in every factor samples is kept.  This can be put in front of
+ * an FFT to analyse the low end of the spectrum at a higher frequency
+ * resolution, for a fraction of the cost of a larger transform.
+ *
+ * <p>The decimation is done in stages, one for each prime factor of the
+ * overall factor, with the largest factors first.  Each stage is a
+ * windowed-sinc FIR filter; since only the frequencies which fall into
+ * the final output band need to be protected, the early stages can have
+ * a wide transition band and hence few taps.  Each stage computes only
+ * the outputs which are kept, which is equivalent to a polyphase
+ * implementation.
+ *
+ * <p>The output passband is flat up to 80% of the output Nyquist
+ * frequency.  Above that, aliases are not suppressed.
+ *
+ * <p>The filter coefficients are computed once, at construction;
+ * processing allocates no memory.  The filter state carries over from
+ * one call to the next, so a continuous stream may be passed in in
+ * blocks of any size.
+ */
+public final class Decimator {
+
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create a decimator.
+     *
+     * @param   factor      The decimation factor; 1 in factor input
+     *                      samples is output.  Must be at least 1.
+     * @throws  IllegalArgumentException    Invalid factor.
+     */
+    public Decimator(int factor) {
+        if (factor < 1)
+            throw new IllegalArgumentException("bad decimation factor: " + factor);
+        decimation = factor;
+
+        // Break the factor into primes, largest first.
+        int[] primes = new int[32];
+        int nprimes = 0;
+        int rem = factor;
+        for (int p = 2; p <= rem; ++p) {
+            while (rem % p == 0) {
+                primes[nprimes++] = p;
+                rem /= p;
+            }
+        }
+        Arrays.sort(primes, 0, nprimes);
+
+        // Design each stage.  We work in units of the output sample rate.
+        // Each stage has to keep anything which lands in the final
+        // passband clear of aliases.
+        stages = new Stage[nprimes];
+        final double pass = PASSBAND / 2.0;
+        double inRate = factor;
+        int delay = 0;
+        int step = 1;
+        for (int s = 0; s < nprimes; ++s) {
+            final int p = primes[nprimes - 1 - s];
+            final double outRate = inRate / p;
+            final double trans = outRate - 2.0 * pass;
+            stages[s] = new Stage(p, inRate, trans);
+            delay += (stages[s].taps - 1) / 2 * step;
+            step *= p;
+            inRate = outRate;
+        }
+        groupDelay = delay;
+    }
+
+
+    // ******************************************************************** //
+    // Accessors.
+    // ******************************************************************** //
+
+    /**
+     * Get the decimation factor.
+     *
+     * @return              The overall decimation factor.
+     */
+    public final int getFactor() {
+        return decimation;
+    }
+
+
+    /**
+     * Get the delay introduced by the filters.
+     *
+     * @return              The approximate group delay of the decimator,
+     *                      in input samples.
+     */
+    public final int getDelay() {
+        return groupDelay;
+    }
+
+
+    /**
+     * Reset the decimator to its initial state, as if it had been
+     * given only zeros.
+     */
+    public void reset() {
+        for (Stage s : stages)
+            s.reset();
+    }
+
+
+    // ******************************************************************** //
+    // Processing.
+    // ******************************************************************** //
+
+    /**
+     * Decimate a block of 16-bit audio.  The output is scaled to the
+     * range -1 to 1, as for {@link FFTTransformer#setInput(short[], int, int)}.
+     *
+     * <p>The number of samples produced is count / factor, give or take
+     * one depending on the samples left over from previous calls; it is
+     * exactly count / factor if every block passed in so far has been
+     * a multiple of factor in length.
+     *
+     * @param   input       The input data buffer.
+     * @param   off         Offset in input of the data.
+     * @param   count       Number of input samples.
+     * @param   output      Buffer for the output samples.
+     * @param   outOff      Offset in output at which to store them.
+     * @return              The number of output samples produced.
+     */
+    public int process(short[] input, int off, int count,
+                       float[] output, int outOff)
+    {
+        int n = outOff;
+        for (int i = 0; i < count; ++i)
+            if (push(input[off + i] / 32768f))
+                output[n++] = result;
+        return n - outOff;
+    }
+
+
+    /**
+     * Decimate a block of samples.  The output is in the same units
+     * as the input.
+     *
+     * <p>The number of samples produced is count / factor, give or take
+     * one depending on the samples left over from previous calls; it is
+     * exactly count / factor if every block passed in so far has been
+     * a multiple of factor in length.
+     *
+     * @param   input       The input data buffer.
+     * @param   off         Offset in input of the data.
+     * @param   count       Number of input samples.
+     * @param   output      Buffer for the output samples.
+     * @param   outOff      Offset in output at which to store them.
+     * @return              The number of output samples produced.
+     */
+    public int process(float[] input, int off, int count,
+                       float[] output, int outOff)
+    {
+        int n = outOff;
+        for (int i = 0; i < count; ++i)
+            if (push(input[off + i]))
+                output[n++] = result;
+        return n - outOff;
+    }
+
+
+    /**
+     * Pass one sample through all the stages.
+     *
+     * @return              true if an output sample was produced;
+     *                      if so, it is in result.
+     */
+    private boolean push(float x) {
+        for (Stage s : stages) {
+            if (!s.push(x))
+                return false;
+            x = s.output;
+        }
+        result = x;
+        return true;
+    }
+
+
+    // ******************************************************************** //
+    // Filter Stage.
+    // ******************************************************************** //
+
+    /**
+     * One stage of the decimator; an FIR low-pass filter followed by
+     * decimation by a single factor.
+     */
+    private static final class Stage {
+
+        /**
+         * Design a stage.
+         *
+         * @param   factor      Decimation factor for this stage.
+         * @param   rate        Input sample rate, in any units.
+         * @param   trans       Required transition band width, in the
+         *                      same units.
+         */
+        Stage(int factor, double rate, double trans) {
+            this.factor = factor;
+
+            // The transition width of a windowed sinc is inversely
+            // proportional to its length.  Round up to a multiple of
+            // the factor.
+            int n = (int) Math.ceil(TRANSITION_WIDTH * rate / trans);
+            n = (n + factor - 1) / factor * factor;
+            taps = n;
+
+            // Make a sinc with cutoff at the output Nyquist frequency,
+            // window it, and normalise to unity gain at DC.
+            final double fc = 0.5 / factor;
+            final double mid = (n - 1) / 2.0;
+            final double[] h = new double[n];
+            for (int k = 0; k < n; ++k) {
+                final double t = 2.0 * Math.PI * fc * (k - mid);
+                h[k] = t == 0 ? 1.0 : Math.sin(t) / t;
+            }
+            new Window(n, Window.Function.BLACKMAN_HARRIS).transform(h);
+            double sum = 0;
+            for (int k = 0; k < n; ++k)
+                sum += h[k];
+            coeffs = new float[n];
+            for (int k = 0; k < n; ++k)
+                coeffs[k] = (float) (h[k] / sum);
+
+            history = new float[n * 2];
+            reset();
+        }
+
+        void reset() {
+            for (int i = 0; i < history.length; ++i)
+                history[i] = 0f;
+            pos = 0;
+            phase = 0;
+        }
+
+        /**
+         * Add a sample to this stage.  The history is stored twice
+         * over, so that the latest taps samples are always contiguous
+         * starting at pos, newest first.
+         *
+         * @return              true if an output sample was produced;
+         *                      if so, it is in output.
+         */
+        boolean push(float x) {
+            final int n = taps;
+            if (--pos < 0)
+                pos = n - 1;
+            history[pos] = x;
+            history[pos + n] = x;
+            if (++phase < factor)
+                return false;
+            phase = 0;
+
+            final float[] h = coeffs;
+            final float[] d = history;
+            final int p = pos;
+            float acc = 0f;
+            for (int k = 0; k < n; ++k)
+                acc += h[k] * d[p + k];
+            output = acc;
+            return true;
+        }
+
+        // Decimation factor and number of taps for this stage.
+        final int factor;
+        final int taps;
+
+        // The filter coefficients.
+        private final float[] coeffs;
+
+        // The input history, stored twice; the position of the newest
+        // sample in it; and the number of samples since the last output.
+        private final float[] history;
+        private int pos;
+        private int phase;
+
+        // The last output sample.
+        float output;
+    }
+
+
+    // ******************************************************************** //
+    // Private Constants.
+    // ******************************************************************** //
+
+    // Fraction of the output Nyquist frequency which is kept free
+    // of aliases.
+    private static final double PASSBAND = 0.8;
+
+    // Transition band width of a Blackman-Harris windowed sinc, in
+    // cycles per sample, times its length.  This gives a stopband
+    // of about 90 dB.
+    private static final double TRANSITION_WIDTH = 8.0;
+
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // The overall decimation factor.
+    private final int decimation;
+
+    // The filter stages, in processing order.
+    private final Stage[] stages;
+
+    // Group delay of the whole decimator, in input samples.
+    private final int groupDelay;
+
+    // The last output sample.
+    private float result;
+
+}
@@ -16,6 +16,8 @@
 
 package org.hermit.dsp;
 
+import java.nio.FloatBuffer;
+
 import org.hermit.utils.Bitwise;
 
 import ca.uol.aig.fftpack.RealDoubleFFT;
@@ -49,6 +51,31 @@ import ca.uol.aig.fftpack.RealDoubleFFT;
  */
 public final class FFTTransformer {
 
+    // ******************************************************************** //
+    // Public Constants.
+    // ******************************************************************** //
+
+    /**
+     * The forms in which the results of a transform can be delivered.
+     */
+    public enum Output {
+        /** The amplitude of each frequency, scaled according to the
+         * window's coherent gain so that a full-range sinusoid centred
+         * on a bin gives 1.  This is the form produced by
+         * {@link FFTTransformer#getResults(float[])}. */
+        MAGNITUDE,
+        
+        /** The square of MAGNITUDE.  This saves a square root per
+         * value. */
+        POWER,
+        
+        /** MAGNITUDE converted to dB, i.e. 20 * log10(MAGNITUDE).  This
+         * is computed with {@link FastLog}, so the error is less than
+         * 0.0022 dB.  A zero value gives negative infinity. */
+        DECIBELS,
+    }
+    
+    
     // ******************************************************************** //
     // Constructor.
     // ******************************************************************** //
@@ -98,10 +125,32 @@ public final class FFTTransformer {
             throw new IllegalArgumentException("size for FFT must" +
                                                " be a power of 2 (was " + size + ")");
         
-        windowFunc = window;
         transformer = new RealDoubleFFT(size);
         
         blockSize = size;
+        setWindow(window);
+        
+        // Allocate working data arrays.
+        xre = new double[blockSize];
+    }
+    
+
+    /**
+     * Create an FFT transformer which shares the configuration of
+     * another.  The new transformer uses the same block size and window
+     * function as the given one, and shares its pre-computed tables, so
+     * this is much cheaper than creating a transformer from scratch.
+     * It has its own working data, so it may be used on a different
+     * thread from the original; this is useful when processing several
+     * channels or blocks in parallel.
+     * 
+     * @param   proto       Transformer whose configuration we will share.
+     */
+    public FFTTransformer(FFTTransformer proto) {
+        transformer = new RealDoubleFFT(proto.transformer);
+        
+        blockSize = proto.blockSize;
+        setWindow(proto.windowFunc);
         
         // Allocate working data arrays.
         xre = new double[blockSize];
@@ -118,7 +167,38 @@ public final class FFTTransformer {
      * @param   func        The desired windowing function.
      */
     public void setWindowFunc(Window.Function func) {
-        windowFunc = new Window(blockSize, func);
+        setWindow(new Window(blockSize, func));
+    }
+
+
+    /**
+     * Set the window, and the output scaling which goes with it.
+     * 
+     * @param   window      The window; null for none.
+     */
+    private void setWindow(Window window) {
+        if (window != null && window.getBlockSize() != blockSize)
+            throw new IllegalArgumentException("bad window size in FFT:" +
+                                               " must be " + blockSize +
+                                               "; given " + window.getBlockSize());
+        windowFunc = window;
+        windowKernel = window == null ? null : window.getDoubleKernel();
+
+        // A sinusoid of amplitude A centred on a bin has magnitude
+        // A * N * gain / 2.
+        final double gain = window == null ? 1.0 : window.getCoherentGain();
+        outputScale = (float) (blockSize * gain / 2.0);
+    }
+
+
+    /**
+     * Get the block size of this transformer.
+     * 
+     * @return              The number of samples in a block that we
+     *                      transform.
+     */
+    public final int getBlockSize() {
+        return blockSize;
     }
 
     
@@ -147,9 +227,15 @@ public final class FFTTransformer {
                                                " constructed for " + blockSize +
                                                "; given " + input.length);
        
-        // Copy and transform the samples into our internal data buffer.
-        for (int i = 0; i < blockSize; i++)
-            xre[i] = input[off + i];
+        // Copy the samples into our internal data buffer, applying
+        // the window.
+        final double[] k = windowKernel;
+        if (k == null)
+            for (int i = 0; i < blockSize; i++)
+                xre[i] = input[off + i];
+        else
+            for (int i = 0; i < blockSize; i++)
+                xre[i] = input[off + i] * k[i];
     }
     
 
@@ -169,14 +255,67 @@ public final class FFTTransformer {
      * @throws  IllegalArgumentException    Invalid data size.
      */
     public final void setInput(short[] input, int off, int count) {
+        setInput(input, off, count, null);
+    }
+    
+
+    /**
+     * Set up a new data block for the FFT algorithm, and accumulate
+     * the statistics of the data at the same time.  This saves a
+     * separate pass over the data to get its bias, range or power.
+     * 
+     * @param   input       The input data buffer.
+     * @param   off         Offset in the buffer at which the data to
+     *                      be transformed starts.
+     * @param   count       Number of samples in the data to be
+     *                      transformed.  Must be the same as the size
+     *                      parameter that was given to the constructor.
+     * @param   stats       If not null, the statistics of the input are
+     *                      added to this.
+     * @throws  IllegalArgumentException    Invalid data size.
+     */
+    public final void setInput(short[] input, int off, int count, SampleStats stats) {
         if (count != blockSize)
             throw new IllegalArgumentException("bad input count in FFT:" +
                                                " constructed for " + blockSize +
                                                "; given " + input.length);
 
-        // Copy and transform the samples into our internal data buffer.
-        for (int i = 0; i < blockSize; i++)
-            xre[i] = (double) input[off + i] / 32768.0;
+        // Copy the samples into our internal data buffer, scaling them
+        // and applying the window.
+        PcmConverter.toDouble(input, off, blockSize, windowKernel, xre, 0, stats);
+    }
+    
+
+    /**
+     * Set up a new data block for the FFT algorithm.  The data in
+     * the provided buffer will be copied out, and that buffer
+     * will not be referenced again.  The buffer's position and limit
+     * are not used or modified.
+     * 
+     * @param   input       The input data buffer.  This may be a direct
+     *                      buffer.
+     * @param   off         Absolute index in the buffer at which the data
+     *                      to be transformed starts.
+     * @param   count       Number of samples in the data to be
+     *                      transformed.  Must be the same as the size
+     *                      parameter that was given to the constructor.
+     * @throws  IllegalArgumentException    Invalid data size.
+     */
+    public final void setInput(FloatBuffer input, int off, int count) {
+        if (count != blockSize)
+            throw new IllegalArgumentException("bad input count in FFT:" +
+                                               " constructed for " + blockSize +
+                                               "; given " + count);
+       
+        // Copy the samples into our internal data buffer, applying
+        // the window.
+        final double[] k = windowKernel;
+        if (k == null)
+            for (int i = 0; i < blockSize; i++)
+                xre[i] = input.get(off + i);
+        else
+            for (int i = 0; i < blockSize; i++)
+                xre[i] = input.get(off + i) * k[i];
     }
 
 
@@ -185,14 +324,10 @@ public final class FFTTransformer {
     // ******************************************************************** //
 
     /**
-     * Transform the data provided in the last call to setInput.
+     * Transform the data provided in the last call to setInput.  The
+     * window function has already been applied by setInput.
      */
     public final void transform() {
-        // If we have a window function, apply it now.
-        if (windowFunc != null)
-            windowFunc.transform(xre);
-
-        // Do the FFT.
         transformer.ft(xre);
     }
 
@@ -216,14 +351,54 @@ public final class FFTTransformer {
             throw new IllegalArgumentException("bad output buffer size in FFT:" +
                                                " must be " + (blockSize / 2) +
                                                "; given " + buffer.length);
-       
-        final float scale = blockSize * FUDGE;
+        getResults(buffer, 0);
+        return buffer;
+    }
+
+
+    /**
+     * Get the real results of the last transformation into part of
+     * a larger buffer.
+     * 
+     * @param   buffer  Buffer in which the real part of the results
+     *                  will be placed.  Half the input block size
+     *                  values will be written, starting at off.
+     *                  If transform() has not been called, the results
+     *                  will be garbage.
+     * @param   off     Offset in buffer at which to place the results.
+     * @throws  ArrayIndexOutOfBoundsException  Buffer too small.
+     */
+    public final void getResults(float[] buffer, int off) {
+        final float scale = outputScale;
         for (int i = 0; i < blockSize / 2; i++) {
             double r = xre[i * 2];
             double im = i == 0 ? 0.0 : xre[i * 2 - 1];
-            buffer[i] = (float) (Math.sqrt(r * r + im * im)) / scale;
+            buffer[off + i] = (float) (Math.sqrt(r * r + im * im)) / scale;
+        }
+    }
+
+
+    /**
+     * Get the real results of the last transformation into part of
+     * a FloatBuffer.  The buffer's position and limit are not used
+     * or modified.
+     * 
+     * @param   buffer  Buffer in which the real part of the results
+     *                  will be placed.  This may be a direct buffer.
+     *                  Half the input block size values will be written,
+     *                  starting at off.  If transform() has not been
+     *                  called, the results will be garbage.
+     * @param   off     Absolute index in buffer at which to place
+     *                  the results.
+     * @throws  IndexOutOfBoundsException   Buffer too small.
+     */
+    public final void getResults(FloatBuffer buffer, int off) {
+        final float scale = outputScale;
+        for (int i = 0; i < blockSize / 2; i++) {
+            double r = xre[i * 2];
+            double im = i == 0 ? 0.0 : xre[i * 2 - 1];
+            buffer.put(off + i, (float) (Math.sqrt(r * r + im * im)) / scale);
         }
-        return buffer;
     }
 
 
@@ -268,7 +443,7 @@ public final class FFTTransformer {
             index = 0;
        
         // Now do the rolling average of each value.
-        final float scale = blockSize * FUDGE;
+        final float scale = outputScale;
         for (int i = 0; i < blockSize / 2; i++) {
             double r = xre[i * 2];
             double im = i == 0 ? 0.0 : xre[i * 2 - 1];
@@ -284,6 +459,82 @@ public final class FFTTransformer {
     }
 
 
+    /**
+     * Get the results of the last transformation in a specified form,
+     * for all frequencies.
+     * 
+     * @param   buffer  Buffer in which the results will be placed.
+     *                  This buffer must be half the length of the
+     *                  input block.  If transform() has not been
+     *                  called, the results will be garbage.
+     * @param   mode    The form in which to deliver the results.
+     * @return          The parameter buffer.
+     * @throws  IllegalArgumentException    Invalid buffer size.
+     */
+    public final float[] getResults(float[] buffer, Output mode) {
+        return getResults(buffer, mode, 0, blockSize / 2);
+    }
+
+
+    /**
+     * Get the results of the last transformation in a specified form,
+     * for a range of frequencies.  Only the values in the given range
+     * are computed; this saves time if, for example, the caller is
+     * only going to display part of the spectrum.
+     * 
+     * @param   buffer  Buffer in which the results will be placed.
+     *                  This buffer must be half the length of the
+     *                  input block.  Only elements from through to-1
+     *                  are set; the others are not touched.  If
+     *                  transform() has not been called, the results
+     *                  will be garbage.
+     * @param   mode    The form in which to deliver the results.
+     * @param   from    Index of the first frequency bin to compute.
+     * @param   to      Index after the last frequency bin to compute.
+     * @return          The parameter buffer.
+     * @throws  IllegalArgumentException    Invalid buffer size or range.
+     */
+    public final float[] getResults(float[] buffer, Output mode, int from, int to) {
+        if (buffer.length != blockSize / 2)
+            throw new IllegalArgumentException("bad output buffer size in FFT:" +
+                                               " must be " + (blockSize / 2) +
+                                               "; given " + buffer.length);
+        if (from < 0 || to > blockSize / 2 || from > to)
+            throw new IllegalArgumentException("bad output range in FFT:" +
+                                               " must be within 0-" + (blockSize / 2) +
+                                               "; given " + from + "-" + to);
+        
+        final float scale = outputScale;
+        switch (mode) {
+        case MAGNITUDE:
+            for (int i = from; i < to; i++) {
+                final double r = xre[i * 2];
+                final double im = i == 0 ? 0.0 : xre[i * 2 - 1];
+                buffer[i] = (float) (Math.sqrt(r * r + im * im)) / scale;
+            }
+            break;
+        case POWER:
+            final double pscale = 1.0 / ((double) scale * scale);
+            for (int i = from; i < to; i++) {
+                final double r = xre[i * 2];
+                final double im = i == 0 ? 0.0 : xre[i * 2 - 1];
+                buffer[i] = (float) ((r * r + im * im) * pscale);
+            }
+            break;
+        case DECIBELS:
+            // 10 * log10(p / scale²) = 10 * log10(2) * log2(p) - 20 * log10(scale)
+            final float dbOff = (float) (-20.0 * Math.log10(scale));
+            for (int i = from; i < to; i++) {
+                final double r = xre[i * 2];
+                final double im = i == 0 ? 0.0 : xre[i * 2 - 1];
+                buffer[i] = FastLog.log2((float) (r * r + im * im)) * DB_PER_LOG2 + dbOff;
+            }
+            break;
+        }
+        return buffer;
+    }
+
+
     // ******************************************************************** //
     // Results Analysis.
     // ******************************************************************** //
@@ -336,19 +587,24 @@ public final class FFTTransformer {
 
     
     // ******************************************************************** //
-    // Private Data.
+    // Private Constants.
     // ******************************************************************** //
 
-    // Fudge factor to scale the FFT output to the range 0-1.
-    private static final float FUDGE = 0.63610f;
+    // Power ratio in dB for each unit of log2: 10 * log10(2).
+    private static final float DB_PER_LOG2 = 10f * FastLog.LOG10_2;
     
     
     // ******************************************************************** //
     // Private Data.
     // ******************************************************************** //
     
-    // Window function to apply to all input data.  If null, no windowing.
+    // Window function to apply to all input data, and its kernel.  If
+    // null, no windowing.
     private Window windowFunc = null;
+    private double[] windowKernel = null;
+
+    // Divisor which scales the FFT output to sinusoid amplitude.
+    private float outputScale;
 
     // The FFT transformer.
     private RealDoubleFFT transformer;
@@ -0,0 +1,260 @@
+/**
+ * dsp: various digital signal processing algorithms
+ * <br>Copyright 2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+
+package org.hermit.dsp;
+
+
+import ca.uol.aig.fftpack.RealDoubleFFT;
+
+
+/**
+ * A streaming FIR filter which does the convolution with FFTs.  This
+ * costs O(log n) per sample in the block size, rather than the O(m)
+ * of a direct filter with m taps, so it is suitable for long kernels
+ * such as room impulse responses.
+ *
+ * <p>The kernel is split into partitions of the block size, and each
+ * partition is transformed once, at construction.  The input is
+ * processed by overlap-save in blocks of the same size: each input
+ * block is transformed once, and its spectrum is kept in a delay line,
+ * so that it can be multiplied with each kernel partition in turn as
+ * it ages.  So the cost per block is one forward and one inverse
+ * transform, plus a complex multiply-add per partition.
+ *
+ * <p>The output is the exact convolution of the input with the kernel,
+ * delayed by one block.  Samples may be passed in in blocks of any
+ * size; each call produces as many output samples as it is given input
+ * samples.  No memory is allocated after construction.
+ */
+public final class FastConvolver {
+
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create a convolver.
+     *
+     * @param   kernel      The filter kernel (impulse response).  This
+     *                      is copied, so the caller may re-use it.
+     * @param   blockSize   The processing block size.  This is the
+     *                      latency of the filter, in samples.  Larger
+     *                      blocks are more efficient, up to about the
+     *                      kernel length; a power of 2 is best.
+     * @throws  IllegalArgumentException    Invalid parameters.
+     */
+    public FastConvolver(float[] kernel, int blockSize) {
+        if (kernel.length < 1)
+            throw new IllegalArgumentException("empty kernel in FastConvolver");
+        if (blockSize < 1)
+            throw new IllegalArgumentException("bad block size in FastConvolver: " + blockSize);
+
+        block = blockSize;
+        fftSize = blockSize * 2;
+        fft = new RealDoubleFFT(fftSize);
+        kernelLength = kernel.length;
+
+        // Transform each partition of the kernel, zero-padded to the
+        // transform size.  Fold the scaling of the inverse transform in
+        // here.
+        final int nparts = (kernel.length + block - 1) / block;
+        partitions = new double[nparts][fftSize];
+        for (int p = 0; p < nparts; ++p) {
+            final double[] h = partitions[p];
+            final int base = p * block;
+            final int len = Math.min(block, kernel.length - base);
+            for (int i = 0; i < len; ++i)
+                h[i] = kernel[base + i] / (double) fftSize;
+            fft.ft(h);
+        }
+
+        spectra = new double[nparts][fftSize];
+        inBuf = new double[fftSize];
+        outBuf = new double[block];
+        accum = new double[fftSize];
+        reset();
+    }
+
+
+    // ******************************************************************** //
+    // Accessors.
+    // ******************************************************************** //
+
+    /**
+     * Get the length of the filter kernel.
+     *
+     * @return              The number of taps in the kernel.
+     */
+    public final int getKernelLength() {
+        return kernelLength;
+    }
+
+
+    /**
+     * Get the latency of the filter.  This is in addition to any delay
+     * which is inherent in the kernel.
+     *
+     * @return              The delay between an input sample and the
+     *                      first output which it affects, in samples.
+     *                      This is the block size.
+     */
+    public final int getLatency() {
+        return block;
+    }
+
+
+    /**
+     * Reset the filter to its initial state, as if it had been
+     * given only zeros.
+     */
+    public void reset() {
+        for (double[] s : spectra)
+            for (int i = 0; i < fftSize; ++i)
+                s[i] = 0;
+        for (int i = 0; i < fftSize; ++i)
+            inBuf[i] = 0;
+        for (int i = 0; i < block; ++i)
+            outBuf[i] = 0;
+        newest = 0;
+        blockPos = 0;
+    }
+
+
+    // ******************************************************************** //
+    // Processing.
+    // ******************************************************************** //
+
+    /**
+     * Filter a block of samples.  The output lags the input by
+     * {@link #getLatency()} samples.
+     *
+     * @param   input       The input data buffer.
+     * @param   off         Offset in input of the data.
+     * @param   count       Number of input samples.
+     * @param   output      Buffer for the output samples; exactly
+     *                      count samples are produced.  This may be the
+     *                      same as the input buffer.
+     * @param   outOff      Offset in output at which to store them.
+     */
+    public void process(float[] input, int off, int count,
+                        float[] output, int outOff)
+    {
+        final int b = block;
+        int pos = blockPos;
+        for (int i = 0; i < count; ++i) {
+            final float x = input[off + i];
+            output[outOff + i] = (float) outBuf[pos];
+            inBuf[b + pos] = x;
+            if (++pos == b) {
+                convolveBlock();
+                pos = 0;
+            }
+        }
+        blockPos = pos;
+    }
+
+
+    /**
+     * Process a complete input block.  inBuf holds the previous block
+     * followed by the new one; the result goes to outBuf.
+     */
+    private void convolveBlock() {
+        final int n = fftSize;
+        final int b = block;
+        final int nparts = partitions.length;
+
+        // Transform the input into the newest slot of the delay line,
+        // and slide the input buffer along.
+        newest = newest == 0 ? nparts - 1 : newest - 1;
+        final double[] x = spectra[newest];
+        System.arraycopy(inBuf, 0, x, 0, n);
+        System.arraycopy(inBuf, b, inBuf, 0, b);
+        fft.ft(x);
+
+        // Multiply each kernel partition by the spectrum of the input
+        // block which is that many blocks old, and sum.
+        final double[] acc = accum;
+        for (int i = 0; i < n; ++i)
+            acc[i] = 0;
+        int s = newest;
+        for (int p = 0; p < nparts; ++p) {
+            multiplyAdd(spectra[s], partitions[p], acc, n);
+            if (++s == nparts)
+                s = 0;
+        }
+
+        // Back to the time domain.  The first half is corrupted by
+        // the circular wrap-around; the second half is the output.
+        fft.bt(acc);
+        System.arraycopy(acc, b, outBuf, 0, b);
+    }
+
+
+    /**
+     * Multiply two spectra, as produced by {@link RealDoubleFFT#ft(double[])},
+     * and add the result to a third.
+     *
+     * @param   a           The first spectrum.
+     * @param   b           The second spectrum.
+     * @param   acc         The accumulator spectrum.
+     * @param   n           The transform size, which must be even.
+     */
+    static void multiplyAdd(double[] a, double[] b, double[] acc, int n) {
+        acc[0] += a[0] * b[0];
+        for (int i = 1; i < n - 1; i += 2) {
+            final double ar = a[i], ai = a[i + 1];
+            final double br = b[i], bi = b[i + 1];
+            acc[i] += ar * br - ai * bi;
+            acc[i + 1] += ar * bi + ai * br;
+        }
+        acc[n - 1] += a[n - 1] * b[n - 1];
+    }
+
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // The block size, and the transform size, which is twice that.
+    private final int block;
+    private final int fftSize;
+
+    // The FFT used for both directions.
+    private final RealDoubleFFT fft;
+
+    // Length of the kernel.
+    private final int kernelLength;
+
+    // Spectra of the kernel partitions, scaled by 1 / fftSize.
+    private final double[][] partitions;
+
+    // Delay line of input block spectra, used as a ring; newest is the
+    // index of the most recent.
+    private final double[][] spectra;
+    private int newest;
+
+    // Input buffer: the previous block, then the block being filled.
+    private final double[] inBuf;
+
+    // Output of the last complete block, being played out.
+    private final double[] outBuf;
+
+    // Work buffer for accumulating the output spectrum.
+    private final double[] accum;
+
+    // Number of samples in the current input block.
+    private int blockPos;
+
+}
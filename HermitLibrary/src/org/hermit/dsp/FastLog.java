@@ -0,0 +1,117 @@
+/**
+ * dsp: various digital signal processing algorithms
+ * <br>Copyright 2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+
+package org.hermit.dsp;
+
+
+/**
+ * Fast approximate logarithms, for converting spectrum data to dB
+ * and the like.
+ *
+ * <p>The logarithm is computed by taking the exponent of the float
+ * directly from its bit pattern, and looking up the log of the
+ * mantissa in a table indexed by its top {@value #TABLE_BITS} bits.
+ * Each table entry is the log at the centre of its interval, so the
+ * absolute error of {@link #log2(float)} is less than 7.1e-4 for all
+ * positive normal inputs.  That is an error of less than 0.0022 dB
+ * when converting a power value, or 0.0043 dB when converting
+ * an amplitude; far below anything visible on a display.
+ */
+public final class FastLog {
+
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Only static methods are provided in this class.
+     */
+    private FastLog() {
+    }
+
+
+    // ******************************************************************** //
+    // Logarithms.
+    // ******************************************************************** //
+
+    /**
+     * Calculate the approximate base 2 logarithm of a value.
+     *
+     * @param   x           The value to take the log of.
+     * @return              The log2 of x.  The absolute error is less
+     *                      than 7.1e-4.  Zero and subnormal values give
+     *                      negative infinity; negative values give NaN;
+     *                      infinity and NaN are returned unchanged.
+     */
+    public static final float log2(float x) {
+        final int bits = Float.floatToRawIntBits(x);
+        if (bits < 0)
+            return x == 0f ? Float.NEGATIVE_INFINITY : Float.NaN;
+        final int exp = bits >>> 23;
+        if (exp == 0)
+            return Float.NEGATIVE_INFINITY;
+        if (exp == 0xff)
+            return x;
+
+        final int man = (bits >>> (23 - TABLE_BITS)) & TABLE_MASK;
+        return (exp - 127) + LOG2_TABLE[man];
+    }
+
+
+    /**
+     * Calculate the approximate base 10 logarithm of a value.
+     *
+     * @param   x           The value to take the log of.
+     * @return              The log10 of x.  The absolute error is less
+     *                      than 2.2e-4.  Special values are handled as
+     *                      in {@link #log2(float)}.
+     */
+    public static final float log10(float x) {
+        return log2(x) * LOG10_2;
+    }
+
+
+    // ******************************************************************** //
+    // Public Constants.
+    // ******************************************************************** //
+
+    /**
+     * The number of bits of mantissa used to look up the log table.
+     */
+    public static final int TABLE_BITS = 10;
+
+    /**
+     * log10(2); multiply a log2 value by this to get log10.
+     */
+    public static final float LOG10_2 = (float) 0.30102999566398120;
+
+
+    // ******************************************************************** //
+    // Private Constants.
+    // ******************************************************************** //
+
+    // Mask for the table index.
+    private static final int TABLE_MASK = (1 << TABLE_BITS) - 1;
+
+    // Table of log2 values of the mantissa, evaluated at the centre
+    // of the interval covered by each entry.
+    private static final float[] LOG2_TABLE = new float[1 << TABLE_BITS];
+    static {
+        final int n = 1 << TABLE_BITS;
+        for (int i = 0; i < n; ++i)
+            LOG2_TABLE[i] = (float) (Math.log(1.0 + (i + 0.5) / n) / Math.log(2.0));
+    }
+
+}
@@ -0,0 +1,327 @@
+/**
+ * dsp: various digital signal processing algorithms
+ * <br>Copyright 2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+
+package org.hermit.dsp;
+
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * A {@link SampleSource} which plays back a recording from a file.  The
+ * file may be a WAV file containing 16-bit PCM data, or raw 16-bit
+ * little-endian PCM.  Multi-channel data is mixed down to mono.
+ *
+ * <p>The file is memory-mapped, so there's no copying through
+ * intermediate buffers, and no per-read allocation.  A buffer can map
+ * at most 2 GB, so larger files are rejected.
+ *
+ * <p>By default the samples are supplied as fast as they are asked for,
+ * which is useful for batch analysis and benchmarking.  In real-time
+ * mode, reads are paced to the file's sample rate, like a live input.
+ * The recording can also be looped.
+ */
+public class FileSampleSource
+    implements SampleSource
+{
+
+    // ******************************************************************** //
+    // Constructors.
+    // ******************************************************************** //
+
+    /**
+     * Create a source which plays a WAV file.
+     *
+     * @param   file        The file to play.  It must contain 16-bit
+     *                      PCM data.
+     * @throws  IOException The file could not be read, is larger than
+     *                      2 GB, or is not a supported WAV file.
+     */
+    public FileSampleSource(File file) throws IOException {
+        ByteBuffer map = mapFile(file);
+        if (map.remaining() < 12 ||
+                        map.getInt(0) != RIFF || map.getInt(8) != WAVE)
+            throw new IOException(file + ": not a WAV file");
+
+        // Find the format and data chunks.  Chunks are padded to an
+        // even length.
+        int pos = 12;
+        int chans = 0;
+        int rate = 0;
+        ByteBuffer data = null;
+        while (pos + 8 <= map.limit()) {
+            final int id = map.getInt(pos);
+            final long len = map.getInt(pos + 4) & 0xffffffffL;
+            final int body = pos + 8;
+
+            // If the file is truncated, take what there is.
+            final int end = (int) Math.min(body + len, map.limit());
+
+            if (id == FMT) {
+                if (end - body < 16)
+                    throw new IOException(file + ": bad WAV format chunk");
+                final int format = map.getShort(body) & 0xffff;
+                chans = map.getShort(body + 2);
+                rate = map.getInt(body + 4);
+                final int bits = map.getShort(body + 14);
+                if ((format != FORMAT_PCM && format != FORMAT_EXTENSIBLE) || bits != 16)
+                    throw new IOException(file + ": only 16-bit PCM is supported");
+            } else if (id == DATA) {
+                map.limit(end);
+                map.position(body);
+                data = map.slice();
+                break;
+            }
+            pos = end + (int) (len & 1);
+        }
+        if (chans <= 0 || rate <= 0 || data == null)
+            throw new IOException(file + ": bad WAV file");
+
+        init(data, rate, chans);
+    }
+
+
+    /**
+     * Create a source which plays a raw PCM file.
+     *
+     * @param   file        The file to play.  It must contain 16-bit
+     *                      little-endian PCM data.
+     * @param   rate        The sample rate of the data, in samples/sec.
+     * @param   channels    The number of interleaved channels.
+     * @throws  IOException The file could not be read, or is larger
+     *                      than 2 GB.
+     * @throws  IllegalArgumentException    Invalid rate or channel count.
+     */
+    public FileSampleSource(File file, int rate, int channels) throws IOException {
+        if (rate <= 0)
+            throw new IllegalArgumentException("bad sample rate in" +
+                                               " FileSampleSource: " + rate);
+        if (channels <= 0)
+            throw new IllegalArgumentException("bad channel count in" +
+                                               " FileSampleSource: " + channels);
+        init(mapFile(file), rate, channels);
+    }
+
+
+    /**
+     * Map a file into memory.  The mapping remains valid after the
+     * channel is closed.
+     */
+    private static ByteBuffer mapFile(File file) throws IOException {
+        FileInputStream stream = new FileInputStream(file);
+        try {
+            FileChannel chan = stream.getChannel();
+            if (chan.size() > Integer.MAX_VALUE)
+                throw new IOException(file + ": too big to play; the limit" +
+                                      " is 2 GB");
+            MappedByteBuffer map = chan.map(FileChannel.MapMode.READ_ONLY, 0, chan.size());
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            return map;
+        } finally {
+            stream.close();
+        }
+    }
+
+
+    /**
+     * Set up the sample data.
+     */
+    private void init(ByteBuffer data, int rate, int channels) {
+        samples = data.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        sampleRate = rate;
+        numChannels = channels;
+        numFrames = samples.limit() / channels;
+    }
+
+
+    // ******************************************************************** //
+    // Configuration.
+    // ******************************************************************** //
+
+    /**
+     * Set whether to supply the samples in real time.
+     *
+     * @param   realTime    If true, reads are paced to the sample rate.
+     *                      If false, the default, they return as fast as
+     *                      possible.
+     */
+    public void setRealTime(boolean realTime) {
+        pace = realTime;
+    }
+
+
+    /**
+     * Set whether to loop the recording.
+     *
+     * @param   loop        If true, the recording is replayed from the
+     *                      start when it ends.  If false, the default,
+     *                      the source reports the end of input.
+     */
+    public void setLoop(boolean loop) {
+        looping = loop;
+    }
+
+
+    /**
+     * Get the length of the recording.
+     *
+     * @return              The number of (mono) samples in the recording.
+     */
+    public int getLength() {
+        return numFrames;
+    }
+
+
+    // ******************************************************************** //
+    // Sample Source.
+    // ******************************************************************** //
+
+    /**
+     * Get the sample rate of this source.
+     *
+     * @return              The sample rate of the recording.
+     */
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+
+    /**
+     * Start supplying audio from the beginning of the recording.
+     *
+     * @param   rate        Ignored; the recording's own rate is used.
+     */
+    @Override
+    public void start(int rate) {
+        frame = 0;
+        delivered = 0;
+        startTime = System.nanoTime();
+    }
+
+
+    /**
+     * Read audio samples.  In real-time mode, this blocks until the
+     * samples would have been recorded.
+     *
+     * @param   buffer      Buffer for the samples.
+     * @param   off         Offset in buffer at which to store them.
+     * @param   count       Maximum number of samples to read.
+     * @return              The number of samples read; -1 if the end of
+     *                      the recording has been reached and we're
+     *                      not looping.
+     * @throws  IOException Interrupted while waiting in real-time mode.
+     */
+    @Override
+    public int read(short[] buffer, int off, int count) throws IOException {
+        if (frame >= numFrames) {
+            if (!looping || numFrames == 0)
+                return -1;
+            frame = 0;
+        }
+
+        final int n = Math.min(count, numFrames - frame);
+        if (numChannels == 1) {
+            samples.position(frame);
+            samples.get(buffer, off, n);
+        } else {
+            // Mix down to mono.
+            final int chans = numChannels;
+            int p = frame * chans;
+            for (int i = 0; i < n; ++i) {
+                int sum = 0;
+                for (int c = 0; c < chans; ++c)
+                    sum += samples.get(p++);
+                buffer[off + i] = (short) (sum / chans);
+            }
+        }
+        frame += n;
+        delivered += n;
+
+        // In real-time mode, wait until the last sample we're returning
+        // would have arrived.
+        if (pace) {
+            final long due = startTime + delivered * 1000000000L / sampleRate;
+            final long wait = due - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                } catch (InterruptedException e) {
+                    throw new IOException("interrupted");
+                }
+            }
+        }
+
+        return n;
+    }
+
+
+    /**
+     * Stop supplying audio.  The recording stays mapped, so it can be
+     * started again.
+     */
+    @Override
+    public void stop() {
+    }
+
+
+    // ******************************************************************** //
+    // Private Constants.
+    // ******************************************************************** //
+
+    // WAV chunk IDs, as read little-endian.
+    private static final int RIFF = 0x46464952;
+    private static final int WAVE = 0x45564157;
+    private static final int FMT = 0x20746d66;
+    private static final int DATA = 0x61746164;
+
+    // WAV format codes which we accept.
+    private static final int FORMAT_PCM = 1;
+    private static final int FORMAT_EXTENSIBLE = 0xfffe;
+
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // The mapped sample data.
+    private ShortBuffer samples;
+
+    // The sample rate, number of channels, and number of frames
+    // (samples per channel).
+    private int sampleRate;
+    private int numChannels;
+    private int numFrames;
+
+    // Whether to pace reads to the sample rate, and whether to loop.
+    private boolean pace = false;
+    private boolean looping = false;
+
+    // The next frame to read.
+    private int frame = 0;
+
+    // Number of samples supplied since start, and the start time
+    // in ns, for pacing.
+    private long delivered = 0;
+    private long startTime = 0;
+
+}
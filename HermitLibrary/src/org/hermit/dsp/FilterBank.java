@@ -0,0 +1,497 @@
+/**
+ * dsp: various digital signal processing algorithms
+ * <br>Copyright 2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+
+package org.hermit.dsp;
+
+
+/**
+ * A bank of band filters which aggregates the linearly-spaced bins of
+ * an FFT spectrum into a smaller number of bands on a perceptual or
+ * logarithmic frequency scale.
+ *
+ * <p>The weight of each FFT bin in each band is computed once, when
+ * the filter bank is created for a given FFT size and sample rate.
+ * The weights are stored sparsely, as each band only covers a
+ * contiguous run of bins; so applying the filter bank to a spectrum
+ * costs one multiply-add for each band each bin falls in.  The octave
+ * bands don't overlap, so that is about one per bin; the triangular
+ * mel and constant-Q bands each overlap their neighbours, so it is
+ * about two, plus one for each band narrower than the bin spacing.
+ *
+ * <p>The input spectrum is as produced by {@link FFTTransformer}, i.e.
+ * fftSize / 2 values, where element 0 is the DC component.  The DC
+ * bin is never included in any band.  The weights are applied linearly,
+ * so for physically meaningful band levels the input should be a
+ * {@link FFTTransformer.Output#POWER} spectrum; summing a power spectrum
+ * gives the total power in each band.
+ */
+public final class FilterBank {
+
+    // ******************************************************************** //
+    // Public Constants.
+    // ******************************************************************** //
+
+    /**
+     * Definitions of the available band layouts.
+     */
+    public enum Scale {
+        /** Octave bands, centred on 1 kHz * 2^k.  Each bin is weighted
+         * by the fraction of its width which falls in the band. */
+        OCTAVE(1),
+
+        /** 1/3-octave bands, centred on 1 kHz * 2^(k/3).  Each bin is
+         * weighted by the fraction of its width which falls in the band. */
+        THIRD_OCTAVE(3),
+
+        /** Triangular filters equally spaced on the mel scale, as used
+         * for computing MFCCs.  The resolution parameter is the number
+         * of bands. */
+        MEL(40),
+
+        /** Triangular filters equally spaced on a log frequency scale,
+         * starting at the minimum frequency.  The resolution parameter
+         * is the number of bands per octave. */
+        CONSTANT_Q(12);
+
+        Scale(int res) {
+            defaultResolution = res;
+        }
+
+        // The default resolution for this scale.
+        private final int defaultResolution;
+    }
+
+
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create a filter bank with the default resolution for the
+     * given scale.
+     *
+     * @param   scale       The band layout to use.
+     * @param   fftSize     The size of the FFT whose output we will be
+     *                      given.  The spectrum passed to
+     *                      {@link #getBands(float[], float[], boolean)}
+     *                      must be half this length.
+     * @param   sampleRate  The sample rate of the data that was
+     *                      transformed, in samples/sec.
+     * @param   minFreq     The lowest frequency of interest, in Hz.
+     *                      Must be greater than zero.
+     * @param   maxFreq     The highest frequency of interest, in Hz.
+     *                      This is limited to the Nyquist frequency.
+     * @throws  IllegalArgumentException    Invalid parameter.
+     */
+    public FilterBank(Scale scale, int fftSize, int sampleRate,
+                      float minFreq, float maxFreq)
+    {
+        this(scale, scale.defaultResolution, fftSize, sampleRate, minFreq, maxFreq);
+    }
+
+
+    /**
+     * Create a filter bank.
+     *
+     * @param   scale       The band layout to use.
+     * @param   resolution  For {@link Scale#MEL}, the number of bands;
+     *                      for {@link Scale#CONSTANT_Q}, the number of
+     *                      bands per octave.  Ignored for the octave
+     *                      scales.
+     * @param   fftSize     The size of the FFT whose output we will be
+     *                      given.  The spectrum passed to
+     *                      {@link #getBands(float[], float[], boolean)}
+     *                      must be half this length.
+     * @param   sampleRate  The sample rate of the data that was
+     *                      transformed, in samples/sec.
+     * @param   minFreq     The lowest frequency of interest, in Hz.
+     *                      Must be greater than zero.
+     * @param   maxFreq     The highest frequency of interest, in Hz.
+     *                      This is limited to the Nyquist frequency.
+     * @throws  IllegalArgumentException    Invalid parameter.
+     */
+    public FilterBank(Scale scale, int resolution, int fftSize, int sampleRate,
+                      float minFreq, float maxFreq)
+    {
+        if (fftSize < 4 || sampleRate <= 0)
+            throw new IllegalArgumentException("bad FFT size or rate in FilterBank");
+        if (resolution < 1)
+            throw new IllegalArgumentException("bad resolution in FilterBank: " +
+                                               resolution);
+        final float nyquist = sampleRate / 2f;
+        if (maxFreq > nyquist)
+            maxFreq = nyquist;
+        if (minFreq <= 0 || minFreq >= maxFreq)
+            throw new IllegalArgumentException("bad frequency range in FilterBank:" +
+                                               " " + minFreq + "-" + maxFreq);
+
+        bandScale = scale;
+        numBins = fftSize / 2;
+        binWidth = (float) sampleRate / (float) fftSize;
+
+        // Lay out the bands.  This gives us the lower edge, centre and
+        // upper edge of each band in Hz.
+        switch (scale) {
+        case OCTAVE:
+            layoutOctaves(1, minFreq, maxFreq);
+            break;
+        case THIRD_OCTAVE:
+            layoutOctaves(3, minFreq, maxFreq);
+            break;
+        case MEL:
+            layoutMel(resolution, minFreq, maxFreq);
+            break;
+        case CONSTANT_Q:
+            layoutConstantQ(resolution, minFreq, maxFreq);
+            break;
+        }
+
+        makeWeights();
+    }
+
+
+    // ******************************************************************** //
+    // Band Layout.
+    // ******************************************************************** //
+
+    /**
+     * Lay out fractional-octave bands, using the base-2 system with
+     * 1 kHz as the reference frequency.
+     *
+     * @param   frac        Number of bands per octave.
+     * @param   minFreq     Lowest centre frequency.
+     * @param   maxFreq     Highest centre frequency.
+     */
+    private void layoutOctaves(int frac, float minFreq, float maxFreq) {
+        final int kmin = (int) Math.ceil(log2(minFreq / 1000.0) * frac - 1e-9);
+        final int kmax = (int) Math.floor(log2(maxFreq / 1000.0) * frac + 1e-9);
+        final double half = Math.pow(2, 0.5 / frac);
+
+        allocBands(Math.max(0, kmax - kmin + 1));
+        for (int b = 0; b < numBands; ++b) {
+            final double fc = 1000.0 * Math.pow(2, (double) (kmin + b) / frac);
+            centreFreq[b] = (float) fc;
+            lowFreq[b] = (float) (fc / half);
+            highFreq[b] = (float) (fc * half);
+        }
+    }
+
+
+    /**
+     * Lay out triangular bands equally spaced in mel.  Each band
+     * extends from the centre of the one below to the centre of
+     * the one above.
+     *
+     * @param   bands       The number of bands.
+     * @param   minFreq     Lower edge of the lowest band.
+     * @param   maxFreq     Upper edge of the highest band.
+     */
+    private void layoutMel(int bands, float minFreq, float maxFreq) {
+        final double mmin = hzToMel(minFreq);
+        final double mstep = (hzToMel(maxFreq) - mmin) / (bands + 1);
+
+        allocBands(bands);
+        for (int b = 0; b < numBands; ++b) {
+            lowFreq[b] = (float) melToHz(mmin + b * mstep);
+            centreFreq[b] = (float) melToHz(mmin + (b + 1) * mstep);
+            highFreq[b] = (float) melToHz(mmin + (b + 2) * mstep);
+        }
+    }
+
+
+    /**
+     * Lay out triangular bands equally spaced in log frequency.  Each band
+     * extends from the centre of the one below to the centre of
+     * the one above.
+     *
+     * @param   perOct      The number of bands per octave.
+     * @param   minFreq     Centre frequency of the lowest band.
+     * @param   maxFreq     Highest centre frequency.
+     */
+    private void layoutConstantQ(int perOct, float minFreq, float maxFreq) {
+        final int bands = (int) Math.floor(log2(maxFreq / minFreq) * perOct + 1e-9) + 1;
+        final double step = Math.pow(2, 1.0 / perOct);
+
+        allocBands(bands);
+        for (int b = 0; b < numBands; ++b) {
+            final double fc = minFreq * Math.pow(2, (double) b / perOct);
+            centreFreq[b] = (float) fc;
+            lowFreq[b] = (float) (fc / step);
+            highFreq[b] = (float) (fc * step);
+        }
+    }
+
+
+    private void allocBands(int bands) {
+        numBands = bands;
+        lowFreq = new float[bands];
+        centreFreq = new float[bands];
+        highFreq = new float[bands];
+    }
+
+
+    // ******************************************************************** //
+    // Weight Calculation.
+    // ******************************************************************** //
+
+    /**
+     * Calculate the bin weights for all the bands, based on the band
+     * edges and centres.
+     */
+    private void makeWeights() {
+        bandFirst = new int[numBands];
+        weightOff = new int[numBands + 1];
+        bandNorm = new float[numBands];
+
+        // Work out each band's weights in a scratch array, and append
+        // the non-zero run to the sparse table.
+        final float[] scratch = new float[numBins];
+        float[] table = new float[numBins * 2];
+        int used = 0;
+        for (int b = 0; b < numBands; ++b) {
+            int first = -1;
+            int last = -1;
+            double total = 0;
+            for (int k = 1; k < numBins; ++k) {
+                final float w = binWeight(b, k);
+                scratch[k] = w;
+                if (w > 0) {
+                    if (first < 0)
+                        first = k;
+                    last = k;
+                    total += w;
+                }
+            }
+
+            // If the band is narrower than the bin spacing and fell
+            // between bin centres, use the nearest bin.
+            if (first < 0) {
+                first = last = Math.max(1, Math.min(numBins - 1,
+                                        Math.round(centreFreq[b] / binWidth)));
+                scratch[first] = 1f;
+                total = 1;
+            }
+
+            final int len = last - first + 1;
+            if (used + len > table.length) {
+                float[] nt = new float[Math.max(table.length * 2, used + len)];
+                System.arraycopy(table, 0, nt, 0, used);
+                table = nt;
+            }
+            System.arraycopy(scratch, first, table, used, len);
+            bandFirst[b] = first;
+            weightOff[b] = used;
+            bandNorm[b] = (float) (1.0 / total);
+            used += len;
+        }
+        weightOff[numBands] = used;
+
+        weights = new float[used];
+        System.arraycopy(table, 0, weights, 0, used);
+    }
+
+
+    /**
+     * Calculate the weight of a given bin in a given band.
+     *
+     * @param   b           The band index.
+     * @param   k           The bin index.
+     * @return              The weight; zero if the bin is not in the band.
+     */
+    private float binWeight(int b, int k) {
+        final double lo = lowFreq[b];
+        final double hi = highFreq[b];
+        switch (bandScale) {
+        case OCTAVE:
+        case THIRD_OCTAVE:
+            // The fraction of the bin's width which lies in the band.
+            final double bl = (k - 0.5) * binWidth;
+            final double bh = (k + 0.5) * binWidth;
+            final double ol = Math.max(bl, lo);
+            final double oh = Math.min(bh, hi);
+            return oh > ol ? (float) ((oh - ol) / binWidth) : 0f;
+        case MEL:
+            return triangle(hzToMel(k * binWidth),
+                            hzToMel(lo), hzToMel(centreFreq[b]), hzToMel(hi));
+        case CONSTANT_Q:
+            if (k * binWidth <= lo)
+                return 0f;
+            return triangle(log2(k * binWidth),
+                            log2(lo), log2(centreFreq[b]), log2(hi));
+        }
+        return 0f;
+    }
+
+
+    /**
+     * Evaluate a triangular window.
+     *
+     * @param   x           Position at which to evaluate the window.
+     * @param   lo          Lower edge.
+     * @param   c           Centre, where the window is 1.
+     * @param   hi          Upper edge.
+     * @return              The window value at x.
+     */
+    private static float triangle(double x, double lo, double c, double hi) {
+        if (x <= lo || x >= hi)
+            return 0f;
+        if (x <= c)
+            return (float) ((x - lo) / (c - lo));
+        return (float) ((hi - x) / (hi - c));
+    }
+
+
+    private static double log2(double x) {
+        return Math.log(x) / LOG2;
+    }
+
+
+    private static double hzToMel(double f) {
+        return 2595.0 * Math.log10(1.0 + f / 700.0);
+    }
+
+
+    private static double melToHz(double m) {
+        return 700.0 * (Math.pow(10.0, m / 2595.0) - 1.0);
+    }
+
+
+    // ******************************************************************** //
+    // Accessors.
+    // ******************************************************************** //
+
+    /**
+     * Get the number of bands in this filter bank.
+     *
+     * @return              The number of bands.
+     */
+    public int getBandCount() {
+        return numBands;
+    }
+
+
+    /**
+     * Get the centre frequency of a band.
+     *
+     * @param   band        The band index.
+     * @return              The band's nominal centre frequency in Hz.
+     */
+    public float getCentreFreq(int band) {
+        return centreFreq[band];
+    }
+
+
+    /**
+     * Get the lower edge frequency of a band.
+     *
+     * @param   band        The band index.
+     * @return              The band's lower edge frequency in Hz.
+     */
+    public float getLowFreq(int band) {
+        return lowFreq[band];
+    }
+
+
+    /**
+     * Get the upper edge frequency of a band.
+     *
+     * @param   band        The band index.
+     * @return              The band's upper edge frequency in Hz.
+     */
+    public float getHighFreq(int band) {
+        return highFreq[band];
+    }
+
+
+    // ******************************************************************** //
+    // Filtering.
+    // ******************************************************************** //
+
+    /**
+     * Apply this filter bank to a spectrum.
+     *
+     * @param   spectrum    The input spectrum, as produced by
+     *                      {@link FFTTransformer}.  Its length must be
+     *                      half the FFT size this bank was created for.
+     * @param   bands       Buffer in which the band values will be placed.
+     *                      Its length must be {@link #getBandCount()}.
+     * @param   average     If true, each band value is the weighted average
+     *                      of its bins, which is the best choice for
+     *                      display.  If false, it is the weighted sum,
+     *                      which gives the band power from a power
+     *                      spectrum.
+     * @return              The bands buffer.
+     * @throws  IllegalArgumentException    Invalid buffer size.
+     */
+    public float[] getBands(float[] spectrum, float[] bands, boolean average) {
+        if (spectrum.length != numBins)
+            throw new IllegalArgumentException("bad spectrum size in FilterBank:" +
+                                               " must be " + numBins +
+                                               "; given " + spectrum.length);
+        if (bands.length != numBands)
+            throw new IllegalArgumentException("bad band buffer size in FilterBank:" +
+                                               " must be " + numBands +
+                                               "; given " + bands.length);
+
+        final float[] w = weights;
+        for (int b = 0; b < numBands; ++b) {
+            final int end = weightOff[b + 1];
+            int k = bandFirst[b];
+            float sum = 0f;
+            for (int j = weightOff[b]; j < end; ++j)
+                sum += w[j] * spectrum[k++];
+            bands[b] = average ? sum * bandNorm[b] : sum;
+        }
+        return bands;
+    }
+
+
+    // ******************************************************************** //
+    // Private Constants.
+    // ******************************************************************** //
+
+    // Log of 2.
+    private static final double LOG2 = Math.log(2);
+
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // The band layout.
+    private final Scale bandScale;
+
+    // The number of bins in the input spectrum, and the frequency
+    // spacing of the bins in Hz.
+    private final int numBins;
+    private final float binWidth;
+
+    // The number of bands, and the lower edge, centre and upper edge
+    // frequencies of each band.
+    private int numBands;
+    private float[] lowFreq;
+    private float[] centreFreq;
+    private float[] highFreq;
+
+    // Sparse weight table.  The weights for band b are in
+    // weights[weightOff[b]] to weights[weightOff[b + 1] - 1], and apply
+    // to the spectrum bins starting at bandFirst[b].  bandNorm[b] is
+    // the reciprocal of the sum of band b's weights.
+    private int[] bandFirst;
+    private int[] weightOff;
+    private float[] weights;
+    private float[] bandNorm;
+
+}
@@ -0,0 +1,543 @@
+/**
+ * dsp: various digital signal processing algorithms
+ * <br>Copyright 2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+
+package org.hermit.dsp;
+
+
+/**
+ * A streaming signal level meter.  This is a stateful alternative to
+ * {@link SignalPower}: samples are fed in as they arrive, and the
+ * statistics are kept up to date incrementally, so the cost per update
+ * is proportional to the number of new samples, not the size of the
+ * measurement window.
+ *
+ * <p>Two kinds of measurement are provided:
+ * <ul>
+ * <li>Window statistics -- bias, RMS, peak, range and crest factor --
+ *     over a sliding window of the most recent samples.  These are
+ *     calculated from a running sum and sum of squares, and running
+ *     maximum and minimum, updated as samples enter and leave a ring
+ *     buffer.
+ * <li>A time-weighted level, using the standard FAST, SLOW or IMPULSE
+ *     exponential time weightings of IEC 61672.
+ * </ul>
+ *
+ * <p>The signal may optionally be passed through an A or C frequency
+ * weighting filter first; in that case, all the measurements are of
+ * the weighted signal.  The filters are bilinear transforms of the
+ * analogue weighting curves, normalised to 0 dB at 1 kHz.  They are
+ * accurate at the usual audio rates of 44.1 kHz and above; at lower
+ * sample rates the top octave is only approximate.
+ *
+ * <p>All levels are in 16-bit sample units, and all dB values are on
+ * the scale used by {@link SignalPower#calculatePowerDb(short[], int, int)}.
+ */
+public final class LevelMeter {
+
+    // ******************************************************************** //
+    // Public Constants.
+    // ******************************************************************** //
+
+    /**
+     * Definitions of the available frequency weightings.
+     */
+    public enum Weighting {
+        /** No weighting; the signal is measured as-is. */
+        Z,
+
+        /** A-weighting, which approximates the ear's response to
+         * quiet sounds. */
+        A,
+
+        /** C-weighting, which is nearly flat over the audio band, but
+         * rejects DC and infrasound. */
+        C,
+    }
+
+
+    /**
+     * Definitions of the available time weightings.
+     */
+    public enum TimeWeighting {
+        /** FAST time weighting: a 125 ms time constant. */
+        FAST(0.125),
+
+        /** SLOW time weighting: a 1 s time constant. */
+        SLOW(1.0),
+
+        /** IMPULSE time weighting: a 35 ms rise time, with a slow
+         * 1.5 s decay. */
+        IMPULSE(0.035);
+
+        TimeWeighting(double tau) {
+            timeConstant = tau;
+        }
+
+        // Rise time constant in seconds.
+        private final double timeConstant;
+    }
+
+
+    // ******************************************************************** //
+    // Constructors.
+    // ******************************************************************** //
+
+    /**
+     * Create an unweighted level meter.
+     *
+     * @param   sampleRate  The sample rate of the input, in samples/sec.
+     * @param   window      The number of samples in the sliding window
+     *                      used for the window statistics.
+     */
+    public LevelMeter(int sampleRate, int window) {
+        this(sampleRate, window, Weighting.Z);
+    }
+
+
+    /**
+     * Create a level meter.
+     *
+     * @param   sampleRate  The sample rate of the input, in samples/sec.
+     * @param   window      The number of samples in the sliding window
+     *                      used for the window statistics.
+     * @param   weighting   The frequency weighting to apply.
+     */
+    public LevelMeter(int sampleRate, int window, Weighting weighting) {
+        rate = sampleRate;
+        winLen = window;
+        history = new float[window];
+        maxNum = new long[window];
+        maxVal = new float[window];
+        minNum = new long[window];
+        minVal = new float[window];
+
+        switch (weighting) {
+        case Z:
+            numSections = 0;
+            break;
+        case A:
+            numSections = 6;
+            addSection(true, A_F1);
+            addSection(true, A_F1);
+            addSection(true, A_F2);
+            addSection(true, A_F3);
+            addSection(false, A_F4);
+            addSection(false, A_F4);
+            break;
+        case C:
+            numSections = 4;
+            addSection(true, A_F1);
+            addSection(true, A_F1);
+            addSection(false, A_F4);
+            addSection(false, A_F4);
+            break;
+        }
+        normaliseFilter();
+
+        setTimeWeighting(TimeWeighting.FAST);
+    }
+
+
+    // ******************************************************************** //
+    // Weighting Filter Design.
+    // ******************************************************************** //
+
+    /**
+     * Add a first-order section to the weighting filter.  This is the
+     * bilinear transform of s / (s + w) for a high-pass section, or
+     * w / (s + w) for a low-pass.
+     *
+     * @param   highPass    True for a high-pass section, false for
+     *                      low-pass.
+     * @param   freq        The corner frequency in Hz.
+     */
+    private void addSection(boolean highPass, double freq) {
+        if (secB0 == null) {
+            secB0 = new double[numSections];
+            secB1 = new double[numSections];
+            secA1 = new double[numSections];
+            secX1 = new double[numSections];
+            secY1 = new double[numSections];
+        }
+
+        // Pre-warp the corner frequency, so that it's in the right place
+        // after the transform.  Corners too near the Nyquist frequency
+        // can't be pre-warped, so just map them as they are.
+        final double k = 2.0 * rate;
+        final double w = freq < rate * PREWARP_LIMIT ?
+                            k * Math.tan(Math.PI * freq / rate) :
+                            2.0 * Math.PI * freq;
+        final int s = sectionCount++;
+        if (highPass) {
+            secB0[s] = k / (k + w);
+            secB1[s] = -secB0[s];
+        } else {
+            secB0[s] = w / (k + w);
+            secB1[s] = secB0[s];
+        }
+        secA1[s] = -(k - w) / (k + w);
+    }
+
+
+    /**
+     * Set the filter gain to give unity gain at 1 kHz.
+     */
+    private void normaliseFilter() {
+        double gain = 1.0;
+        final double w = 2.0 * Math.PI * 1000.0 / rate;
+        final double c = Math.cos(w);
+        final double s = Math.sin(w);
+        for (int i = 0; i < sectionCount; ++i) {
+            // |b0 + b1 z^-1| / |1 + a1 z^-1|, with z = e^jw.
+            final double nr = secB0[i] + secB1[i] * c;
+            final double ni = -secB1[i] * s;
+            final double dr = 1.0 + secA1[i] * c;
+            final double di = -secA1[i] * s;
+            gain *= Math.sqrt((nr * nr + ni * ni) / (dr * dr + di * di));
+        }
+        filterGain = 1.0 / gain;
+    }
+
+
+    // ******************************************************************** //
+    // Configuration.
+    // ******************************************************************** //
+
+    /**
+     * Set the time weighting used for the time-weighted level.
+     *
+     * @param   tw          The time weighting to use.  The default
+     *                      is FAST.
+     */
+    public void setTimeWeighting(TimeWeighting tw) {
+        timeWeighting = tw;
+        riseCoeff = 1.0 - Math.exp(-1.0 / (tw.timeConstant * rate));
+        decayCoeff = 1.0 - Math.exp(-1.0 / (IMPULSE_DECAY * rate));
+    }
+
+
+    /**
+     * Reset the meter to its initial state, as if no samples had
+     * been seen.
+     */
+    public void reset() {
+        for (int i = 0; i < numSections; ++i)
+            secX1[i] = secY1[i] = 0.0;
+        histPos = 0;
+        filled = 0;
+        sum = sumSq = 0.0;
+        sampleNum = 0;
+        maxHead = maxCount = 0;
+        minHead = minCount = 0;
+        expPower = timePower = 0.0;
+    }
+
+
+    // ******************************************************************** //
+    // Input.
+    // ******************************************************************** //
+
+    /**
+     * Add new samples to the meter.
+     *
+     * @param   sdata       Buffer containing the input samples.
+     * @param   off         Offset in sdata of the new data.
+     * @param   samples     Number of new samples.
+     */
+    public void update(short[] sdata, int off, int samples) {
+        final float[] hist = history;
+        final int len = winLen;
+        final boolean impulse = timeWeighting == TimeWeighting.IMPULSE;
+
+        for (int i = off; i < off + samples; ++i) {
+            final float v = numSections == 0 ? sdata[i] : (float) filter(sdata[i]);
+
+            // Update the window sums, dropping the oldest sample if the
+            // window is full.
+            if (filled == len) {
+                final float old = hist[histPos];
+                sum -= old;
+                sumSq -= (double) old * old;
+            } else
+                ++filled;
+            hist[histPos] = v;
+            sum += v;
+            sumSq += (double) v * v;
+
+            // Re-total the window once per cycle, so that rounding errors
+            // in the running sums can't build up.
+            if (++histPos == len) {
+                histPos = 0;
+                retotal();
+            }
+
+            updateExtremes(v);
+
+            // Update the time-weighted power.
+            final double sq = (double) v * v;
+            expPower += (sq - expPower) * riseCoeff;
+            if (!impulse || expPower > timePower)
+                timePower = expPower;
+            else
+                timePower += (expPower - timePower) * decayCoeff;
+        }
+    }
+
+
+    /**
+     * Pass a sample through the weighting filter.
+     */
+    private double filter(double x) {
+        x *= filterGain;
+        for (int s = 0; s < numSections; ++s) {
+            final double y = secB0[s] * x + secB1[s] * secX1[s] - secA1[s] * secY1[s];
+            secX1[s] = x;
+            secY1[s] = y;
+            x = y;
+        }
+        return x;
+    }
+
+
+    /**
+     * Recalculate the window sums from scratch.
+     */
+    private void retotal() {
+        double s = 0.0;
+        double sq = 0.0;
+        for (int i = 0; i < filled; ++i) {
+            final float v = history[i];
+            s += v;
+            sq += (double) v * v;
+        }
+        sum = s;
+        sumSq = sq;
+    }
+
+
+    /**
+     * Update the running maximum and minimum with a new sample.  Each
+     * is kept as a queue of the samples which could still become the
+     * extreme value of the window as older samples leave it; so the
+     * values in the maximum queue are decreasing, and the head is the
+     * current maximum.  Each sample is added and removed once, so the
+     * cost is constant on average.
+     */
+    private void updateExtremes(float v) {
+        final int cap = winLen;
+        final long n = sampleNum++;
+        final long expired = n - cap;
+
+        // Drop the oldest entries if they have left the window.
+        if (maxCount > 0 && maxNum[maxHead] <= expired) {
+            maxHead = (maxHead + 1) % cap;
+            --maxCount;
+        }
+        if (minCount > 0 && minNum[minHead] <= expired) {
+            minHead = (minHead + 1) % cap;
+            --minCount;
+        }
+
+        // Drop the entries which can no longer be extremes, and add
+        // the new sample.
+        while (maxCount > 0 && maxVal[(maxHead + maxCount - 1) % cap] <= v)
+            --maxCount;
+        int t = (maxHead + maxCount++) % cap;
+        maxNum[t] = n;
+        maxVal[t] = v;
+        while (minCount > 0 && minVal[(minHead + minCount - 1) % cap] >= v)
+            --minCount;
+        t = (minHead + minCount++) % cap;
+        minNum[t] = n;
+        minVal[t] = v;
+    }
+
+
+    // ******************************************************************** //
+    // Results.
+    // ******************************************************************** //
+
+    /**
+     * Get the bias of the signal in the window.
+     *
+     * @return              The bias, i.e. the offset of the average
+     *                      signal value from zero.
+     */
+    public float getBias() {
+        return filled == 0 ? 0f : (float) (sum / filled);
+    }
+
+
+    /**
+     * Get the RMS level of the signal in the window, excluding the bias.
+     *
+     * @return              The RMS departure from the bias level.
+     */
+    public float getRms() {
+        return (float) Math.sqrt(acPower());
+    }
+
+
+    /**
+     * Get the peak level of the signal in the window.
+     *
+     * @return              The largest absolute sample value.
+     */
+    public float getPeak() {
+        if (filled == 0)
+            return 0f;
+        return Math.max(maxVal[maxHead], -minVal[minHead]);
+    }
+
+
+    /**
+     * Get the range of the signal in the window.
+     *
+     * @return              The absolute value of the largest departure
+     *                      from the bias level.
+     */
+    public float getRange() {
+        if (filled == 0)
+            return 0f;
+        final float bias = getBias();
+        return Math.max(maxVal[maxHead] - bias, bias - minVal[minHead]);
+    }
+
+
+    /**
+     * Get the crest factor of the signal in the window.
+     *
+     * @return              The ratio of the range to the RMS level;
+     *                      1.414 for a sine wave.  Zero if the signal
+     *                      is zero.
+     */
+    public float getCrestFactor() {
+        final float rms = getRms();
+        return rms > 0f ? getRange() / rms : 0f;
+    }
+
+
+    /**
+     * Get the power of the signal in the window, excluding the bias.
+     *
+     * @return              The power in dB relative to the maximum
+     *                      input level; see
+     *                      {@link SignalPower#calculatePowerDb(short[], int, int)}.
+     *                      This is -Infinity if the signal is zero.
+     */
+    public double getPowerDb() {
+        return SignalPower.powerToDb(acPower());
+    }
+
+
+    /**
+     * Get the time-weighted level of the signal.  Unlike the window
+     * statistics, this includes any bias in the signal; use A or C
+     * weighting to exclude it.
+     *
+     * @return              The level in dB relative to the maximum
+     *                      input level, using the current time weighting.
+     */
+    public double getLevelDb() {
+        return SignalPower.powerToDb(timePower);
+    }
+
+
+    /**
+     * Calculate the mean square departure from the bias in the window.
+     */
+    private double acPower() {
+        if (filled == 0)
+            return 0.0;
+        final double mean = sum / filled;
+        final double p = sumSq / filled - mean * mean;
+        return p > 0.0 ? p : 0.0;
+    }
+
+
+    // ******************************************************************** //
+    // Private Constants.
+    // ******************************************************************** //
+
+    // Pole frequencies of the A-weighting curve, in Hz.  C-weighting uses
+    // the outer two.
+    private static final double A_F1 = 20.598997;
+    private static final double A_F2 = 107.65265;
+    private static final double A_F3 = 737.86223;
+    private static final double A_F4 = 12194.217;
+
+    // Highest corner frequency, as a fraction of the sample rate, which
+    // we pre-warp in the weighting filters.
+    private static final double PREWARP_LIMIT = 0.35;
+
+    // Decay time constant for IMPULSE time weighting, in seconds.
+    private static final double IMPULSE_DECAY = 1.5;
+
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // The sample rate, and the window length in samples.
+    private final int rate;
+    private final int winLen;
+
+    // Frequency weighting filter: a cascade of first-order sections,
+    // with coefficients b0, b1, a1 and state x[n-1], y[n-1] for each; and
+    // the overall gain.  The arrays are null if there's no weighting.
+    private int numSections;
+    private int sectionCount = 0;
+    private double[] secB0;
+    private double[] secB1;
+    private double[] secA1;
+    private double[] secX1;
+    private double[] secY1;
+    private double filterGain = 1.0;
+
+    // Ring buffer of the samples in the window; the position of the
+    // oldest; and the number of valid samples.
+    private final float[] history;
+    private int histPos = 0;
+    private int filled = 0;
+
+    // Running sum and sum of squares of the samples in the window.
+    private double sum = 0.0;
+    private double sumSq = 0.0;
+
+    // Sequence number of the next sample.
+    private long sampleNum = 0;
+
+    // Queues of candidate maximum and minimum values and their sequence
+    // numbers, as circular buffers.
+    private final long[] maxNum;
+    private final float[] maxVal;
+    private int maxHead = 0;
+    private int maxCount = 0;
+    private final long[] minNum;
+    private final float[] minVal;
+    private int minHead = 0;
+    private int minCount = 0;
+
+    // Time weighting in use, and its rise and decay coefficients.
+    private TimeWeighting timeWeighting;
+    private double riseCoeff;
+    private double decayCoeff;
+
+    // Exponentially averaged power, and the time-weighted power,
+    // which differs for IMPULSE.
+    private double expPower = 0.0;
+    private double timePower = 0.0;
+
+}
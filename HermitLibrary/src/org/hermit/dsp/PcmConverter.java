@@ -0,0 +1,239 @@
+/**
+ * dsp: various digital signal processing algorithms
+ * <br>Copyright 2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+
+package org.hermit.dsp;
+
+
+/**
+ * Fused kernels for preparing 16-bit PCM audio for analysis.  In one
+ * pass over the data, these convert the samples to the range -1 to 1,
+ * apply a window function, and optionally accumulate the
+ * {@link SampleStats} needed for the bias, range and power.
+ *
+ * <p>The loops are written to suit the JIT: simple counted loops over
+ * local array references, with a separate loop for each combination of
+ * options, so that the compiler can unroll and vectorise them.  Scaling
+ * by 1/32768 is done by multiplying, which is exact for a power of 2,
+ * so the results are bit-for-bit the same as dividing by 32768 and then
+ * windowing in a separate pass.
+ */
+public final class PcmConverter {
+
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Only static methods are provided in this class.
+     */
+    private PcmConverter() {
+    }
+
+
+    // ******************************************************************** //
+    // Float Conversion.
+    // ******************************************************************** //
+
+    /**
+     * Convert a block of samples to floats, applying a window.
+     *
+     * @param   input       The input samples.
+     * @param   off         Offset in input of the data.
+     * @param   count       Number of samples to convert.  If a window is
+     *                      given, this must be its block size.
+     * @param   window      The window to apply; null for none.
+     * @param   output      Buffer for the converted samples.
+     * @param   outOff      Offset in output at which to store them.
+     * @param   stats       If not null, the statistics of the input are
+     *                      added to this.
+     * @throws  IllegalArgumentException    Invalid data size.
+     */
+    public static void toFloat(short[] input, int off, int count, Window window,
+                               float[] output, int outOff, SampleStats stats)
+    {
+        final float[] k = kernel(window, count) ? window.getFloatKernel() : null;
+
+        if (stats == null) {
+            if (k == null)
+                for (int i = 0; i < count; ++i)
+                    output[outOff + i] = input[off + i] * SCALE_F;
+            else
+                for (int i = 0; i < count; ++i)
+                    output[outOff + i] = input[off + i] * SCALE_F * k[i];
+            return;
+        }
+
+        long sum = 0, sumSq = 0;
+        int lo = Short.MAX_VALUE, hi = Short.MIN_VALUE;
+        if (k == null) {
+            for (int i = 0; i < count; ++i) {
+                final int v = input[off + i];
+                output[outOff + i] = v * SCALE_F;
+                sum += v;
+                sumSq += v * v;
+                lo = Math.min(lo, v);
+                hi = Math.max(hi, v);
+            }
+        } else {
+            for (int i = 0; i < count; ++i) {
+                final int v = input[off + i];
+                output[outOff + i] = v * SCALE_F * k[i];
+                sum += v;
+                sumSq += v * v;
+                lo = Math.min(lo, v);
+                hi = Math.max(hi, v);
+            }
+        }
+        stats.add(count, sum, sumSq, lo, hi);
+    }
+
+
+    // ******************************************************************** //
+    // Double Conversion.
+    // ******************************************************************** //
+
+    /**
+     * Convert a block of samples to doubles, applying a window.  This
+     * is the form used as FFT input.
+     *
+     * @param   input       The input samples.
+     * @param   off         Offset in input of the data.
+     * @param   count       Number of samples to convert.  If a window is
+     *                      given, this must be its block size.
+     * @param   window      The window to apply; null for none.
+     * @param   output      Buffer for the converted samples.
+     * @param   outOff      Offset in output at which to store them.
+     * @param   stats       If not null, the statistics of the input are
+     *                      added to this.
+     * @throws  IllegalArgumentException    Invalid data size.
+     */
+    public static void toDouble(short[] input, int off, int count, Window window,
+                                double[] output, int outOff, SampleStats stats)
+    {
+        final double[] k = kernel(window, count) ? window.getDoubleKernel() : null;
+        toDouble(input, off, count, k, output, outOff, stats);
+    }
+
+
+    /**
+     * Convert a block of samples to doubles, applying a window kernel.
+     *
+     * @param   input       The input samples.
+     * @param   off         Offset in input of the data.
+     * @param   count       Number of samples to convert.
+     * @param   k           The window kernel, at least count long;
+     *                      null for none.
+     * @param   output      Buffer for the converted samples.
+     * @param   outOff      Offset in output at which to store them.
+     * @param   stats       If not null, the statistics of the input are
+     *                      added to this.
+     */
+    static void toDouble(short[] input, int off, int count, double[] k,
+                         double[] output, int outOff, SampleStats stats)
+    {
+        if (stats == null) {
+            if (k == null)
+                for (int i = 0; i < count; ++i)
+                    output[outOff + i] = input[off + i] * SCALE_D;
+            else
+                for (int i = 0; i < count; ++i)
+                    output[outOff + i] = input[off + i] * SCALE_D * k[i];
+            return;
+        }
+
+        long sum = 0, sumSq = 0;
+        int lo = Short.MAX_VALUE, hi = Short.MIN_VALUE;
+        if (k == null) {
+            for (int i = 0; i < count; ++i) {
+                final int v = input[off + i];
+                output[outOff + i] = v * SCALE_D;
+                sum += v;
+                sumSq += v * v;
+                lo = Math.min(lo, v);
+                hi = Math.max(hi, v);
+            }
+        } else {
+            for (int i = 0; i < count; ++i) {
+                final int v = input[off + i];
+                output[outOff + i] = v * SCALE_D * k[i];
+                sum += v;
+                sumSq += v * v;
+                lo = Math.min(lo, v);
+                hi = Math.max(hi, v);
+            }
+        }
+        stats.add(count, sum, sumSq, lo, hi);
+    }
+
+
+    // ******************************************************************** //
+    // Statistics Only.
+    // ******************************************************************** //
+
+    /**
+     * Accumulate the statistics of a block of samples, without
+     * converting them.
+     *
+     * @param   input       The input samples.
+     * @param   off         Offset in input of the data.
+     * @param   count       Number of samples.
+     * @param   stats       The statistics of the input are added to this.
+     */
+    public static void accumulate(short[] input, int off, int count, SampleStats stats) {
+        long sum = 0, sumSq = 0;
+        int lo = Short.MAX_VALUE, hi = Short.MIN_VALUE;
+        for (int i = 0; i < count; ++i) {
+            final int v = input[off + i];
+            sum += v;
+            sumSq += v * v;
+            lo = Math.min(lo, v);
+            hi = Math.max(hi, v);
+        }
+        stats.add(count, sum, sumSq, lo, hi);
+    }
+
+
+    // ******************************************************************** //
+    // Private Methods.
+    // ******************************************************************** //
+
+    /**
+     * Check whether a window needs to be applied.
+     *
+     * @return              true if there is a non-rectangular window.
+     * @throws  IllegalArgumentException    The count doesn't match the
+     *                                      window size.
+     */
+    private static boolean kernel(Window window, int count) {
+        if (window == null)
+            return false;
+        if (count != window.getBlockSize())
+            throw new IllegalArgumentException("bad input count in PcmConverter:" +
+                                               " window is for " + window.getBlockSize() +
+                                               "; given " + count);
+        return window.getFloatKernel() != null;
+    }
+
+
+    // ******************************************************************** //
+    // Private Constants.
+    // ******************************************************************** //
+
+    // Scale factors from 16-bit samples to the range -1 to 1.  Since
+    // these are powers of 2, multiplying is exact.
+    private static final float SCALE_F = 1f / 32768f;
+    private static final double SCALE_D = 1.0 / 32768.0;
+
+}
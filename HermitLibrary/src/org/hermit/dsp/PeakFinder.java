@@ -0,0 +1,339 @@
+/**
+ * dsp: various digital signal processing algorithms
+ * <br>Copyright 2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+
+package org.hermit.dsp;
+
+
+/**
+ * A spectral peak finder, which locates the prominent frequencies in
+ * the output of an {@link FFTTransformer} with better than bin-level
+ * accuracy, and can group them into harmonic series to find a
+ * fundamental frequency.
+ *
+ * <p>Each peak is a local maximum which exceeds a threshold relative
+ * to the mean magnitude of the spectrum.  Its frequency and magnitude
+ * are refined by fitting a parabola through the log magnitudes of the
+ * peak bin and its two neighbours.  With a smooth window such as
+ * Blackman-Harris, this is typically accurate to a few hundredths of
+ * a bin; so, for example, an 8192-point FFT gives sub-Hz accuracy at
+ * 44.1 kHz.
+ *
+ * <p>Usage: create a PeakFinder for the FFT size and sample rate,
+ * then for each spectrum call {@link #findPeaks(float[])}, and read
+ * the results with {@link #getPeakFreq(int)} and
+ * {@link #getPeakMagnitude(int)}, or call {@link #findFundamental()}.
+ * No memory is allocated after construction.
+ */
+public final class PeakFinder {
+
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create a peak finder.
+     *
+     * @param   fftSize     The size of the FFT whose output we will be
+     *                      given.  The spectrum passed to
+     *                      {@link #findPeaks(float[])} must be half this
+     *                      length.
+     * @param   sampleRate  The sample rate of the data that was
+     *                      transformed, in samples/sec.
+     * @param   maxPeaks    The maximum number of peaks to report.  If
+     *                      more are found, only the strongest are kept.
+     */
+    public PeakFinder(int fftSize, int sampleRate, int maxPeaks) {
+        numBins = fftSize / 2;
+        binWidth = (float) sampleRate / (float) fftSize;
+        candidates = new int[numBins / 2 + 1];
+        peakFreq = new float[maxPeaks];
+        peakMag = new float[maxPeaks];
+    }
+
+
+    // ******************************************************************** //
+    // Configuration.
+    // ******************************************************************** //
+
+    /**
+     * Set the detection threshold.
+     *
+     * @param   ratio       A local maximum is reported as a peak only if
+     *                      it is at least this many times the mean
+     *                      magnitude of the spectrum.  The default is 3.
+     */
+    public void setThreshold(float ratio) {
+        threshold = ratio;
+    }
+
+
+    /**
+     * Set the tolerance used for harmonic grouping.
+     *
+     * @param   tol         A peak is counted as a harmonic of a candidate
+     *                      fundamental if its frequency is within this
+     *                      fraction of an exact multiple.  The default
+     *                      is 0.03.
+     */
+    public void setHarmonicTolerance(float tol) {
+        harmonicTol = tol;
+    }
+
+
+    // ******************************************************************** //
+    // Peak Finding.
+    // ******************************************************************** //
+
+    /**
+     * Find the peaks in a spectrum.
+     *
+     * @param   spectrum    Spectrum magnitude data, as returned by
+     *                      {@link FFTTransformer#getResults(float[])}.
+     * @return              The number of peaks found.  The peaks are
+     *                      sorted by decreasing magnitude.
+     * @throws  IllegalArgumentException    Invalid buffer size.
+     */
+    public int findPeaks(float[] spectrum) {
+        final int len = spectrum.length;
+        if (len != numBins)
+            throw new IllegalArgumentException("bad spectrum size in PeakFinder:" +
+                                               " must be " + numBins +
+                                               "; given " + len);
+
+        // In one pass, sum the spectrum and note all the local maxima.
+        // Bin 0 is DC, so it isn't a candidate.
+        float total = spectrum[0];
+        int ncand = 0;
+        for (int i = 1; i < len - 1; ++i) {
+            final float v = spectrum[i];
+            total += v;
+            if (v > spectrum[i - 1] && v >= spectrum[i + 1])
+                candidates[ncand++] = i;
+        }
+        total += spectrum[len - 1];
+        final float floor = total / len * threshold;
+
+        // Now refine the candidates that pass the threshold, keeping the
+        // strongest in order.
+        numPeaks = 0;
+        for (int c = 0; c < ncand; ++c) {
+            final int i = candidates[c];
+            if (spectrum[i] < floor)
+                continue;
+
+            // Fit a parabola through the log magnitudes.
+            final double a = Math.log(Math.max(spectrum[i - 1], TINY));
+            final double b = Math.log(spectrum[i]);
+            final double g = Math.log(Math.max(spectrum[i + 1], TINY));
+            final double den = a - 2 * b + g;
+            double p = den < 0 ? 0.5 * (a - g) / den : 0.0;
+            if (p > 0.5)
+                p = 0.5;
+            else if (p < -0.5)
+                p = -0.5;
+            final float freq = (float) ((i + p) * binWidth);
+            final float mag = (float) Math.exp(b - 0.25 * (a - g) * p);
+            insertPeak(freq, mag);
+        }
+
+        return numPeaks;
+    }
+
+
+    /**
+     * Insert a peak into the results, keeping them sorted by decreasing
+     * magnitude, and dropping the weakest if the results are full.
+     */
+    private void insertPeak(float freq, float mag) {
+        final int max = peakFreq.length;
+        int pos = numPeaks;
+        while (pos > 0 && peakMag[pos - 1] < mag)
+            --pos;
+        if (pos >= max)
+            return;
+        final int end = numPeaks < max ? numPeaks : max - 1;
+        for (int j = end; j > pos; --j) {
+            peakFreq[j] = peakFreq[j - 1];
+            peakMag[j] = peakMag[j - 1];
+        }
+        peakFreq[pos] = freq;
+        peakMag[pos] = mag;
+        if (numPeaks < max)
+            ++numPeaks;
+    }
+
+
+    // ******************************************************************** //
+    // Results.
+    // ******************************************************************** //
+
+    /**
+     * Get the number of peaks found by the last call to
+     * {@link #findPeaks(float[])}.
+     *
+     * @return              The number of peaks.
+     */
+    public int getPeakCount() {
+        return numPeaks;
+    }
+
+
+    /**
+     * Get the frequency of a peak.
+     *
+     * @param   i           The index of the peak; 0 is the strongest.
+     * @return              The interpolated frequency of the peak in Hz.
+     */
+    public float getPeakFreq(int i) {
+        return peakFreq[i];
+    }
+
+
+    /**
+     * Get the magnitude of a peak.
+     *
+     * @param   i           The index of the peak; 0 is the strongest.
+     * @return              The interpolated magnitude of the peak, in the
+     *                      same units as the spectrum.
+     */
+    public float getPeakMagnitude(int i) {
+        return peakMag[i];
+    }
+
+
+    // ******************************************************************** //
+    // Harmonic Analysis.
+    // ******************************************************************** //
+
+    /**
+     * Group the peaks found by the last call to {@link #findPeaks(float[])}
+     * into a harmonic series, and estimate its fundamental frequency.
+     *
+     * <p>Each of the strongest few peaks is tried as the first, second or
+     * third harmonic of a candidate fundamental.  Each candidate is scored
+     * by the total magnitude of the peaks which lie close to a multiple of
+     * it; the best candidate's frequency is then refined as the
+     * magnitude-weighted mean of f / n over its harmonics.  A lower
+     * candidate must score clearly better than a higher one to be chosen,
+     * so that the sub-harmonics of a series are not preferred to its
+     * true fundamental.  The fundamental itself need not be present.
+     *
+     * @return              The estimated fundamental frequency in Hz; zero
+     *                      if there are no peaks.
+     */
+    public float findFundamental() {
+        if (numPeaks == 0)
+            return 0f;
+
+        final int tries = Math.min(numPeaks, HARMONIC_TRIES);
+        float bestF = 0f;
+        float bestScore = 0f;
+        for (int h = 1; h <= 3; ++h) {
+            for (int p = 0; p < tries; ++p) {
+                final float f0 = peakFreq[p] / h;
+                if (f0 < binWidth)
+                    continue;
+                final float score = harmonicScore(f0);
+                if (score > bestScore * (bestF > f0 ? SUBHARMONIC_MARGIN : 1f)) {
+                    bestScore = score;
+                    bestF = f0;
+                }
+            }
+        }
+
+        // Refine the winner using all its harmonics.
+        double wsum = 0;
+        double fsum = 0;
+        for (int p = 0; p < numPeaks; ++p) {
+            final int n = harmonicNumber(peakFreq[p], bestF);
+            if (n > 0) {
+                wsum += peakMag[p];
+                fsum += peakMag[p] * peakFreq[p] / n;
+            }
+        }
+        return wsum > 0 ? (float) (fsum / wsum) : bestF;
+    }
+
+
+    /**
+     * Score a candidate fundamental by the total magnitude of the
+     * peaks which are harmonics of it.
+     */
+    private float harmonicScore(float f0) {
+        float score = 0f;
+        for (int p = 0; p < numPeaks; ++p)
+            if (harmonicNumber(peakFreq[p], f0) > 0)
+                score += peakMag[p];
+        return score;
+    }
+
+
+    /**
+     * Determine whether a frequency is a harmonic of a fundamental.
+     *
+     * @return              The harmonic number, or 0 if f is not close
+     *                      enough to a harmonic of f0.
+     */
+    private int harmonicNumber(float f, float f0) {
+        final int n = Math.round(f / f0);
+        if (n < 1 || n > MAX_HARMONIC)
+            return 0;
+        final float err = Math.abs(f - n * f0);
+        return err <= harmonicTol * f || err <= binWidth / 2 ? n : 0;
+    }
+
+
+    // ******************************************************************** //
+    // Private Constants.
+    // ******************************************************************** //
+
+    // Floor applied to magnitudes before taking logs.
+    private static final float TINY = 1e-30f;
+
+    // Number of the strongest peaks to try as harmonics of the fundamental.
+    private static final int HARMONIC_TRIES = 5;
+
+    // Highest harmonic we consider.
+    private static final int MAX_HARMONIC = 16;
+
+    // Factor by which a lower fundamental must out-score a higher one.
+    private static final float SUBHARMONIC_MARGIN = 1.2f;
+
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // The number of bins in the input spectrum, and the frequency
+    // spacing of the bins in Hz.
+    private final int numBins;
+    private final float binWidth;
+
+    // Detection threshold, relative to the mean magnitude.
+    private float threshold = 3f;
+
+    // Tolerance for harmonic grouping, as a fraction of frequency.
+    private float harmonicTol = 0.03f;
+
+    // Working buffer for the indices of local maxima.
+    private final int[] candidates;
+
+    // The peaks found, sorted by decreasing magnitude, and the
+    // number of them.
+    private final float[] peakFreq;
+    private final float[] peakMag;
+    private int numPeaks = 0;
+
+}
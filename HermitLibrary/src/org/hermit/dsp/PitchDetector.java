@@ -0,0 +1,327 @@
+/**
+ * dsp: various digital signal processing algorithms
+ * <br>Copyright 2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+
+package org.hermit.dsp;
+
+import org.hermit.utils.Bitwise;
+
+import ca.uol.aig.fftpack.RealDoubleFFT;
+
+
+/**
+ * A time-domain pitch detector, using the McLeod Pitch Method:
+ * P. McLeod and G. Wyvill, "A Smarter Way to Find Pitch", ICMC 2005.
+ *
+ * <p>The normalised square difference function (NSDF) of each block
+ * is computed from its autocorrelation, which is calculated with an
+ * FFT, so the cost is O(n log n) in the block size.  The NSDF is
+ * evaluated at fractional lags by band-limited interpolation of the
+ * autocorrelation.  The pitch period is the first local maximum of the
+ * NSDF which comes close to the highest one, refined by parabolic
+ * interpolation; this gives
+ * sub-sample period accuracy, and hence Hz-level or better pitch
+ * accuracy, from blocks which only need to cover a couple of periods
+ * of the lowest pitch of interest.
+ *
+ * <p>Usage: create a PitchDetector for the sample rate and block size,
+ * then call {@link #detect(short[], int, int)} on each block as read
+ * by the audio reader.  No memory is allocated after construction.
+ */
+public final class PitchDetector {
+
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create a pitch detector.
+     *
+     * @param   sampleRate  The sample rate of the input, in samples/sec.
+     * @param   blockSize   The number of samples in each block that we
+     *                      will be given.  The lowest detectable pitch
+     *                      has a period of about half this.
+     */
+    public PitchDetector(int sampleRate, int blockSize) {
+        rate = sampleRate;
+        winSize = blockSize;
+
+        // Zero-pad to twice the block size, to avoid wrap-around in
+        // the circular correlation.  The inverse transform is
+        // UPSAMPLE times larger, to interpolate the autocorrelation.
+        fftSize = Bitwise.nextPowerOf2(blockSize * 2);
+        fft = new RealDoubleFFT(fftSize);
+        ifft = new RealDoubleFFT(fftSize * UPSAMPLE);
+        work = new double[fftSize];
+        corr = new double[fftSize * UPSAMPLE];
+        energy = new double[blockSize];
+        nsdf = new float[blockSize * UPSAMPLE];
+
+        setRange(DEF_MIN_FREQ, DEF_MAX_FREQ);
+    }
+
+
+    // ******************************************************************** //
+    // Configuration.
+    // ******************************************************************** //
+
+    /**
+     * Set the range of pitches to look for.
+     *
+     * @param   minFreq     The lowest pitch of interest, in Hz.  This is
+     *                      limited by the block size.
+     * @param   maxFreq     The highest pitch of interest, in Hz.
+     */
+    public void setRange(float minFreq, float maxFreq) {
+        minTau = Math.max(2, (int) Math.floor(rate / maxFreq));
+        maxTau = Math.min(winSize - 2, (int) Math.ceil(rate / minFreq));
+    }
+
+
+    /**
+     * Set the cutoff for choosing the pitch peak.
+     *
+     * @param   k           The first NSDF local maximum which is at least
+     *                      k times the highest one is taken as the pitch
+     *                      period.  Lower values favour higher pitches.
+     *                      The default is 0.9.
+     */
+    public void setCutoff(float k) {
+        cutoff = k;
+    }
+
+
+    // ******************************************************************** //
+    // Detection.
+    // ******************************************************************** //
+
+    /**
+     * Estimate the pitch of a block of audio.
+     *
+     * @param   data        Buffer containing the input samples.
+     * @param   off         Offset in data of the block.
+     * @param   count       Number of samples in the block.  Must be
+     *                      the block size given to the constructor.
+     * @return              The pitch in Hz, or zero if no pitch
+     *                      could be found.
+     * @throws  IllegalArgumentException    Invalid data size.
+     */
+    public float detect(short[] data, int off, int count) {
+        if (count != winSize)
+            throw new IllegalArgumentException("bad input count in PitchDetector:" +
+                                               " constructed for " + winSize +
+                                               "; given " + count);
+
+        final double[] x = work;
+        for (int i = 0; i < winSize; ++i)
+            x[i] = data[off + i] / 32768.0;
+        for (int i = winSize; i < fftSize; ++i)
+            x[i] = 0.0;
+
+        // The energy term m(0) is twice the total energy; compute it before
+        // the transform overwrites the data.  m(tau) then loses the squares
+        // of the samples which fall off each end of the overlap.
+        double m = 0.0;
+        for (int i = 0; i < winSize; ++i)
+            m += x[i] * x[i];
+        m *= 2.0;
+        final double[] em = energy;
+        em[0] = m;
+        for (int tau = 1; tau <= maxTau + 1; ++tau) {
+            final double a = x[tau - 1];
+            final double b = x[winSize - tau];
+            m -= a * a + b * b;
+            em[tau] = m;
+        }
+
+        autocorrelate(x, corr);
+
+        // Compute the NSDF at each fractional lag, interpolating m(tau)
+        // linearly between whole lags; it varies slowly, unlike the
+        // autocorrelation.
+        final double norm = 1.0 / fftSize;
+        final int end = (maxTau + 1) * UPSAMPLE;
+        for (int j = 0; j < end; ++j) {
+            final int tau = j / UPSAMPLE;
+            final double frac = (double) (j % UPSAMPLE) / UPSAMPLE;
+            final double mj = em[tau] + frac * (em[tau + 1] - em[tau]);
+            nsdf[j] = mj > 0 ? (float) (2.0 * corr[j] * norm / mj) : 0f;
+        }
+
+        return pickPeak();
+    }
+
+
+    /**
+     * Calculate the (unnormalised) circular autocorrelation of a
+     * zero-padded block of data, at UPSAMPLE points per sample.
+     *
+     * <p>The autocorrelation is the inverse transform of the power
+     * spectrum.  Padding the power spectrum with zeros before the inverse
+     * transform gives the band-limited interpolation of the
+     * autocorrelation between whole lags.  This matters because the
+     * autocorrelation peaks can be very sharp when the signal has
+     * strong harmonics, and then a parabola through three whole lags
+     * is a poor fit.
+     *
+     * @param   x           The data; overwritten with its transform.
+     * @param   out         Buffer for the autocorrelation.
+     */
+    private void autocorrelate(double[] x, double[] out) {
+        fft.ft(x);
+
+        // Store the squared magnitude of each coefficient.  The layout
+        // is x[0] = DC; x[2k-1], x[2k] = re, im of k; and x[n-1] =
+        // Nyquist.  The Nyquist term becomes an ordinary coefficient in
+        // the larger transform, where it is counted twice; so halve it.
+        out[0] = x[0] * x[0];
+        for (int k = 1; k < fftSize / 2; ++k) {
+            final double re = x[2 * k - 1];
+            final double im = x[2 * k];
+            out[2 * k - 1] = re * re + im * im;
+            out[2 * k] = 0.0;
+        }
+        out[fftSize - 1] = x[fftSize - 1] * x[fftSize - 1] / 2.0;
+        for (int i = fftSize; i < out.length; ++i)
+            out[i] = 0.0;
+
+        ifft.bt(out);
+    }
+
+
+    /**
+     * Find the pitch peak in the NSDF.
+     *
+     * @return              The pitch in Hz, or zero if no pitch
+     *                      could be found.
+     */
+    private float pickPeak() {
+        // Skip the initial lobe around zero lag, which runs down to the
+        // first minimum.  We can't rely on the NSDF going negative
+        // here, as it doesn't for signals with strong harmonics.
+        final int first = minTau * UPSAMPLE;
+        final int last = maxTau * UPSAMPLE;
+        int j = 1;
+        while (j <= last && nsdf[j] > 0 && nsdf[j] <= nsdf[j - 1])
+            ++j;
+
+        // Now note the positive local maxima, skipping lags which are too
+        // short for the highest pitch, and refine the position and height
+        // of each with a parabolic fit.
+        if (j < first)
+            j = first;
+        float highest = 0f;
+        int nkeys = 0;
+        for (; j <= last && nkeys < keyLag.length; ++j) {
+            final float b = nsdf[j];
+            final float a = nsdf[j - 1];
+            final float c = nsdf[j + 1];
+            if (b > 0 && b > a && b >= c) {
+                final float den = a - 2 * b + c;
+                final float p = den < 0 ? 0.5f * (a - c) / den : 0f;
+                final float v = b - 0.25f * (a - c) * p;
+                keyLag[nkeys] = (j + p) / UPSAMPLE;
+                keyVal[nkeys] = v;
+                ++nkeys;
+                if (v > highest)
+                    highest = v;
+            }
+        }
+        if (nkeys == 0 || highest < MIN_CLARITY) {
+            clarity = 0f;
+            return 0f;
+        }
+
+        // Take the first local maximum which is close to the highest.
+        final float thresh = highest * cutoff;
+        int k = 0;
+        while (keyVal[k] < thresh)
+            ++k;
+        clarity = keyVal[k];
+        return rate / keyLag[k];
+    }
+
+
+    // ******************************************************************** //
+    // Results.
+    // ******************************************************************** //
+
+    /**
+     * Get the clarity of the last detected pitch.
+     *
+     * @return              The height of the NSDF peak which was
+     *                      chosen, from 0 to about 1.  Values near 1
+     *                      indicate a clean periodic signal.  Zero if
+     *                      no pitch was found.
+     */
+    public float getClarity() {
+        return clarity;
+    }
+
+
+    // ******************************************************************** //
+    // Private Constants.
+    // ******************************************************************** //
+
+    // Default pitch range in Hz.
+    private static final float DEF_MIN_FREQ = 40f;
+    private static final float DEF_MAX_FREQ = 2000f;
+
+    // Minimum NSDF peak height for a pitch to be reported.
+    private static final float MIN_CLARITY = 0.3f;
+
+    // Number of points per sample at which we calculate the NSDF.
+    private static final int UPSAMPLE = 4;
+
+    // Maximum number of NSDF local maxima we consider.
+    private static final int MAX_KEYS = 64;
+
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // The sample rate, block size and FFT size.
+    private final int rate;
+    private final int winSize;
+    private final int fftSize;
+
+    // The forward and inverse FFTs used for the autocorrelation, and
+    // their working buffers.
+    private final RealDoubleFFT fft;
+    private final RealDoubleFFT ifft;
+    private final double[] work;
+    private final double[] corr;
+
+    // The energy term m(tau) at each whole lag, and the NSDF of the
+    // current block at each fractional lag.
+    private final double[] energy;
+    private final float[] nsdf;
+
+    // The interpolated lags and heights of the local maxima found
+    // in the NSDF.
+    private final float[] keyLag = new float[MAX_KEYS];
+    private final float[] keyVal = new float[MAX_KEYS];
+
+    // Range of lags to search, derived from the pitch range.
+    private int minTau;
+    private int maxTau;
+
+    // Cutoff for choosing the pitch peak, relative to the highest.
+    private float cutoff = 0.9f;
+
+    // Clarity of the last detected pitch.
+    private float clarity = 0f;
+
+}
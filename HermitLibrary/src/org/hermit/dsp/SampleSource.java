@@ -0,0 +1,72 @@
+/**
+ * dsp: various digital signal processing algorithms
+ * <br>Copyright 2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+
+package org.hermit.dsp;
+
+
+import java.io.IOException;
+
+
+/**
+ * A source of 16-bit mono audio samples, such as a microphone or a
+ * recording.  Audio readers use this to get their input, so that the
+ * same analysis code can be driven by live or recorded audio.
+ *
+ * <p>A source is used from a single thread: {@link #start(int)}, then
+ * any number of calls to {@link #read(short[], int, int)}, then
+ * {@link #stop()}.  It may then be started again.
+ */
+public interface SampleSource {
+
+    /**
+     * Get the sample rate of this source.
+     *
+     * @return              The source's own sample rate in samples/sec,
+     *                      if it has a fixed rate; 0 if it can supply
+     *                      any rate requested in {@link #start(int)}.
+     */
+    public int getSampleRate();
+
+
+    /**
+     * Start supplying audio.
+     *
+     * @param   rate        The desired sample rate, in samples/sec.  This
+     *                      is ignored if the source has a fixed rate.
+     * @throws  IOException The source could not be started.
+     */
+    public void start(int rate) throws IOException;
+
+
+    /**
+     * Read audio samples.  This blocks until some data is available.
+     *
+     * @param   buffer      Buffer for the samples.
+     * @param   off         Offset in buffer at which to store them.
+     * @param   count       Maximum number of samples to read.
+     * @return              The number of samples read; -1 if the end of
+     *                      the input has been reached.
+     * @throws  IOException The read failed.
+     */
+    public int read(short[] buffer, int off, int count) throws IOException;
+
+
+    /**
+     * Stop supplying audio, and release any resources which were
+     * acquired by {@link #start(int)}.
+     */
+    public void stop();
+
+}
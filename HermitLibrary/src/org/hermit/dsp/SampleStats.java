@@ -0,0 +1,161 @@
+/**
+ * dsp: various digital signal processing algorithms
+ * <br>Copyright 2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+
+package org.hermit.dsp;
+
+
+/**
+ * Simple statistics of a block of 16-bit samples: the sum, sum of
+ * squares, minimum and maximum.  These are accumulated by the
+ * {@link PcmConverter} kernels as they convert the samples, so the
+ * data doesn't need another pass to get the bias, range and power.
+ *
+ * <p>The results are identical to those of
+ * {@link SignalPower#biasAndRange(short[], int, int, float[])} and
+ * {@link SignalPower#calculatePowerDb(short[], int, int)}.
+ *
+ * <p>Statistics accumulate over all the samples passed in since
+ * creation or the last {@link #reset()}.
+ */
+public final class SampleStats {
+
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create an empty set of statistics.
+     */
+    public SampleStats() {
+        reset();
+    }
+
+
+    /**
+     * Clear the statistics.
+     */
+    public void reset() {
+        count = 0;
+        sum = 0;
+        sumSq = 0;
+        min = Short.MAX_VALUE;
+        max = Short.MIN_VALUE;
+    }
+
+
+    /**
+     * Add the totals for a block of samples.
+     */
+    void add(int n, long s, long sq, int lo, int hi) {
+        count += n;
+        sum += s;
+        sumSq += sq;
+        if (lo < min)
+            min = lo;
+        if (hi > max)
+            max = hi;
+    }
+
+
+    // ******************************************************************** //
+    // Results.
+    // ******************************************************************** //
+
+    /**
+     * Get the number of samples.
+     *
+     * @return              The number of samples accumulated.
+     */
+    public int getCount() {
+        return count;
+    }
+
+
+    /**
+     * Get the smallest sample.
+     *
+     * @return              The smallest sample value.
+     */
+    public int getMin() {
+        return min;
+    }
+
+
+    /**
+     * Get the largest sample.
+     *
+     * @return              The largest sample value.
+     */
+    public int getMax() {
+        return max;
+    }
+
+
+    /**
+     * Get the bias of the signal.
+     *
+     * @return              The offset of the average signal value from
+     *                      zero, in sample units.
+     */
+    public float getBias() {
+        return (float) sum / (float) count;
+    }
+
+
+    /**
+     * Get the range of the signal, as calculated by
+     * {@link SignalPower#biasAndRange(short[], int, int, float[])}.
+     *
+     * @return              The range of the signal about the bias, in
+     *                      sample units.
+     */
+    public float getRange() {
+        final float bias = getBias();
+        final float bmin = min + bias;
+        final float bmax = max - bias;
+        return Math.abs(bmax - bmin) / 2f;
+    }
+
+
+    /**
+     * Get the power of the signal, as calculated by
+     * {@link SignalPower#calculatePowerDb(short[], int, int)}.
+     *
+     * @return              The power in dB relative to the maximum
+     *                      input level.  A zero input gives -Infinity.
+     */
+    public double getPowerDb() {
+        // The sums are exact in a double up to 2^53, so this is the same
+        // as summing in doubles.
+        final double s = sum;
+        final double power = ((double) sumSq - s * s / count) / count;
+        return SignalPower.powerToDb(power);
+    }
+
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // Number of samples, sum of the samples, and sum of their squares.
+    private int count;
+    private long sum;
+    private long sumSq;
+
+    // Smallest and largest sample values.
+    private int min;
+    private int max;
+
+}
@@ -131,6 +131,20 @@ public final class SignalPower {
         //     power = (sqsum - sum² / samples) / samples
         double power = (sqsum - sum * sum / samples) / samples;
 
+        return powerToDb(power);
+    }
+    
+
+    /**
+     * Convert a signal power to dB, on the scale used by
+     * {@link #calculatePowerDb(short[], int, int)}.
+     * 
+     * @param   power       The mean square signal value, in 16-bit
+     *                      sample units.
+     * @return              The power in dB relative to the maximum
+     *                      input level.
+     */
+    static double powerToDb(double power) {
         // Scale to the range 0 - 1.
         power /= MAX_16_BIT * MAX_16_BIT;
 
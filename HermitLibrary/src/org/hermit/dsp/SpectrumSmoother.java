@@ -0,0 +1,223 @@
+/**
+ * dsp: various digital signal processing algorithms
+ * <br>Copyright 2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+
+package org.hermit.dsp;
+
+
+/**
+ * A recursive smoothing filter for successive spectra, or any other
+ * series of equal-length data blocks.  This is an alternative to
+ * {@link FFTTransformer#getResults(float[], float[][], int)}, which
+ * keeps a history of every value in order to compute a rolling mean;
+ * this class keeps only one value (plus a hold counter, for peak-hold)
+ * per bin, so its memory and per-frame cost are proportional to the
+ * number of bins, regardless of the averaging time.
+ *
+ * <p>All times are expressed as averaging lengths in frames.  A length
+ * of n gives a smoothing coefficient of 2 / (n + 1), which makes the
+ * exponential average roughly equivalent to a moving average over
+ * n frames; a length of 1 or less means no smoothing.
+ */
+public final class SpectrumSmoother {
+
+    // ******************************************************************** //
+    // Public Constants.
+    // ******************************************************************** //
+
+    /**
+     * Definitions of the available smoothing modes.
+     */
+    public enum Mode {
+        /** An exponential moving average; rising and falling values are
+         * smoothed equally. */
+        EXPONENTIAL,
+
+        /** Separate attack and release times; by default, rising values
+         * are followed instantly and falling values are smoothed. */
+        ATTACK_RELEASE,
+
+        /** Peak-hold: each new peak is held for the hold time, then the
+         * value decays towards the input at the release rate. */
+        PEAK_HOLD,
+    }
+
+
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create a smoother with timing derived from a single averaging
+     * length.  For EXPONENTIAL, this is the averaging length; for
+     * ATTACK_RELEASE, it is the release time, with instant attack;
+     * for PEAK_HOLD, it is both the hold time and the release time.
+     *
+     * @param   bins        The number of values in each frame.
+     * @param   mode        The smoothing mode.
+     * @param   len         The averaging length in frames.
+     */
+    public SpectrumSmoother(int bins, Mode mode, int len) {
+        smoothMode = mode;
+        values = new float[bins];
+        holds = mode == Mode.PEAK_HOLD ? new int[bins] : null;
+
+        switch (mode) {
+        case EXPONENTIAL:
+            setAttackRelease(len, len);
+            break;
+        case ATTACK_RELEASE:
+            setAttackRelease(1, len);
+            break;
+        case PEAK_HOLD:
+            setAttackRelease(1, len);
+            setHold(len);
+            break;
+        }
+    }
+
+
+    // ******************************************************************** //
+    // Configuration.
+    // ******************************************************************** //
+
+    /**
+     * Set the attack and release times.  In EXPONENTIAL mode only the
+     * release time is used, for both directions.  In PEAK_HOLD mode
+     * the attack is always instant.
+     *
+     * @param   attack      The averaging length in frames for rising
+     *                      values.
+     * @param   release     The averaging length in frames for falling
+     *                      values.
+     */
+    public void setAttackRelease(float attack, float release) {
+        attackCoeff = coefficient(smoothMode == Mode.EXPONENTIAL ? release : attack);
+        releaseCoeff = coefficient(release);
+    }
+
+
+    /**
+     * Set the hold time for PEAK_HOLD mode.
+     *
+     * @param   frames      The number of frames for which a peak is held
+     *                      before it starts to decay.
+     */
+    public void setHold(int frames) {
+        holdFrames = frames;
+    }
+
+
+    /**
+     * Reset all the smoothed values to zero.
+     */
+    public void reset() {
+        for (int i = 0; i < values.length; ++i)
+            values[i] = 0f;
+        if (holds != null)
+            for (int i = 0; i < holds.length; ++i)
+                holds[i] = 0;
+    }
+
+
+    /**
+     * Calculate the smoothing coefficient for an averaging length.
+     */
+    private static float coefficient(float len) {
+        return len <= 1f ? 1f : 2f / (len + 1f);
+    }
+
+
+    // ******************************************************************** //
+    // Smoothing.
+    // ******************************************************************** //
+
+    /**
+     * Merge a new frame into the smoothed values, and replace the frame
+     * with the smoothed result.
+     *
+     * @param   data        On entry, the new frame; on return, the smoothed
+     *                      values.  Its length must be the number of bins
+     *                      this smoother was created for.
+     * @return              The data buffer.
+     * @throws  IllegalArgumentException    Invalid buffer size.
+     */
+    public float[] update(float[] data) {
+        final float[] vals = values;
+        final int len = vals.length;
+        if (data.length != len)
+            throw new IllegalArgumentException("bad buffer size in SpectrumSmoother:" +
+                                               " must be " + len +
+                                               "; given " + data.length);
+
+        final float att = attackCoeff;
+        final float rel = releaseCoeff;
+        switch (smoothMode) {
+        case EXPONENTIAL:
+            for (int i = 0; i < len; ++i) {
+                final float v = vals[i] + att * (data[i] - vals[i]);
+                vals[i] = v;
+                data[i] = v;
+            }
+            break;
+        case ATTACK_RELEASE:
+            for (int i = 0; i < len; ++i) {
+                final float d = data[i] - vals[i];
+                final float v = vals[i] + (d > 0 ? att : rel) * d;
+                vals[i] = v;
+                data[i] = v;
+            }
+            break;
+        case PEAK_HOLD:
+            final int[] hold = holds;
+            for (int i = 0; i < len; ++i) {
+                final float x = data[i];
+                float v = vals[i];
+                if (x >= v) {
+                    v = x;
+                    hold[i] = holdFrames;
+                } else if (hold[i] > 0)
+                    --hold[i];
+                else
+                    v += rel * (x - v);
+                vals[i] = v;
+                data[i] = v;
+            }
+            break;
+        }
+        return data;
+    }
+
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // The smoothing mode.
+    private final Mode smoothMode;
+
+    // Smoothing coefficients for rising and falling values.
+    private float attackCoeff = 1f;
+    private float releaseCoeff = 1f;
+
+    // Peak hold time in frames.
+    private int holdFrames = 0;
+
+    // The current smoothed value for each bin.
+    private final float[] values;
+
+    // The remaining hold time for each bin; null if not in PEAK_HOLD mode.
+    private final int[] holds;
+
+}
@@ -17,11 +17,25 @@
 package org.hermit.dsp;
 
 
+import java.util.concurrent.ConcurrentHashMap;
+
+
 /**
  * A windowing function for a discrete signal.  This is used to
  * pre-process a signal prior to FFT, in order to improve the frequency
  * response, essentially by eliminating the discontinuities at the ends
  * of a block of samples.
+ * 
+ * <p>The window kernels are computed once for each combination of
+ * function and size, and kept in a table which is shared by all Window
+ * instances; so creating a Window, or changing the window function of an
+ * FFT, is cheap after the first time.  Only kernels with the function's
+ * default parameter are kept, so that arbitrary Kaiser or Tukey
+ * parameters can't fill the table; other kernels are made for each
+ * Window.  The kernels are never modified once made.
+ * 
+ * <p>Each window also provides its coherent gain and equivalent noise
+ * bandwidth, which are needed to scale a windowed spectrum correctly.
  */
 public final class Window {
 
@@ -35,16 +49,55 @@ public final class Window {
     public enum Function {
         /** A simple rectangular window function.  This is equivalent to
          * doing no windowing. */
-        RECTANGULAR,
+        RECTANGULAR(0),
         
         /** The Blackman-Harris window function. */
-        BLACKMAN_HARRIS,
+        BLACKMAN_HARRIS(0),
         
         /** The Gauss window function. */
-        GAUSS,
+        GAUSS(0),
         
         /** The Weedon-Gauss window function. */
-        WEEDON_GAUSS,
+        WEEDON_GAUSS(0),
+        
+        /** The Hann (raised cosine) window function. */
+        HANN(0),
+        
+        /** The Hamming window function. */
+        HAMMING(0),
+        
+        /** A flat-top window function.  This has a very wide main lobe,
+         * but less than 0.01 dB of scalloping loss, so it gives accurate
+         * amplitudes for frequencies between bins. */
+        FLAT_TOP(0),
+        
+        /** The Kaiser window function.  The parameter is beta, which
+         * trades main lobe width for sidelobe level; 8.6 is similar to
+         * a Blackman window. */
+        KAISER(8.6),
+        
+        /** The Tukey (tapered cosine) window function.  The parameter is
+         * the fraction of the window which is tapered; 0 is rectangular,
+         * and 1 is a Hann window. */
+        TUKEY(0.5);
+        
+        Function(double param) {
+            defaultParam = param;
+        }
+        
+        /**
+         * Get the default parameter for this function.
+         * 
+         * @return          The parameter which is used if none is
+         *                  specified.  Zero for functions which don't
+         *                  take a parameter.
+         */
+        public double getDefaultParam() {
+            return defaultParam;
+        }
+        
+        // Default parameter value.
+        private final double defaultParam;
     }
     
     
@@ -53,8 +106,7 @@ public final class Window {
     // ******************************************************************** //
 
     /**
-     * Create a window function for a given sample size.  This preallocates
-     * resources appropriate to that block size.
+     * Create a window function for a given sample size.
      * 
      * @param   size        The number of samples in a block that we will
      *                      be asked to transform.
@@ -65,25 +117,162 @@ public final class Window {
 
     
     /**
-     * Create a window function for a given sample size.  This preallocates
-     * resources appropriate to that block size.
+     * Create a window function for a given sample size.
      * 
      * @param   size        The number of samples in a block that we will
      *                      be asked to transform.
      * @param   function    The window function to use.  Function.RECTANGULAR
-     *                      effectively means no transformation.
+     *                      effectively means no transformation.  If the
+     *                      function takes a parameter, its default is used.
      */
     public Window(int size, Function function) {
+        this(size, function, function.defaultParam);
+    }
+
+    
+    /**
+     * Create a window function for a given sample size, with a given
+     * parameter.
+     * 
+     * @param   size        The number of samples in a block that we will
+     *                      be asked to transform.
+     * @param   function    The window function to use.
+     * @param   param       The parameter for the function: beta for
+     *                      KAISER, or the taper fraction for TUKEY.
+     *                      Ignored for other functions.
+     * @throws  IllegalArgumentException    Invalid parameter.
+     */
+    public Window(int size, Function function, double param) {
+        if (size < 1)
+            throw new IllegalArgumentException("bad size in Window: " + size);
+        if (function == Function.TUKEY && (param < 0 || param > 1))
+            throw new IllegalArgumentException("bad Tukey taper in Window:" +
+                                               " must be 0-1; given " + param);
+        if (function == Function.KAISER && param < 0)
+            throw new IllegalArgumentException("bad Kaiser beta in Window: " + param);
+        if (function != Function.KAISER && function != Function.TUKEY)
+            param = 0;
+
         blockSize = size;
+        windowFunc = function;
+        kernel = getKernel(size, function, param);
+    }
+
+    
+    // ******************************************************************** //
+    // Kernel Cache.
+    // ******************************************************************** //
+
+    /**
+     * Get the kernel for a given window, from the cache if possible.
+     */
+    private static Kernel getKernel(int size, Function function, double param) {
+        if (Double.compare(param, function.defaultParam) != 0)
+            return new Kernel(makeKernel(size, function, param));
+
+        final Key key = new Key(size, function, param);
+        Kernel k = kernelCache.get(key);
+        if (k == null) {
+            // If two threads race here, they'll make identical kernels,
+            // and one will be dropped.
+            k = new Kernel(makeKernel(size, function, param));
+            Kernel prev = kernelCache.putIfAbsent(key, k);
+            if (prev != null)
+                k = prev;
+        }
+        return k;
+    }
+
+
+    /**
+     * Key for the kernel cache.
+     */
+    private static final class Key {
+        Key(int size, Function func, double param) {
+            this.size = size;
+            this.func = func;
+            this.param = param;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key) o;
+            return size == k.size && func == k.func &&
+                        Double.compare(param, k.param) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            final long pbits = Double.doubleToLongBits(param);
+            return (size * 31 + func.ordinal()) * 31 + (int) (pbits ^ (pbits >>> 32));
+        }
+
+        private final int size;
+        private final Function func;
+        private final double param;
+    }
+
+
+    /**
+     * A computed window kernel, and its gain figures.  This is immutable.
+     */
+    private static final class Kernel {
+        Kernel(double[] k) {
+            if (k == null) {
+                doubles = null;
+                floats = null;
+                coherentGain = 1.0;
+                enbw = 1.0;
+                return;
+            }
+
+            final int n = k.length;
+            doubles = k;
+            floats = new float[n];
+            double sum = 0, sumSq = 0;
+            for (int i = 0; i < n; ++i) {
+                floats[i] = (float) k[i];
+                sum += k[i];
+                sumSq += k[i] * k[i];
+            }
+            coherentGain = sum / n;
+            enbw = n * sumSq / (sum * sum);
+        }
+
+        // The kernel in double and float forms; null for RECTANGULAR.
+        final double[] doubles;
+        final float[] floats;
+
+        // Coherent gain, and equivalent noise bandwidth in bins.
+        final double coherentGain;
+        final double enbw;
+    }
+
 
-        // Create the window function as an array, so we do the
-        // calculations once only.  For RECTANGULAR, leave the kernel as
-        // null, signalling no transformation.
-        kernel = function == Function.RECTANGULAR ? null : new double[size];
+    // ******************************************************************** //
+    // Window Functions.
+    // ******************************************************************** //
+
+    /**
+     * Compute a window kernel.
+     * 
+     * @return              The kernel; or null for RECTANGULAR, signalling
+     *                      no transformation.
+     */
+    private static double[] makeKernel(int size, Function function, double param) {
+        if (function == Function.RECTANGULAR)
+            return null;
+        
+        final double[] kernel = new double[size];
+        if (size == 1) {
+            kernel[0] = 1.0;
+            return kernel;
+        }
 
         switch (function) {
         case RECTANGULAR:
-            // Nothing to do.
             break;
         case BLACKMAN_HARRIS:
             makeBlackmanHarris(kernel, size);
@@ -94,15 +283,27 @@ public final class Window {
         case WEEDON_GAUSS:
             makeWeedonGauss(kernel, size);
             break;
+        case HANN:
+            makeCosineSum(kernel, size, HANN_COEFFS);
+            break;
+        case HAMMING:
+            makeCosineSum(kernel, size, HAMMING_COEFFS);
+            break;
+        case FLAT_TOP:
+            makeCosineSum(kernel, size, FLAT_TOP_COEFFS);
+            break;
+        case KAISER:
+            makeKaiser(kernel, size, param);
+            break;
+        case TUKEY:
+            makeTukey(kernel, size, param);
+            break;
         }
+        return kernel;
     }
 
     
-    // ******************************************************************** //
-    // Window Functions.
-    // ******************************************************************** //
-
-    private void makeBlackmanHarris(double[] buf, int len) {
+    private static void makeBlackmanHarris(double[] buf, int len) {
         final double n = (double) (len - 1);
         for (int i = 0; i < len; ++i) {
             final double f = Math.PI * (double) i / n;
@@ -114,7 +315,7 @@ public final class Window {
     }
     
     
-    private void makeGauss(double[] buf, int len) {
+    private static void makeGauss(double[] buf, int len) {
         final double k = (double) (len - 1) / 2;
         
         for (int i = 0; i < len; ++i) {
@@ -124,7 +325,7 @@ public final class Window {
     }
     
 
-    private void makeWeedonGauss(double[] buf, int len) {
+    private static void makeWeedonGauss(double[] buf, int len) {
         final double k = (-250.0 * 0.4605) / (double) (len * len);
         final double d = (double) len / 2.0;
         
@@ -133,8 +334,137 @@ public final class Window {
             buf[i] = Math.exp(n * n * k);
         }
     }
+
+
+    /**
+     * Make a generalised cosine window: the sum of a[j] * cos(2 pi j i / n),
+     * with alternating signs.
+     */
+    private static void makeCosineSum(double[] buf, int len, double[] a) {
+        final double n = (double) (len - 1);
+        for (int i = 0; i < len; ++i) {
+            final double f = 2.0 * Math.PI * (double) i / n;
+            double v = a[0];
+            for (int j = 1; j < a.length; ++j) {
+                final double c = a[j] * Math.cos(j * f);
+                v += (j & 1) != 0 ? -c : c;
+            }
+            buf[i] = v;
+        }
+    }
+
+
+    private static void makeKaiser(double[] buf, int len, double beta) {
+        final double n = (double) (len - 1);
+        final double norm = besselI0(beta);
+        for (int i = 0; i < len; ++i) {
+            final double r = 2.0 * i / n - 1.0;
+            buf[i] = besselI0(beta * Math.sqrt(Math.max(0.0, 1.0 - r * r))) / norm;
+        }
+    }
+
+
+    private static void makeTukey(double[] buf, int len, double alpha) {
+        final double n = (double) (len - 1);
+        final double taper = alpha * n / 2.0;
+        for (int i = 0; i < len; ++i) {
+            // Distance from the nearer end.
+            final double d = Math.min(i, n - i);
+            if (d >= taper)
+                buf[i] = 1.0;
+            else
+                buf[i] = 0.5 * (1.0 - Math.cos(Math.PI * d / taper));
+        }
+    }
+
+
+    /**
+     * Compute the zeroth-order modified Bessel function of the first
+     * kind, by its power series.
+     */
+    private static double besselI0(double x) {
+        final double q = x * x / 4.0;
+        double term = 1.0;
+        double sum = 1.0;
+        for (int k = 1; term > sum * 1e-17; ++k) {
+            term *= q / ((double) k * k);
+            sum += term;
+        }
+        return sum;
+    }
     
 
+    // ******************************************************************** //
+    // Accessors.
+    // ******************************************************************** //
+
+    /**
+     * Get the block size of this window.
+     * 
+     * @return              The number of samples in a block.
+     */
+    public final int getBlockSize() {
+        return blockSize;
+    }
+
+
+    /**
+     * Get the window function.
+     * 
+     * @return              The window function.
+     */
+    public final Function getFunction() {
+        return windowFunc;
+    }
+
+
+    /**
+     * Get the coherent gain of this window; that is, its mean value.
+     * A sinusoid at the centre of an FFT bin is scaled by this much.
+     * 
+     * @return              The coherent gain; 1 for a rectangular window.
+     */
+    public final double getCoherentGain() {
+        return kernel.coherentGain;
+    }
+
+
+    /**
+     * Get the equivalent noise bandwidth of this window; this is the
+     * width of a rectangular filter which would pass the same noise
+     * power as one FFT bin.  Noise power spectra should be divided by
+     * this, as well as by the square of the coherent gain.
+     * 
+     * @return              The equivalent noise bandwidth, in bins;
+     *                      1 for a rectangular window.
+     */
+    public final double getEnbw() {
+        return kernel.enbw;
+    }
+
+
+    /**
+     * Get the window kernel.  The returned array is shared, and must
+     * not be modified.
+     * 
+     * @return              The kernel; null for a rectangular window.
+     */
+    final double[] getDoubleKernel() {
+        return kernel.doubles;
+    }
+
+
+    /**
+     * Get the window kernel as floats.  The returned array is shared,
+     * and must not be modified.
+     * 
+     * @return              The kernel; null for a rectangular window.
+     */
+    final float[] getFloatKernel() {
+        return kernel.floats;
+    }
+
+
     // ******************************************************************** //
     // Data Transformation.
     // ******************************************************************** //
@@ -170,9 +500,34 @@ public final class Window {
             throw new IllegalArgumentException("bad input count in Window:" +
                                                " constructed for " + blockSize +
                                                "; given " + input.length);
-        if (kernel != null)
+        final double[] k = kernel.doubles;
+        if (k != null)
+            for (int i = 0; i < blockSize; i++)
+                input[off + i] *= k[i];
+    }
+    
+
+    /**
+     * Apply the window function to a given block of float data.
+     * 
+     * @param   input       The input data buffer.  This data will be
+     *                      transformed in-place by the window function.
+     * @param   off         Offset in the buffer at which the data to
+     *                      be transformed starts.
+     * @param   count       Number of samples in the data to be
+     *                      transformed.  Must be the same as the size
+     *                      parameter that was given to the constructor.
+     * @throws  IllegalArgumentException    Invalid data size.
+     */
+    public final void transform(float[] input, int off, int count) {
+        if (count != blockSize)
+            throw new IllegalArgumentException("bad input count in Window:" +
+                                               " constructed for " + blockSize +
+                                               "; given " + count);
+        final float[] k = kernel.floats;
+        if (k != null)
             for (int i = 0; i < blockSize; i++)
-                input[off + i] *= kernel[i];
+                input[off + i] *= k[i];
     }
     
     
@@ -189,17 +544,32 @@ public final class Window {
     private static final double BH_A2 = 0.14128;
     private static final double BH_A3 = 0.01168;
 
+    // Cosine series coefficients for the Hann, Hamming and flat-top
+    // windows.  The flat-top coefficients are those used by Matlab.
+    private static final double[] HANN_COEFFS = { 0.5, 0.5 };
+    private static final double[] HAMMING_COEFFS = { 0.54, 0.46 };
+    private static final double[] FLAT_TOP_COEFFS = {
+        0.21557895, 0.41663158, 0.277263158, 0.083578947, 0.006947368
+    };
+
         
     // ******************************************************************** //
     // Private Data.
     // ******************************************************************** //
 
+    // Cache of the kernels which have been computed with default
+    // parameters.
+    private static final ConcurrentHashMap<Key, Kernel> kernelCache =
+                                        new ConcurrentHashMap<Key, Kernel>();
+    
     // The size of an input data block.
     private final int blockSize;
     
-    // The window function, as a pre-computed array of multiplication factors.
-    // If null, do no transformation -- this is a unity rectangular window.
-    private final double[] kernel;
+    // The window function.
+    private final Function windowFunc;
+    
+    // The window kernel, shared with all other windows of the same
+    // function and size.
+    private final Kernel kernel;
 
 }
-
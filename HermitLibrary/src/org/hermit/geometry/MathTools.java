@@ -46,6 +46,16 @@ public class MathTools {
     }
 
 
+    /**
+     * Get the precision for calculations.
+     * 
+     * @return              The precision as a scaling factor.
+     */
+    public static final double getPrecision() {
+        return precision;
+    }
+
+
     // ******************************************************************** //
     // Comparisons.
     // ******************************************************************** //
@@ -20,15 +20,122 @@
 
 package org.hermit.geometry.cluster;
 
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import net.goui.util.MTRandom;
+
 import org.hermit.geometry.Point;
 import org.hermit.geometry.Region;
 
 
 /**
  * A generic interface to a clustering algorithm.
+ * 
+ * <p>All the random choices a clusterer makes come from a single
+ * random number generator; give it a seed with {@link #setSeed(long)}
+ * to make runs reproducible.
+ * 
+ * <p>If given an Executor with {@link #setExecutor(Executor)}, a
+ * clusterer may split its work across the executor's threads.  The
+ * results are exactly the same whether or not an executor is used, and
+ * however many threads it has.  Only the plain Executor interface is
+ * used, so this works on all Android versions.
  */
 public abstract class Clusterer {
+
+    // ******************************************************************** //
+    // Public Constants.
+    // ******************************************************************** //
+
+    /**
+     * Methods of choosing the initial cluster means.
+     */
+    public enum Seeding {
+        /** Uniformly random points in the data region.  These take no
+         * account of the data, so clusters often start out empty. */
+        RANDOM,
+        
+        /** k-means++: each mean is a data point, chosen with probability
+         * proportional to its squared distance from the means already
+         * chosen.  This takes one pass over the data per cluster. */
+        PLUS_PLUS,
+        
+        /** k-means||: candidate means are sampled from the data as for
+         * k-means++, but many at a time, in a few passes; the means
+         * are then chosen from the candidates. */
+        PARALLEL;
+    }
+    
+
+    // ******************************************************************** //
+    // Configuration.
+    // ******************************************************************** //
+
+    /**
+     * Select the method used to choose the initial cluster means.  This
+     * takes effect on the next call to
+     * {@link #prepare(Point[], int[], double[][], Region)}.
+     * 
+     * @param  method      The seeding method to use.
+     */
+    public void setSeeding(Seeding method) {
+        seeding = method;
+    }
+    
+
+    /**
+     * Seed the random number generator used by this clusterer.  A
+     * clustering pass prepared after this call will give the same
+     * results every time.
+     * 
+     * @param  seed        The seed value.
+     */
+    public void setSeed(long seed) {
+        random.setSeed(seed);
+    }
+    
+
+    /**
+     * Set the executor in which to run the clustering work in parallel,
+     * using up to one thread per processor.
+     * 
+     * @param  executor    The executor to use, or null to do all the
+     *                     work on the calling thread.
+     */
+    public void setExecutor(Executor executor) {
+        setExecutor(executor, Runtime.getRuntime().availableProcessors());
+    }
     
+
+    /**
+     * Set the executor in which to run the clustering work in parallel,
+     * and the number of threads to use.
+     * 
+     * <p>At most threads - 1 tasks are submitted at a time, and the
+     * calling thread also does its share of the work, so this may be a
+     * shared or bounded executor.  If it rejects a task, the calling
+     * thread does that share too.
+     * 
+     * @param  executor    The executor to use, or null to do all the
+     *                     work on the calling thread.
+     * @param  threads     The most threads to use, including the
+     *                     calling thread.
+     * @throws IllegalArgumentException  Invalid thread count.
+     */
+    public void setExecutor(Executor executor, int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("bad thread count in" +
+                                               " Clusterer: " + threads);
+        workExecutor = executor;
+        workThreads = threads;
+    }
+    
+
+    // ******************************************************************** //
+    // Clustering.
+    // ******************************************************************** //
+
 	/**
 	 * Prepare a clustering pass on the indicated data.
 	 * 
@@ -69,5 +176,99 @@ public abstract class Clusterer {
      */
     public abstract double metric();
 
+
+    /**
+     * Get the number of point-to-mean distances which were computed by
+     * the most recent call to {@link #iterate()}, or by
+     * {@link #prepare(Point[], int[], double[][], Region)} before the
+     * first iteration.  This is a measure of the work done, which is
+     * useful when comparing different ways of doing the same job.
+     * 
+     * @return             The number of distances computed, or -1 if
+     *                     this clusterer doesn't count them.
+     */
+    public long distanceCount() {
+        return -1;
+    }
+    
+
+    // ******************************************************************** //
+    // Subclass Utilities.
+    // ******************************************************************** //
+
+    /**
+     * Choose the initial cluster means, using the selected seeding method.
+     * 
+     * @param  xs          X co-ordinates of the points to be clustered.
+     * @param  ys          Y co-ordinates of the points to be clustered.
+     * @param  means       Array of x,y values in which to place the means.
+     * @param  region      The region of the plane in which the points lie.
+     */
+    protected void seedMeans(double[] xs, double[] ys, double[][] means, Region region) {
+        // With no data, there's nothing to go on but the region.
+        if (seeding == Seeding.RANDOM || xs.length == 0) {
+            for (int c = 0; c < means.length; ++c) {
+                Point p = randomPoint(region);
+                means[c][0] = p.getX();
+                means[c][1] = p.getY();
+            }
+        } else if (seeding == Seeding.PLUS_PLUS)
+            MeanSeeder.plusPlus(xs, ys, null, means, random);
+        else
+            MeanSeeder.parallel(xs, ys, means, random, workExecutor, workThreads);
+    }
+
+
+    /**
+     * Get a uniformly random point in the given region, from this
+     * clusterer's random number generator.
+     * 
+     * @param  region      The region to pick from.
+     * @return             A random point in the region.
+     */
+    protected Point randomPoint(Region region) {
+        double x = random.nextDouble() * region.getWidth() + region.getX1();
+        double y = random.nextDouble() * region.getHeight() + region.getY1();
+        return new Point(x, y);
+    }
+
+
+    /**
+     * Get the executor in which to run the clustering work.
+     * 
+     * @return             The executor to use, or null to do all the
+     *                     work on the calling thread.
+     */
+    protected Executor getExecutor() {
+        return workExecutor;
+    }
+
+
+    /**
+     * Get the most threads to use for the clustering work, including
+     * the calling thread.
+     * 
+     * @return             The number of threads.
+     */
+    protected int getThreads() {
+        return workThreads;
+    }
+
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // The random number generator used for all random choices.
+    private final Random random = new MTRandom();
+    
+    // The method used to choose the initial means.
+    private Seeding seeding = Seeding.PLUS_PLUS;
+    
+    // The executor to run parallel work in, null to run on the caller's
+    // thread; and the most threads to use, including the caller's.
+    private Executor workExecutor = null;
+    private int workThreads = 1;
+
 }
 
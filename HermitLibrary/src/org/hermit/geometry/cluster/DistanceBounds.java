@@ -0,0 +1,334 @@
+
+/**
+ * cluster: routines for cluster analysis.
+ *
+ * <p>This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
+ * 02111-1307, USA.
+ */
+
+
+package org.hermit.geometry.cluster;
+
+
+import java.util.concurrent.Executor;
+
+
+/**
+ * Distance bounds for a fixed set of data points, used to assign the
+ * points to their nearest cluster means by Hamerly's algorithm.
+ *
+ * <p>For each point we keep an upper bound on the distance to its mean,
+ * and a lower bound on the distance to every other mean.  When the means
+ * move, the bounds are loosened by the distances moved.  A point whose
+ * upper bound is less than its lower bound, or than half the distance
+ * from its mean to the nearest other mean, can't have changed cluster,
+ * so only its distance to its own mean is needed.  Otherwise we check
+ * it against every mean and reset its bounds.
+ *
+ * <p>This needs two bounds per point, rather than one per point per
+ * mean as in Elkan's algorithm, which would be too much memory for
+ * large data sets with many clusters.
+ *
+ * <p>A point is only skipped if the bounds are clear by a margin well
+ * beyond the rounding error, so the assignments are exactly those of a
+ * brute-force search, including the choice of the lowest-numbered mean
+ * on ties.
+ */
+final class DistanceBounds {
+
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Set up bounds for the given points.
+     *
+     * @param  xs           X co-ordinates of the points.  These are not
+     *                      copied, and must not change.
+     * @param  ys           Y co-ordinates of the points.  These are not
+     *                      copied, and must not change.
+     */
+    DistanceBounds(double[] xs, double[] ys) {
+        numPoints = xs.length;
+        pointXs = xs;
+        pointYs = ys;
+        nearest = new int[numPoints];
+        upper = new double[numPoints];
+        lower = new double[numPoints];
+        int chunks = PointLoop.numChunks(numPoints);
+        chunkCounts = new long[chunks];
+        chunkDirty = new boolean[chunks];
+    }
+
+
+    // ******************************************************************** //
+    // Assignment.
+    // ******************************************************************** //
+
+    /**
+     * Assign each point to the nearest of the given means.
+     *
+     * @param  means        Array of x,y values of the cluster means.
+     * @param  ids          Array in which to place the index of the
+     *                      nearest mean to each point.
+     * @param  dists        Array in which to place the squared distance
+     *                      from each point to its nearest mean.
+     * @param  executor     Executor in which to process the points in
+     *                      parallel, or null to do it all on this thread.
+     * @param  threads      The most threads to use, including this one.
+     * @return              true iff none of the points changed to a different
+     *                      cluster.
+     */
+    boolean assign(double[][] means, final int[] ids, final double[] dists,
+                   Executor executor, int threads)
+    {
+        final int k = means.length;
+        distanceCount = 0;
+
+        // If the number of means changed, we know nothing.  Otherwise,
+        // loosen the bounds by the distance each mean has moved.
+        if (meanXs == null || meanXs.length != k) {
+            meanXs = new double[k];
+            meanYs = new double[k];
+            halfGap = new double[k];
+            for (int i = 0; i < numPoints; ++i)
+                nearest[i] = -1;
+        } else
+            loosenBounds(means, executor, threads);
+
+        for (int c = 0; c < k; ++c) {
+            meanXs[c] = means[c][0];
+            meanYs[c] = means[c][1];
+        }
+        findGaps();
+
+        // Each point is assigned independently, and the counts are
+        // integers, so the results don't depend on how the points were
+        // split up.
+        new PointLoop(numPoints) {
+            @Override
+            void chunk(int chunk, int start, int end) {
+                chunkDirty[chunk] = assignRange(start, end, ids, dists, chunk);
+            }
+        }.run(executor, threads);
+
+        boolean dirty = false;
+        for (int c = 0; c < chunkCounts.length; ++c) {
+            distanceCount += chunkCounts[c];
+            dirty |= chunkDirty[c];
+        }
+        return !dirty;
+    }
+
+
+    /**
+     * Assign a range of the points to their nearest means.
+     *
+     * @param  start        Index of the first point.
+     * @param  end          Index after the last point.
+     * @param  ids          Array in which to place the index of the
+     *                      nearest mean to each point.
+     * @param  dists        Array in which to place the squared distance
+     *                      from each point to its nearest mean.
+     * @param  chunk        Index in chunkCounts at which to count the
+     *                      distances computed.
+     * @return              true iff any of the points changed to a different
+     *                      cluster.
+     */
+    private boolean assignRange(int start, int end, int[] ids, double[] dists, int chunk) {
+        final int k = meanXs.length;
+        long count = 0;
+        boolean dirty = false;
+        for (int i = start; i < end; ++i) {
+            final double x = pointXs[i], y = pointYs[i];
+
+            // Tighten the upper bound to the distance to the current mean,
+            // which we need anyway.  If it's clear of the other means,
+            // we're done.
+            int closest = nearest[i];
+            double minDistance = 0;
+            boolean found = false;
+            if (closest >= 0) {
+                final double dx = x - meanXs[closest];
+                final double dy = y - meanYs[closest];
+                minDistance = dx * dx + dy * dy;
+                ++count;
+                final double u = Math.sqrt(minDistance);
+                final double m = Math.max(halfGap[closest], lower[i]);
+                upper[i] = u;
+                found = m - u > MARGIN * (m + u);
+            }
+
+            // Otherwise, check all the means and reset the bounds.
+            if (!found) {
+                closest = -1;
+                minDistance = Double.MAX_VALUE;
+                double second = Double.MAX_VALUE;
+                for (int c = 0; c < k; ++c) {
+                    final double dx = x - meanXs[c];
+                    final double dy = y - meanYs[c];
+                    final double d = dx * dx + dy * dy;
+                    if (d < minDistance) {
+                        second = minDistance;
+                        minDistance = d;
+                        closest = c;
+                    } else if (d < second)
+                        second = d;
+                }
+                count += k;
+                nearest[i] = closest;
+                upper[i] = Math.sqrt(minDistance);
+                lower[i] = Math.sqrt(second);
+            }
+
+            dists[i] = minDistance;
+            if (ids[i] != closest) {
+                ids[i] = closest;
+                dirty = true;
+            }
+        }
+
+        chunkCounts[chunk] = count;
+        return dirty;
+    }
+
+
+    /**
+     * Loosen the bounds of all the points by the distances the means
+     * have moved since the last assignment.
+     *
+     * @param  means        Array of x,y values of the new means.
+     * @param  executor     Executor in which to process the points in
+     *                      parallel, or null to do it all on this thread.
+     * @param  threads      The most threads to use, including this one.
+     */
+    private void loosenBounds(double[][] means,
+                              Executor executor, int threads)
+    {
+        final int k = meanXs.length;
+        if (moves == null || moves.length != k)
+            moves = new double[k];
+
+        // Find the moves, and the two biggest.
+        int maxMean = -1;
+        double max1 = 0, max2 = 0;
+        for (int c = 0; c < k; ++c) {
+            final double dx = means[c][0] - meanXs[c];
+            final double dy = means[c][1] - meanYs[c];
+            final double d = Math.sqrt(dx * dx + dy * dy);
+            moves[c] = d;
+            if (d > max1) {
+                max2 = max1;
+                max1 = d;
+                maxMean = c;
+            } else if (d > max2)
+                max2 = d;
+        }
+        distanceCount += k;
+
+        // The other means can come closer by at most the biggest move
+        // of any but the point's own mean.
+        final int maxc = maxMean;
+        final double maxMove = max1, nextMove = max2;
+        new PointLoop(numPoints) {
+            @Override
+            void chunk(int chunk, int start, int end) {
+                for (int i = start; i < end; ++i) {
+                    final int c = nearest[i];
+                    if (c < 0)
+                        continue;
+                    upper[i] += moves[c];
+                    lower[i] -= c == maxc ? nextMove : maxMove;
+                }
+            }
+        }.run(executor, threads);
+    }
+
+
+    /**
+     * Find, for each mean, half the distance to the nearest other mean.
+     * A point closer than that to its mean can't be closer to another.
+     */
+    private void findGaps() {
+        final int k = meanXs.length;
+        for (int c = 0; c < k; ++c)
+            halfGap[c] = Double.MAX_VALUE;
+        for (int c = 0; c < k; ++c) {
+            for (int o = c + 1; o < k; ++o) {
+                final double dx = meanXs[o] - meanXs[c];
+                final double dy = meanYs[o] - meanYs[c];
+                final double d = Math.sqrt(dx * dx + dy * dy) / 2;
+                if (d < halfGap[c])
+                    halfGap[c] = d;
+                if (d < halfGap[o])
+                    halfGap[o] = d;
+            }
+        }
+        distanceCount += k * (k - 1) / 2;
+    }
+
+
+    /**
+     * Get the number of distances computed by the last assignment.
+     *
+     * @return              The number of distances computed.
+     */
+    long getDistanceCount() {
+        return distanceCount;
+    }
+
+
+    // ******************************************************************** //
+    // Private Constants.
+    // ******************************************************************** //
+
+    // Relative margin by which the bounds must be clear to skip a point.
+    // The lower bounds pick up rounding error each time the means move,
+    // so this is generous.
+    private static final double MARGIN = 1e-9;
+
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // The number of points, and their co-ordinates.
+    private final int numPoints;
+    private final double[] pointXs;
+    private final double[] pointYs;
+
+    // For each point, the mean it was last assigned to, or -1 if not
+    // known; an upper bound on the distance to that mean; and a lower
+    // bound on the distance to any other mean.
+    private final int[] nearest;
+    private final double[] upper;
+    private final double[] lower;
+
+    // The means at the last assignment; for each mean, half the distance
+    // to the nearest other mean; and the distance each mean has moved.
+    private double[] meanXs = null;
+    private double[] meanYs = null;
+    private double[] halfGap = null;
+    private double[] moves = null;
+
+    // For each chunk of points, the number of distances computed and
+    // whether any point changed cluster.
+    private final long[] chunkCounts;
+    private final boolean[] chunkDirty;
+
+    // The number of distances computed by the last assignment.
+    private long distanceCount = 0;
+
+}
+
@@ -21,8 +21,6 @@
 package org.hermit.geometry.cluster;
 
 
-import java.util.Random;
-
 import org.hermit.geometry.MathTools;
 import org.hermit.geometry.Point;
 import org.hermit.geometry.Region;
@@ -34,7 +32,33 @@ import org.hermit.geometry.Region;
 public class FuzzyClusterer
     extends Clusterer
 {
-	
+
+    // ******************************************************************** //
+    // Configuration.
+    // ******************************************************************** //
+
+    /**
+     * Set the fuzziness of the clustering: the power M to which the
+     * strengths are raised to weight the points.  The default is 2;
+     * this is much faster than other values.  This takes effect on the
+     * next iteration.
+     * 
+     * @param  m           The fuzziness.  Must be greater than 1; the
+     *                     closer to 1, the harder the clustering.
+     * @throws  IllegalArgumentException    Invalid fuzziness.
+     */
+    public void setFuzziness(double m) {
+        if (!(m > 1.0))
+            throw new IllegalArgumentException("bad fuzziness in" +
+                                               " FuzzyClusterer: " + m);
+        fuzziness = m;
+    }
+
+
+    // ******************************************************************** //
+    // Clustering.
+    // ******************************************************************** //
+
     /**
      * Prepare a clustering pass on the indicated data.
      * 
@@ -52,25 +76,32 @@ public class FuzzyClusterer
         super.prepare(points, ids, means, region);
         
 	    // Save the data arrays.
-	    dataPoints = points;
         pointClusters = ids;
         clusterMeans = means;
 		numPoints = points.length;
 		numClusters = means.length;
 
-		// Set up the strengths array.
-		clusterStrengths = new double[numPoints][numClusters];
-
-		// Set the initial cluster centroids to be random values
-		// within the data region.
-        double x = region.getX1();
-        double y = region.getY1();
-        double w = region.getWidth();
-        double h = region.getHeight();
-		for (int i = 0; i < numClusters; ++i) {
-			means[i][0] = random.nextDouble() * w + x;
-			means[i][1] = random.nextDouble() * h + y;
-		}
+		// Set up the strengths array, and working data for each chunk
+		// of points, which may be processed in parallel.
+		clusterStrengths = new double[numPoints * numClusters];
+		int chunks = PointLoop.numChunks(numPoints);
+		chunkSumXs = new double[chunks * numClusters];
+		chunkSumYs = new double[chunks * numClusters];
+		chunkTotals = new double[chunks * numClusters];
+		chunkDists = new double[chunks];
+		chunkDirty = new boolean[chunks];
+
+		// Copy the co-ordinates into flat arrays, which are much faster
+		// to work on.
+        pointXs = new double[numPoints];
+        pointYs = new double[numPoints];
+        for (int i = 0; i < numPoints; ++i) {
+            pointXs[i] = points[i].getX();
+            pointYs[i] = points[i].getY();
+        }
+
+		// Set the initial cluster centroids, by the selected seeding method.
+        seedMeans(pointXs, pointYs, means, region);
         
         // Make an initial assignment of points to clusters, so on the first
 		// iteration we have a basis for computing centroids.
@@ -118,16 +149,38 @@ public class FuzzyClusterer
      *                      amount.
 	 */
 	private boolean computeCentroids(int[] ids, double[][] means) {
+	    // Compute the weighted sums of the data points for each chunk
+	    // of the points.
+	    final int k = numClusters;
+	    new PointLoop(numPoints) {
+	        @Override
+	        void chunk(int chunk, int start, int end) {
+	            final int base = chunk * k;
+	            for (int c = base; c < base + k; ++c)
+	                chunkSumXs[c] = chunkSumYs[c] = chunkTotals[c] = 0;
+	            for (int p = start; p < end; ++p) {
+	                final double x = pointXs[p], y = pointYs[p];
+	                final int row = p * k;
+	                for (int c = 0; c < k; ++c) {
+	                    final double u = clusterStrengths[row + c];
+	                    final double str = fuzziness == 2.0 ? u * u : Math.pow(u, fuzziness);
+	                    chunkSumXs[base + c] += x * str;
+	                    chunkSumYs[base + c] += y * str;
+	                    chunkTotals[base + c] += str;
+	                }
+	            }
+	        }
+	    }.run(getExecutor(), getThreads());
+	    
         boolean dirty = false;
         for (int c = 0; c < numClusters; ++c) {
-            // Compute the weighted sum of the data points.
+            // Add up the chunks in order, so that the sums are the same
+            // however the chunks were run.
             double tx = 0.0, ty = 0.0, tot = 0.0;
-            for (int p = 0; p < numPoints; ++p) {
-                Point point = dataPoints[p];
-                double str = Math.pow(clusterStrengths[p][c], M);
-                tx += point.getX() * str;
-                ty += point.getY() * str;
-                tot += str;
+            for (int base = 0; base < chunkTotals.length; base += k) {
+                tx += chunkSumXs[base + c];
+                ty += chunkSumYs[base + c];
+                tot += chunkTotals[base + c];
             }
             
             // Calculate the mean, and see if it's different from
@@ -158,38 +211,105 @@ public class FuzzyClusterer
      * @return              true iff none of the points changed to a different
      *                      cluster.
 	 */
-	private boolean assignPoints(int[] ids, double[][] means) {
+	private boolean assignPoints(final int[] ids, final double[][] means) {
+	    new PointLoop(numPoints) {
+	        @Override
+	        void chunk(int chunk, int start, int end) {
+	            chunkDirty[chunk] = assignRange(start, end, ids, means, chunk);
+	        }
+	    }.run(getExecutor(), getThreads());
+
         // Accumulate the sum of the distances squared between each
-        // point and its closest mean.
+        // point and its closest mean.  Add up the chunks in order, so
+	    // the sum doesn't depend on how they were run.
         sumDistSquared = 0.0;
+        boolean dirty = false;
+        for (int c = 0; c < chunkDists.length; ++c) {
+            sumDistSquared += chunkDists[c];
+            dirty |= chunkDirty[c];
+        }
+        
+        return !dirty;
+	}
+	
+
+	/**
+	 * Compute the strengths of a range of points in each cluster, and
+	 * assign each to the cluster in which it is strongest.
+     * 
+     * @param  start        Index of the first point.
+     * @param  end          Index after the last point.
+     * @param  ids          Array of cluster numbers which this call will
+     *                      fill in, defining which cluster each point
+     *                      belongs to.
+     * @param  means        Array of x,y values of the centroids of the
+     *                      clusters.
+     * @param  chunk        Index in chunkDists at which to place the sum
+     *                      of the distances squared.
+     * @return              true iff any of the points changed to a different
+     *                      cluster.
+	 */
+	private boolean assignRange(int start, int end, int[] ids, double[][] means, int chunk) {
+        // Accumulate the sum of the distances squared between each
+        // point and its closest mean.
+        double sumDist = 0.0;
         
+        // The strength of point p in cluster c is
+        //     1 / sum over j of (d[c] / d[j]) ^ (2 / (M - 1))
+        // where d[j] is the distance to mean j.  Written in terms of the
+        // squared distances D[j], that is
+        //     R[c] / sum over j of R[j],  R[j] = (Dmin / D[j]) ^ e
+        // with e = 1 / (M - 1), so we only need the distances once.
+        // Scaling by the nearest distance Dmin keeps every R in 0-1, with
+        // at least one R being 1, so however big e gets near M = 1,
+        // nothing can overflow or underflow to make 0 / 0.  For the usual
+        // M = 2, e is 1, and we don't need pow() at all.
+        //
         // Assign each point to a cluster, according to which cluster
-        // centroid it is closest to.  Set dirty to true if any point
-        // changes to a different cluster.
+        // centroid it is closest to, which is the one it is strongest
+        // in.  Set dirty to true if any point changes to a different
+        // cluster.
+        final int k = means.length;
+        final double e = 1 / (fuzziness - 1);
         boolean dirty = false;
-        for (int p = 0; p < numPoints; ++p) {
-            Point point = dataPoints[p];
+        for (int p = start; p < end; ++p) {
+            final double x = pointXs[p], y = pointYs[p];
+            final int row = p * k;
             int closest = -1;
             double minDistance = Double.MAX_VALUE;
-            double maxStrength = 0;
-            
-            for (int c = 0; c < means.length; ++c) {
-                double distsq = computeDistanceSquared(point, means[c]);
-                double dist = Math.sqrt(distsq);
-                double sum = 0.0;
-                for (int j = 0; j < means.length; ++j) {
-                    double djsq = computeDistanceSquared(point, means[j]);
-                    double dj = Math.sqrt(djsq);
-                    sum += Math.pow(dist / dj, 2 / (M - 1));
-                }
-                clusterStrengths[p][c] = 1 / sum;
-                if (1 / sum > maxStrength) {
-                    maxStrength = 1 / sum;
-                    closest = c;
+
+            for (int c = 0; c < k; ++c) {
+                final double distsq = computeDistanceSquared(x, y, means[c]);
+                if (distsq < minDistance) {
                     minDistance = distsq;
+                    closest = c;
                 }
+                clusterStrengths[row + c] = distsq;
             }
-            sumDistSquared += minDistance;
+
+            // A point on one or more means belongs to those equally.
+            if (minDistance == 0.0) {
+                int zeros = 0;
+                for (int c = 0; c < k; ++c)
+                    if (clusterStrengths[row + c] == 0.0)
+                        ++zeros;
+                for (int c = 0; c < k; ++c) {
+                    final boolean on = clusterStrengths[row + c] == 0.0;
+                    clusterStrengths[row + c] = on ? 1.0 / zeros : 0.0;
+                }
+            } else {
+                double sum = 0.0;
+                for (int c = 0; c < k; ++c) {
+                    final double r = minDistance / clusterStrengths[row + c];
+                    final double inv = fuzziness == 2.0 ? r : Math.pow(r, e);
+                    clusterStrengths[row + c] = inv;
+                    sum += inv;
+                }
+                final double scale = 1 / sum;
+                for (int c = 0; c < k; ++c)
+                    clusterStrengths[row + c] *= scale;
+            }
+            sumDist += minDistance;
 
             if (closest != ids[p]) {
                 ids[p] = closest;
@@ -197,16 +317,17 @@ public class FuzzyClusterer
             }
         }
 
-        return !dirty;
+        chunkDists[chunk] = sumDist;
+        return dirty;
 	}
 	
 
     /**
      * Computes the absolute squared Cartesian distance between two points.
      */
-    private static final double computeDistanceSquared(Point a, double[] b) {
-        final double dx = a.getX() - b[0];
-        final double dy = a.getY() - b[1];
+    private static final double computeDistanceSquared(double x, double y, double[] b) {
+        final double dx = x - b[0];
+        final double dy = y - b[1];
         return dx * dx + dy * dy;
     }
 
@@ -223,20 +344,42 @@ public class FuzzyClusterer
     }
 
 
-    // ******************************************************************** //
-    // Class Data.
-    // ******************************************************************** //
-	
-	// RNG used to set initial mean values.
-    private static final Random random = new Random();
-    
-    // M (power factor) used for calculating weights.  Must be > 1.0.
-    private static final double M = 2.0;
+    /**
+     * Get the number of point-to-mean distances which were computed by
+     * the most recent call to {@link #iterate()}.  This is one per point
+     * per cluster.
+     * 
+     * @return             The number of distances computed.
+     */
+    @Override
+    public long distanceCount() {
+        return (long) numPoints * numClusters;
+    }
+
+
+    /**
+     * Get the degree to which a point belongs to a cluster, as found by
+     * the most recent call to {@link #iterate()}, or by
+     * {@link #prepare(Point[], int[], double[][], Region)} before the
+     * first iteration.  A point's strengths in all the clusters add
+     * up to 1.
+     * 
+     * @param  point       The index of the point.
+     * @param  cluster     The index of the cluster.
+     * @return             The point's strength in the cluster.
+     */
+    public double getStrength(int point, int cluster) {
+        return clusterStrengths[point * numClusters + cluster];
+    }
+
 
-    
     // ******************************************************************** //
     // Private Data.
     // ******************************************************************** //
+
+    // The fuzziness M (power factor) used for calculating weights.
+    // Must be > 1.0.
+    private double fuzziness = 2.0;
    
     // The number of points in the data set on a given pass.
     private int numPoints;
@@ -244,9 +387,10 @@ public class FuzzyClusterer
     // The desired number of clusters.
     private int numClusters;
     
-    // During a pass -- multiple iterations -- this points to the
-    // array of data points.
-    private Point[] dataPoints;
+    // During a pass -- multiple iterations -- these hold the
+    // co-ordinates of the data points.
+    private double[] pointXs;
+    private double[] pointYs;
     
     // Cluster IDs to which the points have been assigned by the most
     // recent iteration.  This will be null if prepare() hasn't been called,
@@ -262,9 +406,18 @@ public class FuzzyClusterer
     // of its assigned cluster in the current solution.
     private double sumDistSquared = 0.0;
 
-    // For each point p, clusterStrengths[p][c] is its degree of
-    // belonging to each cluster c.
-    private double[][] clusterStrengths;
+    // For each point p, clusterStrengths[p * numClusters + c] is its
+    // degree of belonging to each cluster c.
+    private double[] clusterStrengths;
+    
+    // Working data for each chunk of the points -- the weighted sums
+    // and total weights for each cluster, the sum of the distances
+    // squared, and whether any point changed cluster.
+    private double[] chunkSumXs;
+    private double[] chunkSumYs;
+    private double[] chunkTotals;
+    private double[] chunkDists;
+    private boolean[] chunkDirty;
 
 }
 
@@ -28,10 +28,59 @@ import org.hermit.geometry.Region;
 
 /**
  * An implementation of Lloyd's k-clusterMeans clustering algorithm.
+ * 
+ * <p>By default, points are assigned to clusters using a k-d tree
+ * over the data, which lets whole groups of points be assigned at once;
+ * see {@link #setAssignment(Assignment)} for the alternatives.  All of
+ * them give exactly the same results as checking every point against
+ * every mean.
  */
 public class KMeansClusterer
     extends Clusterer
 {
+
+    // ******************************************************************** //
+    // Public Constants.
+    // ******************************************************************** //
+
+    /**
+     * Methods of assigning points to their nearest clusters.
+     */
+    public enum Assignment {
+        /** Check every point against every mean.  This is the plain
+         * Lloyd's algorithm, and is the reference for the others. */
+        BRUTE_FORCE,
+        
+        /** Use a k-d tree over the data points to rule out means for
+         * whole groups of points at once. */
+        KD_TREE,
+        
+        /** Keep upper and lower bounds on each point's distances to
+         * the means, so that points which can't have changed cluster
+         * are skipped (Hamerly's algorithm). */
+        BOUNDS;
+    }
+    
+
+    // ******************************************************************** //
+    // Configuration.
+    // ******************************************************************** //
+
+    /**
+     * Select the method used to assign points to clusters.  This takes
+     * effect on the next iteration.  The results are identical whichever
+     * method is used; only the speed differs.
+     * 
+     * @param  method      The assignment method to use.
+     */
+    public void setAssignment(Assignment method) {
+        assignment = method;
+    }
+    
+
+    // ******************************************************************** //
+    // Clustering.
+    // ******************************************************************** //
 	
     /**
      * Prepare a clustering pass on the indicated data.
@@ -51,24 +100,36 @@ public class KMeansClusterer
             
 	    // Save the data arrays.
         dataRegion = region;
-	    dataPoints = points;
         pointClusters = ids;
         clusterMeans = means;
 		numPoints = points.length;
 		numClusters = means.length;
 
-        // Make the working data arrays.
-        sumXs = new int[numClusters];
-        sumYs = new int[numClusters];
+        // Make the working data arrays.  Take a flat copy of the point
+        // co-ordinates, which is quicker to work through.
+        sumXs = new double[numClusters];
+        sumYs = new double[numClusters];
         clusterSizes = new int[numClusters];
+        pointXs = new double[numPoints];
+        pointYs = new double[numPoints];
+        for (int i = 0; i < numPoints; ++i) {
+            pointXs[i] = points[i].getX();
+            pointYs[i] = points[i].getY();
+        }
+        pointDists = new double[numPoints];
+        kdTree = null;
+        distanceBounds = null;
+        
+        // Working data for each chunk of points, which may be processed
+        // in parallel.
+        int chunks = PointLoop.numChunks(numPoints);
+        chunkSumXs = new double[chunks * numClusters];
+        chunkSumYs = new double[chunks * numClusters];
+        chunkSizes = new int[chunks * numClusters];
+        chunkDists = new double[chunks];
 
-		// Set the initial cluster centroids to be random values
-		// within the data region.
-		for (int i = 0; i < numClusters; ++i) {
-		    Point p = dataRegion.randomPoint();
-			means[i][0] = p.getX();
-			means[i][1] = p.getY();
-		}
+		// Set the initial cluster centroids, by the selected seeding method.
+		seedMeans(pointXs, pointYs, means, dataRegion);
         
         // Make an initial assignment of points to clusters, so on the first
 		// iteration we have a basis for computing centroids.
@@ -89,6 +150,7 @@ public class KMeansClusterer
 	@Override
     public boolean iterate() {
         System.out.println("K-Means: iterate");
+        numDistances = 0;
         
         // Compute the new centroids of the clusters, based on the existing
         // point assignments.
@@ -115,18 +177,39 @@ public class KMeansClusterer
      * @return              true iff none of the means moved by a significant
      *                      amount.
 	 */
-	private boolean computeCentroids(int[] ids, double[][] means) {
-	    // Clear the working data.
-        for (int i = 0; i < numClusters; ++i)
-            sumXs[i] = sumYs[i] = clusterSizes[i] = 0;
-        
-        // Calculate the sums of the points in each cluster.
-        for (int i = 0; i < numPoints; ++i) {
-            Point point = dataPoints[i];
-            int c = ids[i];
-            sumXs[c] += point.getX();
-            sumYs[c] += point.getY();
-            clusterSizes[c] += 1;
+	private boolean computeCentroids(final int[] ids, double[][] means) {
+        // Calculate the sums of the points in each cluster, for each
+	    // chunk of the points.
+	    final int k = numClusters;
+	    new PointLoop(numPoints) {
+	        @Override
+	        void chunk(int chunk, int start, int end) {
+	            final int base = chunk * k;
+	            for (int c = base; c < base + k; ++c) {
+	                chunkSumXs[c] = chunkSumYs[c] = 0;
+	                chunkSizes[c] = 0;
+	            }
+	            for (int i = start; i < end; ++i) {
+	                final int c = base + ids[i];
+	                chunkSumXs[c] += pointXs[i];
+	                chunkSumYs[c] += pointYs[i];
+	                chunkSizes[c] += 1;
+	            }
+	        }
+	    }.run(getExecutor(), getThreads());
+	    
+	    // Add up the chunks in order, so that the sums are the same
+	    // however the chunks were run.
+        for (int c = 0; c < k; ++c) {
+            sumXs[c] = sumYs[c] = 0;
+            clusterSizes[c] = 0;
+        }
+        for (int base = 0; base < chunkSizes.length; base += k) {
+            for (int c = 0; c < k; ++c) {
+                sumXs[c] += chunkSumXs[base + c];
+                sumYs[c] += chunkSumYs[base + c];
+                clusterSizes[c] += chunkSizes[base + c];
+            }
         }
         
         // Now calculate the means for each cluster, and see if any has
@@ -139,7 +222,7 @@ public class KMeansClusterer
             // the average of the points in the cluster.
             double nx, ny;
             if (s == 0) {
-                Point p = dataRegion.randomPoint();
+                Point p = randomPoint(dataRegion);
                 nx = p.getX();
                 ny = p.getY();
             } else {
@@ -170,46 +253,106 @@ public class KMeansClusterer
      * @return              true iff none of the points changed to a different
      *                      cluster.
 	 */
-	private boolean assignPoints(int[] ids, double[][] means) {
-	    // Accumulate the sum of the distances squared between each
-        // point and its closest mean.
+	private boolean assignPoints(final int[] ids, final double[][] means) {
+	    // Find the closest mean to each point, and the distance squared
+	    // to it.  A tree or bounds will do this for us.
+	    boolean unchanged;
+	    if (assignment == Assignment.KD_TREE) {
+	        if (kdTree == null)
+	            kdTree = new KdTree(pointXs, pointYs);
+	        unchanged = kdTree.assign(means, ids, pointDists,
+	                                  getExecutor(), getThreads());
+	        numDistances = kdTree.getDistanceCount();
+	    } else if (assignment == Assignment.BOUNDS) {
+	        if (distanceBounds == null)
+	            distanceBounds = new DistanceBounds(pointXs, pointYs);
+	        unchanged = distanceBounds.assign(means, ids, pointDists,
+	                                          getExecutor(), getThreads());
+	        numDistances = distanceBounds.getDistanceCount();
+	    } else {
+	        unchanged = assignBruteForce(ids, means);
+	        numDistances = (long) numPoints * means.length;
+	    }
+	    
+        // Accumulate the sum of the distances squared between each
+        // point and its closest mean.  Add up each chunk, then the
+	    // chunks in order, so the sum doesn't depend on how the chunks
+	    // were run.
+	    new PointLoop(numPoints) {
+	        @Override
+	        void chunk(int chunk, int start, int end) {
+	            double sum = 0.0;
+	            for (int i = start; i < end; ++i)
+	                sum += pointDists[i];
+	            chunkDists[chunk] = sum;
+	        }
+	    }.run(getExecutor(), getThreads());
 	    sumDistSquared = 0.0;
+	    for (double d : chunkDists)
+	        sumDistSquared += d;
 	    
+	    return unchanged;
+	}
+	
+	
+	/**
+	 * Assign each point in the data array to the cluster whose centroid
+	 * it is closest to, by checking every point against every mean.
+	 * This is the reference for the other assignment methods.
+     * 
+     * @param  ids          Array of cluster numbers which this call will
+     *                      fill in, defining which cluster each point
+     *                      belongs to.
+     * @param  means        Array of x,y values of the centroids of the
+     *                      clusters.
+     * @return              true iff none of the points changed to a different
+     *                      cluster.
+	 */
+	private boolean assignBruteForce(final int[] ids, final double[][] means) {
         // Assign each point to a cluster, according to which cluster
-        // centroid it is closest to.  Set dirty to true if any point
-        // changes to a different cluster.
-        boolean dirty = false;
-        for (int i = 0; i < numPoints; ++i) {
-            // Find the closest mean to the current data point.  Also
-            // accumulate the sum of the distances squared.
-            Point point = dataPoints[i];
-            int closest = -1;
-            double minDistance = Double.MAX_VALUE;
-            for (int c = 0; c < means.length; ++c) {
-                double distance = computeDistanceSquared(point, means[c]);
-                if (distance < minDistance) {
-                    minDistance = distance;
-                    closest = c;
-                }
-            }
-            sumDistSquared += minDistance;
-            
-            if (closest != ids[i]) {
-                ids[i] = closest;
-                dirty = true;
-            }
-        }
-        
-        return !dirty;
+        // centroid it is closest to.  Note in each chunk whether any
+	    // point changes to a different cluster.
+	    final boolean[] dirty = new boolean[chunkDists.length];
+	    new PointLoop(numPoints) {
+	        @Override
+	        void chunk(int chunk, int start, int end) {
+	            for (int i = start; i < end; ++i) {
+	                // Find the closest mean to the current data point, and
+	                // the distance squared to it.
+	                final double x = pointXs[i];
+	                final double y = pointYs[i];
+	                int closest = -1;
+	                double minDistance = Double.MAX_VALUE;
+	                for (int c = 0; c < means.length; ++c) {
+	                    double distance = computeDistanceSquared(x, y, means[c]);
+	                    if (distance < minDistance) {
+	                        minDistance = distance;
+	                        closest = c;
+	                    }
+	                }
+	                pointDists[i] = minDistance;
+
+	                if (closest != ids[i]) {
+	                    ids[i] = closest;
+	                    dirty[chunk] = true;
+	                }
+	            }
+	        }
+	    }.run(getExecutor(), getThreads());
+
+	    for (boolean d : dirty)
+	        if (d)
+	            return false;
+	    return true;
 	}
 
 
 	/**
 	 * Computes the absolute squared Cartesian distance between two points.
 	 */
-	private static final double computeDistanceSquared(Point a, double[] b) {
-	    final double dx = a.getX() - b[0];
-	    final double dy = a.getY() - b[1];
+	private static final double computeDistanceSquared(double x, double y, double[] b) {
+	    final double dx = x - b[0];
+	    final double dy = y - b[1];
 		return dx * dx + dy * dy;
 	}
 
@@ -226,6 +369,21 @@ public class KMeansClusterer
     }
 
 
+    /**
+     * Get the number of point-to-mean distances which were computed by
+     * the most recent call to {@link #iterate()}, or by
+     * {@link #prepare(Point[], int[], double[][], Region)} before the
+     * first iteration.  For the tree and bounds methods, this includes
+     * the distances between means, and from means to tree nodes.
+     * 
+     * @return             The number of distances computed.
+     */
+    @Override
+    public long distanceCount() {
+        return numDistances;
+    }
+
+
     // ******************************************************************** //
     // Private Data.
     // ******************************************************************** //
@@ -239,10 +397,6 @@ public class KMeansClusterer
     // The desired number of clusters.
     private int numClusters;
     
-    // During a pass -- multiple iterations -- this points to the
-    // array of data points.
-    private Point[] dataPoints;
-    
     // Cluster IDs to which the points have been assigned by the most
     // recent iteration.  This will be null if prepare() hasn't been called,
     // and is filled in by each call to iterate().
@@ -257,10 +411,35 @@ public class KMeansClusterer
     // of its assigned cluster in the current solution.
     private double sumDistSquared = 0.0;
 
+    // The co-ordinates of the data points.
+    private double[] pointXs;
+    private double[] pointYs;
+    
     // Working data -- sums and counts, used to average the clusters.
-    private int[] sumXs;
-    private int[] sumYs;
+    private double[] sumXs;
+    private double[] sumYs;
     private int[] clusterSizes;
+    
+    // The method used to assign points to clusters.
+    private Assignment assignment = Assignment.KD_TREE;
+    
+    // The k-d tree over the data points, and the distance bounds for
+    // the points, if we've made them.
+    private KdTree kdTree = null;
+    private DistanceBounds distanceBounds = null;
+    
+    // The distance squared from each point to its mean.
+    private double[] pointDists = null;
+    
+    // Working data for each chunk of the points -- the sums and counts
+    // for each cluster, and the sum of the distances squared.
+    private double[] chunkSumXs;
+    private double[] chunkSumYs;
+    private int[] chunkSizes;
+    private double[] chunkDists;
+    
+    // The number of distances computed by the last assignment of points.
+    private long numDistances = 0;
 
 }
 
@@ -0,0 +1,550 @@
+
+/**
+ * cluster: routines for cluster analysis.
+ *
+ * <p>This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
+ * 02111-1307, USA.
+ */
+
+
+package org.hermit.geometry.cluster;
+
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+
+/**
+ * A k-d tree over a fixed set of data points, used to assign the points
+ * to their nearest cluster means by the filtering algorithm of Kanungo
+ * et al.
+ *
+ * <p>Each node records the bounding box, the count and the coordinate
+ * sums of its points.  Assignment walks the tree carrying a list of
+ * candidate means; at each node, any candidate which is further than
+ * some other candidate from every point of the node's box is dropped.
+ * Once a single candidate is left, the whole subtree belongs to it.
+ * Separate subtrees may be walked in parallel.
+ *
+ * <p>A candidate is only dropped if it loses by a clear margin, so
+ * the assignments are exactly those of a brute-force search, including
+ * the choice of the lowest-numbered mean on ties.
+ */
+final class KdTree {
+
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Build a tree over the given points.
+     *
+     * @param  xs           X co-ordinates of the points.  These are copied.
+     * @param  ys           Y co-ordinates of the points.  These are copied.
+     */
+    KdTree(double[] xs, double[] ys) {
+        numPoints = xs.length;
+        order = new int[numPoints];
+        for (int i = 0; i < numPoints; ++i)
+            order[i] = i;
+        pointXs = new double[numPoints];
+        pointYs = new double[numPoints];
+
+        // A node of more than LEAF_SIZE points is split in half, so every
+        // leaf has at least LEAF_SIZE / 2 points.
+        int max = numPoints * 4 / LEAF_SIZE + 1;
+        nodeStart = new int[max];
+        nodeEnd = new int[max];
+        nodeLeft = new int[max];
+        nodeRight = new int[max];
+        nodeMinX = new double[max];
+        nodeMinY = new double[max];
+        nodeMaxX = new double[max];
+        nodeMaxY = new double[max];
+        nodeSumX = new double[max];
+        nodeSumY = new double[max];
+
+        numNodes = 0;
+        if (numPoints > 0)
+            build(xs, ys, 0, numPoints, 0);
+
+        // Put the points in tree order, so that each node's points
+        // are together.
+        for (int j = 0; j < numPoints; ++j) {
+            pointXs[j] = xs[order[j]];
+            pointYs[j] = ys[order[j]];
+        }
+    }
+
+
+    /**
+     * Build the subtree over the given range of the order array.
+     *
+     * @param  xs           X co-ordinates of the points.
+     * @param  ys           Y co-ordinates of the points.
+     * @param  start        Index in order of the first point.
+     * @param  end          Index in order after the last point.
+     * @param  depth        Depth of this node in the tree.
+     * @return              The index of the new node.
+     */
+    private int build(double[] xs, double[] ys, int start, int end, int depth) {
+        final int node = numNodes++;
+        if (depth > maxDepth)
+            maxDepth = depth;
+
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        double sx = 0, sy = 0;
+        for (int j = start; j < end; ++j) {
+            final double x = xs[order[j]];
+            final double y = ys[order[j]];
+            if (x < minX) minX = x;
+            if (x > maxX) maxX = x;
+            if (y < minY) minY = y;
+            if (y > maxY) maxY = y;
+            sx += x;
+            sy += y;
+        }
+        nodeStart[node] = start;
+        nodeEnd[node] = end;
+        nodeMinX[node] = minX;
+        nodeMinY[node] = minY;
+        nodeMaxX[node] = maxX;
+        nodeMaxY[node] = maxY;
+        nodeSumX[node] = sx;
+        nodeSumY[node] = sy;
+
+        if (end - start <= LEAF_SIZE) {
+            nodeLeft[node] = nodeRight[node] = -1;
+            return node;
+        }
+
+        // Split at the median of the wider dimension.
+        final int mid = (start + end) / 2;
+        select(maxX - minX >= maxY - minY ? xs : ys, start, end, mid);
+        nodeLeft[node] = build(xs, ys, start, mid, depth + 1);
+        nodeRight[node] = build(xs, ys, mid, end, depth + 1);
+        return node;
+    }
+
+
+    /**
+     * Partially sort a range of the order array, so that the point at
+     * index nth is where it would be in a full sort by the given
+     * co-ordinate, with none after it smaller and none before it larger.
+     */
+    private void select(double[] vals, int start, int end, int nth) {
+        int lo = start, hi = end - 1;
+        while (hi > lo) {
+            // Median of three pivot.
+            final int m = (lo + hi) >>> 1;
+            final double a = vals[order[lo]], b = vals[order[m]], c = vals[order[hi]];
+            final double pivot = a < b ? (b < c ? b : (a < c ? c : a))
+                                       : (a < c ? a : (b < c ? c : b));
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (vals[order[i]] < pivot)
+                    ++i;
+                while (vals[order[j]] > pivot)
+                    --j;
+                if (i <= j) {
+                    final int t = order[i];
+                    order[i++] = order[j];
+                    order[j--] = t;
+                }
+            }
+            if (nth <= j)
+                hi = j;
+            else if (nth >= i)
+                lo = i;
+            else
+                break;
+        }
+    }
+
+
+    // ******************************************************************** //
+    // Assignment.
+    // ******************************************************************** //
+
+    /**
+     * Assign each point to the nearest of the given means.
+     *
+     * @param  means        Array of x,y values of the cluster means.
+     * @param  ids          Array in which to place the index of the
+     *                      nearest mean to each point.
+     * @param  dists        Array in which to place the squared distance
+     *                      from each point to its nearest mean.
+     * @param  executor     Executor in which to walk the subtrees in
+     *                      parallel, or null to do it all on this thread.
+     * @param  threads      The most threads to use, including this one.
+     * @return              true iff none of the points changed to a different
+     *                      cluster.
+     */
+    boolean assign(double[][] means, int[] ids, double[] dists,
+                   Executor executor, int threads)
+    {
+        final int k = means.length;
+        if (meanXs == null || meanXs.length != k) {
+            meanXs = new double[k];
+            meanYs = new double[k];
+        }
+        for (int c = 0; c < k; ++c) {
+            meanXs[c] = means[c][0];
+            meanYs[c] = means[c][1];
+        }
+
+        pointIds = ids;
+        pointDists = dists;
+        distanceCount = 0;
+        boolean dirty = false;
+        if (numPoints > 0 && k > 0) {
+            int[] all = new int[k];
+            for (int c = 0; c < k; ++c)
+                all[c] = c;
+
+            // Each point is assigned independently, and the counts are
+            // integers, so the results don't depend on how the tree
+            // was split up.
+            Walker walker = new Walker(k);
+            if (executor == null)
+                walker.filter(0, all, k, 0);
+            else {
+                ArrayList<Subtree> tasks = new ArrayList<Subtree>();
+                split(walker, 0, all, k, 0, tasks);
+                Subtree[] run = tasks.toArray(new Subtree[tasks.size()]);
+                PointLoop.runAll(run, executor, threads);
+                for (Subtree task : run) {
+                    walker.distanceCount += task.distanceCount;
+                    walker.dirty |= task.dirty;
+                }
+            }
+            distanceCount = walker.distanceCount;
+            dirty = walker.dirty;
+        }
+        pointIds = null;
+        pointDists = null;
+
+        return !dirty;
+    }
+
+
+    /**
+     * Get the number of distances computed by the last assignment.
+     *
+     * @return              The number of distances computed.
+     */
+    long getDistanceCount() {
+        return distanceCount;
+    }
+
+
+    /**
+     * The state of a walk over a subtree, assigning its points.  Each
+     * thread has its own.
+     */
+    private final class Walker {
+
+        Walker(int k) {
+            candidates = new int[maxDepth + 2][k];
+        }
+
+        /**
+         * Assign the points of a subtree.
+         *
+         * @param  node         The root of the subtree.
+         * @param  cands        The candidate means, in ascending order.
+         *                      This may be candidates[depth].
+         * @param  count        Number of candidates in cands.
+         * @param  depth        Depth of node in the tree.
+         */
+        void filter(int node, int[] cands, int count, int depth) {
+            if (count == 1) {
+                assignAll(node, cands[0]);
+                return;
+            }
+
+            final int[] next = candidates[depth + 1];
+            final int kept = prune(node, cands, count, next);
+            if (kept == 1)
+                assignAll(node, next[0]);
+            else if (nodeLeft[node] < 0)
+                assignEach(node, next, kept);
+            else {
+                filter(nodeLeft[node], next, kept, depth + 1);
+                filter(nodeRight[node], next, kept, depth + 1);
+            }
+        }
+
+        /**
+         * Drop the candidates which can't be nearest to any point in a
+         * node.
+         *
+         * @param  node         The node.
+         * @param  cands        The candidate means, in ascending order.
+         * @param  count        Number of candidates in cands.
+         * @param  next         Array in which to place the remaining
+         *                      candidates, in ascending order.
+         * @return              The number of remaining candidates.
+         */
+        int prune(int node, int[] cands, int count, int[] next) {
+            // Take the candidate nearest the centroid of the node's points
+            // as the one most likely to beat the others.
+            final int n = nodeEnd[node] - nodeStart[node];
+            final double cx = nodeSumX[node] / n;
+            final double cy = nodeSumY[node] / n;
+            int best = cands[0];
+            double bestDist = Double.MAX_VALUE;
+            for (int i = 0; i < count; ++i) {
+                final int c = cands[i];
+                final double dx = cx - meanXs[c];
+                final double dy = cy - meanYs[c];
+                final double d = dx * dx + dy * dy;
+                if (d < bestDist) {
+                    bestDist = d;
+                    best = c;
+                }
+            }
+            distanceCount += count;
+
+            // Drop the candidates which best beats throughout the node.
+            int kept = 0;
+            for (int i = 0; i < count; ++i) {
+                final int c = cands[i];
+                if (c == best || !dominated(best, c, node))
+                    next[kept++] = c;
+            }
+            return kept;
+        }
+
+        /**
+         * Determine whether a candidate mean is further than another from
+         * every point in a node's bounding box.
+         *
+         * <p>The difference of the squared distances to the two means is
+         * linear in the point, so it is least at the corner of the box
+         * furthest towards the loser.  We require the loser to be behind
+         * by enough that rounding can't make it win or tie for any point.
+         *
+         * @param  win          The candidate which may win.
+         * @param  lose         The candidate which may lose.
+         * @param  node         The node to check.
+         * @return              true iff lose is further away everywhere.
+         */
+        private boolean dominated(int win, int lose, int node) {
+            final double wx = meanXs[win], wy = meanYs[win];
+            final double lx = meanXs[lose], ly = meanYs[lose];
+            final double vx = lx > wx ? nodeMaxX[node] : nodeMinX[node];
+            final double vy = ly > wy ? nodeMaxY[node] : nodeMinY[node];
+
+            double dx = vx - wx, dy = vy - wy;
+            final double dw = dx * dx + dy * dy;
+            dx = vx - lx;
+            dy = vy - ly;
+            final double dl = dx * dx + dy * dy;
+            dx = nodeMaxX[node] - nodeMinX[node];
+            dy = nodeMaxY[node] - nodeMinY[node];
+            final double diag = dx * dx + dy * dy;
+            distanceCount += 2;
+
+            return dl - dw > MARGIN * (dl + dw + diag);
+        }
+
+        /**
+         * Assign all the points in a subtree to the given mean.
+         */
+        void assignAll(int node, int c) {
+            final double mx = meanXs[c], my = meanYs[c];
+            final int end = nodeEnd[node];
+            for (int j = nodeStart[node]; j < end; ++j) {
+                final double dx = pointXs[j] - mx;
+                final double dy = pointYs[j] - my;
+                setPoint(order[j], c, dx * dx + dy * dy);
+            }
+            distanceCount += end - nodeStart[node];
+        }
+
+        /**
+         * Assign each point in a leaf to the nearest of the given
+         * candidates, which must be in ascending order.
+         */
+        private void assignEach(int node, int[] cands, int count) {
+            final int end = nodeEnd[node];
+            for (int j = nodeStart[node]; j < end; ++j) {
+                final double x = pointXs[j], y = pointYs[j];
+                int closest = -1;
+                double minDistance = Double.MAX_VALUE;
+                for (int i = 0; i < count; ++i) {
+                    final int c = cands[i];
+                    final double dx = x - meanXs[c];
+                    final double dy = y - meanYs[c];
+                    final double d = dx * dx + dy * dy;
+                    if (d < minDistance) {
+                        minDistance = d;
+                        closest = c;
+                    }
+                }
+                setPoint(order[j], closest, minDistance);
+            }
+            distanceCount += (long) (end - nodeStart[node]) * count;
+        }
+
+        private void setPoint(int i, int c, double dist) {
+            pointDists[i] = dist;
+            if (pointIds[i] != c) {
+                pointIds[i] = c;
+                dirty = true;
+            }
+        }
+
+        // The list of candidate means at each level of the tree, plus
+        // one for the candidates left at a leaf.
+        private final int[][] candidates;
+
+        // Whether any ID changed, and the number of distances computed.
+        boolean dirty = false;
+        long distanceCount = 0;
+    }
+
+
+    // ******************************************************************** //
+    // Parallel Tasks.
+    // ******************************************************************** //
+
+    /**
+     * Split the tree into subtrees small enough to be walked by one
+     * task each.  The nodes above them are pruned here, on the given
+     * walker, so each task starts with the candidates left at its root.
+     *
+     * @param  walker       Walker on which to prune the upper nodes.
+     * @param  node         The root of the subtree to split.
+     * @param  cands        The candidate means, in ascending order.
+     * @param  count        Number of candidates in cands.
+     * @param  depth        Depth of node in the tree.
+     * @param  tasks        List to which to add the tasks.
+     */
+    private void split(Walker walker, int node, int[] cands, int count,
+                       int depth, ArrayList<Subtree> tasks)
+    {
+        int left = nodeLeft[node];
+        if (left < 0 || nodeEnd[node] - nodeStart[node] <= TASK_SIZE) {
+            tasks.add(new Subtree(node, cands, count, depth));
+            return;
+        }
+
+        int[] next = new int[count];
+        int kept = walker.prune(node, cands, count, next);
+        if (kept == 1) {
+            walker.assignAll(node, next[0]);
+            return;
+        }
+        split(walker, left, next, kept, depth + 1, tasks);
+        split(walker, nodeRight[node], next, kept, depth + 1, tasks);
+    }
+
+
+    /**
+     * A task which assigns the points of a subtree, starting with the
+     * candidates left at its root.
+     */
+    private final class Subtree
+        implements Runnable
+    {
+        Subtree(int node, int[] cands, int count, int depth) {
+            this.node = node;
+            this.cands = cands;
+            this.count = count;
+            this.depth = depth;
+        }
+
+        public void run() {
+            Walker walker = new Walker(cands.length);
+            walker.filter(node, cands, count, depth);
+            dirty = walker.dirty;
+            distanceCount = walker.distanceCount;
+        }
+
+        private final int node;
+        private final int[] cands;
+        private final int count;
+        private final int depth;
+
+        // Results: whether any ID changed, and the number of distances
+        // computed.
+        boolean dirty = false;
+        long distanceCount = 0;
+    }
+
+
+    // ******************************************************************** //
+    // Private Constants.
+    // ******************************************************************** //
+
+    // Maximum number of points in a leaf.
+    private static final int LEAF_SIZE = 8;
+
+    // Relative margin by which a candidate must lose to be dropped.  This
+    // is far larger than the rounding error in the distances.
+    private static final double MARGIN = 1e-12;
+
+    // Subtrees of at most this many points are walked by a single task.
+    private static final int TASK_SIZE = 8192;
+
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // The number of points in the tree.
+    private final int numPoints;
+
+    // Point indices in tree order, and the co-ordinates of the points
+    // in tree order.
+    private final int[] order;
+    private final double[] pointXs;
+    private final double[] pointYs;
+
+    // The number of nodes in the tree, and the maximum depth of a node.
+    // The root is node 0.
+    private int numNodes;
+    private int maxDepth = 0;
+
+    // For each node, the range of its points in the order array, and
+    // its children; the children are -1 for a leaf.
+    private final int[] nodeStart;
+    private final int[] nodeEnd;
+    private final int[] nodeLeft;
+    private final int[] nodeRight;
+
+    // For each node, the bounding box and the sums of its points.
+    private final double[] nodeMinX;
+    private final double[] nodeMinY;
+    private final double[] nodeMaxX;
+    private final double[] nodeMaxY;
+    private final double[] nodeSumX;
+    private final double[] nodeSumY;
+
+    // The means being assigned to.
+    private double[] meanXs = null;
+    private double[] meanYs = null;
+
+    // Output arrays during an assignment.
+    private int[] pointIds = null;
+    private double[] pointDists = null;
+
+    // The number of distances computed by the last assignment.
+    private long distanceCount = 0;
+
+}
+
@@ -0,0 +1,386 @@
+
+/**
+ * cluster: routines for cluster analysis.
+ *
+ * <p>This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
+ * 02111-1307, USA.
+ */
+
+
+package org.hermit.geometry.cluster;
+
+
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import net.goui.util.MTRandom;
+
+
+/**
+ * Routines for choosing the initial cluster means from the data.
+ *
+ * <p>k-means++ (Arthur and Vassilvitskii) picks each mean from the data
+ * points, with probability proportional to the squared distance from
+ * the point to the nearest mean already picked.  This spreads the means
+ * out over the data, and needs k passes over it.  As is usual, we
+ * try a few points for each mean, and keep the best.
+ *
+ * <p>k-means|| (Bahmani et al.) needs only a few passes: each pass
+ * samples about 2k points independently, by the same weighting.  The
+ * candidates are then weighted by the number of points nearest each,
+ * and k-means++ picks k means from them.  The passes over the data are
+ * split into chunks which can run in parallel.  Each chunk samples with
+ * its own generator, seeded in chunk order from the caller's, so the
+ * results don't depend on the number of threads.
+ */
+final class MeanSeeder {
+
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * No instances.
+     */
+    private MeanSeeder() {
+    }
+
+
+    // ******************************************************************** //
+    // Seeding.
+    // ******************************************************************** //
+
+    /**
+     * Pick means from the given points by k-means++.
+     *
+     * @param  xs           X co-ordinates of the points.  There must be
+     *                      at least one.
+     * @param  ys           Y co-ordinates of the points.
+     * @param  weights      Weight of each point, or null if all are 1.
+     * @param  means        Array of x,y values in which to place the means.
+     * @param  rand         Random number generator to use.
+     */
+    static void plusPlus(double[] xs, double[] ys, double[] weights,
+                         double[][] means, Random rand)
+    {
+        final int n = xs.length;
+        if (means.length == 0)
+            return;
+
+        // Pick the first mean by weight alone.
+        int first;
+        if (weights == null)
+            first = rand.nextInt(n);
+        else
+            first = pick(weights, null, total(weights, null), rand);
+        means[0][0] = xs[first];
+        means[0][1] = ys[first];
+
+        double[] dists = new double[n];
+        for (int i = 0; i < n; ++i)
+            dists[i] = Double.MAX_VALUE;
+        extend(xs, ys, weights, dists, means, 0, rand);
+    }
+
+
+    /**
+     * Pick means from the given points by k-means||.
+     *
+     * @param  xs           X co-ordinates of the points.  There must be
+     *                      at least one.
+     * @param  ys           Y co-ordinates of the points.
+     * @param  means        Array of x,y values in which to place the means.
+     * @param  rand         Random number generator to use.
+     * @param  executor     Executor in which to process the points in
+     *                      parallel, or null to do it all on this thread.
+     * @param  threads      The most threads to use, including this one.
+     */
+    static void parallel(double[] xs, double[] ys, double[][] means,
+                         Random rand, Executor executor, int threads)
+    {
+        final int n = xs.length;
+        final int k = means.length;
+        if (k == 0)
+            return;
+
+        // Start from one random point.  For each point we keep the
+        // squared distance to the nearest candidate, and which it is.
+        double[] candXs = new double[k * OVERSAMPLE + 1];
+        double[] candYs = new double[k * OVERSAMPLE + 1];
+        int numCands = 0;
+        final int first = rand.nextInt(n);
+        candXs[numCands] = xs[first];
+        candYs[numCands++] = ys[first];
+        double[] dists = new double[n];
+        int[] nearest = new int[n];
+        for (int i = 0; i < n; ++i)
+            dists[i] = Double.MAX_VALUE;
+        double psi = updateNearest(xs, ys, candXs, candYs, 0, 1,
+                                   dists, nearest, executor, threads);
+
+        // Each round, take each point with probability proportional to
+        // its distance, so as to get about OVERSAMPLE * k new candidates.
+        final double expect = (double) k * OVERSAMPLE;
+        for (int r = 0; r < ROUNDS; ++r) {
+            if (psi <= 0)
+                break;
+            final int[] picked = sample(dists, psi, expect, rand, executor, threads);
+            final int start = numCands;
+            if (numCands + picked.length > candXs.length) {
+                final int size = Math.max(numCands * 2, numCands + picked.length);
+                candXs = resize(candXs, size);
+                candYs = resize(candYs, size);
+            }
+            for (int i : picked) {
+                candXs[numCands] = xs[i];
+                candYs[numCands++] = ys[i];
+            }
+            psi = updateNearest(xs, ys, candXs, candYs, start, numCands,
+                                dists, nearest, executor, threads);
+        }
+
+        // If we don't have more candidates than means, use them all, and
+        // pick the rest from the data.
+        if (numCands <= k) {
+            for (int c = 0; c < numCands; ++c) {
+                means[c][0] = candXs[c];
+                means[c][1] = candYs[c];
+            }
+            extend(xs, ys, null, dists, means, numCands - 1, rand);
+            return;
+        }
+
+        // Weight each candidate by the number of points it's nearest to,
+        // and pick the means from the candidates.
+        double[] weights = new double[numCands];
+        for (int i = 0; i < n; ++i)
+            weights[nearest[i]] += 1;
+        plusPlus(resize(candXs, numCands), resize(candYs, numCands), weights, means, rand);
+    }
+
+
+    // ******************************************************************** //
+    // Private Methods.
+    // ******************************************************************** //
+
+    /**
+     * Pick the remaining means by k-means++.
+     *
+     * @param  xs           X co-ordinates of the points.
+     * @param  ys           Y co-ordinates of the points.
+     * @param  weights      Weight of each point, or null if all are 1.
+     * @param  dists        The squared distance from each point to the
+     *                      nearest of the means up to but not including
+     *                      last; updated as we go.
+     * @param  means        Array of x,y values of the means.
+     * @param  last         Index of the last mean picked so far.
+     * @param  rand         Random number generator to use.
+     */
+    private static void extend(double[] xs, double[] ys, double[] weights,
+                               double[] dists, double[][] means, int last,
+                               Random rand)
+    {
+        final int n = xs.length;
+        for (int c = last; ; ++c) {
+            // Bring the distances up to date with the last mean.
+            final double mx = means[c][0], my = means[c][1];
+            for (int i = 0; i < n; ++i) {
+                final double dx = xs[i] - mx;
+                final double dy = ys[i] - my;
+                final double d = dx * dx + dy * dy;
+                if (d < dists[i])
+                    dists[i] = d;
+            }
+            if (c + 1 >= means.length)
+                break;
+
+            // If every point is on a mean, any will do.
+            final double total = total(dists, weights);
+            if (total <= 0) {
+                final int p = rand.nextInt(n);
+                means[c + 1][0] = xs[p];
+                means[c + 1][1] = ys[p];
+                continue;
+            }
+
+            // Try a few points, and take the one which brings the total
+            // distance down the most.
+            final int tries = 2 + (int) Math.log(means.length);
+            double bestTotal = Double.MAX_VALUE;
+            for (int t = 0; t < tries; ++t) {
+                final int p = pick(dists, weights, total, rand);
+                final double px = xs[p], py = ys[p];
+                double sum = 0;
+                for (int i = 0; i < n && sum < bestTotal; ++i) {
+                    final double dx = xs[i] - px;
+                    final double dy = ys[i] - py;
+                    final double d = Math.min(dx * dx + dy * dy, dists[i]);
+                    sum += weights == null ? d : d * weights[i];
+                }
+                if (sum < bestTotal) {
+                    bestTotal = sum;
+                    means[c + 1][0] = px;
+                    means[c + 1][1] = py;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Update each point's distance to the nearest candidate for some
+     * new candidates.
+     *
+     * @return              The new total of the distances.
+     */
+    private static double updateNearest(final double[] xs, final double[] ys,
+                                        final double[] candXs, final double[] candYs,
+                                        final int start, final int end,
+                                        final double[] dists, final int[] nearest,
+                                        Executor executor, int threads)
+    {
+        final int n = xs.length;
+        final double[] chunkSums = new double[PointLoop.numChunks(n)];
+        new PointLoop(n) {
+            @Override
+            void chunk(int chunk, int from, int to) {
+                double sum = 0;
+                for (int i = from; i < to; ++i) {
+                    final double x = xs[i], y = ys[i];
+                    for (int c = start; c < end; ++c) {
+                        final double dx = x - candXs[c];
+                        final double dy = y - candYs[c];
+                        final double d = dx * dx + dy * dy;
+                        if (d < dists[i]) {
+                            dists[i] = d;
+                            nearest[i] = c;
+                        }
+                    }
+                    sum += dists[i];
+                }
+                chunkSums[chunk] = sum;
+            }
+        }.run(executor, threads);
+
+        // Add up the chunks in order, so the total is the same however
+        // the chunks were run.
+        return total(chunkSums, null);
+    }
+
+
+    /**
+     * Sample the points for one round of k-means||, taking each with
+     * probability expect * dists[i] / psi.
+     *
+     * @return              The indices of the points taken, in order.
+     */
+    private static int[] sample(final double[] dists, final double psi,
+                                final double expect, Random rand,
+                                Executor executor, int threads)
+    {
+        final int n = dists.length;
+        final int chunks = PointLoop.numChunks(n);
+        final long[] seeds = new long[chunks];
+        for (int c = 0; c < chunks; ++c)
+            seeds[c] = rand.nextLong();
+
+        final int[][] picked = new int[chunks][];
+        new PointLoop(n) {
+            @Override
+            void chunk(int chunk, int from, int to) {
+                final Random r = new MTRandom(seeds[chunk]);
+                int[] got = new int[16];
+                int count = 0;
+                for (int i = from; i < to; ++i) {
+                    if (r.nextDouble() * psi < expect * dists[i]) {
+                        if (count == got.length) {
+                            int[] bigger = new int[count * 2];
+                            System.arraycopy(got, 0, bigger, 0, count);
+                            got = bigger;
+                        }
+                        got[count++] = i;
+                    }
+                }
+                picked[chunk] = new int[count];
+                System.arraycopy(got, 0, picked[chunk], 0, count);
+            }
+        }.run(executor, threads);
+
+        int total = 0;
+        for (int[] p : picked)
+            total += p.length;
+        int[] all = new int[total];
+        int pos = 0;
+        for (int[] p : picked) {
+            System.arraycopy(p, 0, all, pos, p.length);
+            pos += p.length;
+        }
+        return all;
+    }
+
+
+    /**
+     * Add up values, optionally weighted.
+     */
+    private static double total(double[] vals, double[] weights) {
+        double total = 0;
+        for (int i = 0; i < vals.length; ++i)
+            total += weights == null ? vals[i] : vals[i] * weights[i];
+        return total;
+    }
+
+
+    /**
+     * Pick an index with probability proportional to its value,
+     * optionally weighted.  The total must be positive.
+     */
+    private static int pick(double[] vals, double[] weights, double total, Random rand) {
+        final double r = rand.nextDouble() * total;
+        double sum = 0;
+        int last = -1;
+        for (int i = 0; i < vals.length; ++i) {
+            final double v = weights == null ? vals[i] : vals[i] * weights[i];
+            if (v <= 0)
+                continue;
+            sum += v;
+            last = i;
+            if (r < sum)
+                return i;
+        }
+
+        // Rounding can leave r just past the end.
+        return last;
+    }
+
+
+    private static double[] resize(double[] array, int size) {
+        double[] bigger = new double[size];
+        System.arraycopy(array, 0, bigger, 0, Math.min(array.length, size));
+        return bigger;
+    }
+
+
+    // ******************************************************************** //
+    // Private Constants.
+    // ******************************************************************** //
+
+    // The number of sampling rounds in k-means||.
+    private static final int ROUNDS = 5;
+
+    // The number of candidates to sample per round in k-means||, as a
+    // multiple of the number of means.
+    private static final int OVERSAMPLE = 2;
+
+}
+
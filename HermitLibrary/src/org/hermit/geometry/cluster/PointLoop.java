@@ -0,0 +1,217 @@
+
+/**
+ * cluster: routines for cluster analysis.
+ *
+ * <p>This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
+ * 02111-1307, USA.
+ */
+
+
+package org.hermit.geometry.cluster;
+
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * A loop over the data points, split into chunks of a fixed size which
+ * may be run in parallel.
+ *
+ * <p>The chunks don't depend on the number of threads, so a loop which
+ * keeps a partial result per chunk, and combines them in chunk order
+ * afterwards, gets exactly the same result however it is run.
+ *
+ * <p>This uses only a plain {@link Executor}, not a ForkJoinPool, so
+ * that it works on any Android version.
+ */
+abstract class PointLoop {
+
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create a loop over the given number of points.
+     *
+     * @param  points       The number of points.
+     */
+    PointLoop(int points) {
+        numPoints = points;
+        numChunks = numChunks(points);
+    }
+
+
+    // ******************************************************************** //
+    // Loop.
+    // ******************************************************************** //
+
+    /**
+     * Get the number of chunks a loop over the given number of points
+     * is split into.
+     *
+     * @param  points       The number of points.
+     * @return              The number of chunks.
+     */
+    static int numChunks(int points) {
+        return (points + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+
+
+    /**
+     * Run the loop, in parallel if an executor is given.  This returns
+     * when all the chunks are done.
+     *
+     * @param  executor     The executor to run the chunks in, or null
+     *                      to run them all on this thread.
+     * @param  threads      The most threads to use, including this one.
+     */
+    final void run(Executor executor, int threads) {
+        if (executor == null || numChunks <= 1) {
+            for (int c = 0; c < numChunks; ++c)
+                runChunk(c);
+            return;
+        }
+
+        Runnable[] tasks = new Runnable[numChunks];
+        for (int c = 0; c < numChunks; ++c) {
+            final int chunk = c;
+            tasks[c] = new Runnable() {
+                public void run() {
+                    runChunk(chunk);
+                }
+            };
+        }
+        runAll(tasks, executor, threads);
+    }
+
+
+    /**
+     * Process one chunk of the points.
+     *
+     * @param  chunk        The index of the chunk.
+     * @param  start        Index of the first point in the chunk.
+     * @param  end          Index after the last point in the chunk.
+     */
+    abstract void chunk(int chunk, int start, int end);
+
+
+    private void runChunk(int c) {
+        final int start = c * CHUNK_SIZE;
+        chunk(c, start, Math.min(start + CHUNK_SIZE, numPoints));
+    }
+
+
+    // ******************************************************************** //
+    // Parallel Execution.
+    // ******************************************************************** //
+
+    /**
+     * Run a set of independent tasks, in parallel if an executor is
+     * given.  This returns when all the tasks are done.
+     *
+     * <p>Helpers are handed to the executor, and they and the calling
+     * thread take tasks from a shared counter until there are none left.
+     * There are at most threads - 1 helpers, however many tasks there
+     * are.  The calling thread always takes part, so this
+     * finishes even if the executor is busy, rejects the helpers, or is
+     * running this very call.
+     *
+     * @param  tasks        The tasks to run.
+     * @param  executor     The executor to run the tasks in, or null
+     *                      to run them all on this thread.
+     * @param  threads      The most threads to use, including this one.
+     * @throws RuntimeException  The first exception thrown by a task.
+     * @throws Error        The first error thrown by a task.
+     */
+    static void runAll(final Runnable[] tasks, Executor executor, int threads) {
+        final int count = tasks.length;
+        if (executor == null || count <= 1) {
+            for (int t = 0; t < count; ++t)
+                tasks[t].run();
+            return;
+        }
+
+        final AtomicInteger next = new AtomicInteger(0);
+        final CountDownLatch done = new CountDownLatch(count);
+        final Throwable[] failure = new Throwable[1];
+        Runnable worker = new Runnable() {
+            public void run() {
+                int t;
+                while ((t = next.getAndIncrement()) < count) {
+                    try {
+                        tasks[t].run();
+                    } catch (Throwable e) {
+                        synchronized (failure) {
+                            if (failure[0] == null)
+                                failure[0] = e;
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }
+        };
+        final int helpers = Math.min(count, threads) - 1;
+        for (int h = 0; h < helpers; ++h) {
+            try {
+                executor.execute(worker);
+            } catch (RejectedExecutionException e) {
+                // The executor is full; we'll do the rest ourselves.
+                break;
+            }
+        }
+        worker.run();
+
+        // Wait for helpers still running the last tasks.
+        boolean interrupted = false;
+        while (done.getCount() > 0) {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        synchronized (failure) {
+            if (failure[0] instanceof RuntimeException)
+                throw (RuntimeException) failure[0];
+            if (failure[0] instanceof Error)
+                throw (Error) failure[0];
+        }
+    }
+
+
+    // ******************************************************************** //
+    // Private Constants.
+    // ******************************************************************** //
+
+    // The number of points in a chunk.
+    private static final int CHUNK_SIZE = 4096;
+
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // The number of points, and of chunks.
+    private final int numPoints;
+    private final int numChunks;
+
+}
+
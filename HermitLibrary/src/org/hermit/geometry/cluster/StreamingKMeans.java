@@ -0,0 +1,418 @@
+
+/**
+ * cluster: routines for cluster analysis.
+ *
+ * <p>This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
+ * 02111-1307, USA.
+ */
+
+
+package org.hermit.geometry.cluster;
+
+
+import java.util.Iterator;
+import java.util.Random;
+
+import net.goui.util.MTRandom;
+
+import org.hermit.geometry.Point;
+
+
+/**
+ * A mini-batch k-means clusterer for streams of points too big to hold
+ * in memory (Sculley, "Web-scale k-means clustering").
+ *
+ * <p>Points are fed in one at a time, or from an iterator, and are
+ * collected into batches.  Each point in a batch is assigned to its
+ * nearest mean, and then each mean is moved towards its points in turn.
+ * Each mean has its own learning rate, the inverse of the number of
+ * points it has been given so far, so that it is the running average
+ * of its points.  The means are seeded by k-means++ from the first
+ * batch, which must have at least as many points as there are clusters;
+ * and a mean which has still not been given any points after a batch
+ * is moved to the point of the batch worst served by the other means,
+ * so that duplicate points in the seeding batch can't leave it dead.
+ *
+ * <p>Unlike a {@link Clusterer}, this keeps no per-point data; its
+ * memory is proportional to the number of clusters, the batch size,
+ * and the optional reservoir.  The reservoir is a uniform random sample
+ * of all the points seen, which can be used to check the quality of the
+ * clustering as it goes.
+ */
+public class StreamingKMeans {
+
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create a streaming clusterer.
+     *
+     * @param   clusters    The number of clusters to find.
+     * @param   batchSize   The number of points in each mini-batch.  This
+     *                      must be at least the number of clusters.
+     * @throws  IllegalArgumentException    Invalid parameter.
+     */
+    public StreamingKMeans(int clusters, int batchSize) {
+        if (clusters < 1)
+            throw new IllegalArgumentException("bad cluster count in" +
+                                               " StreamingKMeans: " + clusters);
+        if (batchSize < clusters)
+            throw new IllegalArgumentException("bad batch size in" +
+                                               " StreamingKMeans: " + batchSize);
+
+        numClusters = clusters;
+        meanXs = new double[clusters];
+        meanYs = new double[clusters];
+        meanCounts = new long[clusters];
+        batchXs = new double[batchSize];
+        batchYs = new double[batchSize];
+        batchIds = new int[batchSize];
+        batchDists = new double[batchSize];
+    }
+
+
+    // ******************************************************************** //
+    // Configuration.
+    // ******************************************************************** //
+
+    /**
+     * Seed the random number generator used by this clusterer, so that
+     * the same stream gives the same results every time.
+     *
+     * @param  seed        The seed value.
+     */
+    public void setSeed(long seed) {
+        random.setSeed(seed);
+    }
+
+
+    /**
+     * Set the size of the reservoir sample of the points.  This discards
+     * any existing sample, so should be called before adding points.
+     *
+     * @param   size        The maximum number of points to keep; zero
+     *                      for no reservoir.
+     * @throws  IllegalArgumentException    Invalid parameter.
+     */
+    public void setReservoirSize(int size) {
+        if (size < 0)
+            throw new IllegalArgumentException("bad reservoir size in" +
+                                               " StreamingKMeans: " + size);
+        reservoirXs = size == 0 ? null : new double[size];
+        reservoirYs = size == 0 ? null : new double[size];
+        reservoirCount = 0;
+        reservoirSeen = 0;
+    }
+
+
+    // ******************************************************************** //
+    // Clustering.
+    // ******************************************************************** //
+
+    /**
+     * Add a point to the stream.  When a batch is full, it is used to
+     * update the means.
+     *
+     * @param  point       The point to add.
+     */
+    public void add(Point point) {
+        final double x = point.getX();
+        final double y = point.getY();
+        sample(x, y);
+        batchXs[batchCount] = x;
+        batchYs[batchCount] = y;
+        if (++batchCount == batchXs.length)
+            flush();
+    }
+
+
+    /**
+     * Add all the points from an iterator to the stream, then update
+     * the means with any partial batch left over.
+     *
+     * @param  points      The points to add.
+     */
+    public void addAll(Iterator<Point> points) {
+        while (points.hasNext())
+            add(points.next());
+        flush();
+    }
+
+
+    /**
+     * Update the means with the points of the current batch, even if it
+     * isn't full.  However, until the means have been seeded, this does
+     * nothing if there are fewer points than clusters; they are kept
+     * for the next batch.
+     */
+    public void flush() {
+        final int n = batchCount;
+        if (n == 0 || (numPoints == 0 && n < numClusters))
+            return;
+        batchCount = 0;
+
+        // On the first batch, seed the means from it.
+        if (numPoints == 0) {
+            double[][] means = new double[numClusters][2];
+            MeanSeeder.plusPlus(resize(batchXs, n), resize(batchYs, n),
+                                null, means, random);
+            for (int c = 0; c < numClusters; ++c) {
+                meanXs[c] = means[c][0];
+                meanYs[c] = means[c][1];
+            }
+        }
+
+        // Assign all the points to the current means, and measure how
+        // well they fit.
+        double sum = 0.0;
+        for (int i = 0; i < n; ++i) {
+            final int c = nearest(batchXs[i], batchYs[i]);
+            final double dx = batchXs[i] - meanXs[c];
+            final double dy = batchYs[i] - meanYs[c];
+            final double d = dx * dx + dy * dy;
+            sum += d;
+            batchIds[i] = c;
+            batchDists[i] = d;
+        }
+        batchMetric = sum / n;
+
+        // Move each mean towards its points, at a rate which makes it
+        // the average of all the points it has been given.
+        for (int i = 0; i < n; ++i) {
+            final int c = batchIds[i];
+            final double rate = 1.0 / ++meanCounts[c];
+            meanXs[c] += (batchXs[i] - meanXs[c]) * rate;
+            meanYs[c] += (batchYs[i] - meanYs[c]) * rate;
+        }
+        numPoints += n;
+
+        // Any mean which has never won a point, because it was seeded
+        // on top of another, is moved to the point furthest from its
+        // mean.  Each point is only used once.
+        for (int c = 0; c < numClusters; ++c) {
+            if (meanCounts[c] != 0)
+                continue;
+            int worst = -1;
+            double max = 0.0;
+            for (int i = 0; i < n; ++i) {
+                if (batchDists[i] > max) {
+                    max = batchDists[i];
+                    worst = i;
+                }
+            }
+            if (worst < 0)
+                break;
+            meanXs[c] = batchXs[worst];
+            meanYs[c] = batchYs[worst];
+            batchDists[worst] = 0.0;
+        }
+    }
+
+
+    /**
+     * Add a point to the reservoir sample.  Each of the points seen so
+     * far is in the reservoir with equal probability.
+     */
+    private void sample(double x, double y) {
+        if (reservoirXs == null)
+            return;
+        ++reservoirSeen;
+        int slot;
+        if (reservoirCount < reservoirXs.length)
+            slot = reservoirCount++;
+        else {
+            long r = (long) (random.nextDouble() * reservoirSeen);
+            if (r >= reservoirXs.length)
+                return;
+            slot = (int) r;
+        }
+        reservoirXs[slot] = x;
+        reservoirYs[slot] = y;
+    }
+
+
+    // ******************************************************************** //
+    // Results.
+    // ******************************************************************** //
+
+    /**
+     * Get the number of clusters.
+     *
+     * @return             The number of clusters.
+     */
+    public int getNumClusters() {
+        return numClusters;
+    }
+
+
+    /**
+     * Get the number of points which have been used to update the means.
+     * This doesn't include any in a partial batch.
+     *
+     * @return             The number of points used.
+     */
+    public long getNumPoints() {
+        return numPoints;
+    }
+
+
+    /**
+     * Get the current cluster means.  These are meaningless until the
+     * first batch is done.
+     *
+     * @param  means       Array of x,y values in which to place the means.
+     */
+    public void getMeans(double[][] means) {
+        for (int c = 0; c < numClusters; ++c) {
+            means[c][0] = meanXs[c];
+            means[c][1] = meanYs[c];
+        }
+    }
+
+
+    /**
+     * Get the number of points which have been assigned to a cluster.
+     *
+     * @param  c           The cluster number.
+     * @return             The number of points assigned to it.
+     */
+    public long getCount(int c) {
+        return meanCounts[c];
+    }
+
+
+    /**
+     * Find the cluster whose mean is nearest to a point.
+     *
+     * @param  x           X co-ordinate of the point.
+     * @param  y           Y co-ordinate of the point.
+     * @return             The number of the nearest cluster.
+     */
+    public int nearest(double x, double y) {
+        int closest = 0;
+        double minDistance = Double.MAX_VALUE;
+        for (int c = 0; c < numClusters; ++c) {
+            final double dx = x - meanXs[c];
+            final double dy = y - meanYs[c];
+            final double d = dx * dx + dy * dy;
+            if (d < minDistance) {
+                minDistance = d;
+                closest = c;
+            }
+        }
+        return closest;
+    }
+
+
+    /**
+     * Get the mean squared distance from the points of the last batch
+     * to their nearest means, measured before the batch moved the means.
+     * This is an estimate of the quality of the clustering on data it
+     * hasn't seen yet.
+     *
+     * @return             The mean squared distance; small is better.
+     */
+    public double getBatchMetric() {
+        return batchMetric;
+    }
+
+
+    /**
+     * Get the mean squared distance from the points in the reservoir
+     * sample to their nearest means.  This is an estimate of the quality
+     * of the clustering over all the points seen.
+     *
+     * @return             The mean squared distance; small is better.
+     *                     NaN if there is no reservoir, or it is empty.
+     */
+    public double reservoirMetric() {
+        if (reservoirCount == 0)
+            return Double.NaN;
+        double sum = 0.0;
+        for (int i = 0; i < reservoirCount; ++i) {
+            final double x = reservoirXs[i], y = reservoirYs[i];
+            final int c = nearest(x, y);
+            final double dx = x - meanXs[c];
+            final double dy = y - meanYs[c];
+            sum += dx * dx + dy * dy;
+        }
+        return sum / reservoirCount;
+    }
+
+
+    /**
+     * Get the points in the reservoir sample.
+     *
+     * @return             The reservoir points; empty if there is no
+     *                     reservoir.
+     */
+    public Point[] getReservoir() {
+        Point[] points = new Point[reservoirCount];
+        for (int i = 0; i < reservoirCount; ++i)
+            points[i] = new Point(reservoirXs[i], reservoirYs[i]);
+        return points;
+    }
+
+
+    // ******************************************************************** //
+    // Private Methods.
+    // ******************************************************************** //
+
+    private static double[] resize(double[] array, int size) {
+        double[] copy = new double[size];
+        System.arraycopy(array, 0, copy, 0, size);
+        return copy;
+    }
+
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // The random number generator used for all random choices.
+    private final Random random = new MTRandom();
+
+    // The number of clusters.
+    private final int numClusters;
+
+    // The current means, and the number of points given to each.
+    private final double[] meanXs;
+    private final double[] meanYs;
+    private final long[] meanCounts;
+
+    // The points in the current batch, and the number there are; the
+    // cluster each is assigned to, and its squared distance from that
+    // cluster's mean.
+    private final double[] batchXs;
+    private final double[] batchYs;
+    private final int[] batchIds;
+    private final double[] batchDists;
+    private int batchCount = 0;
+
+    // The number of points used to update the means.
+    private long numPoints = 0;
+
+    // The mean squared distance of the points of the last batch.
+    private double batchMetric = Double.NaN;
+
+    // The reservoir sample, or null if none; the number of points in it;
+    // and the number of points offered to it.
+    private double[] reservoirXs = null;
+    private double[] reservoirYs = null;
+    private int reservoirCount = 0;
+    private long reservoirSeen = 0;
+
+}
+
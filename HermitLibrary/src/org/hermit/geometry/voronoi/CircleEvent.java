@@ -55,7 +55,8 @@ class CircleEvent extends Event {
     Node process(Node Root, double ys,
                   HashSet<Point> vertList,
                   HashSet<VoronoiEdge> edgeList,
-                  ArrayList<DataNode> CircleCheckList)
+                  ArrayList<DataNode> CircleCheckList,
+                  MeshBuilder mesh)
     {
         final DataNode b = NodeN;
         final DataNode a = Node.LeftDataNode(b);
@@ -78,6 +79,8 @@ class CircleEvent extends Event {
         // VNew[1] = (ys + a.DataPoint[1])/2 -
         // 1/(2*(ys-a.DataPoint[1]))*(VNew[0]-a.DataPoint[0])*(VNew[0]-a.DataPoint[0]);
         vertList.add(VNew);
+        if (mesh != null)
+            mesh.addTriangle(a.Site, b.Site, c.Site, VNew);
 
         // 2. Find out if a or c are in a distand part of the tree (the other
         // is then b's sibling) and assign the new vertex
@@ -98,6 +101,9 @@ class CircleEvent extends Event {
             eu.getParent().Replace(eu, eleft);
         }
         eu.Edge.AddVertex(VNew);
+        Node.LinkArcs(a, c);
+        b.LeftArc = null;
+        b.RightArc = null;
         // ///////////////////// uncertain
         // if(eo==eu)
         // return Root;
@@ -127,6 +133,8 @@ class CircleEvent extends Event {
 
         final EdgeNode VEN = new EdgeNode(VE, false, eo.getLeft(), eo
                 .getRight());
+        // Take over eo's place in the treap, keeping the heap order.
+        VEN.Priority = eo.Priority;
         final Node parent = eo.getParent();
         if (parent == null)
             return VEN;
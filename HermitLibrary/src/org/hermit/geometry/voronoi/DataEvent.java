@@ -30,7 +30,13 @@ import org.hermit.geometry.Point;
 class DataEvent extends Event {
 
     public DataEvent(Point DP) {
+        this(DP, -1);
+    }
+
+
+    public DataEvent(Point DP, int site) {
         DataPoint = DP;
+        Site = site;
     }
 
 
@@ -58,56 +64,72 @@ class DataEvent extends Event {
     Node process(Node Root, double ys,
                   HashSet<Point> vertList,
                   HashSet<VoronoiEdge> edgeList,
-                  ArrayList<DataNode> CircleCheckList)
+                  ArrayList<DataNode> CircleCheckList,
+                  MeshBuilder mesh)
     {
         if (Root == null) {
-            Root = new DataNode(DataPoint);
+            Root = new DataNode(DataPoint, Site);
             CircleCheckList.add((DataNode) Root);
             return Root;
         }
 
         // 1. Find the node to be replaced
-        final Node C = Node.FindDataNode(Root, ys, DataPoint.getX());
+        final DataNode C = Node.FindDataNode(Root, ys, DataPoint.getX());
 
         // 2. Create the subtree (ONE Edge, but two VEdgeNodes)
         final VoronoiEdge VE = new VoronoiEdge();
-        VE.LeftData = ((DataNode) C).DataPoint;
+        VE.LeftData = C.DataPoint;
         VE.RightData = DataPoint;
         VE.VVertexA = Point.UNKNOWN;
         VE.VVertexB = Point.UNKNOWN;
         edgeList.add(VE);
 
-        Node SubRoot;
+        EdgeNode SubRoot;
+        EdgeNode Inner = null;
         if (MathTools.eq(VE.LeftData.getY(), VE.RightData.getY())) {
             DataNode l, r;
             if (VE.LeftData.getX() < VE.RightData.getX()) {
-                l = new DataNode(VE.LeftData);
-                r = new DataNode(VE.RightData);
+                l = new DataNode(VE.LeftData, C.Site);
+                r = new DataNode(VE.RightData, Site);
                 SubRoot = new EdgeNode(VE, false, l, r);
             } else {
-                l = new DataNode(VE.RightData);
-                r = new DataNode(VE.LeftData);
+                l = new DataNode(VE.RightData, Site);
+                r = new DataNode(VE.LeftData, C.Site);
                 SubRoot = new EdgeNode(VE, true, l, r);
             }
+            Node.LinkArcs(C.LeftArc, l);
+            Node.LinkArcs(l, r);
+            Node.LinkArcs(r, C.RightArc);
             CircleCheckList.add(l);
             CircleCheckList.add(r);
         } else {
-            DataNode l = new DataNode(VE.LeftData);
-            DataNode rl = new DataNode(VE.RightData);
-            DataNode rr = new DataNode(VE.LeftData);
+            DataNode l = new DataNode(VE.LeftData, C.Site);
+            DataNode rl = new DataNode(VE.RightData, Site);
+            DataNode rr = new DataNode(VE.LeftData, C.Site);
             EdgeNode r = new EdgeNode(VE, true, rl, rr);
             SubRoot = new EdgeNode(VE, false, l, r);
+            Inner = r;
+            Node.LinkArcs(C.LeftArc, l);
+            Node.LinkArcs(l, rl);
+            Node.LinkArcs(rl, rr);
+            Node.LinkArcs(rr, C.RightArc);
             CircleCheckList.add(l);
             CircleCheckList.add(rl);
             CircleCheckList.add(rr);
         }
 
-        // 3. Apply subtree
+        C.LeftArc = null;
+        C.RightArc = null;
+
+        // 3. Apply subtree, and rebalance the tree
         Node parent = C.getParent();
         if (parent == null)
-            return SubRoot;
-        parent.Replace(C, SubRoot);
-        return Root;
+            Root = SubRoot;
+        else
+            parent.Replace(C, SubRoot);
+        if (Inner != null)
+            Root = Node.Rebalance(Root, Inner);
+        return Node.Rebalance(Root, SubRoot);
     }
 
     
@@ -159,6 +181,10 @@ class DataEvent extends Event {
 
     private Point DataPoint;
 
+    // Index of this event's site in the input, for building a mesh;
+    // -1 if not wanted.
+    private final int Site;
+
 
 }
 
@@ -17,6 +17,7 @@
 package org.hermit.geometry.voronoi;
 
 
+import org.hermit.geometry.MathTools;
 import org.hermit.geometry.Point;
 
 
@@ -27,7 +28,13 @@ import org.hermit.geometry.Point;
 class DataNode extends Node {
 
     public DataNode(Point DP) {
+        this(DP, -1);
+    }
+
+
+    public DataNode(Point DP, int site) {
         DataPoint = DP;
+        Site = site;
     }
 
 
@@ -37,6 +44,14 @@ class DataNode extends Node {
 
 
     public Point DataPoint;
+
+    // Index of this arc's site, for building a mesh; -1 if not known.
+    int Site = -1;
+
+    // The arcs to the left and right of this one on the beach line;
+    // null at the ends, and once this arc has been removed.
+    DataNode LeftArc = null;
+    DataNode RightArc = null;
     
 
     CircleEvent CircleCheckDataNode(double ys) {
@@ -50,8 +65,12 @@ class DataNode extends Node {
 
         final Point Center = CircumCircleCenter(l.DataPoint,
                 DataPoint, r.DataPoint);
+        // The event Y is rounded, so a circle whose top is at the sweep
+        // line -- as when a new site falls right next to a breakpoint --
+        // may appear to be just behind it.  Don't lose those events, or
+        // the arc will never be removed.
         final CircleEvent VC = new CircleEvent(this, l, r, Center);
-        if (VC.getY() >= ys)
+        if (!MathTools.lt(VC.getY(), ys))
             return VC;
         
         return null;
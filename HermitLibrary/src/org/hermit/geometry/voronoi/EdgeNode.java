@@ -29,6 +29,30 @@ class EdgeNode extends Node {
         super(left, right);
         Edge = E;
         this.Flipped = Flipped;
+        Priority = HashPriority(E, Flipped);
+    }
+
+
+    /**
+     * Compute a treap priority for a breakpoint.  This is a hash of the
+     * two sites, so it is effectively random, but the same on every
+     * run; so the results don't depend on the tree shape, even where
+     * rounding makes breakpoints slightly inconsistent.
+     */
+    private static int HashPriority(VoronoiEdge E, boolean Flipped) {
+        long h = Double.doubleToLongBits(E.LeftData.getX());
+        h = h * 31 + Double.doubleToLongBits(E.LeftData.getY());
+        h = h * 31 + Double.doubleToLongBits(E.RightData.getX());
+        h = h * 31 + Double.doubleToLongBits(E.RightData.getY());
+        h = h * 31 + (Flipped ? 1 : 0);
+
+        // Finalisation step of MurmurHash3, to mix all the bits.
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
     }
 
 
@@ -68,22 +92,29 @@ class EdgeNode extends Node {
             return x1;
         if (MathTools.eq(y2, ys))
             return x2;
-        final double a1 = 1 / (2 * (y1 - ys));
-        final double a2 = 1 / (2 * (y2 - ys));
-        if (MathTools.eq(a1, a2))
-            return (x1 + x2) / 2;
-        double xs1 = 0.5
-                / (2 * a1 - 2 * a2)
-                * (4 * a1 * x1 - 4 * a2 * x2 + 2 * Math.sqrt(-8 * a1 * x1 * a2
-                        * x2 - 2 * a1 * y1 + 2 * a1 * y2 + 4 * a1 * a2 * x2
-                        * x2 + 2 * a2 * y1 + 4 * a2 * a1 * x1 * x1 - 2 * a2
-                        * y2));
-        double xs2 = 0.5
-                / (2 * a1 - 2 * a2)
-                * (4 * a1 * x1 - 4 * a2 * x2 - 2 * Math.sqrt(-8 * a1 * x1 * a2
-                        * x2 - 2 * a1 * y1 + 2 * a1 * y2 + 4 * a1 * a2 * x2
-                        * x2 + 2 * a2 * y1 + 4 * a2 * a1 * x1 * x1 - 2 * a2
-                        * y2));
+        // The parabolas cross where d2 (x-x1)^2 - d1 (x-x2)^2 =
+        // d1 d2 (y2-y1), with d1, d2 the distances of the sites from
+        // the sweep line.  Working relative to x1, the discriminant
+        // reduces to d1 d2 |P1P2|^2, and we take the roots in the form
+        // which avoids cancellation; the textbook formula loses most
+        // of its precision when a site is close to the sweep line.
+        final double d1 = y1 - ys;
+        final double d2 = y2 - ys;
+        final double dx = x2 - x1;
+        final double dy = y2 - y1;
+        final double b = d1 * dx;
+        final double c = -d1 * (dx * dx + d2 * dy);
+        final double s = Math.sqrt(d1 * d2 * (dx * dx + dy * dy));
+        final double q = b >= 0 ? -b - s : -b + s;
+        double xs1, xs2;
+        if (q == 0)
+            xs1 = xs2 = x1;
+        else if (dy == 0)
+            xs1 = xs2 = x1 + c / q;
+        else {
+            xs1 = x1 + q / dy;
+            xs2 = x1 + c / q;
+        }
         xs1 = MathTools.round(xs1);
         xs2 = MathTools.round(xs2);
         if (xs1 > xs2) {
@@ -116,6 +147,9 @@ class EdgeNode extends Node {
 
     private boolean Flipped;
 
+    // This breakpoint's priority in the beach line treap.
+    int Priority;
+
 
     // ******************************************************************** //
     // Utilities.
@@ -47,7 +47,8 @@ abstract class Event implements Comparable<Event> {
     abstract Node process(Node Root, double ys,
                            HashSet<Point> vertList,
                            HashSet<VoronoiEdge> edgeList,
-                           ArrayList<DataNode> CircleCheckList);
+                           ArrayList<DataNode> CircleCheckList,
+                           MeshBuilder mesh);
 
     public int compareTo(Event ev) {
         if (!MathTools.eq(getY(), ev.getY())) {
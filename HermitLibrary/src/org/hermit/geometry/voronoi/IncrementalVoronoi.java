@@ -0,0 +1,1008 @@
+
+/**
+ * bentools: Voronoi diagram generator.  This is Benjamin Dittes'
+ * C# implementation of Fortune's algorithm, translated to Java
+ * by Ian Cameron Smith.
+ *
+ * <p>The only license info I can see: "If you ever need a voronoi
+ * clustering in C#, feel free to use my solution here."  See
+ * http://bdittes.googlepages.com/
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+
+package org.hermit.geometry.voronoi;
+
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+
+import org.hermit.geometry.Edge;
+import org.hermit.geometry.Graph;
+import org.hermit.geometry.Point;
+
+
+/**
+ * A Delaunay triangulation and Voronoi diagram which can be updated
+ * in place, as sites are inserted, removed and moved.  Where
+ * {@link Fortune} has to recompute the whole diagram when anything
+ * changes, here the cost of each update depends only on the part of
+ * the diagram which changes; typically this is a constant number of
+ * triangles, plus the walk to find the new site.
+ *
+ * <p>The triangulation is closed off by a vertex at infinity: each edge
+ * of the convex hull has a "ghost" triangle joining it to that vertex,
+ * so that every triangle has three neighbours and no special cases are
+ * needed at the hull.  The circumcircle of a ghost triangle is taken to
+ * be the open half-plane outside its hull edge.
+ *
+ * <ul>
+ * <li>Insertion is by Bowyer-Watson: the new site is located by
+ *     walking across the triangles from the last one changed, then all
+ *     the triangles whose circumcircles contain it -- a connected
+ *     cavity -- are replaced by a fan of triangles around it.
+ * <li>Removal re-triangulates the polygon of triangles around the site,
+ *     by repeatedly cutting off an ear whose circumcircle holds none of
+ *     the polygon's other vertices.  This is equivalent to flipping the
+ *     site's edges away until it can be taken out.
+ * <li>Moving a site is a removal and re-insertion, keeping its index.
+ * </ul>
+ *
+ * <p>The Voronoi edges are kept up to date along with the triangles, so
+ * {@link #getGraph()} gives the same view of the diagram as
+ * {@link Fortune#ComputeVoronoiGraph(Point[])}, without recomputing it.
+ *
+ * <p>Sites are identified by an index, which is returned when they are
+ * inserted and is never re-used.  As with Fortune, points equal to
+ * within the precision set in
+ * {@link org.hermit.geometry.MathTools#setPrecision(double)} are the
+ * same site.  While there are fewer than 3 sites, or they are all
+ * collinear, there are no triangles and the diagram is a set of
+ * parallel lines.
+ *
+ * <p>This class is not thread-safe.
+ */
+public final class IncrementalVoronoi {
+
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create an empty diagram.
+     */
+    public IncrementalVoronoi() {
+        sitePoints = new Point[16];
+        siteCoords = new double[32];
+        siteTris = new int[16];
+        scratch = new int[16];
+        triVerts = new int[48];
+        triNbrs = new int[48];
+        triCentres = new Point[16];
+        triEdges = new Edge[48];
+        triMarks = new int[16];
+        freeTris = new int[16];
+        siteIndex = new PointIndex<Integer>();
+        cavity = new int[16];
+        boundary = new int[48];
+    }
+
+
+    // ******************************************************************** //
+    // Updates.
+    // ******************************************************************** //
+
+    /**
+     * Add a site to the diagram.
+     *
+     * @param   p           The position of the new site.
+     * @return              The index of the new site.  If a site already
+     *                      exists at p, this is its index, and nothing
+     *                      is changed.
+     */
+    public int insert(Point p) {
+        final Integer old = siteIndex.get(p);
+        if (old != null)
+            return old;
+
+        if (numIds == sitePoints.length)
+            growSites();
+        final int site = numIds++;
+        setSite(site, p);
+        place(site);
+        return site;
+    }
+
+
+    /**
+     * Remove a site from the diagram.
+     *
+     * @param   site        The index of the site to remove.
+     * @throws  IllegalArgumentException    There is no such site.
+     */
+    public void remove(int site) {
+        unsetSite(site);
+        if (!flat)
+            detach(site);
+    }
+
+
+    /**
+     * Move a site to a new position.
+     *
+     * @param   site        The index of the site to move.
+     * @param   p           The new position of the site.
+     * @return              The index of the site, which is unchanged;
+     *                      unless it has been moved onto another site,
+     *                      in which case it is removed, and the index
+     *                      of the other site is returned.
+     * @throws  IllegalArgumentException    There is no such site.
+     */
+    public int move(int site, Point p) {
+        final Integer old = siteIndex.get(p);
+        if (old != null && old == site)
+            return site;
+
+        unsetSite(site);
+        if (!flat)
+            detach(site);
+        if (old != null)
+            return old;
+
+        setSite(site, p);
+        place(site);
+        return site;
+    }
+
+
+    // ******************************************************************** //
+    // Accessors.
+    // ******************************************************************** //
+
+    /**
+     * Get the number of sites in the diagram.
+     *
+     * @return              The number of sites.
+     */
+    public int getNumSites() {
+        return numSites;
+    }
+
+
+    /**
+     * Get the position of a site.
+     *
+     * @param   site        The index of the site.
+     * @return              The site's position; null if it has been
+     *                      removed.
+     */
+    public Point getSite(int site) {
+        return site >= 0 && site < numIds ? sitePoints[site] : null;
+    }
+
+
+    /**
+     * Get the Voronoi diagram.  The Graph is gathered from the Voronoi
+     * edges kept with the triangles, so this takes time proportional to
+     * the number of edges, but no geometry is recomputed.  The same Graph is returned
+     * until the diagram is next changed.
+     *
+     * @return              A Graph representing the diagram, in the same
+     *                      form as that created by
+     *                      {@link Fortune#ComputeVoronoiGraph(Point[])}.
+     */
+    public Graph getGraph() {
+        if (graphView == null) {
+            if (flat)
+                graphView = flatGraph();
+            else
+                graphView = gatherGraph();
+        }
+        return graphView;
+    }
+
+
+    /**
+     * Find the site nearest to a given point.  This walks the Delaunay
+     * graph from a starting site, always moving to a neighbour closer to
+     * the target; see
+     * {@link VoronoiMesh#findNearestSite(double, double, int)}.
+     *
+     * @param   x           X co-ordinate of the target point.
+     * @param   y           Y co-ordinate of the target point.
+     * @param   start       The index of the site to start from.  If this
+     *                      has been removed, some other site is used.
+     * @return              The index of the nearest site; -1 if there
+     *                      are no sites.
+     */
+    public int findNearestSite(double x, double y, int start) {
+        if (numSites == 0)
+            return -1;
+
+        // Without triangles, there's no graph to walk.
+        if (flat) {
+            int best = -1;
+            double bestDist = Double.MAX_VALUE;
+            for (int i = 0; i < numIds; ++i) {
+                if (sitePoints[i] != null && dist2(i, x, y) < bestDist) {
+                    best = i;
+                    bestDist = dist2(i, x, y);
+                }
+            }
+            return best;
+        }
+
+        int cur = start;
+        if (getSite(cur) == null)
+            cur = triVerts[realNeighbour(lastTri) * 3];
+        double curDist = dist2(cur, x, y);
+        boolean moved = true;
+        while (moved) {
+            moved = false;
+            final int first = siteTris[cur];
+            int t = first;
+            do {
+                final int i = vertexIndex(t, cur);
+                final int q = triVerts[t * 3 + (i + 1) % 3];
+                if (q != INF) {
+                    final double d = dist2(q, x, y);
+                    if (d < curDist) {
+                        cur = q;
+                        curDist = d;
+                        moved = true;
+                        break;
+                    }
+                }
+                t = triNbrs[t * 3 + (i + 2) % 3];
+            } while (t != first);
+        }
+        return cur;
+    }
+
+
+    // ******************************************************************** //
+    // Site Management.
+    // ******************************************************************** //
+
+    /**
+     * Record a site's position.
+     */
+    private void setSite(int site, Point p) {
+        sitePoints[site] = p;
+        siteCoords[site * 2] = p.getX();
+        siteCoords[site * 2 + 1] = p.getY();
+        siteTris[site] = -1;
+        siteIndex.put(p, site);
+        ++numSites;
+        graphView = null;
+    }
+
+
+    /**
+     * Forget a site's position.
+     *
+     * @throws  IllegalArgumentException    There is no such site.
+     */
+    private void unsetSite(int site) {
+        final Point p = getSite(site);
+        if (p == null)
+            throw new IllegalArgumentException("no site " + site + " in diagram");
+        siteIndex.remove(p);
+        sitePoints[site] = null;
+        --numSites;
+        graphView = null;
+    }
+
+
+    /**
+     * Add a site, whose position has been set, to the triangulation.
+     */
+    private void place(int site) {
+        if (flat)
+            triangulate();
+        else
+            insertSite(site);
+    }
+
+
+    /**
+     * Remove a site, which has been unset, from the triangulation.
+     */
+    private void detach(int site) {
+        if (numSites < 3 || !removeSite(site) || numReal == 0)
+            rebuild();
+    }
+
+
+    // ******************************************************************** //
+    // Insertion.
+    // ******************************************************************** //
+
+    /**
+     * Insert a site into the triangulation, by Bowyer-Watson.
+     */
+    private void insertSite(int site) {
+        final double px = siteCoords[site * 2];
+        final double py = siteCoords[site * 2 + 1];
+
+        // Find the cavity: all the triangles whose circumcircles contain
+        // the site.  These are connected, so search out from one of them.
+        // A triangle is also taken if the site is not strictly inside
+        // the edge we reached it over, which would make the cavity not
+        // star-shaped; this only arises from rounding.
+        final int start = locate(px, py);
+        final int mark = ++markCount;
+        int nc = 0, nb = 0;
+        cavity[nc++] = start;
+        triMarks[start] = mark;
+        for (int c = 0; c < nc; ++c) {
+            final int t = cavity[c];
+            for (int j = 0; j < 3; ++j) {
+                final int n = triNbrs[t * 3 + j];
+                if (triMarks[n] == mark)
+                    continue;
+                final int u = triVerts[t * 3 + j];
+                final int w = triVerts[t * 3 + (j + 1) % 3];
+                if (inCircle(n, px, py) ||
+                        (u != INF && w != INF && orient(u, w, px, py) <= 0)) {
+                    triMarks[n] = mark;
+                    if (nc == cavity.length)
+                        cavity = grow(cavity, nc * 2);
+                    cavity[nc++] = n;
+                } else {
+                    if (nb * 3 == boundary.length)
+                        boundary = grow(boundary, nb * 6);
+                    boundary[nb * 3] = u;
+                    boundary[nb * 3 + 1] = w;
+                    boundary[nb * 3 + 2] = n;
+                    ++nb;
+                }
+            }
+        }
+
+        // A boundary edge may have been found before its outer triangle
+        // was taken into the cavity by another route; drop those.
+        int keep = 0;
+        for (int b = 0; b < nb; ++b) {
+            if (triMarks[boundary[b * 3 + 2]] == mark)
+                continue;
+            boundary[keep * 3] = boundary[b * 3];
+            boundary[keep * 3 + 1] = boundary[b * 3 + 1];
+            boundary[keep * 3 + 2] = boundary[b * 3 + 2];
+            ++keep;
+        }
+        nb = keep;
+
+        for (int c = 0; c < nc; ++c)
+            freeTriangle(cavity[c]);
+
+        // Fill the cavity with a fan of triangles around the new site.
+        for (int b = 0; b < nb; ++b) {
+            final int u = boundary[b * 3];
+            final int w = boundary[b * 3 + 1];
+            final int n = boundary[b * 3 + 2];
+            final int t = newTriangle(u, w, site);
+            glue(t, u, n, w);
+            boundary[b * 3 + 2] = t;
+            if (u == INF)
+                infStart = t;
+            else
+                scratch[u] = t;
+        }
+        for (int b = 0; b < nb; ++b) {
+            final int w = boundary[b * 3 + 1];
+            final int t = boundary[b * 3 + 2];
+            final int n = w == INF ? infStart : scratch[w];
+            glue(t, w, n, site);
+        }
+        for (int b = 0; b < nb; ++b)
+            addEdges(boundary[b * 3 + 2]);
+        lastTri = boundary[2];
+    }
+
+
+    /**
+     * Find a triangle whose circumcircle contains a point, by walking
+     * from the last triangle created.  Each step crosses an edge which
+     * the point is outside of, trying the edges in a random order so the
+     * walk can't cycle.  If it ends up outside the hull, the ghost
+     * triangle it reaches is the answer.
+     */
+    private int locate(double px, double py) {
+        int t = lastTri;
+        if (triVerts[t * 3 + 2] == INF) {
+            if (inCircle(t, px, py))
+                return t;
+            t = triNbrs[t * 3];
+        }
+
+        final int limit = numTris * 2 + 16;
+        for (int steps = 0; steps < limit; ++steps) {
+            walkSeed = walkSeed * 1103515245 + 12345;
+            final int r = (walkSeed >>> 16) % 3;
+            int next = -1;
+            for (int k = 0; k < 3 && next < 0; ++k) {
+                final int j = (r + k) % 3;
+                final int u = triVerts[t * 3 + j];
+                final int w = triVerts[t * 3 + (j + 1) % 3];
+                if (orient(u, w, px, py) < 0)
+                    next = triNbrs[t * 3 + j];
+            }
+            if (next < 0)
+                return t;
+            if (triVerts[next * 3 + 2] == INF)
+                return next;
+            t = next;
+        }
+
+        // Rounding has trapped us; just search.
+        for (int i = 0; i < numTris; ++i)
+            if (triVerts[i * 3] != DEAD && inCircle(i, px, py))
+                return i;
+        return t;
+    }
+
+
+    // ******************************************************************** //
+    // Removal.
+    // ******************************************************************** //
+
+    /**
+     * Remove a site from the triangulation, re-triangulating the
+     * polygon formed by its neighbours.
+     *
+     * @return              false if this could not be done, in which
+     *                      case the triangulation must be rebuilt.
+     */
+    private boolean removeSite(int site) {
+        // Go anticlockwise round the site, listing the far vertex of each
+        // triangle, and the triangle outside the far edge.
+        int k = 0;
+        final int first = siteTris[site];
+        int t = first;
+        do {
+            final int i = vertexIndex(t, site);
+            if (k * 3 == boundary.length)
+                boundary = grow(boundary, k * 6);
+            if (k == cavity.length)
+                cavity = grow(cavity, k * 2);
+            boundary[k * 3] = triVerts[t * 3 + (i + 1) % 3];
+            boundary[k * 3 + 1] = triNbrs[t * 3 + (i + 1) % 3];
+            cavity[k++] = t;
+            t = triNbrs[t * 3 + (i + 2) % 3];
+        } while (t != first);
+        if (k > MAX_STAR)
+            return false;
+
+        for (int c = 0; c < k; ++c)
+            freeTriangle(cavity[c]);
+
+        // The polygon is a circular list: boundary[i * 3] is a vertex,
+        // boundary[i * 3 + 1] the triangle outside the edge from it to
+        // the next, and boundary[i * 3 + 2] the index of the next.
+        for (int i = 0; i < k; ++i)
+            boundary[i * 3 + 2] = (i + 1) % k;
+
+        // Cut off Delaunay ears until a triangle is left.  The new
+        // triangles are listed in cavity.
+        int head = 0;
+        int size = k;
+        int made = 0;
+        while (size > 3) {
+            int a = head;
+            boolean found = false;
+            for (int tries = 0; tries < size; ++tries) {
+                final int b = boundary[a * 3 + 2];
+                final int c = boundary[b * 3 + 2];
+                if (isEar(a, b, c, size)) {
+                    final int tn = newTriangle(boundary[a * 3], boundary[b * 3], boundary[c * 3]);
+                    glue(tn, boundary[a * 3], boundary[a * 3 + 1], boundary[b * 3]);
+                    glue(tn, boundary[b * 3], boundary[b * 3 + 1], boundary[c * 3]);
+                    cavity[made++] = tn;
+                    boundary[a * 3 + 1] = tn;
+                    boundary[a * 3 + 2] = c;
+                    head = a;
+                    --size;
+                    found = true;
+                    break;
+                }
+                a = b;
+            }
+            if (!found)
+                return false;
+        }
+
+        final int a = head;
+        final int b = boundary[a * 3 + 2];
+        final int c = boundary[b * 3 + 2];
+        final int va = boundary[a * 3], vb = boundary[b * 3], vc = boundary[c * 3];
+        if (va != INF && vb != INF && vc != INF &&
+                        orient(va, vb, siteCoords[vc * 2], siteCoords[vc * 2 + 1]) <= 0)
+            return false;
+        final int tn = newTriangle(va, vb, vc);
+        glue(tn, va, boundary[a * 3 + 1], vb);
+        glue(tn, vb, boundary[b * 3 + 1], vc);
+        glue(tn, vc, boundary[c * 3 + 1], va);
+        cavity[made++] = tn;
+        lastTri = tn;
+
+        // Bring the Voronoi edges up to date, now that all the new
+        // triangles are joined up.
+        for (int i = 0; i < made; ++i)
+            addEdges(cavity[i]);
+        return true;
+    }
+
+
+    /**
+     * Determine whether the consecutive polygon vertices at a, b, c form
+     * a Delaunay ear: an anticlockwise triangle whose circumcircle
+     * contains no other vertex of the polygon.  An ear including the
+     * vertex at infinity is a ghost triangle, and its "circle" is the
+     * half-plane outside its finite edge.
+     */
+    private boolean isEar(int a, int b, int c, int size) {
+        int va = boundary[a * 3], vb = boundary[b * 3], vc = boundary[c * 3];
+        final boolean ghost = va == INF || vb == INF || vc == INF;
+        if (ghost) {
+            // Rotate the vertex at infinity to the end.
+            while (vc != INF) {
+                final int x = va;
+                va = vb;
+                vb = vc;
+                vc = x;
+            }
+        } else if (orient(va, vb, siteCoords[vc * 2], siteCoords[vc * 2 + 1]) <= 0)
+            return false;
+
+        int d = boundary[c * 3 + 2];
+        for (int i = 3; i < size; ++i) {
+            final int vd = boundary[d * 3];
+            if (vd != INF) {
+                final double dx = siteCoords[vd * 2], dy = siteCoords[vd * 2 + 1];
+                if (ghost ? inHalfPlane(va, vb, dx, dy) : inCircle(va, vb, vc, dx, dy))
+                    return false;
+            }
+            d = boundary[d * 3 + 2];
+        }
+        return true;
+    }
+
+
+    // ******************************************************************** //
+    // Building From Scratch.
+    // ******************************************************************** //
+
+    /**
+     * Throw away the triangulation, and build it again from the sites.
+     */
+    private void rebuild() {
+        numTris = 0;
+        numFree = 0;
+        numReal = 0;
+        flat = true;
+        triangulate();
+    }
+
+
+    /**
+     * Triangulate the sites, if there are three which aren't collinear.
+     * This starts with one triangle, and inserts the other sites.
+     */
+    private void triangulate() {
+        int a = -1, b = -1, c = -1;
+        for (int i = 0; i < numIds && c < 0; ++i) {
+            if (sitePoints[i] == null)
+                continue;
+            if (a < 0)
+                a = i;
+            else if (b < 0)
+                b = i;
+            else if (orient(a, b, siteCoords[i * 2], siteCoords[i * 2 + 1]) != 0)
+                c = i;
+        }
+        if (c < 0)
+            return;
+
+        if (orient(a, b, siteCoords[c * 2], siteCoords[c * 2 + 1]) < 0) {
+            final int x = b;
+            b = c;
+            c = x;
+        }
+        flat = false;
+        final int t = newTriangle(a, b, c);
+        final int ga = newTriangle(b, a, INF);
+        final int gb = newTriangle(c, b, INF);
+        final int gc = newTriangle(a, c, INF);
+        glue(t, a, ga, b);
+        glue(t, b, gb, c);
+        glue(t, c, gc, a);
+        glue(ga, a, gc, INF);
+        glue(gb, b, ga, INF);
+        glue(gc, c, gb, INF);
+        addEdges(t);
+        lastTri = t;
+
+        for (int i = 0; i < numIds; ++i)
+            if (sitePoints[i] != null && i != a && i != b && i != c)
+                insertSite(i);
+    }
+
+
+    /**
+     * Build the graph for sites which have no triangles: parallel lines
+     * between the sites in order along the line they lie on.
+     */
+    private Graph flatGraph() {
+        final HashSet<Edge> edges = new HashSet<Edge>();
+        final Integer[] order = new Integer[numSites];
+        int n = 0;
+        for (int i = 0; i < numIds; ++i)
+            if (sitePoints[i] != null)
+                order[n++] = i;
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return sitePoints[a].compareTo(sitePoints[b]);
+            }
+        });
+        for (int i = 1; i < n; ++i)
+            edges.add(new Edge(Point.INFINITE, Point.INFINITE,
+                               sitePoints[order[i - 1]], sitePoints[order[i]]));
+        return new Graph(edges);
+    }
+
+
+    // ******************************************************************** //
+    // Triangles.
+    // ******************************************************************** //
+
+    /**
+     * Create a triangle.  A ghost triangle is stored with the vertex at
+     * infinity last, so its edge 0 is the hull edge.  Edge j of each
+     * triangle runs from vertex j to vertex j + 1, and neighbour j is
+     * across it.
+     *
+     * @param   a           First vertex, anticlockwise.
+     * @param   b           Second vertex.
+     * @param   c           Third vertex.
+     * @return              The index of the new triangle.
+     */
+    private int newTriangle(int a, int b, int c) {
+        if (a == INF) {
+            a = b;
+            b = c;
+            c = INF;
+        } else if (b == INF) {
+            b = a;
+            a = c;
+            c = INF;
+        }
+
+        int t;
+        if (numFree > 0)
+            t = freeTris[--numFree];
+        else {
+            if (numTris == triMarks.length) {
+                final int size = numTris * 2;
+                triVerts = grow(triVerts, size * 3);
+                triNbrs = grow(triNbrs, size * 3);
+                triMarks = grow(triMarks, size);
+                final Edge[] edges = new Edge[size * 3];
+                System.arraycopy(triEdges, 0, edges, 0, numTris * 3);
+                triEdges = edges;
+                final Point[] centres = new Point[size];
+                System.arraycopy(triCentres, 0, centres, 0, numTris);
+                triCentres = centres;
+            }
+            t = numTris++;
+        }
+
+        triVerts[t * 3] = a;
+        triVerts[t * 3 + 1] = b;
+        triVerts[t * 3 + 2] = c;
+        triEdges[t * 3] = triEdges[t * 3 + 1] = triEdges[t * 3 + 2] = null;
+        triMarks[t] = 0;
+        siteTris[a] = t;
+        siteTris[b] = t;
+        if (c != INF) {
+            siteTris[c] = t;
+            triCentres[t] = circumcentre(a, b, c);
+            ++numReal;
+        } else
+            triCentres[t] = null;
+        return t;
+    }
+
+
+    /**
+     * Discard a triangle.  The Voronoi edges it shares with triangles
+     * which remain are replaced when the hole is filled.
+     */
+    private void freeTriangle(int t) {
+        if (triVerts[t * 3 + 2] != INF)
+            --numReal;
+        triVerts[t * 3] = DEAD;
+        triCentres[t] = null;
+        if (numFree == freeTris.length)
+            freeTris = grow(freeTris, numFree * 2);
+        freeTris[numFree++] = t;
+    }
+
+
+    /**
+     * Make two triangles neighbours across the edge from u to w of t.
+     */
+    private void glue(int t, int u, int n, int w) {
+        triNbrs[t * 3 + vertexIndex(t, u)] = n;
+        triNbrs[n * 3 + vertexIndex(n, w)] = t;
+    }
+
+
+    /**
+     * Bring up to date the Voronoi edges dual to the edges of a triangle.
+     * Each is stored with the edge on both sides.
+     */
+    private void addEdges(int t) {
+        for (int j = 0; j < 3; ++j) {
+            final int u = triVerts[t * 3 + j];
+            final int w = triVerts[t * 3 + (j + 1) % 3];
+            if (u == INF || w == INF)
+                continue;
+
+            final int n = triNbrs[t * 3 + j];
+            final int k = n * 3 + vertexIndex(n, w);
+            final Point pu = sitePoints[u], pw = sitePoints[w];
+            final Point ct = triCentres[t], cn = triCentres[n];
+            final Edge e;
+
+            // Two ghosts only meet when all the sites are collinear,
+            // and the triangulation is about to be rebuilt.
+            if (ct == null && cn == null) {
+                triEdges[t * 3 + j] = triEdges[k] = null;
+                continue;
+            }
+
+            // The data points of a half-infinite edge are ordered so that
+            // its direction points away from the hull.
+            if (cn == null)
+                e = new Edge(ct, Point.INFINITE, pw, pu);
+            else if (ct == null)
+                e = new Edge(cn, Point.INFINITE, pu, pw);
+            else if (!ct.equals(cn))
+                e = new Edge(ct, cn, pu, pw);
+            else
+                e = null;
+
+            triEdges[t * 3 + j] = triEdges[k] = e;
+        }
+    }
+
+
+    /**
+     * Build the graph of the Voronoi edges, taking each from the side
+     * where it runs from the lower-numbered site.
+     */
+    private Graph gatherGraph() {
+        final HashSet<Edge> edges = new HashSet<Edge>();
+        for (int t = 0; t < numTris; ++t) {
+            if (triVerts[t * 3] == DEAD)
+                continue;
+            for (int j = 0; j < 3; ++j) {
+                final int u = triVerts[t * 3 + j];
+                final int w = triVerts[t * 3 + (j + 1) % 3];
+                final Edge e = triEdges[t * 3 + j];
+                if (e != null && u != INF && u < w)
+                    edges.add(e);
+            }
+        }
+        return new Graph(edges);
+    }
+
+
+    /**
+     * Find the position of a vertex in a triangle.
+     */
+    private int vertexIndex(int t, int v) {
+        return triVerts[t * 3] == v ? 0 : triVerts[t * 3 + 1] == v ? 1 : 2;
+    }
+
+
+    /**
+     * Get a real triangle at or next to a given one.
+     */
+    private int realNeighbour(int t) {
+        return triVerts[t * 3 + 2] == INF ? triNbrs[t * 3] : t;
+    }
+
+
+    // ******************************************************************** //
+    // Geometry.
+    // ******************************************************************** //
+
+    /**
+     * Determine which side of the line from site u to site w a point is.
+     *
+     * @return              Positive if it is to the left, negative if to
+     *                      the right, zero if on the line.
+     */
+    private double orient(int u, int w, double px, double py) {
+        final double ux = siteCoords[u * 2], uy = siteCoords[u * 2 + 1];
+        return (siteCoords[w * 2] - ux) * (py - uy) - (siteCoords[w * 2 + 1] - uy) * (px - ux);
+    }
+
+
+    /**
+     * Determine whether a point is strictly inside the circumcircle of
+     * a triangle; for a ghost, outside its hull edge.
+     */
+    private boolean inCircle(int t, double px, double py) {
+        final int a = triVerts[t * 3];
+        final int b = triVerts[t * 3 + 1];
+        final int c = triVerts[t * 3 + 2];
+        if (c == INF)
+            return inHalfPlane(a, b, px, py);
+        return inCircle(a, b, c, px, py);
+    }
+
+
+    /**
+     * Determine whether a point is strictly inside the circumcircle of
+     * an anticlockwise triangle of sites.
+     */
+    private boolean inCircle(int a, int b, int c, double px, double py) {
+        final double[] s = siteCoords;
+        final double adx = s[a * 2] - px, ady = s[a * 2 + 1] - py;
+        final double bdx = s[b * 2] - px, bdy = s[b * 2 + 1] - py;
+        final double cdx = s[c * 2] - px, cdy = s[c * 2 + 1] - py;
+        final double det = (adx * adx + ady * ady) * (bdx * cdy - cdx * bdy) +
+                           (bdx * bdx + bdy * bdy) * (cdx * ady - adx * cdy) +
+                           (cdx * cdx + cdy * cdy) * (adx * bdy - bdx * ady);
+        return det > 0;
+    }
+
+
+    /**
+     * Determine whether a point is in the "circumcircle" of the ghost
+     * triangle on hull edge a to b: strictly to the left of it, or on
+     * the open segment between them.
+     */
+    private boolean inHalfPlane(int a, int b, double px, double py) {
+        final double o = orient(a, b, px, py);
+        if (o != 0)
+            return o > 0;
+        final double ax = siteCoords[a * 2], ay = siteCoords[a * 2 + 1];
+        final double bx = siteCoords[b * 2], by = siteCoords[b * 2 + 1];
+        return (px - ax) * (bx - ax) + (py - ay) * (by - ay) > 0 &&
+               (px - bx) * (ax - bx) + (py - by) * (ay - by) > 0;
+    }
+
+
+    /**
+     * Get the circumcentre of three sites.
+     */
+    private Point circumcentre(int a, int b, int c) {
+        final double[] s = siteCoords;
+        final double ax = s[a * 2], ay = s[a * 2 + 1];
+        final double bx = s[b * 2] - ax, by = s[b * 2 + 1] - ay;
+        final double cx = s[c * 2] - ax, cy = s[c * 2 + 1] - ay;
+        final double d = 2 * (bx * cy - by * cx);
+        final double b2 = bx * bx + by * by, c2 = cx * cx + cy * cy;
+        return new Point(ax + (cy * b2 - by * c2) / d, ay + (bx * c2 - cx * b2) / d);
+    }
+
+
+    /**
+     * Get the squared distance from a site to a point.
+     */
+    private double dist2(int site, double x, double y) {
+        final double dx = siteCoords[site * 2] - x;
+        final double dy = siteCoords[site * 2 + 1] - y;
+        return dx * dx + dy * dy;
+    }
+
+
+    // ******************************************************************** //
+    // Private Methods.
+    // ******************************************************************** //
+
+    /**
+     * Make room for more sites.
+     */
+    private void growSites() {
+        final int size = numIds * 2;
+        final Point[] points = new Point[size];
+        System.arraycopy(sitePoints, 0, points, 0, numIds);
+        sitePoints = points;
+        final double[] coords = new double[size * 2];
+        System.arraycopy(siteCoords, 0, coords, 0, numIds * 2);
+        siteCoords = coords;
+        siteTris = grow(siteTris, size);
+        scratch = grow(scratch, size);
+    }
+
+
+    /**
+     * Grow an array to a given size, keeping its contents.
+     */
+    private static int[] grow(int[] array, int size) {
+        final int[] res = new int[size];
+        System.arraycopy(array, 0, res, 0, array.length);
+        return res;
+    }
+
+
+    // ******************************************************************** //
+    // Private Constants.
+    // ******************************************************************** //
+
+    // The vertex at infinity.
+    private static final int INF = -1;
+
+    // Marker in the first vertex of a discarded triangle.
+    private static final int DEAD = -2;
+
+    // The most neighbours a site may have for it to be removed locally.
+    // Cutting ears is quadratic in this, so above it we rebuild.
+    private static final int MAX_STAR = 256;
+
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // The sites, by index, as Points and X,Y pairs; null for removed
+    // sites.  For each site, a triangle it is a vertex of.  The number
+    // of indices used, and the number of sites present.
+    private Point[] sitePoints;
+    private double[] siteCoords;
+    private int[] siteTris;
+    private int numIds = 0;
+    private int numSites = 0;
+
+    // The sites indexed by position, to catch duplicates.
+    private final PointIndex<Integer> siteIndex;
+
+    // True if there are no triangles yet.
+    private boolean flat = true;
+
+    // The triangles: three vertices, three neighbours and the Voronoi
+    // edges dual to the three edges each, and the circumcentre, which
+    // is null for ghosts.  The number of triangle
+    // slots used, the number of real (non-ghost) triangles, and a stack
+    // of discarded slots.
+    private int[] triVerts;
+    private int[] triNbrs;
+    private Edge[] triEdges;
+    private Point[] triCentres;
+    private int numTris = 0;
+    private int numReal = 0;
+    private int[] freeTris;
+    private int numFree = 0;
+
+    // Search marks for the triangles, and the current mark.
+    private int[] triMarks;
+    private int markCount = 0;
+
+    // The last triangle created, where searches start, and the seed
+    // for randomising them.
+    private int lastTri = 0;
+    private int walkSeed = 1;
+
+    // The Graph made from the Voronoi edges; null if it needs to be
+    // made again.
+    private Graph graphView = null;
+
+    // Scratch space: the triangles in a cavity or star; the edges of
+    // its boundary, as triples; a triangle for each site, and the same
+    // for the vertex at infinity.
+    private int[] cavity;
+    private int[] boundary;
+    private int[] scratch;
+    private int infStart;
+
+}
+
@@ -0,0 +1,175 @@
+
+/**
+ * bentools: Voronoi diagram generator.  This is Benjamin Dittes'
+ * C# implementation of Fortune's algorithm, translated to Java
+ * by Ian Cameron Smith.
+ *
+ * <p>The only license info I can see: "If you ever need a voronoi
+ * clustering in C#, feel free to use my solution here."  See
+ * http://bdittes.googlepages.com/
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+
+package org.hermit.geometry.voronoi;
+
+
+import org.hermit.geometry.Point;
+
+
+/**
+ * Collects the Delaunay triangles found by the sweep -- one for each
+ * circle event -- and builds a {@link VoronoiMesh} from them.
+ */
+final class MeshBuilder {
+
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create a builder.
+     *
+     * @param   sites       The distinct sites, as X,Y pairs.
+     * @param   inputSites  The site index of each input point.
+     */
+    MeshBuilder(double[] sites, int[] inputSites) {
+        siteCoords = sites;
+        this.inputSites = inputSites;
+        final int n = sites.length / 2;
+        triangles = new int[Math.max(n * 6, 12)];
+        centres = new double[Math.max(n * 4, 8)];
+    }
+
+
+    // ******************************************************************** //
+    // Building.
+    // ******************************************************************** //
+
+    /**
+     * Add a triangle.  Its vertices may be given in either order; they
+     * are stored anticlockwise.
+     *
+     * @param   a           Index of the first site.
+     * @param   b           Index of the second site.
+     * @param   c           Index of the third site.
+     * @param   centre      The centre of the circumcircle.
+     */
+    void addTriangle(int a, int b, int c, Point centre) {
+        if (numTriangles * 3 == triangles.length) {
+            int[] t = new int[triangles.length * 2];
+            System.arraycopy(triangles, 0, t, 0, triangles.length);
+            triangles = t;
+            double[] d = new double[centres.length * 2];
+            System.arraycopy(centres, 0, d, 0, centres.length);
+            centres = d;
+        }
+
+        final double[] s = siteCoords;
+        final double cross = (s[b * 2] - s[a * 2]) * (s[c * 2 + 1] - s[a * 2 + 1]) -
+                             (s[b * 2 + 1] - s[a * 2 + 1]) * (s[c * 2] - s[a * 2]);
+        if (cross < 0) {
+            int t = b;
+            b = c;
+            c = t;
+        }
+        final int h = numTriangles * 3;
+        triangles[h] = a;
+        triangles[h + 1] = b;
+        triangles[h + 2] = c;
+        centres[numTriangles * 2] = centre.getX();
+        centres[numTriangles * 2 + 1] = centre.getY();
+        ++numTriangles;
+    }
+
+
+    /**
+     * Build the mesh from the triangles added.
+     *
+     * @return              The new mesh.
+     */
+    VoronoiMesh build() {
+        final int nh = numTriangles * 3;
+        final int[] origins = new int[nh];
+        System.arraycopy(triangles, 0, origins, 0, nh);
+        final double[] vertices = new double[numTriangles * 2];
+        System.arraycopy(centres, 0, vertices, 0, vertices.length);
+
+        // Pair up the half-edges.  Each one looks for its reverse in an
+        // open-addressed hash table of the half-edges seen so far, and
+        // adds itself if it isn't found.
+        final int[] twins = new int[nh];
+        int size = 16;
+        while (size < nh * 2)
+            size <<= 1;
+        final int[] table = new int[size];
+        for (int h = 0; h < nh; ++h) {
+            twins[h] = -1;
+            final int p = origins[h];
+            final int q = origins[VoronoiMesh.next(h)];
+            int i = hash(q, p) & (size - 1);
+            int e;
+            while ((e = table[i] - 1) >= 0) {
+                if (origins[e] == q && origins[VoronoiMesh.next(e)] == p && twins[e] < 0)
+                    break;
+                i = (i + 1) & (size - 1);
+            }
+            if (e >= 0) {
+                twins[h] = e;
+                twins[e] = h;
+            } else {
+                i = hash(p, q) & (size - 1);
+                while (table[i] != 0)
+                    i = (i + 1) & (size - 1);
+                table[i] = h + 1;
+            }
+        }
+
+        // Find an outgoing half-edge for each site, preferring one on
+        // the hull, so that walking anticlockwise from it covers them all.
+        final int[] siteEdges = new int[siteCoords.length / 2];
+        for (int i = 0; i < siteEdges.length; ++i)
+            siteEdges[i] = -1;
+        for (int h = 0; h < nh; ++h) {
+            final int p = origins[h];
+            if (siteEdges[p] < 0 || twins[h] < 0)
+                siteEdges[p] = h;
+        }
+
+        return new VoronoiMesh(siteCoords, inputSites, origins, twins,
+                               vertices, siteEdges);
+    }
+
+
+    // ******************************************************************** //
+    // Private Methods.
+    // ******************************************************************** //
+
+    /**
+     * Hash a directed pair of site indices.
+     */
+    private static int hash(int p, int q) {
+        int h = p * 0x9e3779b1 + q;
+        return h ^ (h >>> 16);
+    }
+
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // The sites as X,Y pairs, and the site index of each input point.
+    private final double[] siteCoords;
+    private final int[] inputSites;
+
+    // The triangles added so far, as triples of site indices, and
+    // their circumcentres as X,Y pairs.
+    private int[] triangles;
+    private double[] centres;
+    private int numTriangles = 0;
+
+}
+
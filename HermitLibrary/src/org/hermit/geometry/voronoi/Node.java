@@ -22,6 +22,13 @@ import org.hermit.geometry.Point;
 
 /**
  * VoronoiVertex or VoronoiDataPoint are represented as Vector
+ * 
+ * <p>The beach line is a tree whose leaves are the arcs (DataNodes),
+ * in order, and whose internal nodes are the breakpoints between them
+ * (EdgeNodes).  It is kept balanced as a treap: each breakpoint has a
+ * pseudo-random priority, and the tree is heap-ordered on those, so
+ * its depth is O(log n) whatever the order of the input points.  The
+ * arcs are also linked to their neighbours, for constant-time access.
  */
 abstract class Node {
 
@@ -83,57 +90,43 @@ abstract class Node {
     }
 
 
+    /**
+     * Get the arc to the left of a given arc on the beach line.  This
+     * is a constant-time lookup of the arc's neighbour link.
+     * 
+     * @param   Current     The arc of interest.
+     * @return              The arc to its left; null if none, or if
+     *                      Current is no longer on the beach line.
+     */
     public static DataNode LeftDataNode(DataNode Current) {
-        Node C = Current;
-
-        // 1. Up
-        do {
-            if (C._Parent == null)
-                return null;
-            if (C._Parent._Left == C) {
-                C = C._Parent;
-                continue;
-            } else {
-                C = C._Parent;
-                break;
-            }
-        } while (true);
-
-        // 2. One Left
-        C = C._Left;
-
-        // 3. Down
-        while (C._Right != null)
-            C = C._Right;
-        
-        return (DataNode) C; // Cast statt 'as' damit eine Exception kommt
+        return Current.LeftArc;
     }
 
 
+    /**
+     * Get the arc to the right of a given arc on the beach line.  This
+     * is a constant-time lookup of the arc's neighbour link.
+     * 
+     * @param   Current     The arc of interest.
+     * @return              The arc to its right; null if none, or if
+     *                      Current is no longer on the beach line.
+     */
     public static DataNode RightDataNode(DataNode Current) {
-        Node C = Current;
-
-        // 1. Up
-        do {
-            if (C._Parent == null)
-                return null;
-            if (C._Parent._Right == C) {
-                C = C._Parent;
-                continue;
-            } else {
-                C = C._Parent;
-                break;
-            }
-        } while (true);
+        return Current.RightArc;
+    }
 
-        // 2. One Right
-        C = C._Right;
 
-        // 3. Down
-        while (C._Left != null)
-            C = C._Left;
-        
-        return (DataNode) C; // Cast statt 'as' damit eine Exception kommt
+    /**
+     * Link two arcs as neighbours on the beach line.
+     * 
+     * @param   left        The left arc; may be null.
+     * @param   right       The right arc; may be null.
+     */
+    static void LinkArcs(DataNode left, DataNode right) {
+        if (left != null)
+            left.RightArc = right;
+        if (right != null)
+            right.LeftArc = left;
     }
 
 
@@ -203,6 +196,48 @@ abstract class Node {
     }
 
 
+    // ******************************************************************** //
+    // Balancing.
+    // ******************************************************************** //
+
+    /**
+     * Restore the heap order of the beach line treap after a node has
+     * been linked into the tree, by rotating it up past any ancestors
+     * with a lower priority.
+     * 
+     * @param   Root        The current root of the tree.
+     * @param   N           The newly linked node.
+     * @return              The new root of the tree.
+     */
+    static Node Rebalance(Node Root, EdgeNode N) {
+        EdgeNode P;
+        while ((P = (EdgeNode) N.getParent()) != null && P.Priority < N.Priority)
+            N.RotateUp();
+        return N.getParent() == null ? N : Root;
+    }
+
+
+    /**
+     * Rotate this node up above its parent.  The in-order sequence of
+     * the tree, and hence the order of the beach line, is unchanged.
+     */
+    void RotateUp() {
+        final Node P = _Parent;
+        final Node G = P._Parent;
+        if (G != null)
+            G.Replace(P, this);
+        else
+            _Parent = null;
+        if (P._Left == this) {
+            P.setLeft(_Right);
+            setRight(P);
+        } else {
+            P.setRight(_Left);
+            setLeft(P);
+        }
+    }
+
+
     void CleanUpTree() {
         if (!(this instanceof EdgeNode))
             return;
@@ -0,0 +1,204 @@
+/**
+ * bentools: Voronoi diagram generator.  This is Benjamin Dittes'
+ * C# implementation of Fortune's algorithm, translated to Java
+ * by Ian Cameron Smith.
+ *
+ * <p>The only license info I can see: "If you ever need a voronoi
+ * clustering in C#, feel free to use my solution here."  See
+ * http://bdittes.googlepages.com/
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+
+package org.hermit.geometry.voronoi;
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.hermit.geometry.MathTools;
+import org.hermit.geometry.Point;
+
+
+/**
+ * A map from points to values, which finds a point equal to a given
+ * one, according to {@link Point#equals(Object)}, in constant time.
+ *
+ * <p>A HashMap can't do this, as equality to within the precision
+ * set in {@link MathTools#setPrecision(double)} is not transitive, so
+ * no hash can be consistent with it: two points either side of a
+ * rounding boundary are equal but hash differently.  Instead, the
+ * points are kept in square cells one precision unit wide.  Equal
+ * points are less than one unit apart, so they are in the same or
+ * adjacent cells, and a lookup checks the 3x3 cells around the point.
+ *
+ * <p>As equality is not transitive, a lookup returns one of possibly
+ * several stored points equal to the given one.
+ *
+ * @param   <V>         The type of the values.
+ */
+final class PointIndex<V> {
+
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create an empty index, using the current precision.
+     */
+    PointIndex() {
+        precision = MathTools.getPrecision();
+        cells = new HashMap<Long, ArrayList<Entry<V>>>();
+    }
+
+
+    // ******************************************************************** //
+    // Access.
+    // ******************************************************************** //
+
+    /**
+     * Determine whether the index is empty.
+     *
+     * @return              true iff there are no points in the index.
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+
+    /**
+     * Get the value of a point equal to a given point.
+     *
+     * @param   p           The point to look up.
+     * @return              The value of a stored point equal to p;
+     *                      null if there is none.
+     */
+    V get(Point p) {
+        final Entry<V> e = find(p);
+        return e == null ? null : e.value;
+    }
+
+
+    /**
+     * Add a point to the index.  If there is already a point equal to
+     * it, its value is replaced.
+     *
+     * @param   p           The point to add.
+     * @param   value       Its value.
+     */
+    void put(Point p, V value) {
+        final Entry<V> e = find(p);
+        if (e != null) {
+            e.value = value;
+            return;
+        }
+
+        final Long key = key(cell(p.getX()), cell(p.getY()));
+        ArrayList<Entry<V>> list = cells.get(key);
+        if (list == null) {
+            list = new ArrayList<Entry<V>>(1);
+            cells.put(key, list);
+        }
+        list.add(new Entry<V>(p, value));
+        ++size;
+    }
+
+
+    /**
+     * Remove a point equal to a given point from the index.
+     *
+     * @param   p           The point to remove.
+     * @return              The value of the removed point; null if
+     *                      there was none.
+     */
+    V remove(Point p) {
+        final Entry<V> e = find(p);
+        if (e == null)
+            return null;
+        final Long key = key(cell(e.point.getX()), cell(e.point.getY()));
+        final ArrayList<Entry<V>> list = cells.get(key);
+        list.remove(e);
+        if (list.isEmpty())
+            cells.remove(key);
+        --size;
+        return e.value;
+    }
+
+
+    // ******************************************************************** //
+    // Private Methods.
+    // ******************************************************************** //
+
+    /**
+     * Find the entry of a point equal to a given point.
+     */
+    private Entry<V> find(Point p) {
+        final long cx = cell(p.getX());
+        final long cy = cell(p.getY());
+        for (long x = cx - 1; x <= cx + 1; ++x) {
+            for (long y = cy - 1; y <= cy + 1; ++y) {
+                final ArrayList<Entry<V>> list = cells.get(key(x, y));
+                if (list == null)
+                    continue;
+                for (final Entry<V> e : list)
+                    if (e.point.equals(p))
+                        return e;
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Get the cell containing a co-ordinate.
+     */
+    private long cell(double v) {
+        return (long) Math.floor(v * precision);
+    }
+
+
+    /**
+     * Combine the co-ordinates of a cell into a key.  Different cells
+     * may share a key; that just puts more points in the list.
+     */
+    private static Long key(long x, long y) {
+        return Long.valueOf(x * 0x9E3779B97F4A7C15L + y);
+    }
+
+
+    // ******************************************************************** //
+    // Private Classes.
+    // ******************************************************************** //
+
+    /**
+     * A point and its value.
+     */
+    private static final class Entry<V> {
+        Entry(Point p, V v) {
+            point = p;
+            value = v;
+        }
+
+        final Point point;
+        V value;
+    }
+
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // The precision at which the index was created.
+    private final double precision;
+
+    // The entries, by cell key.
+    private final HashMap<Long, ArrayList<Entry<V>>> cells;
+
+    // The number of points in the index.
+    private int size = 0;
+
+}
+
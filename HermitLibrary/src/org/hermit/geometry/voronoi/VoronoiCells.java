@@ -0,0 +1,529 @@
+
+/**
+ * bentools: Voronoi diagram generator.  This is Benjamin Dittes'
+ * C# implementation of Fortune's algorithm, translated to Java
+ * by Ian Cameron Smith.
+ *
+ * <p>The only license info I can see: "If you ever need a voronoi
+ * clustering in C#, feel free to use my solution here."  See
+ * http://bdittes.googlepages.com/
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+
+package org.hermit.geometry.voronoi;
+
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.hermit.geometry.Region;
+
+
+/**
+ * The cells of a Voronoi diagram, clipped to a convex boundary, as
+ * closed polygons with their areas and centroids.  This is generated
+ * by {@link VoronoiMesh#clipCells(Region)} or
+ * {@link VoronoiMesh#clipCells(double[])}, and shares the mesh's site
+ * numbering.
+ *
+ * <p>All the cells are built in one pass over the mesh.  An interior
+ * cell is the ring of Voronoi vertices around its site, clipped to the
+ * boundary only if it crosses it.  A cell on the hull is unbounded, so
+ * it is built instead by cutting the boundary polygon with the bisector
+ * between the site and each of its Delaunay neighbours; this needs no
+ * points at infinity.
+ *
+ * <p>The cells tile the boundary, so their areas sum to its area.  The
+ * centroids can be used directly for Lloyd relaxation, and
+ * {@link #findCell(double, double, int)} and
+ * {@link #contains(int, double, double)} give fast point-in-cell tests.
+ */
+public final class VoronoiCells {
+
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Clip the cells of a mesh to a convex polygon.
+     *
+     * @param   mesh        The mesh whose cells we want.
+     * @param   bounds      The boundary, as X,Y pairs.  It must be convex,
+     *                      and may be in either order.
+     * @param   box         true if the boundary is an axis-aligned
+     *                      rectangle.
+     * @throws  IllegalArgumentException    The boundary has fewer than
+     *                                      3 vertices.
+     */
+    VoronoiCells(VoronoiMesh mesh, double[] bounds, boolean box) {
+        if (bounds.length < 6)
+            throw new IllegalArgumentException("clip boundary needs at least 3 vertices");
+
+        this.mesh = mesh;
+        boundary = anticlockwise(bounds);
+        boundsArea = area(boundary, boundary.length / 2);
+        isBox = box;
+        minX = maxX = boundary[0];
+        minY = maxY = boundary[1];
+        for (int i = 2; i < boundary.length; i += 2) {
+            minX = Math.min(minX, boundary[i]);
+            maxX = Math.max(maxX, boundary[i]);
+            minY = Math.min(minY, boundary[i + 1]);
+            maxY = Math.max(maxY, boundary[i + 1]);
+        }
+
+        final int n = mesh.getNumSites();
+        offsets = new int[n + 1];
+        areas = new double[n];
+        centroids = new double[n * 2];
+        coords = new double[Math.max(n * 16, 16)];
+        bufA = new double[32];
+        bufB = new double[32];
+        nbrs = new int[16];
+
+        buildCells();
+
+        // Drop the scratch space.
+        bufA = bufB = null;
+        nbrs = null;
+    }
+
+
+    // ******************************************************************** //
+    // Accessors.
+    // ******************************************************************** //
+
+    /**
+     * Get the mesh these cells were made from.
+     *
+     * @return              The mesh.
+     */
+    public VoronoiMesh getMesh() {
+        return mesh;
+    }
+
+
+    /**
+     * Get the number of cells; this is the number of sites in the mesh.
+     *
+     * @return              The number of cells.
+     */
+    public int getNumCells() {
+        return areas.length;
+    }
+
+
+    /**
+     * Get the area of the boundary.
+     *
+     * @return              The area of the boundary polygon.
+     */
+    public double getBoundaryArea() {
+        return boundsArea;
+    }
+
+
+    /**
+     * Get the vertices of all the cells.  The vertices of cell i are the
+     * X,Y pairs starting at index offsets[i] * 2, where offsets is
+     * returned by {@link #getCellOffsets()}.  The returned array must
+     * not be modified, and may be longer than needed.
+     *
+     * @return              The X,Y pairs of all the cells' vertices, each
+     *                      cell anticlockwise.
+     */
+    public double[] getCellCoords() {
+        return coords;
+    }
+
+
+    /**
+     * Get the index of each cell's first vertex.  The returned array
+     * must not be modified.
+     *
+     * @return              For each cell, the index of its first vertex
+     *                      in {@link #getCellCoords()}; plus one more
+     *                      entry, the total number of vertices.
+     */
+    public int[] getCellOffsets() {
+        return offsets;
+    }
+
+
+    /**
+     * Get the number of vertices in a cell.
+     *
+     * @param   site        A site index.
+     * @return              The number of vertices in its clipped cell;
+     *                      0 if it lies entirely outside the boundary.
+     */
+    public int getNumVertices(int site) {
+        return offsets[site + 1] - offsets[site];
+    }
+
+
+    /**
+     * Get the vertices of a cell.
+     *
+     * @param   site        A site index.
+     * @param   out         Array to receive the X,Y pairs of the cell's
+     *                      vertices, anticlockwise.  If this is too small,
+     *                      only as many as fit are stored.
+     * @return              The number of vertices in the cell.
+     */
+    public int getCell(int site, double[] out) {
+        final int start = offsets[site] * 2;
+        final int len = offsets[site + 1] * 2 - start;
+        System.arraycopy(coords, start, out, 0, Math.min(len, out.length & ~1));
+        return len / 2;
+    }
+
+
+    /**
+     * Get the area of each cell.  The returned array must not be modified.
+     *
+     * @return              The area of each clipped cell.
+     */
+    public double[] getAreas() {
+        return areas;
+    }
+
+
+    /**
+     * Get the centroid of each cell.  The returned array must not be
+     * modified.
+     *
+     * @return              The X,Y pair of each clipped cell's centroid.
+     *                      For a cell with no area, this is its site.
+     */
+    public double[] getCentroids() {
+        return centroids;
+    }
+
+
+    // ******************************************************************** //
+    // Queries.
+    // ******************************************************************** //
+
+    /**
+     * Determine whether a point is inside the boundary.
+     *
+     * @param   x           X co-ordinate of the point.
+     * @param   y           Y co-ordinate of the point.
+     * @return              true if the point is inside or on the boundary.
+     */
+    public boolean inBounds(double x, double y) {
+        if (x < minX || x > maxX || y < minY || y > maxY)
+            return false;
+        return isBox || inside(boundary, 0, boundary.length / 2, x, y);
+    }
+
+
+    /**
+     * Determine whether a point is in a given cell.  This is a direct
+     * test against the cell's edges, taking time proportional to the
+     * number of vertices.
+     *
+     * @param   site        A site index.
+     * @param   x           X co-ordinate of the point.
+     * @param   y           Y co-ordinate of the point.
+     * @return              true if the point is inside or on the edge
+     *                      of the clipped cell.
+     */
+    public boolean contains(int site, double x, double y) {
+        final int count = offsets[site + 1] - offsets[site];
+        return count >= 3 && inside(coords, offsets[site], count, x, y);
+    }
+
+
+    /**
+     * Find the cell containing a point.  This walks the Delaunay graph;
+     * see {@link VoronoiMesh#findNearestSite(double, double, int)}.
+     *
+     * @param   x           X co-ordinate of the point.
+     * @param   y           Y co-ordinate of the point.
+     * @param   start       The index of the site to start the walk from;
+     *                      a nearby one, such as the previous result,
+     *                      makes this take constant time.
+     * @return              The index of the cell containing the point;
+     *                      -1 if it is outside the boundary.
+     */
+    public int findCell(double x, double y, int start) {
+        if (!inBounds(x, y))
+            return -1;
+        return mesh.findNearestSite(x, y, start);
+    }
+
+
+    // ******************************************************************** //
+    // Cell Construction.
+    // ******************************************************************** //
+
+    /**
+     * Build all the cells.
+     */
+    private void buildCells() {
+        final double[] s = mesh.getSiteCoords();
+        final int[] siteEdges = mesh.getSiteEdges();
+        final int[] twins = mesh.getTwins();
+        final double[] v = mesh.getVertexCoords();
+        final int n = siteEdges.length;
+
+        // Without triangles, the sites are all collinear (or there's
+        // only one), and the neighbours are the adjacent ones in order.
+        final boolean flat = mesh.getNumTriangles() == 0;
+        Integer[] order = null;
+        int[] rank = null;
+        if (flat && n > 1) {
+            order = new Integer[n];
+            for (int i = 0; i < n; ++i)
+                order[i] = i;
+            Arrays.sort(order, new Comparator<Integer>() {
+                public int compare(Integer a, Integer b) {
+                    int c = Double.compare(s[a * 2], s[b * 2]);
+                    return c != 0 ? c : Double.compare(s[a * 2 + 1], s[b * 2 + 1]);
+                }
+            });
+            rank = new int[n];
+            for (int i = 0; i < n; ++i)
+                rank[order[i]] = i;
+        }
+
+        int total = 0;
+        for (int p = 0; p < n; ++p) {
+            offsets[p] = total;
+            final double px = s[p * 2];
+            final double py = s[p * 2 + 1];
+            int count;
+
+            if (!flat && !mesh.isHullSite(p)) {
+                // Gather the ring of Voronoi vertices, and clip it only
+                // if it strays outside the boundary.
+                count = 0;
+                boolean out = false;
+                int h = siteEdges[p];
+                do {
+                    final int t = h / 3;
+                    final double x = v[t * 2], y = v[t * 2 + 1];
+                    if (count == 0 || x != bufA[count * 2 - 2] || y != bufA[count * 2 - 1]) {
+                        bufA = ensure(bufA, count + 1);
+                        bufA[count * 2] = x;
+                        bufA[count * 2 + 1] = y;
+                        ++count;
+                        out |= x < minX || x > maxX || y < minY || y > maxY;
+                    }
+                    h = twins[VoronoiMesh.prev(h)];
+                } while (h != siteEdges[p]);
+                if (count > 1 && bufA[0] == bufA[count * 2 - 2] && bufA[1] == bufA[count * 2 - 1])
+                    --count;
+
+                if (out || !isBox) {
+                    for (int i = 0; i < boundary.length && count > 0; i += 2) {
+                        final int j = (i + 2) % boundary.length;
+                        final double a = boundary[j + 1] - boundary[i + 1];
+                        final double b = boundary[i] - boundary[j];
+                        count = cut(count, a, b, a * boundary[i] + b * boundary[i + 1]);
+                    }
+                }
+            } else {
+                // Start from the whole boundary, and cut away the half
+                // nearer each neighbour.
+                count = boundary.length / 2;
+                bufA = ensure(bufA, count);
+                System.arraycopy(boundary, 0, bufA, 0, boundary.length);
+
+                int nn;
+                if (!flat) {
+                    while ((nn = mesh.getNeighbours(p, nbrs)) > nbrs.length)
+                        nbrs = new int[nn * 2];
+                } else {
+                    nn = 0;
+                    if (rank != null && rank[p] > 0)
+                        nbrs[nn++] = order[rank[p] - 1];
+                    if (rank != null && rank[p] < n - 1)
+                        nbrs[nn++] = order[rank[p] + 1];
+                }
+                for (int i = 0; i < nn && count > 0; ++i) {
+                    final int q = nbrs[i];
+                    final double a = s[q * 2] - px;
+                    final double b = s[q * 2 + 1] - py;
+                    final double mx = (s[q * 2] + px) / 2;
+                    final double my = (s[q * 2 + 1] + py) / 2;
+                    count = cut(count, a, b, a * mx + b * my);
+                }
+            }
+
+            // Store the cell, and work out its area and centroid about
+            // the site, for accuracy.
+            if (count < 3)
+                count = 0;
+            if (total + count > coords.length / 2)
+                coords = grow(coords, total + count);
+            System.arraycopy(bufA, 0, coords, total * 2, count * 2);
+
+            double a2 = 0, cx = 0, cy = 0;
+            for (int i = 0; i < count; ++i) {
+                final int j = i + 1 == count ? 0 : i + 1;
+                final double x0 = bufA[i * 2] - px, y0 = bufA[i * 2 + 1] - py;
+                final double x1 = bufA[j * 2] - px, y1 = bufA[j * 2 + 1] - py;
+                final double cross = x0 * y1 - x1 * y0;
+                a2 += cross;
+                cx += (x0 + x1) * cross;
+                cy += (y0 + y1) * cross;
+            }
+            areas[p] = a2 / 2;
+            if (a2 > 0) {
+                centroids[p * 2] = px + cx / (3 * a2);
+                centroids[p * 2 + 1] = py + cy / (3 * a2);
+            } else {
+                centroids[p * 2] = px;
+                centroids[p * 2 + 1] = py;
+            }
+
+            total += count;
+        }
+        offsets[n] = total;
+    }
+
+
+    /**
+     * Cut the polygon in bufA with a half-plane, keeping the part where
+     * a * x + b * y <= c.  The result is left in bufA.
+     *
+     * @return              The number of vertices left.
+     */
+    private int cut(int count, double a, double b, double c) {
+        bufB = ensure(bufB, count * 2);
+        final double[] in = bufA;
+        final double[] out = bufB;
+        int n = 0;
+
+        double sx = in[count * 2 - 2], sy = in[count * 2 - 1];
+        double sd = a * sx + b * sy - c;
+        for (int i = 0; i < count; ++i) {
+            final double ex = in[i * 2], ey = in[i * 2 + 1];
+            final double ed = a * ex + b * ey - c;
+            if ((sd <= 0) != (ed <= 0)) {
+                final double t = sd / (sd - ed);
+                out[n * 2] = sx + (ex - sx) * t;
+                out[n * 2 + 1] = sy + (ey - sy) * t;
+                ++n;
+            }
+            if (ed <= 0) {
+                out[n * 2] = ex;
+                out[n * 2 + 1] = ey;
+                ++n;
+            }
+            sx = ex;
+            sy = ey;
+            sd = ed;
+        }
+
+        bufA = out;
+        bufB = in;
+        return n;
+    }
+
+
+    // ******************************************************************** //
+    // Private Methods.
+    // ******************************************************************** //
+
+    /**
+     * Make sure a buffer has room for a given number of X,Y pairs.
+     */
+    private static double[] ensure(double[] buf, int pairs) {
+        return buf.length >= pairs * 2 ? buf : grow(buf, pairs);
+    }
+
+
+    /**
+     * Grow a buffer to hold at least a given number of X,Y pairs,
+     * keeping its contents.
+     */
+    private static double[] grow(double[] buf, int pairs) {
+        final double[] res = new double[Math.max(buf.length * 2, pairs * 2)];
+        System.arraycopy(buf, 0, res, 0, buf.length);
+        return res;
+    }
+
+
+    /**
+     * Return a copy of a polygon in anticlockwise order.
+     */
+    private static double[] anticlockwise(double[] poly) {
+        final int n = poly.length / 2;
+        final double[] res = new double[n * 2];
+        final boolean rev = area(poly, n) < 0;
+        for (int i = 0; i < n; ++i) {
+            final int j = rev ? n - 1 - i : i;
+            res[i * 2] = poly[j * 2];
+            res[i * 2 + 1] = poly[j * 2 + 1];
+        }
+        return res;
+    }
+
+
+    /**
+     * Get the signed area of a polygon; positive if anticlockwise.
+     */
+    private static double area(double[] poly, int n) {
+        double a2 = 0;
+        for (int i = 0; i < n; ++i) {
+            final int j = i + 1 == n ? 0 : i + 1;
+            a2 += poly[i * 2] * poly[j * 2 + 1] - poly[j * 2] * poly[i * 2 + 1];
+        }
+        return a2 / 2;
+    }
+
+
+    /**
+     * Determine whether a point is inside or on an anticlockwise convex
+     * polygon, given as n X,Y pairs starting at vertex off of poly.
+     */
+    private static boolean inside(double[] poly, int off, int n, double x, double y) {
+        for (int i = 0; i < n; ++i) {
+            final int a = (off + i) * 2;
+            final int b = (off + (i + 1 == n ? 0 : i + 1)) * 2;
+            final double cross = (poly[b] - poly[a]) * (y - poly[a + 1]) -
+                                 (poly[b + 1] - poly[a + 1]) * (x - poly[a]);
+            if (cross < 0)
+                return false;
+        }
+        return true;
+    }
+
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // The mesh these cells belong to.
+    private final VoronoiMesh mesh;
+
+    // The boundary, anticlockwise, its area and bounding box; and
+    // whether it is an axis-aligned rectangle.
+    private final double[] boundary;
+    private final double boundsArea;
+    private double minX, minY, maxX, maxY;
+    private final boolean isBox;
+
+    // Where each cell starts in coords; the vertices of the cells as
+    // X,Y pairs; and their areas and centroids.
+    private final int[] offsets;
+    private double[] coords;
+    private final double[] areas;
+    private final double[] centroids;
+
+    // Scratch space used while building the cells: the polygon being
+    // clipped, the clipping output, and a site's neighbours.
+    private double[] bufA;
+    private double[] bufB;
+    private int[] nbrs;
+
+}
+
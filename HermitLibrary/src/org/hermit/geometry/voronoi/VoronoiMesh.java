@@ -0,0 +1,456 @@
+
+/**
+ * bentools: Voronoi diagram generator.  This is Benjamin Dittes'
+ * C# implementation of Fortune's algorithm, translated to Java
+ * by Ian Cameron Smith.
+ *
+ * <p>The only license info I can see: "If you ever need a voronoi
+ * clustering in C#, feel free to use my solution here."  See
+ * http://bdittes.googlepages.com/
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+
+package org.hermit.geometry.voronoi;
+
+
+import org.hermit.geometry.Region;
+
+
+/**
+ * A Delaunay triangulation and its dual Voronoi diagram, as an indexed
+ * half-edge mesh.  This is generated by
+ * {@link Fortune#ComputeVoronoiMesh(org.hermit.geometry.Point[])}.
+ *
+ * <p>Everything is held in primitive arrays, which are returned directly
+ * by the accessors, and must not be modified:
+ * <ul>
+ * <li>Sites are numbered from 0, in the order they first appear in the
+ *     input; {@link #getSiteCoords()} gives their X,Y pairs.
+ * <li>Triangle t has half-edges 3t, 3t+1 and 3t+2, anticlockwise.  So
+ *     the face of half-edge h is h / 3, and its next half-edge is given
+ *     by {@link #next(int)}; these need no arrays.
+ * <li>{@link #getOrigins()} gives the site each half-edge starts from.
+ * <li>{@link #getTwins()} gives the opposite half-edge of each half-edge,
+ *     or -1 for half-edges on the convex hull.
+ * </ul>
+ *
+ * <p>The Voronoi diagram is the dual, and shares the same numbering.
+ * Voronoi vertex t is the circumcentre of triangle t; see
+ * {@link #getVertexCoords()}.  The Voronoi cell of a site is the face
+ * around it, and the Voronoi edge dual to half-edge h separates the
+ * cells of its two sites.  Cells of sites on the hull are unbounded.
+ *
+ * <p>All the queries are allocation-free, and take constant time per
+ * neighbour; or in the case of {@link #findNearestSite}, per step.
+ * The mesh takes about 100 bytes per site, a small fraction of the
+ * equivalent {@link org.hermit.geometry.Graph}.
+ *
+ * <p>To get the cells as closed polygons, clipped to a boundary, with
+ * their areas and centroids, use {@link #clipCells(Region)}.
+ *
+ * <p>Where four or more sites are cocircular, they are triangulated
+ * arbitrarily, and the corresponding Voronoi vertices coincide.  If all
+ * the sites are collinear, there are no triangles.
+ */
+public final class VoronoiMesh {
+
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create a mesh.  This is done by {@link MeshBuilder}.
+     */
+    VoronoiMesh(double[] sites, int[] inputSites, int[] origins, int[] twins,
+                double[] vertices, int[] siteEdges)
+    {
+        this.siteCoords = sites;
+        this.inputSites = inputSites;
+        this.origins = origins;
+        this.twins = twins;
+        this.vertexCoords = vertices;
+        this.siteEdges = siteEdges;
+    }
+
+
+    // ******************************************************************** //
+    // Sizes.
+    // ******************************************************************** //
+
+    /**
+     * Get the number of distinct sites.
+     *
+     * @return              The number of sites.
+     */
+    public int getNumSites() {
+        return siteEdges.length;
+    }
+
+
+    /**
+     * Get the number of Delaunay triangles; this is also the number of
+     * Voronoi vertices.
+     *
+     * @return              The number of triangles.
+     */
+    public int getNumTriangles() {
+        return origins.length / 3;
+    }
+
+
+    /**
+     * Get the number of half-edges.
+     *
+     * @return              The number of half-edges.
+     */
+    public int getNumHalfEdges() {
+        return origins.length;
+    }
+
+
+    // ******************************************************************** //
+    // Raw Data.
+    // ******************************************************************** //
+
+    /**
+     * Get the site co-ordinates.
+     *
+     * @return              The X,Y pair of each site.
+     */
+    public double[] getSiteCoords() {
+        return siteCoords;
+    }
+
+
+    /**
+     * Get the site index of each input point.  Duplicate input points
+     * share a site.
+     *
+     * @return              For each input point, its site index.
+     */
+    public int[] getInputSites() {
+        return inputSites;
+    }
+
+
+    /**
+     * Get the origin of each half-edge.
+     *
+     * @return              For each half-edge, the index of the site
+     *                      it starts from.
+     */
+    public int[] getOrigins() {
+        return origins;
+    }
+
+
+    /**
+     * Get the twin of each half-edge.
+     *
+     * @return              For each half-edge, the index of the
+     *                      half-edge running the other way between the
+     *                      same sites; -1 if it is on the hull.
+     */
+    public int[] getTwins() {
+        return twins;
+    }
+
+
+    /**
+     * Get the Voronoi vertex co-ordinates.
+     *
+     * @return              The X,Y pair of each Voronoi vertex, which is
+     *                      the circumcentre of the triangle with the
+     *                      same index.
+     */
+    public double[] getVertexCoords() {
+        return vertexCoords;
+    }
+
+
+    /**
+     * Get an outgoing half-edge for each site.  For a site on the hull,
+     * this is the hull half-edge leaving it, so that turning
+     * anticlockwise from it with {@link #turn(int)} visits all its
+     * half-edges.
+     *
+     * @return              For each site, a half-edge starting from it;
+     *                      -1 if the site is in no triangle.
+     */
+    public int[] getSiteEdges() {
+        return siteEdges;
+    }
+
+
+    // ******************************************************************** //
+    // Navigation.
+    // ******************************************************************** //
+
+    /**
+     * Get the next half-edge anticlockwise around a triangle.
+     *
+     * @param   h           A half-edge.
+     * @return              The next half-edge in its triangle.
+     */
+    public static int next(int h) {
+        return h % 3 == 2 ? h - 2 : h + 1;
+    }
+
+
+    /**
+     * Get the previous half-edge around a triangle.
+     *
+     * @param   h           A half-edge.
+     * @return              The previous half-edge in its triangle.
+     */
+    public static int prev(int h) {
+        return h % 3 == 0 ? h + 2 : h - 1;
+    }
+
+
+    /**
+     * Get the site at the end of a half-edge.
+     *
+     * @param   h           A half-edge.
+     * @return              The index of the site it ends at.
+     */
+    public int dest(int h) {
+        return origins[next(h)];
+    }
+
+
+    /**
+     * Turn anticlockwise about the origin of a half-edge to the next
+     * half-edge leaving the same site.  This is also the next edge
+     * anticlockwise around the site's Voronoi cell.
+     *
+     * @param   h           A half-edge.
+     * @return              The next half-edge anticlockwise with the
+     *                      same origin; -1 if h is the last one before
+     *                      the hull.
+     */
+    public int turn(int h) {
+        return twins[prev(h)];
+    }
+
+
+    /**
+     * Determine whether a site is on the convex hull; if so, its Voronoi
+     * cell is unbounded.
+     *
+     * @param   site        A site index.
+     * @return              true if the site is on the hull, or in no
+     *                      triangle.
+     */
+    public boolean isHullSite(int site) {
+        final int e = siteEdges[site];
+        return e < 0 || twins[e] < 0;
+    }
+
+
+    // ******************************************************************** //
+    // Queries.
+    // ******************************************************************** //
+
+    /**
+     * Get the Delaunay neighbours of a site; that is, the sites whose
+     * Voronoi cells share an edge with its cell.
+     *
+     * @param   site        A site index.
+     * @param   out         Array to receive the neighbours' indices, in
+     *                      anticlockwise order.  If this is too small,
+     *                      the extra neighbours are counted but not stored.
+     * @return              The number of neighbours.
+     */
+    public int getNeighbours(int site, int[] out) {
+        final int start = siteEdges[site];
+        if (start < 0)
+            return 0;
+
+        int count = 0;
+        int h = start;
+        do {
+            if (count < out.length)
+                out[count] = origins[next(h)];
+            ++count;
+            final int t = twins[prev(h)];
+            if (t < 0) {
+                // Reached the hull; add the last neighbour.
+                if (count < out.length)
+                    out[count] = origins[prev(h)];
+                ++count;
+                break;
+            }
+            h = t;
+        } while (h != start);
+        return count;
+    }
+
+
+    /**
+     * Get the vertices of the Voronoi cell of a site.
+     *
+     * @param   site        A site index.
+     * @param   out         Array to receive the X,Y pairs of the cell's
+     *                      vertices, in anticlockwise order.  If this is
+     *                      too small, the extra vertices are counted but
+     *                      not stored.  For an unbounded cell, these are
+     *                      the finite vertices, and the cell extends to
+     *                      infinity beyond the first and last.
+     * @return              The number of vertices.
+     */
+    public int getCell(int site, double[] out) {
+        final int start = siteEdges[site];
+        if (start < 0)
+            return 0;
+
+        int count = 0;
+        int h = start;
+        do {
+            final int t = h / 3;
+            if (count * 2 + 1 < out.length) {
+                out[count * 2] = vertexCoords[t * 2];
+                out[count * 2 + 1] = vertexCoords[t * 2 + 1];
+            }
+            ++count;
+            h = twins[prev(h)];
+        } while (h >= 0 && h != start);
+        return count;
+    }
+
+
+    /**
+     * Find the site nearest to a given point.  This walks the Delaunay
+     * graph from a starting site, always moving to a neighbour closer
+     * to the target, which is guaranteed to end at the nearest site.
+     * The number of steps is proportional to the distance walked, so if
+     * the start is near the target -- as when looking up a series of
+     * nearby points, starting each from the last result -- this takes
+     * constant time.
+     *
+     * @param   x           X co-ordinate of the target point.
+     * @param   y           Y co-ordinate of the target point.
+     * @param   start       The index of the site to start from.
+     * @return              The index of the nearest site; -1 if there
+     *                      are no sites.
+     */
+    public int findNearestSite(double x, double y, int start) {
+        final int n = siteEdges.length;
+        if (n == 0)
+            return -1;
+
+        // Without triangles, there's no graph to walk.
+        if (origins.length == 0) {
+            int best = 0;
+            for (int i = 1; i < n; ++i)
+                if (dist2(i, x, y) < dist2(best, x, y))
+                    best = i;
+            return best;
+        }
+
+        int cur = start;
+        double curDist = dist2(cur, x, y);
+        boolean moved = true;
+        while (moved) {
+            moved = false;
+            final int first = siteEdges[cur];
+            if (first < 0)
+                break;
+            int h = first;
+            do {
+                final int q = origins[next(h)];
+                final double d = dist2(q, x, y);
+                if (d < curDist) {
+                    cur = q;
+                    curDist = d;
+                    moved = true;
+                    break;
+                }
+                final int t = twins[prev(h)];
+                if (t < 0) {
+                    final int r = origins[prev(h)];
+                    final double dr = dist2(r, x, y);
+                    if (dr < curDist) {
+                        cur = r;
+                        curDist = dr;
+                        moved = true;
+                    }
+                    break;
+                }
+                h = t;
+            } while (h != first);
+        }
+        return cur;
+    }
+
+
+    // ******************************************************************** //
+    // Clipped Cells.
+    // ******************************************************************** //
+
+    /**
+     * Get the Voronoi cells clipped to a rectangle.
+     *
+     * @param   bounds      The region to clip the cells to.
+     * @return              The clipped cells.
+     */
+    public VoronoiCells clipCells(Region bounds) {
+        final double x1 = bounds.getX1(), y1 = bounds.getY1();
+        final double x2 = bounds.getX2(), y2 = bounds.getY2();
+        return new VoronoiCells(this, new double[] { x1, y1, x2, y1, x2, y2, x1, y2 }, true);
+    }
+
+
+    /**
+     * Get the Voronoi cells clipped to a convex polygon.
+     *
+     * @param   bounds      The vertices of the polygon to clip the cells
+     *                      to, as X,Y pairs, in either order.  It must
+     *                      be convex.
+     * @return              The clipped cells.
+     * @throws  IllegalArgumentException    The polygon has fewer than
+     *                                      3 vertices.
+     */
+    public VoronoiCells clipCells(double[] bounds) {
+        return new VoronoiCells(this, bounds, false);
+    }
+
+
+    // ******************************************************************** //
+    // Private Methods.
+    // ******************************************************************** //
+
+    /**
+     * Get the squared distance from a site to a point.
+     */
+    private double dist2(int site, double x, double y) {
+        final double dx = siteCoords[site * 2] - x;
+        final double dy = siteCoords[site * 2 + 1] - y;
+        return dx * dx + dy * dy;
+    }
+
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // The sites as X,Y pairs, and the site index of each input point.
+    private final double[] siteCoords;
+    private final int[] inputSites;
+
+    // The origin site and twin of each half-edge.
+    private final int[] origins;
+    private final int[] twins;
+
+    // The Voronoi vertices, as X,Y pairs; one per triangle.
+    private final double[] vertexCoords;
+
+    // An outgoing half-edge for each site, on the hull if possible.
+    private final int[] siteEdges;
+
+}
+
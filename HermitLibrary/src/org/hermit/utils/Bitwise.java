@@ -54,6 +54,18 @@ public class Bitwise
         return n > 0 && (n & (n - 1)) == 0;
     }
 
+    
+    /**
+     * Returns the smallest power of 2 which is greater than or equal to
+     * the argument.
+     * 
+     * @param   n       The number to round up.  Must be between 1 and 2^30.
+     * @return          The smallest power of 2 which is >= n.
+     */
+    public static final int nextPowerOf2(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
 
 	// ******************************************************************** //
 	// Bit Order Reversal.
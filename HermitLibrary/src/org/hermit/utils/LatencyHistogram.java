@@ -0,0 +1,237 @@
+/**
+ * utils: general utility functions.
+ * <br>Copyright 2004-2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
+ * 02111-1307, USA.
+ */
+
+package org.hermit.utils;
+
+
+/**
+ * A histogram of latency values, in the style of HdrHistogram, with
+ * fixed memory and constant-time recording.
+ *
+ * <p>Values below 128 are counted exactly.  Above that, each power of 2
+ * is divided into 64 linear buckets, so any recorded value is known to
+ * within 1 part in 64 (about 1.6%), however large.  The memory used is
+ * about 512 bytes for each power of 2 in the value range; a histogram
+ * of nanosecond times up to a minute takes about 16 kB.
+ *
+ * <p>Recording must be done from one thread at a time.  The statistics
+ * may be read from any thread, but if recording is in progress they may
+ * not be an exact snapshot.
+ *
+ * @author  Ian Cameron Smith
+ */
+public class LatencyHistogram
+{
+
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create a histogram.
+     *
+     * @param   maxValue    The largest value which will be tracked.
+     *                      Larger values are recorded as this.
+     * @throws  IllegalArgumentException    Invalid maximum.
+     */
+    public LatencyHistogram(long maxValue) {
+        if (maxValue < 1)
+            throw new IllegalArgumentException("bad max value in LatencyHistogram: " +
+                                               maxValue);
+        highestValue = maxValue;
+        counts = new long[bucketIndex(maxValue) + 1];
+        reset();
+    }
+
+
+    // ******************************************************************** //
+    // Recording.
+    // ******************************************************************** //
+
+    /**
+     * Record a value.
+     *
+     * @param   value       The value to record.  Negative values are
+     *                      ignored, and values above the maximum are
+     *                      recorded as the maximum.
+     */
+    public void record(long value) {
+        if (value < 0)
+            return;
+        if (value > highestValue)
+            value = highestValue;
+
+        ++counts[bucketIndex(value)];
+        ++totalCount;
+        totalSum += value;
+        if (value < minValue)
+            minValue = value;
+        if (value > maxValue)
+            maxValue = value;
+    }
+
+
+    /**
+     * Clear all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length; ++i)
+            counts[i] = 0;
+        totalCount = 0;
+        totalSum = 0;
+        minValue = Long.MAX_VALUE;
+        maxValue = 0;
+    }
+
+
+    // ******************************************************************** //
+    // Statistics.
+    // ******************************************************************** //
+
+    /**
+     * Get the number of values recorded.
+     *
+     * @return              The count of values recorded since creation
+     *                      or the last reset.
+     */
+    public long getCount() {
+        return totalCount;
+    }
+
+
+    /**
+     * Get the smallest value recorded.
+     *
+     * @return              The exact minimum value; 0 if none.
+     */
+    public long getMin() {
+        return totalCount == 0 ? 0 : minValue;
+    }
+
+
+    /**
+     * Get the largest value recorded.
+     *
+     * @return              The exact maximum value; 0 if none.
+     */
+    public long getMax() {
+        return maxValue;
+    }
+
+
+    /**
+     * Get the mean of the values recorded.
+     *
+     * @return              The exact mean value; 0 if none.
+     */
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) totalSum / totalCount;
+    }
+
+
+    /**
+     * Get the value at a given percentile.
+     *
+     * @param   percentile  The desired percentile, 0 to 100.
+     * @return              The smallest value such that at least the
+     *                      given percentage of recorded values are no
+     *                      larger, to within the bucket resolution.  This
+     *                      is the highest value in the bucket, limited to
+     *                      the maximum recorded.  0 if there are no values.
+     */
+    public long getPercentile(double percentile) {
+        final long total = totalCount;
+        if (total == 0)
+            return 0;
+
+        long target = (long) Math.ceil(percentile / 100.0 * total);
+        if (target < 1)
+            target = 1;
+        long seen = 0;
+        for (int i = 0; i < counts.length; ++i) {
+            seen += counts[i];
+            if (seen >= target)
+                return Math.min(bucketHigh(i), maxValue);
+        }
+        return maxValue;
+    }
+
+
+    // ******************************************************************** //
+    // Bucket Arithmetic.
+    // ******************************************************************** //
+
+    /**
+     * Get the bucket a value belongs in.  Values below SUB_COUNT have
+     * their own buckets; above that, a value whose top bit is bit b
+     * is shifted right by s = b + 1 - SUB_BITS, which leaves it in the
+     * range HALF_COUNT to SUB_COUNT - 1, and each shift gets HALF_COUNT
+     * buckets.  It works out that the index is then just
+     * (s * HALF_COUNT) + (value >> s).
+     */
+    private static int bucketIndex(long value) {
+        if (value < SUB_COUNT)
+            return (int) value;
+        final int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return shift * HALF_COUNT + (int) (value >>> shift);
+    }
+
+
+    /**
+     * Get the highest value which falls in a given bucket.
+     */
+    private static long bucketHigh(int index) {
+        if (index < SUB_COUNT)
+            return index;
+        final int shift = index / HALF_COUNT - 1;
+        final long sub = index - shift * HALF_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+
+
+    // ******************************************************************** //
+    // Private Constants.
+    // ******************************************************************** //
+
+    // Number of bits of resolution in each bucket, and the resulting
+    // number of sub-buckets, and half that.
+    private static final int SUB_BITS = 7;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int HALF_COUNT = SUB_COUNT / 2;
+
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // The highest value we track.
+    private final long highestValue;
+
+    // Count of values in each bucket.
+    private final long[] counts;
+
+    // Number of values recorded, and their sum.
+    private long totalCount;
+    private long totalSum;
+
+    // Smallest and largest values recorded.
+    private long minValue;
+    private long maxValue;
+
+}
@@ -0,0 +1,284 @@
+/**
+ * utils: general utility functions.
+ * <br>Copyright 2004-2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
+ * 02111-1307, USA.
+ */
+
+package org.hermit.utils;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A lock-free ring buffer of 16-bit samples, for passing audio from
+ * one producer thread to one consumer thread.
+ *
+ * <p>Neither side ever blocks.  The producer writes whatever it has;
+ * if the consumer has fallen so far behind that the data won't fit,
+ * the oldest unread data is discarded to make room, and counted as an
+ * overrun, so the buffer always holds the most recent input.  The
+ * consumer can either take all the data which is available, or skip
+ * to the most recent window of a given size; if there is not enough
+ * data, the read fails and is counted as an underrun.
+ *
+ * <p>Only the producer writes the write position, which is volatile,
+ * and is published after the data it covers is copied.  The read
+ * position is advanced by the consumer as it reads, and by the
+ * producer when it discards old data, so both sides update it with
+ * compare-and-set.  The producer only overwrites data after moving the
+ * read position past it; a consumer whose read raced with that sees
+ * its own update fail, and tries again with the new data.  No locks
+ * are needed, but this is only safe with exactly one producer thread
+ * and one consumer thread.
+ *
+ * @author	Ian Cameron Smith
+ */
+public class SampleRingBuffer
+{
+
+    // ******************************************************************** //
+    // Constructor.
+    // ******************************************************************** //
+
+    /**
+     * Create a ring buffer.
+     *
+     * @param   size        The minimum capacity of the buffer in samples.
+     *                      This is rounded up to a power of 2.
+     */
+    public SampleRingBuffer(int size) {
+        final int cap = Bitwise.nextPowerOf2(size);
+        buffer = new short[cap];
+        mask = cap - 1;
+    }
+
+
+    // ******************************************************************** //
+    // Producer.
+    // ******************************************************************** //
+
+    /**
+     * Add samples to the buffer.  This must only be called from the
+     * producer thread.  It never blocks.  If there isn't room, the
+     * oldest unread samples are discarded, and counted as overruns.
+     *
+     * @param   data        Buffer containing the samples.
+     * @param   off         Offset in data of the samples.
+     * @param   count       Number of samples to add.
+     * @return              The number of samples actually added.  This
+     *                      is less than count only if count is more than
+     *                      the capacity, in which case only the last
+     *                      samples are kept, and the rest are counted
+     *                      as overruns.
+     */
+    public int write(short[] data, int off, int count) {
+        final long w = writePos;
+        final int skip = Math.max(count - buffer.length, 0);
+
+        // Move the read position past anything we're about to overwrite.
+        final long need = w + count - buffer.length;
+        long r;
+        while ((r = readPos.get()) < need) {
+            if (readPos.compareAndSet(r, need)) {
+                overruns += need - r;
+                break;
+            }
+        }
+        copyIn(w + skip, data, off + skip, count - skip);
+
+        // Publish the data.
+        writeTime = System.nanoTime();
+        writePos = w + count;
+        return count - skip;
+    }
+
+
+    /**
+     * Copy data into the ring at a given position, wrapping as needed.
+     */
+    private void copyIn(long pos, short[] data, int off, int count) {
+        final int start = (int) pos & mask;
+        final int first = Math.min(count, buffer.length - start);
+        System.arraycopy(data, off, buffer, start, first);
+        if (first < count)
+            System.arraycopy(data, off + first, buffer, 0, count - first);
+    }
+
+
+    // ******************************************************************** //
+    // Consumer.
+    // ******************************************************************** //
+
+    /**
+     * Get the number of samples waiting to be read.  This is exact when
+     * called from the consumer thread; otherwise it is a snapshot.
+     *
+     * @return              The number of unread samples in the buffer.
+     */
+    public int available() {
+        return (int) (writePos - readPos.get());
+    }
+
+
+    /**
+     * Read all the available samples, up to a given limit.  This must
+     * only be called from the consumer thread.  It never blocks.
+     *
+     * @param   data        Buffer for the samples.
+     * @param   off         Offset in data at which to store them.
+     * @param   max         The maximum number of samples to read.
+     * @return              The number of samples read.  If zero, no data
+     *                      was available, and this has been counted
+     *                      as an underrun.
+     */
+    public int read(short[] data, int off, int max) {
+        while (true) {
+            final long r = readPos.get();
+            final int n = Math.min(max, (int) (writePos - r));
+            if (n <= 0) {
+                ++underruns;
+                return 0;
+            }
+            copyOut(r, data, off, n);
+
+            // Release the space.  If the producer has discarded data
+            // meanwhile, what we copied may be overwritten; try again.
+            if (readPos.compareAndSet(r, r + n))
+                return n;
+        }
+    }
+
+
+    /**
+     * Read the most recent samples, skipping any older unread data.
+     * This must only be called from the consumer thread.  It never
+     * blocks.
+     *
+     * @param   data        Buffer for the samples.
+     * @param   off         Offset in data at which to store them.
+     * @param   count       The number of samples to read.  There must
+     *                      be at least this many unread samples for the
+     *                      read to succeed.
+     * @return              The number of older unread samples which were
+     *                      skipped; or -1 if there were not count samples
+     *                      available, in which case nothing was read, and
+     *                      this has been counted as an underrun.
+     */
+    public int readLatest(short[] data, int off, int count) {
+        while (true) {
+            final long r = readPos.get();
+            final long w = writePos;
+            final int avail = (int) (w - r);
+            if (avail < count) {
+                ++underruns;
+                return -1;
+            }
+            copyOut(w - count, data, off, count);
+
+            // Release the space, including what we skipped.  If the
+            // producer has discarded data meanwhile, try again.
+            if (readPos.compareAndSet(r, w))
+                return avail - count;
+        }
+    }
+
+
+    /**
+     * Copy data out of the ring from a given position, wrapping as needed.
+     */
+    private void copyOut(long pos, short[] data, int off, int count) {
+        final int start = (int) pos & mask;
+        final int first = Math.min(count, buffer.length - start);
+        System.arraycopy(buffer, start, data, off, first);
+        if (first < count)
+            System.arraycopy(buffer, 0, data, off + first, count - first);
+    }
+
+
+    // ******************************************************************** //
+    // Statistics.
+    // ******************************************************************** //
+
+    /**
+     * Get the capacity of this buffer.
+     *
+     * @return              The number of samples the buffer can hold.
+     */
+    public int getCapacity() {
+        return buffer.length;
+    }
+
+
+    /**
+     * Get the time of the most recent write.  This is useful for
+     * measuring the latency of the data taken from the buffer.
+     *
+     * @return              The time at which the last data was added, as
+     *                      given by System.nanoTime(); 0 if none has been.
+     */
+    public long getWriteTime() {
+        return writeTime;
+    }
+
+
+    /**
+     * Get the overrun count.
+     *
+     * @return              The total number of unread samples which the
+     *                      producer has had to discard because the
+     *                      buffer was full.
+     */
+    public long getOverruns() {
+        return overruns;
+    }
+
+
+    /**
+     * Get the underrun count.
+     *
+     * @return              The total number of reads which failed because
+     *                      there was not enough data.
+     */
+    public long getUnderruns() {
+        return underruns;
+    }
+
+
+    // ******************************************************************** //
+    // Private Data.
+    // ******************************************************************** //
+
+    // The sample storage, and the mask to convert a position to an index.
+    private final short[] buffer;
+    private final int mask;
+
+    // Total number of samples written and read.  Only the producer
+    // writes writePos; readPos is advanced by the consumer as it reads,
+    // and by the producer when it discards unread data.
+    private volatile long writePos = 0;
+    private final AtomicLong readPos = new AtomicLong();
+
+    // System.nanoTime() of the last write.
+    private volatile long writeTime = 0;
+
+    // Number of unread samples discarded by the producer; and number
+    // of failed reads by the consumer.  Each is written only by its
+    // own side.
+    private volatile long overruns = 0;
+    private volatile long underruns = 0;
+
+}
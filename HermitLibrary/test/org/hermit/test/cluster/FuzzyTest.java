@@ -0,0 +1,186 @@
+
+/**
+ * cluster: Tests of cluster analysis algorithms.
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+
+package org.hermit.test.cluster;
+
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.hermit.geometry.Point;
+import org.hermit.geometry.Region;
+import org.hermit.geometry.cluster.FuzzyClusterer;
+
+
+/**
+ * Test the memberships computed by the fuzzy clusterer.
+ */
+public class FuzzyTest
+    extends TestCase
+{
+
+    // ******************************************************************** //
+    // Support.
+    // ******************************************************************** //
+
+    private static final Region REGION = new Region(0, 0, 100, 100);
+
+
+    private static Point[] randomPoints(int n, long seed) {
+        Random rand = new Random(seed);
+        Point[] pts = new Point[n];
+        for (int i = 0; i < n; ++i)
+            pts[i] = new Point(rand.nextDouble() * 100, rand.nextDouble() * 100);
+        return pts;
+    }
+
+
+    /**
+     * Check the strengths of all the points against the textbook
+     * formula, 1 / sum over j of (d[c] / d[j]) ^ (2 / (M - 1)).
+     */
+    private static void checkStrengths(FuzzyClusterer fc, Point[] pts,
+                                       double[][] means, double m)
+    {
+        final int k = means.length;
+        for (int p = 0; p < pts.length; ++p) {
+            double total = 0.0;
+            for (int c = 0; c < k; ++c) {
+                double dc = dist(pts[p], means[c]);
+                double sum = 0.0;
+                for (int j = 0; j < k; ++j)
+                    sum += Math.pow(dc / dist(pts[p], means[j]), 2 / (m - 1));
+                double s = fc.getStrength(p, c);
+                assertEquals(1 / sum, s, 1e-12);
+                total += s;
+            }
+            assertEquals(1.0, total, 1e-12);
+        }
+    }
+
+
+    private static double dist(Point p, double[] mean) {
+        return Math.hypot(p.getX() - mean[0], p.getY() - mean[1]);
+    }
+
+
+    // ******************************************************************** //
+    // Tests.
+    // ******************************************************************** //
+
+    /**
+     * Memberships with the default fuzziness, which doesn't use pow().
+     */
+    public void testStrengths() {
+        Point[] pts = randomPoints(500, 1);
+        double[][] means = new double[6][2];
+        FuzzyClusterer fc = new FuzzyClusterer();
+        fc.setSeed(1);
+        fc.setSeeding(FuzzyClusterer.Seeding.RANDOM);
+        fc.prepare(pts, new int[pts.length], means, REGION);
+        checkStrengths(fc, pts, means, 2.0);
+        for (int i = 0; i < 3; ++i) {
+            fc.iterate();
+            checkStrengths(fc, pts, means, 2.0);
+        }
+    }
+
+
+    /**
+     * Memberships with other fuzziness values.
+     */
+    public void testFuzziness() {
+        Point[] pts = randomPoints(500, 2);
+        for (double m : new double[] { 1.5, 3.0 }) {
+            double[][] means = new double[5][2];
+            FuzzyClusterer fc = new FuzzyClusterer();
+            fc.setSeed(2);
+            fc.setSeeding(FuzzyClusterer.Seeding.RANDOM);
+            fc.setFuzziness(m);
+            fc.prepare(pts, new int[pts.length], means, REGION);
+            checkStrengths(fc, pts, means, m);
+            fc.iterate();
+            checkStrengths(fc, pts, means, m);
+        }
+
+        try {
+            new FuzzyClusterer().setFuzziness(1.0);
+            fail("fuzziness 1 accepted");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+
+    /**
+     * With fuzziness close to 1, the powers of the raw distances would
+     * underflow; the memberships must still be right, and the means
+     * finite.
+     */
+    public void testNearlyHard() {
+        Region region = new Region(0, 0, 1000, 1000);
+        Random rand = new Random(3);
+        Point[] pts = new Point[2000];
+        for (int i = 0; i < pts.length; ++i)
+            pts[i] = new Point(rand.nextDouble() * 1000, rand.nextDouble() * 1000);
+
+        double[][] means = new double[8][2];
+        FuzzyClusterer fc = new FuzzyClusterer();
+        fc.setSeed(3);
+        fc.setFuzziness(1.01);
+        fc.prepare(pts, new int[pts.length], means, region);
+        for (int i = 0; i < 3; ++i) {
+            fc.iterate();
+            checkStrengths(fc, pts, means, 1.01);
+            for (double[] mean : means) {
+                assertFalse(Double.isNaN(mean[0]));
+                assertFalse(Double.isNaN(mean[1]));
+            }
+        }
+    }
+
+
+    /**
+     * A point exactly on one mean belongs only to it; a point on two
+     * coincident means belongs to each equally.
+     */
+    public void testOnMeans() {
+        // Three distinct points for four clusters: k-means++ seeds the
+        // means on the data points, so two must coincide.
+        Point[] pts = new Point[30];
+        for (int i = 0; i < pts.length; ++i)
+            pts[i] = new Point(10 + (i % 3) * 20, 50);
+        double[][] means = new double[4][2];
+        FuzzyClusterer fc = new FuzzyClusterer();
+        fc.setSeed(3);
+        fc.prepare(pts, new int[pts.length], means, REGION);
+
+        int[] ons = new int[3];
+        for (int p = 0; p < 3; ++p) {
+            int on = 0;
+            for (double[] mean : means)
+                if (mean[0] == pts[p].getX() && mean[1] == pts[p].getY())
+                    ++on;
+            assertTrue(on > 0);
+            ons[on - 1] += 1;
+            for (int c = 0; c < means.length; ++c) {
+                boolean here = means[c][0] == pts[p].getX() && means[c][1] == pts[p].getY();
+                assertEquals(here ? 1.0 / on : 0.0, fc.getStrength(p, c), 0);
+            }
+        }
+
+        // Two points are on one mean each, and one is on two.
+        assertEquals(2, ons[0]);
+        assertEquals(1, ons[1]);
+    }
+
+}
+
@@ -0,0 +1,242 @@
+
+/**
+ * cluster: Tests of cluster analysis algorithms.
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+
+package org.hermit.test.cluster;
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.hermit.geometry.Edge;
+import org.hermit.geometry.Graph;
+import org.hermit.geometry.Point;
+import org.hermit.geometry.Vector;
+import org.hermit.geometry.voronoi.Fortune;
+import org.hermit.geometry.voronoi.IncrementalVoronoi;
+
+
+/**
+ * Test the incrementally-updated Voronoi diagram.  The results are
+ * checked against Fortune's algorithm run from scratch.
+ */
+public class IncrementalVoronoiTest
+    extends TestCase
+{
+
+    // ******************************************************************** //
+    // Support.
+    // ******************************************************************** //
+
+    /**
+     * Get the pairs of sites separated by the edges of a graph.
+     */
+    private static HashSet<String> sitePairs(Graph graph) {
+        HashSet<String> pairs = new HashSet<String>();
+        for (Edge e : graph.getEdgeArray()) {
+            String a = e.getDatumA().toString();
+            String b = e.getDatumB().toString();
+            pairs.add(a.compareTo(b) < 0 ? a + b : b + a);
+        }
+        return pairs;
+    }
+
+
+    /**
+     * Check the diagram of the given sites against Fortune, and check
+     * that each infinite edge heads away from the sites.
+     */
+    private static void checkDiagram(IncrementalVoronoi diag, ArrayList<Point> sites) {
+        assertEquals(sites.size(), diag.getNumSites());
+        Graph graph = diag.getGraph();
+        Graph ref = Fortune.ComputeVoronoiGraph(sites);
+        assertEquals(sitePairs(ref), sitePairs(graph));
+        assertEquals(ref.getNumEdges(), graph.getNumEdges());
+
+        for (Edge e : graph.getEdgeArray()) {
+            if (!e.isPartlyInfinite() || e.isInfinite())
+                continue;
+            Point r = e.referencePoint();
+            Vector d = e.directionVector();
+            Point far = new Point(r.getX() + d.getX() * 10, r.getY() + d.getY() * 10);
+            double da = far.dist(e.getDatumA());
+            assertEquals(da, far.dist(e.getDatumB()), 1e-9);
+            for (Point p : sites)
+                if (far.dist(p) < da - 1e-9)
+                    fail("edge " + e + " heads the wrong way");
+        }
+    }
+
+
+    private static Point randomPoint(Random rand) {
+        return new Point(rand.nextDouble(), rand.nextDouble());
+    }
+
+
+    // ******************************************************************** //
+    // Tests.
+    // ******************************************************************** //
+
+    public void testInsert() {
+        Random rand = new Random(1);
+        IncrementalVoronoi diag = new IncrementalVoronoi();
+        ArrayList<Point> sites = new ArrayList<Point>();
+        for (int i = 0; i < 2000; ++i) {
+            Point p = randomPoint(rand);
+            sites.add(p);
+            assertEquals(i, diag.insert(p));
+            if (i < 10 || i % 500 == 0)
+                checkDiagram(diag, sites);
+        }
+        checkDiagram(diag, sites);
+
+        // Duplicates are the same site.
+        assertEquals(7, diag.insert(new Point(sites.get(7).getX(), sites.get(7).getY())));
+        assertEquals(2000, diag.getNumSites());
+
+        // So are points equal to within the precision, even either side
+        // of a rounding boundary.
+        int a = diag.insert(new Point(0.5e-10 - 1e-13, 0.5));
+        assertEquals(a, diag.insert(new Point(0.5e-10 + 1e-13, 0.5)));
+        assertEquals(2001, diag.getNumSites());
+    }
+
+
+    public void testRemove() {
+        Random rand = new Random(2);
+        IncrementalVoronoi diag = new IncrementalVoronoi();
+        ArrayList<Integer> ids = new ArrayList<Integer>();
+        HashMap<Integer, Point> live = new HashMap<Integer, Point>();
+        for (int i = 0; i < 1500; ++i) {
+            Point p = randomPoint(rand);
+            int id = diag.insert(p);
+            ids.add(id);
+            live.put(id, p);
+        }
+        for (int i = 0; i < 1490; ++i) {
+            int id = ids.remove(rand.nextInt(ids.size()));
+            diag.remove(id);
+            live.remove(id);
+            assertNull(diag.getSite(id));
+            if (i % 300 == 0 || ids.size() < 8)
+                checkDiagram(diag, new ArrayList<Point>(live.values()));
+        }
+
+        try {
+            diag.remove(-1);
+            fail("removed a site which isn't there");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+
+    public void testMove() {
+        Random rand = new Random(3);
+        IncrementalVoronoi diag = new IncrementalVoronoi();
+        Point[] pts = new Point[300];
+        for (int i = 0; i < pts.length; ++i) {
+            pts[i] = randomPoint(rand);
+            diag.insert(pts[i]);
+        }
+        for (int round = 0; round < 20; ++round) {
+            for (int i = 0; i < pts.length; ++i) {
+                double x = pts[i].getX() + (rand.nextDouble() - 0.5) * 0.02;
+                double y = pts[i].getY() + (rand.nextDouble() - 0.5) * 0.02;
+                pts[i] = new Point(x, y);
+                assertEquals(i, diag.move(i, pts[i]));
+            }
+            ArrayList<Point> sites = new ArrayList<Point>();
+            for (Point p : pts)
+                sites.add(p);
+            checkDiagram(diag, sites);
+        }
+
+        // Moving onto another site merges them.
+        assertEquals(5, diag.move(4, pts[5]));
+        assertNull(diag.getSite(4));
+        assertEquals(pts.length - 1, diag.getNumSites());
+    }
+
+
+    /**
+     * A lattice is cocircular everywhere, so the triangles are
+     * arbitrary, but the Voronoi edges are not.
+     */
+    public void testLattice() {
+        IncrementalVoronoi diag = new IncrementalVoronoi();
+        ArrayList<Point> sites = new ArrayList<Point>();
+        for (int i = 0; i < 225; ++i) {
+            Point p = new Point(i % 15, i / 15);
+            sites.add(p);
+            diag.insert(p);
+        }
+        checkDiagram(diag, sites);
+
+        // Remove every third site.
+        for (int i = 224; i >= 0; i -= 3) {
+            diag.remove(i);
+            sites.remove(i);
+        }
+        checkDiagram(diag, sites);
+    }
+
+
+    /**
+     * Collinear sites have no triangles; the diagram must switch in and
+     * out of that state.
+     */
+    public void testCollinear() {
+        IncrementalVoronoi diag = new IncrementalVoronoi();
+        assertEquals(0, diag.getGraph().getNumEdges());
+        ArrayList<Point> sites = new ArrayList<Point>();
+        for (int i = 0; i < 5; ++i) {
+            Point p = new Point(i, i * 0.5);
+            sites.add(p);
+            diag.insert(p);
+        }
+        assertEquals(2, diag.findNearestSite(2.1, 1, 0));
+
+        int off = diag.insert(new Point(1, 3));
+        sites.add(new Point(1, 3));
+        checkDiagram(diag, sites);
+
+        diag.remove(off);
+        sites.remove(5);
+        for (Edge e : diag.getGraph().getEdgeArray())
+            assertTrue(e.isInfinite());
+        assertEquals(4, diag.getGraph().getNumEdges());
+        assertEquals(sitePairs(Fortune.ComputeVoronoiGraph(sites)), sitePairs(diag.getGraph()));
+        assertEquals(3, diag.findNearestSite(3.2, 1, 0));
+    }
+
+
+    public void testNearest() {
+        Random rand = new Random(4);
+        IncrementalVoronoi diag = new IncrementalVoronoi();
+        Point[] pts = new Point[1000];
+        for (int i = 0; i < pts.length; ++i)
+            diag.insert(pts[i] = randomPoint(rand));
+        int last = 0;
+        for (int q = 0; q < 1000; ++q) {
+            Point t = new Point(rand.nextDouble() * 1.2 - 0.1, rand.nextDouble() * 1.2 - 0.1);
+            int best = 0;
+            for (int i = 1; i < pts.length; ++i)
+                if (pts[i].dist(t) < pts[best].dist(t))
+                    best = i;
+            last = diag.findNearestSite(t.getX(), t.getY(), last);
+            assertEquals(best, last);
+        }
+    }
+
+}
+
@@ -0,0 +1,190 @@
+
+/**
+ * cluster: Tests of cluster analysis algorithms.
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+
+package org.hermit.test.cluster;
+
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.hermit.geometry.Point;
+import org.hermit.geometry.Region;
+import org.hermit.geometry.cluster.KMeansClusterer;
+
+
+/**
+ * Test the k-means clusterer.  The k-d tree and distance bounds
+ * assignments are checked against the brute-force search.
+ */
+public class KMeansTest
+    extends TestCase
+{
+
+    // ******************************************************************** //
+    // Support.
+    // ******************************************************************** //
+
+    /**
+     * Cluster the given points by brute force and by each of the other
+     * methods, starting from the same assignment, and check that every
+     * iteration gives exactly the same result.  The data region is given
+     * as a single point, so that a cluster which empties gets the same
+     * new mean in both.
+     *
+     * @param  saves        If true, check that the other methods compute
+     *                      less than half as many distances.
+     */
+    private static void compare(Point[] pts, int[] start, int k, boolean saves) {
+        KMeansClusterer.Assignment[] methods = {
+            KMeansClusterer.Assignment.KD_TREE, KMeansClusterer.Assignment.BOUNDS,
+        };
+        for (KMeansClusterer.Assignment method : methods) {
+            double work = compare(pts, start, k, method);
+            if (saves)
+                assertTrue(method + " did " + work + " of the work", work < 0.5);
+        }
+    }
+
+
+    /**
+     * Compare one method with brute force.
+     *
+     * @return              The ratio of the distances computed by the
+     *                      method to those computed by brute force.
+     */
+    private static double compare(Point[] pts, int[] start, int k,
+                                  KMeansClusterer.Assignment method)
+    {
+        Region region = new Region(0, 0, 0, 0);
+        KMeansClusterer brute = new KMeansClusterer();
+        brute.setAssignment(KMeansClusterer.Assignment.BRUTE_FORCE);
+        KMeansClusterer tree = new KMeansClusterer();
+        tree.setAssignment(method);
+        int[] bids = new int[pts.length];
+        int[] tids = new int[pts.length];
+        double[][] bmeans = new double[k][2];
+        double[][] tmeans = new double[k][2];
+        brute.prepare(pts, bids, bmeans, region);
+        tree.prepare(pts, tids, tmeans, region);
+
+        // Start both from the given assignment.
+        System.arraycopy(start, 0, bids, 0, pts.length);
+        System.arraycopy(start, 0, tids, 0, pts.length);
+
+        long bcount = 0, tcount = 0;
+        for (int iter = 1; iter <= 100; ++iter) {
+            boolean bdone = brute.iterate();
+            boolean tdone = tree.iterate();
+            assertEquals(bdone, tdone);
+            for (int c = 0; c < k; ++c) {
+                assertEquals(bmeans[c][0], tmeans[c][0], 0);
+                assertEquals(bmeans[c][1], tmeans[c][1], 0);
+            }
+            assertTrue(Arrays.equals(bids, tids));
+            assertEquals(brute.metric(), tree.metric(), 0);
+            bcount += brute.distanceCount();
+            tcount += tree.distanceCount();
+            if (bdone)
+                return (double) tcount / bcount;
+        }
+        fail("no convergence");
+        return 0;
+    }
+
+
+    // ******************************************************************** //
+    // Tests.
+    // ******************************************************************** //
+
+    /**
+     * Uniform random points, starting from vertical strips.
+     */
+    public void testUniform() {
+        Random rand = new Random(1);
+        final int n = 20000, k = 32;
+        Point[] pts = new Point[n];
+        int[] start = new int[n];
+        for (int i = 0; i < n; ++i) {
+            pts[i] = new Point(rand.nextDouble(), rand.nextDouble());
+            start[i] = (int) (pts[i].getX() * k);
+        }
+        compare(pts, start, k, true);
+    }
+
+
+    /**
+     * Gaussian blobs, far apart compared to their size, so that most of
+     * the tree collapses to a single mean.
+     */
+    public void testBlobs() {
+        Random rand = new Random(2);
+        final int n = 20000, k = 10;
+        Point[] pts = new Point[n];
+        int[] start = new int[n];
+        for (int i = 0; i < n; ++i) {
+            int b = i % k;
+            pts[i] = new Point(b * 100 + rand.nextGaussian() * 5,
+                               (b % 3) * 100 + rand.nextGaussian() * 5);
+            start[i] = i * k / n;
+        }
+        compare(pts, start, k, true);
+    }
+
+
+    /**
+     * A grid of points with duplicates.  Many points are exactly as far
+     * from two means, which must be resolved the same way in both
+     * searches.
+     */
+    public void testGridTies() {
+        final int side = 21, k = 4;
+        Point[] pts = new Point[side * side * 2];
+        int[] start = new int[pts.length];
+        for (int i = 0; i < pts.length; ++i) {
+            int x = i % side, y = (i / side) % side;
+            pts[i] = new Point(x, y);
+            start[i] = (x < side / 2 ? 0 : 1) + (y < side / 2 ? 0 : 2);
+        }
+        compare(pts, start, k, false);
+    }
+
+
+    /**
+     * The means should end up near the centres of well-separated blobs.
+     */
+    public void testConverge() {
+        Random rand = new Random(3);
+        Point[] centres = { new Point(10, 10), new Point(90, 20), new Point(50, 80) };
+        Point[] pts = new Point[3000];
+        int[] start = new int[pts.length];
+        for (int i = 0; i < pts.length; ++i) {
+            Point c = centres[i % 3];
+            pts[i] = new Point(c.getX() + rand.nextGaussian(), c.getY() + rand.nextGaussian());
+            start[i] = i % 3;
+        }
+
+        KMeansClusterer km = new KMeansClusterer();
+        int[] ids = new int[pts.length];
+        double[][] means = new double[3][2];
+        km.prepare(pts, ids, means, new Region(0, 0, 100, 100));
+        System.arraycopy(start, 0, ids, 0, pts.length);
+        for (int iter = 0; iter < 100 && !km.iterate(); ++iter)
+            ;
+        for (int c = 0; c < 3; ++c) {
+            assertEquals(centres[c].getX(), means[c][0], 0.2);
+            assertEquals(centres[c].getY(), means[c][1], 0.2);
+        }
+        assertEquals(6000, km.metric(), 600);
+    }
+
+}
+
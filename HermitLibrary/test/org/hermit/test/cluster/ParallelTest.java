@@ -0,0 +1,177 @@
+
+/**
+ * cluster: Tests of cluster analysis algorithms.
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+
+package org.hermit.test.cluster;
+
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.hermit.geometry.Point;
+import org.hermit.geometry.Region;
+import org.hermit.geometry.cluster.Clusterer;
+import org.hermit.geometry.cluster.FuzzyClusterer;
+import org.hermit.geometry.cluster.KMeansClusterer;
+
+
+/**
+ * Test that the clusterers give exactly the same results in parallel,
+ * whatever the number of threads, as on a single thread.
+ */
+public class ParallelTest
+    extends TestCase
+{
+
+    // ******************************************************************** //
+    // Support.
+    // ******************************************************************** //
+
+    private static final Region REGION = new Region(0, 0, 1, 1);
+
+
+    private static Point[] randomPoints(int n, long seed) {
+        Random rand = new Random(seed);
+        Point[] pts = new Point[n];
+        for (int i = 0; i < n; ++i) {
+            // Clumps of various sizes, to make the clusters uneven.
+            double s = 0.02 + (i % 7) * 0.01;
+            pts[i] = new Point((i % 13) / 13.0 + rand.nextGaussian() * s,
+                               (i % 11) / 11.0 + rand.nextGaussian() * s);
+        }
+        return pts;
+    }
+
+
+    /**
+     * Run several clusterers in step, checking that they agree exactly
+     * after every iteration.
+     */
+    private static void compare(Clusterer[] runs, Point[] pts, int k, int maxIters) {
+        int[][] ids = new int[runs.length][pts.length];
+        double[][][] means = new double[runs.length][k][2];
+        for (int r = 0; r < runs.length; ++r) {
+            runs[r].setSeed(17);
+            runs[r].prepare(pts, ids[r], means[r], REGION);
+        }
+
+        for (int iter = 0; iter < maxIters; ++iter) {
+            boolean done = runs[0].iterate();
+            for (int r = 1; r < runs.length; ++r) {
+                assertEquals(done, runs[r].iterate());
+                assertTrue(Arrays.equals(ids[0], ids[r]));
+                for (int c = 0; c < k; ++c) {
+                    assertEquals(means[0][c][0], means[r][c][0], 0);
+                    assertEquals(means[0][c][1], means[r][c][1], 0);
+                }
+                assertEquals(runs[0].metric(), runs[r].metric(), 0);
+                assertEquals(runs[0].distanceCount(), runs[r].distanceCount());
+            }
+            if (done)
+                break;
+        }
+    }
+
+
+    // ******************************************************************** //
+    // Tests.
+    // ******************************************************************** //
+
+    public void testKMeans() {
+        Point[] pts = randomPoints(60000, 1);
+        ExecutorService[] pools = { null, Executors.newFixedThreadPool(2),
+                                     Executors.newFixedThreadPool(7) };
+        int[] threads = { 1, 2, 7 };
+        for (KMeansClusterer.Assignment method : KMeansClusterer.Assignment.values()) {
+            Clusterer[] runs = new Clusterer[pools.length];
+            for (int r = 0; r < pools.length; ++r) {
+                KMeansClusterer km = new KMeansClusterer();
+                km.setAssignment(method);
+                km.setExecutor(pools[r], threads[r]);
+                runs[r] = km;
+            }
+            compare(runs, pts, 40, 100);
+        }
+        for (ExecutorService pool : pools)
+            if (pool != null)
+                pool.shutdown();
+    }
+
+
+    public void testFuzzy() {
+        Point[] pts = randomPoints(20000, 2);
+        ExecutorService[] pools = { null, Executors.newFixedThreadPool(3),
+                                     Executors.newFixedThreadPool(5) };
+        int[] threads = { 1, 3, 5 };
+        Clusterer[] runs = new Clusterer[pools.length];
+        for (int r = 0; r < pools.length; ++r) {
+            runs[r] = new FuzzyClusterer();
+            runs[r].setExecutor(pools[r], threads[r]);
+        }
+        compare(runs, pts, 6, 5);
+        for (ExecutorService pool : pools)
+            if (pool != null)
+                pool.shutdown();
+    }
+
+
+    /**
+     * k-means|| seeding samples the points in parallel; the means it
+     * picks must not depend on the number of threads.
+     */
+    public void testParallelSeeding() {
+        Point[] pts = randomPoints(50000, 4);
+        ExecutorService[] pools = { null, Executors.newFixedThreadPool(3),
+                                     Executors.newFixedThreadPool(6) };
+        int[] threads = { 1, 3, 6 };
+        Clusterer[] runs = new Clusterer[pools.length];
+        for (int r = 0; r < pools.length; ++r) {
+            runs[r] = new KMeansClusterer();
+            runs[r].setSeeding(Clusterer.Seeding.PARALLEL);
+            runs[r].setExecutor(pools[r], threads[r]);
+        }
+        compare(runs, pts, 30, 3);
+        for (ExecutorService pool : pools)
+            if (pool != null)
+                pool.shutdown();
+    }
+
+
+    /**
+     * A bounded executor which rejects most of the helper tasks should
+     * still give the same results; the calling thread does the work
+     * the executor won't take.
+     */
+    public void testBounded() throws InterruptedException {
+        Point[] pts = randomPoints(100000, 3);
+        ThreadPoolExecutor pool =
+            new ThreadPoolExecutor(2, 2, 1, TimeUnit.SECONDS,
+                                   new ArrayBlockingQueue<Runnable>(1),
+                                   new ThreadPoolExecutor.AbortPolicy());
+        for (KMeansClusterer.Assignment method : KMeansClusterer.Assignment.values()) {
+            KMeansClusterer serial = new KMeansClusterer();
+            serial.setAssignment(method);
+            KMeansClusterer bounded = new KMeansClusterer();
+            bounded.setAssignment(method);
+            bounded.setExecutor(pool, 16);
+            compare(new Clusterer[] { serial, bounded }, pts, 20, 20);
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+}
+
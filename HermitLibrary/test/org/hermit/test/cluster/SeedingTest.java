@@ -0,0 +1,172 @@
+
+/**
+ * cluster: Tests of cluster analysis algorithms.
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+
+package org.hermit.test.cluster;
+
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.hermit.geometry.Point;
+import org.hermit.geometry.Region;
+import org.hermit.geometry.cluster.Clusterer;
+import org.hermit.geometry.cluster.FuzzyClusterer;
+import org.hermit.geometry.cluster.KMeansClusterer;
+
+
+/**
+ * Test the seeding of the initial cluster means.
+ */
+public class SeedingTest
+    extends TestCase
+{
+
+    // ******************************************************************** //
+    // Support.
+    // ******************************************************************** //
+
+    private static final Region REGION = new Region(0, 0, 1000, 1000);
+
+
+    /**
+     * Make points in Gaussian blobs on a grid.
+     */
+    private static Point[] blobs(int n, int side, long seed) {
+        Random rand = new Random(seed);
+        Point[] pts = new Point[n];
+        for (int i = 0; i < n; ++i) {
+            int b = rand.nextInt(side * side);
+            double x = (b % side + 0.5) * 1000.0 / side + rand.nextGaussian() * 15;
+            double y = (b / side + 0.5) * 1000.0 / side + rand.nextGaussian() * 15;
+            pts[i] = new Point(x, y);
+        }
+        return pts;
+    }
+
+
+    /**
+     * Run a clusterer to convergence.
+     *
+     * @return              The number of iterations.
+     */
+    private static int run(Clusterer clusterer, Point[] pts, double[][] means) {
+        clusterer.prepare(pts, new int[pts.length], means, REGION);
+        for (int iter = 1; iter <= 500; ++iter)
+            if (clusterer.iterate())
+                return iter;
+        fail("no convergence");
+        return 0;
+    }
+
+
+    private static KMeansClusterer kmeans(Clusterer.Seeding seeding, long seed) {
+        KMeansClusterer km = new KMeansClusterer();
+        km.setSeeding(seeding);
+        km.setSeed(seed);
+        return km;
+    }
+
+
+    // ******************************************************************** //
+    // Tests.
+    // ******************************************************************** //
+
+    /**
+     * The same seed must give the same results, for each seeding method.
+     */
+    public void testReproducible() {
+        Point[] pts = blobs(5000, 4, 1);
+        for (Clusterer.Seeding seeding : Clusterer.Seeding.values()) {
+            double[][] m1 = new double[16][2];
+            double[][] m2 = new double[16][2];
+            int i1 = run(kmeans(seeding, 99), pts, m1);
+            int i2 = run(kmeans(seeding, 99), pts, m2);
+            assertEquals(i1, i2);
+            for (int c = 0; c < m1.length; ++c) {
+                assertEquals(m1[c][0], m2[c][0], 0);
+                assertEquals(m1[c][1], m2[c][1], 0);
+            }
+
+            FuzzyClusterer f1 = new FuzzyClusterer();
+            FuzzyClusterer f2 = new FuzzyClusterer();
+            f1.setSeeding(seeding);
+            f2.setSeeding(seeding);
+            f1.setSeed(7);
+            f2.setSeed(7);
+            m1 = new double[4][2];
+            m2 = new double[4][2];
+            f1.prepare(pts, new int[pts.length], m1, REGION);
+            f2.prepare(pts, new int[pts.length], m2, REGION);
+            for (int c = 0; c < m1.length; ++c) {
+                assertEquals(m1[c][0], m2[c][0], 0);
+                assertEquals(m1[c][1], m2[c][1], 0);
+            }
+        }
+    }
+
+
+    /**
+     * Seeding from the data should converge in fewer iterations than
+     * random seeding, and to a better solution.
+     */
+    public void testConvergence() {
+        Point[] pts = blobs(20000, 6, 2);
+        int[] iters = new int[3];
+        double[] metric = new double[3];
+        Clusterer.Seeding[] methods = Clusterer.Seeding.values();
+        for (long seed = 1; seed <= 5; ++seed) {
+            for (int s = 0; s < methods.length; ++s) {
+                KMeansClusterer km = kmeans(methods[s], seed);
+                iters[s] += run(km, pts, new double[36][2]);
+                metric[s] += km.metric();
+            }
+        }
+
+        int random = Clusterer.Seeding.RANDOM.ordinal();
+        for (int s = 0; s < methods.length; ++s) {
+            if (s == random)
+                continue;
+            assertTrue(methods[s] + " took " + iters[s] + " iterations",
+                       iters[s] * 2 < iters[random]);
+            assertTrue(metric[s] < metric[random]);
+        }
+    }
+
+
+    /**
+     * With fewer distinct points than clusters, the means must still
+     * all be on data points.
+     */
+    public void testFewPoints() {
+        Point[] pts = new Point[50];
+        for (int i = 0; i < pts.length; ++i)
+            pts[i] = new Point(100 + i % 3, 200);
+        Clusterer.Seeding[] methods = {
+            Clusterer.Seeding.PLUS_PLUS, Clusterer.Seeding.PARALLEL,
+        };
+        for (Clusterer.Seeding seeding : methods) {
+            double[][] means = new double[5][2];
+            kmeans(seeding, 3).prepare(pts, new int[pts.length], means, REGION);
+            boolean[] used = new boolean[3];
+            for (double[] m : means) {
+                assertEquals(200, m[1], 0);
+                int x = (int) m[0] - 100;
+                assertEquals(100 + x, m[0], 0);
+                assertTrue(x >= 0 && x < 3);
+                used[x] = true;
+            }
+            for (boolean u : used)
+                assertTrue(u);
+        }
+    }
+
+}
+
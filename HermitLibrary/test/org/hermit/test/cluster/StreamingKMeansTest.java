@@ -0,0 +1,237 @@
+
+/**
+ * cluster: Tests of cluster analysis algorithms.
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+
+package org.hermit.test.cluster;
+
+
+import java.util.Iterator;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.hermit.geometry.Point;
+import org.hermit.geometry.cluster.StreamingKMeans;
+
+
+/**
+ * Test the streaming mini-batch k-means clusterer.
+ */
+public class StreamingKMeansTest
+    extends TestCase
+{
+
+    // ******************************************************************** //
+    // Support.
+    // ******************************************************************** //
+
+    /**
+     * Make a stream of points in Gaussian blobs on a grid.  The points
+     * are generated as they are read, so the stream is never in memory.
+     */
+    private static Iterator<Point> blobs(final int n, final int side, long seed) {
+        final Random rand = new Random(seed);
+        return new Iterator<Point>() {
+            public boolean hasNext() {
+                return count < n;
+            }
+
+            public Point next() {
+                ++count;
+                int b = rand.nextInt(side * side);
+                double x = (b % side + 0.5) * 1000.0 / side + rand.nextGaussian() * 10;
+                double y = (b / side + 0.5) * 1000.0 / side + rand.nextGaussian() * 10;
+                return new Point(x, y);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            private int count = 0;
+        };
+    }
+
+
+    private static StreamingKMeans run(int k, int n, long seed, int reservoir) {
+        StreamingKMeans skm = new StreamingKMeans(k, 500);
+        skm.setSeed(seed);
+        skm.setReservoirSize(reservoir);
+        skm.addAll(blobs(n, 3, 1));
+        return skm;
+    }
+
+
+    // ******************************************************************** //
+    // Tests.
+    // ******************************************************************** //
+
+    /**
+     * There should be one mean near the centre of each blob.
+     */
+    public void testBlobs() {
+        StreamingKMeans skm = run(9, 200000, 5, 0);
+        assertEquals(200000, skm.getNumPoints());
+
+        double[][] means = new double[9][2];
+        skm.getMeans(means);
+        boolean[] found = new boolean[9];
+        long total = 0;
+        for (int c = 0; c < 9; ++c) {
+            int bx = (int) (means[c][0] * 3 / 1000);
+            int by = (int) (means[c][1] * 3 / 1000);
+            assertEquals((bx + 0.5) * 1000.0 / 3, means[c][0], 2);
+            assertEquals((by + 0.5) * 1000.0 / 3, means[c][1], 2);
+            found[by * 3 + bx] = true;
+            total += skm.getCount(c);
+        }
+        for (boolean f : found)
+            assertTrue(f);
+        assertEquals(200000, total);
+
+        // The points are within about 10 of their means.
+        assertEquals(200, skm.getBatchMetric(), 40);
+    }
+
+
+    /**
+     * The same seed must give the same results.
+     */
+    public void testReproducible() {
+        double[][] m1 = new double[5][2];
+        double[][] m2 = new double[5][2];
+        run(5, 20000, 3, 100).getMeans(m1);
+        run(5, 20000, 3, 100).getMeans(m2);
+        for (int c = 0; c < m1.length; ++c) {
+            assertEquals(m1[c][0], m2[c][0], 0);
+            assertEquals(m1[c][1], m2[c][1], 0);
+        }
+    }
+
+
+    /**
+     * The reservoir should hold a bounded sample, whose metric agrees
+     * with the metric of the batches.
+     */
+    public void testReservoir() {
+        StreamingKMeans none = run(9, 1000, 1, 0);
+        assertTrue(Double.isNaN(none.reservoirMetric()));
+        assertEquals(0, none.getReservoir().length);
+
+        StreamingKMeans few = run(9, 50, 1, 100);
+        assertEquals(50, few.getReservoir().length);
+
+        StreamingKMeans skm = run(9, 100000, 2, 2000);
+        assertEquals(2000, skm.getReservoir().length);
+        assertEquals(skm.getBatchMetric(), skm.reservoirMetric(), 40);
+
+        // Resizing the reservoir starts a new sample, which must not be
+        // biased by the points seen before.  Of 20 points offered to a
+        // reservoir of 10, the last 10 should be half the sample.
+        int late = 0;
+        for (long seed = 0; seed < 200; ++seed) {
+            StreamingKMeans resized = run(9, 50, seed, 100);
+            resized.setReservoirSize(10);
+            assertEquals(0, resized.getReservoir().length);
+            for (int i = 0; i < 20; ++i)
+                resized.add(new Point(i < 10 ? -1 : -2, i));
+            for (Point p : resized.getReservoir())
+                if (p.getX() == -2)
+                    ++late;
+        }
+        assertEquals(1000, late, 150);
+
+        // The sample should be spread over all the blobs.
+        int[] counts = new int[9];
+        for (Point p : skm.getReservoir())
+            ++counts[(int) (p.getY() * 3 / 1000) * 3 + (int) (p.getX() * 3 / 1000)];
+        for (int count : counts)
+            assertEquals(2000 / 9, count, 60);
+    }
+
+
+    /**
+     * Each of four well-separated blobs must get its own mean, however
+     * the first points arrive.
+     */
+    private static void checkBlobsFound(StreamingKMeans skm) {
+        double[][] means = new double[4][2];
+        skm.getMeans(means);
+        boolean[] found = new boolean[4];
+        for (int c = 0; c < 4; ++c) {
+            int b = (int) Math.round(means[c][0] / 500);
+            assertTrue(b >= 0 && b < 4);
+            assertEquals(b * 500, means[c][0], 1);
+            assertEquals(0, means[c][1], 1);
+            found[b] = true;
+        }
+        for (boolean f : found)
+            assertTrue(f);
+    }
+
+
+    private static void addLine(StreamingKMeans skm, int n, long seed) {
+        Random rand = new Random(seed);
+        for (int i = 0; i < n; ++i)
+            skm.add(new Point(rand.nextInt(4) * 500 + rand.nextGaussian(),
+                              rand.nextGaussian()));
+        skm.flush();
+    }
+
+
+    /**
+     * The means mustn't be seeded from fewer points than clusters, and
+     * means seeded on top of each other mustn't stay dead.
+     */
+    public void testSeeding() {
+        try {
+            new StreamingKMeans(4, 2);
+            fail("batch smaller than cluster count accepted");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+
+        // An early flush waits for enough points to seed from.
+        StreamingKMeans skm = new StreamingKMeans(4, 100);
+        skm.setSeed(1);
+        skm.add(new Point(500, 0));
+        skm.add(new Point(501, 0));
+        skm.flush();
+        assertEquals(0, skm.getNumPoints());
+        addLine(skm, 100000, 2);
+        assertEquals(100002, skm.getNumPoints());
+        checkBlobsFound(skm);
+
+        // A stream which starts with duplicates seeds all the means on
+        // one point.
+        skm = new StreamingKMeans(4, 10);
+        skm.setSeed(1);
+        for (int i = 0; i < 10; ++i)
+            skm.add(new Point(500, 0));
+        addLine(skm, 100000, 3);
+        checkBlobsFound(skm);
+    }
+
+
+    /**
+     * A partial batch is only used when flushed.
+     */
+    public void testPartialBatch() {
+        StreamingKMeans skm = new StreamingKMeans(2, 10);
+        Iterator<Point> pts = blobs(15, 2, 4);
+        while (pts.hasNext())
+            skm.add(pts.next());
+        assertEquals(10, skm.getNumPoints());
+        skm.flush();
+        assertEquals(15, skm.getNumPoints());
+        assertEquals(15, skm.getCount(0) + skm.getCount(1));
+    }
+
+}
+
@@ -0,0 +1,195 @@
+
+/**
+ * cluster: Tests of cluster analysis algorithms.
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+
+package org.hermit.test.cluster;
+
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.hermit.geometry.Point;
+import org.hermit.geometry.Region;
+import org.hermit.geometry.voronoi.Fortune;
+import org.hermit.geometry.voronoi.VoronoiCells;
+import org.hermit.geometry.voronoi.VoronoiMesh;
+
+
+/**
+ * Test the clipped Voronoi cells.
+ */
+public class VoronoiCellsTest
+    extends TestCase
+{
+
+    // ******************************************************************** //
+    // Support.
+    // ******************************************************************** //
+
+    private static Point[] randomSites(int n, long seed, double lo, double hi) {
+        Random rand = new Random(seed);
+        Point[] sites = new Point[n];
+        for (int i = 0; i < n; ++i)
+            sites[i] = new Point(lo + rand.nextDouble() * (hi - lo),
+                                 lo + rand.nextDouble() * (hi - lo));
+        return sites;
+    }
+
+
+    /**
+     * Check that the cells tile the boundary, and that random points
+     * in the boundary are in the cell of their nearest site.
+     */
+    private static void checkCells(VoronoiCells cells, long seed) {
+        final VoronoiMesh mesh = cells.getMesh();
+        final double[] s = mesh.getSiteCoords();
+        final int n = mesh.getNumSites();
+
+        double total = 0;
+        for (double a : cells.getAreas()) {
+            assertTrue(a >= 0);
+            total += a;
+        }
+        assertEquals(cells.getBoundaryArea(), total, 1e-9 * cells.getBoundaryArea());
+
+        Random rand = new Random(seed);
+        int last = 0;
+        for (int q = 0; q < 2000; ++q) {
+            double x = rand.nextDouble() * 1.4 - 0.2;
+            double y = rand.nextDouble() * 1.4 - 0.2;
+            int cell = cells.findCell(x, y, last);
+            if (!cells.inBounds(x, y)) {
+                assertEquals(-1, cell);
+                continue;
+            }
+
+            int best = 0;
+            double bd = Double.MAX_VALUE;
+            for (int p = 0; p < n; ++p) {
+                double d = Math.hypot(s[p * 2] - x, s[p * 2 + 1] - y);
+                if (d < bd) {
+                    bd = d;
+                    best = p;
+                }
+            }
+            assertEquals(best, cell);
+            assertTrue("point not in cell " + best, cells.contains(best, x, y));
+            last = cell;
+        }
+    }
+
+
+    // ******************************************************************** //
+    // Tests.
+    // ******************************************************************** //
+
+    /**
+     * Two sites split a square in half.
+     */
+    public void testTwoSites() {
+        VoronoiMesh mesh = Fortune.ComputeVoronoiMesh(new Point[] {
+            new Point(0.25, 0.5), new Point(0.75, 0.5)
+        });
+        VoronoiCells cells = mesh.clipCells(new Region(0, 0, 1, 1));
+        assertEquals(2, cells.getNumCells());
+        assertEquals(4, cells.getNumVertices(0));
+        assertEquals(0.5, cells.getAreas()[0], 1e-12);
+        assertEquals(0.5, cells.getAreas()[1], 1e-12);
+        double[] c = cells.getCentroids();
+        assertEquals(0.25, c[0], 1e-12);
+        assertEquals(0.5, c[1], 1e-12);
+        assertEquals(0.75, c[2], 1e-12);
+        assertEquals(0.5, c[3], 1e-12);
+    }
+
+
+    /**
+     * Random sites in a square, clipped to the square.
+     */
+    public void testRandomInRegion() {
+        Point[] pts = randomSites(3000, 1, 0, 1);
+        VoronoiMesh mesh = Fortune.ComputeVoronoiMesh(pts);
+        VoronoiCells cells = mesh.clipCells(new Region(0, 0, 1, 1));
+        checkCells(cells, 2);
+
+        // Each site is in the boundary, so it must be in its own cell.
+        final double[] s = mesh.getSiteCoords();
+        for (int p = 0; p < mesh.getNumSites(); ++p)
+            if (!cells.contains(p, s[p * 2], s[p * 2 + 1]))
+                fail("site " + p + " not in its cell");
+    }
+
+
+    /**
+     * Sites spilling outside a triangular boundary; some cells are
+     * clipped away entirely.
+     */
+    public void testConvexPolygon() {
+        Point[] pts = randomSites(1000, 3, -0.5, 1.5);
+        VoronoiMesh mesh = Fortune.ComputeVoronoiMesh(pts);
+
+        // Give the triangle clockwise, to check it is reordered.
+        double[] tri = { 0, 0, 0.5, 1, 1, 0 };
+        VoronoiCells cells = mesh.clipCells(tri);
+        assertEquals(0.5, cells.getBoundaryArea(), 1e-12);
+        checkCells(cells, 4);
+
+        int empty = 0;
+        for (int p = 0; p < cells.getNumCells(); ++p)
+            if (cells.getNumVertices(p) == 0)
+                ++empty;
+        assertTrue(empty > 0);
+    }
+
+
+    /**
+     * Collinear sites have no triangles, so the cells are strips.
+     */
+    public void testCollinear() {
+        Point[] pts = new Point[5];
+        for (int i = 0; i < pts.length; ++i)
+            pts[i] = new Point(i * 0.2 + 0.1, 0.5);
+        VoronoiMesh mesh = Fortune.ComputeVoronoiMesh(pts);
+        assertEquals(0, mesh.getNumTriangles());
+        VoronoiCells cells = mesh.clipCells(new Region(0, 0, 1, 1));
+        for (int p = 0; p < 5; ++p)
+            assertEquals(0.2, cells.getAreas()[p], 1e-12);
+        checkCells(cells, 5);
+    }
+
+
+    /**
+     * Lloyd relaxation, moving each site to its cell's centroid, should
+     * steadily reduce the energy of the diagram.
+     */
+    public void testLloyd() {
+        Point[] pts = randomSites(500, 6, 0, 1);
+        Region bounds = new Region(0, 0, 1, 1);
+        double prev = Double.MAX_VALUE;
+        for (int iter = 0; iter < 10; ++iter) {
+            VoronoiMesh mesh = Fortune.ComputeVoronoiMesh(pts);
+            VoronoiCells cells = mesh.clipCells(bounds);
+            double[] c = cells.getCentroids();
+            double[] s = mesh.getSiteCoords();
+            double[] a = cells.getAreas();
+            double moved = 0;
+            pts = new Point[mesh.getNumSites()];
+            for (int p = 0; p < pts.length; ++p) {
+                double dx = c[p * 2] - s[p * 2], dy = c[p * 2 + 1] - s[p * 2 + 1];
+                moved += a[p] * (dx * dx + dy * dy);
+                pts[p] = new Point(c[p * 2], c[p * 2 + 1]);
+            }
+            assertTrue(moved < prev);
+            prev = moved;
+        }
+    }
+
+}
+
@@ -0,0 +1,261 @@
+
+/**
+ * cluster: Tests of cluster analysis algorithms.
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+
+package org.hermit.test.cluster;
+
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.hermit.geometry.Edge;
+import org.hermit.geometry.Graph;
+import org.hermit.geometry.Point;
+import org.hermit.geometry.voronoi.Fortune;
+import org.hermit.geometry.voronoi.VoronoiMesh;
+
+
+/**
+ * Test the Delaunay / Voronoi half-edge mesh.
+ */
+public class VoronoiMeshTest
+    extends TestCase
+{
+
+    // ******************************************************************** //
+    // Support.
+    // ******************************************************************** //
+
+    private static Point[] randomSites(int n, long seed) {
+        Random rand = new Random(seed);
+        Point[] sites = new Point[n];
+        for (int i = 0; i < n; ++i)
+            sites[i] = new Point(rand.nextDouble(), rand.nextDouble());
+        return sites;
+    }
+
+
+    /**
+     * Check the structure of a mesh: triangles anticlockwise, twins
+     * consistent, and the right number of triangles for the hull.
+     */
+    private static void checkStructure(VoronoiMesh mesh) {
+        final double[] s = mesh.getSiteCoords();
+        final int[] org = mesh.getOrigins();
+        final int[] twin = mesh.getTwins();
+        final int nh = mesh.getNumHalfEdges();
+
+        int hull = 0;
+        for (int h = 0; h < nh; ++h) {
+            if (twin[h] < 0)
+                ++hull;
+            else {
+                assertEquals(h, twin[twin[h]]);
+                assertEquals(org[h], mesh.dest(twin[h]));
+                assertEquals(mesh.dest(h), org[twin[h]]);
+            }
+            if (h % 3 == 0) {
+                int a = org[h], b = org[h + 1], c = org[h + 2];
+                double cross = (s[b * 2] - s[a * 2]) * (s[c * 2 + 1] - s[a * 2 + 1]) -
+                               (s[b * 2 + 1] - s[a * 2 + 1]) * (s[c * 2] - s[a * 2]);
+                assertTrue("triangle " + h / 3 + " not anticlockwise", cross >= 0);
+            }
+        }
+
+        // Euler: a triangulation of n points with h on the hull has
+        // 2n - 2 - h triangles.
+        assertEquals(mesh.getNumSites() * 2 - 2 - hull, mesh.getNumTriangles());
+    }
+
+
+    // ******************************************************************** //
+    // Tests.
+    // ******************************************************************** //
+
+    /**
+     * Each triangle's circumcircle must be empty, and its centre must
+     * be the Voronoi vertex.
+     */
+    public void testDelaunay() {
+        Point[] pts = randomSites(500, 1);
+        VoronoiMesh mesh = Fortune.ComputeVoronoiMesh(pts);
+        assertEquals(500, mesh.getNumSites());
+        checkStructure(mesh);
+
+        final double[] s = mesh.getSiteCoords();
+        final double[] v = mesh.getVertexCoords();
+        final int[] org = mesh.getOrigins();
+        for (int t = 0; t < mesh.getNumTriangles(); ++t) {
+            double cx = v[t * 2], cy = v[t * 2 + 1];
+            double r = Math.hypot(s[org[t * 3] * 2] - cx, s[org[t * 3] * 2 + 1] - cy);
+            for (int k = 1; k < 3; ++k) {
+                int p = org[t * 3 + k];
+                assertEquals(r, Math.hypot(s[p * 2] - cx, s[p * 2 + 1] - cy), 1e-9);
+            }
+            for (int p = 0; p < mesh.getNumSites(); ++p)
+                if (Math.hypot(s[p * 2] - cx, s[p * 2 + 1] - cy) < r - 1e-9)
+                    fail("site " + p + " inside triangle " + t);
+        }
+    }
+
+
+    /**
+     * The Delaunay edges must be exactly the pairs of sites separated
+     * by the edges of the Voronoi graph.
+     */
+    public void testDualOfGraph() {
+        Point[] pts = randomSites(3000, 2);
+        VoronoiMesh mesh = Fortune.ComputeVoronoiMesh(pts);
+        checkStructure(mesh);
+
+        HashSet<Long> meshPairs = new HashSet<Long>();
+        final int[] org = mesh.getOrigins();
+        for (int h = 0; h < mesh.getNumHalfEdges(); ++h)
+            meshPairs.add(pair(org[h], mesh.dest(h)));
+
+        HashMap<Point, Integer> index = new HashMap<Point, Integer>();
+        for (int i = 0; i < pts.length; ++i)
+            index.put(pts[i], i);
+        HashSet<Long> graphPairs = new HashSet<Long>();
+        Graph graph = Fortune.ComputeVoronoiGraph(pts);
+        for (Edge e : graph.getEdgeArray())
+            graphPairs.add(pair(index.get(e.getDatumA()), index.get(e.getDatumB())));
+
+        assertEquals(graphPairs, meshPairs);
+    }
+
+
+    private static long pair(int a, int b) {
+        return a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+    }
+
+
+    /**
+     * Neighbour lists must be symmetric, and each interior site must be
+     * inside its Voronoi cell.
+     */
+    public void testNeighboursAndCells() {
+        Point[] pts = randomSites(2000, 3);
+        VoronoiMesh mesh = Fortune.ComputeVoronoiMesh(pts);
+        final double[] s = mesh.getSiteCoords();
+        int[] nbrs = new int[64];
+        int[] back = new int[64];
+        double[] cell = new double[128];
+        int edges = 0;
+
+        for (int p = 0; p < mesh.getNumSites(); ++p) {
+            int n = mesh.getNeighbours(p, nbrs);
+            assertTrue(n >= 2 && n <= nbrs.length);
+            edges += n;
+            for (int i = 0; i < n; ++i) {
+                int m = mesh.getNeighbours(nbrs[i], back);
+                boolean found = false;
+                for (int j = 0; j < m; ++j)
+                    found |= back[j] == p;
+                assertTrue("neighbours of " + p + " not symmetric", found);
+            }
+
+            int c = mesh.getCell(p, cell);
+            if (mesh.isHullSite(p)) {
+                assertEquals(n - 1, c);
+                continue;
+            }
+            assertEquals(n, c);
+            for (int i = 0; i < c; ++i) {
+                int j = (i + 1) % c;
+                double cross = (cell[j * 2] - cell[i * 2]) * (s[p * 2 + 1] - cell[i * 2 + 1]) -
+                               (cell[j * 2 + 1] - cell[i * 2 + 1]) * (s[p * 2] - cell[i * 2]);
+                assertTrue("site " + p + " outside its cell", cross >= -1e-12);
+            }
+        }
+
+        // Each edge is counted from both ends.
+        int hull = 0;
+        for (int t : mesh.getTwins())
+            if (t < 0)
+                ++hull;
+        assertEquals((mesh.getNumHalfEdges() + hull) / 2, edges / 2);
+    }
+
+
+    /**
+     * Nearest-site lookups must agree with brute force, whether walking
+     * from a fixed start or from the last result.
+     */
+    public void testNearest() {
+        Point[] pts = randomSites(3000, 4);
+        VoronoiMesh mesh = Fortune.ComputeVoronoiMesh(pts);
+        final double[] s = mesh.getSiteCoords();
+        Random rand = new Random(5);
+        int last = 0;
+        for (int q = 0; q < 2000; ++q) {
+            double x = rand.nextDouble() * 1.2 - 0.1;
+            double y = rand.nextDouble() * 1.2 - 0.1;
+            int best = 0;
+            double bd = Double.MAX_VALUE;
+            for (int p = 0; p < mesh.getNumSites(); ++p) {
+                double d = Math.hypot(s[p * 2] - x, s[p * 2 + 1] - y);
+                if (d < bd) {
+                    bd = d;
+                    best = p;
+                }
+            }
+            assertEquals(best, mesh.findNearestSite(x, y, 0));
+            last = mesh.findNearestSite(x, y, last);
+            assertEquals(best, last);
+        }
+    }
+
+
+    /**
+     * Duplicate points share a site, and a lattice -- where every
+     * Voronoi vertex is degenerate -- still triangulates properly.
+     */
+    public void testLatticeWithDuplicates() {
+        final int side = 20;
+        Point[] pts = new Point[side * side * 2];
+        for (int i = 0; i < side * side; ++i) {
+            pts[i] = new Point(i % side, i / side);
+            pts[side * side + i] = new Point(i % side, i / side);
+        }
+        VoronoiMesh mesh = Fortune.ComputeVoronoiMesh(pts);
+        assertEquals(side * side, mesh.getNumSites());
+        int[] in = mesh.getInputSites();
+        for (int i = 0; i < side * side; ++i) {
+            assertEquals(i, in[i]);
+            assertEquals(i, in[side * side + i]);
+        }
+        checkStructure(mesh);
+        assertEquals((side - 1) * (side - 1) * 2, mesh.getNumTriangles());
+    }
+
+
+    /**
+     * Points equal to within the precision, but either side of a
+     * rounding boundary, share a site.
+     */
+    public void testNearDuplicates() {
+        Point[] sites = randomSites(200, 6);
+        Point[] pts = new Point[sites.length + 2];
+        System.arraycopy(sites, 0, pts, 0, sites.length);
+        pts[sites.length] = new Point(0.5e-10 - 1e-13, 0.5);
+        pts[sites.length + 1] = new Point(0.5e-10 + 1e-13, 0.5);
+        VoronoiMesh mesh = Fortune.ComputeVoronoiMesh(pts);
+        assertEquals(sites.length + 1, mesh.getNumSites());
+        int[] in = mesh.getInputSites();
+        assertEquals(sites.length, in[sites.length]);
+        assertEquals(sites.length, in[sites.length + 1]);
+        checkStructure(mesh);
+    }
+
+}
+
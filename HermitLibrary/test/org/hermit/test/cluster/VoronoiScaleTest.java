@@ -0,0 +1,213 @@
+
+/**
+ * cluster: Tests of cluster analysis algorithms.
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+
+package org.hermit.test.cluster;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.hermit.geometry.Edge;
+import org.hermit.geometry.Graph;
+import org.hermit.geometry.Point;
+import org.hermit.geometry.voronoi.Fortune;
+
+
+/**
+ * Large-scale Voronoi tests.  These run Fortune's algorithm on many
+ * random sites, and check that every vertex generated is the centre of
+ * an empty circle through its sites; including sites in an order which
+ * would unbalance the beach line.  The main method is a scaling
+ * benchmark, from 1000 to a million sites.
+ */
+public class VoronoiScaleTest
+    extends TestCase
+{
+
+    // ******************************************************************** //
+    // Support.
+    // ******************************************************************** //
+
+    private static Point[] randomSites(int n, long seed) {
+        Random rand = new Random(seed);
+        Point[] sites = new Point[n];
+        for (int i = 0; i < n; ++i)
+            sites[i] = new Point(rand.nextDouble(), rand.nextDouble());
+        return sites;
+    }
+
+
+    /**
+     * Check that a graph is a valid Voronoi diagram of a set of sites
+     * in the unit square.  Each finite vertex must be equidistant from
+     * the sites of its edge, and no site may be closer to it.  The
+     * sites are bucketed in a grid so this is quick.
+     */
+    private static void checkDiagram(Point[] sites, Graph graph) {
+        final int n = sites.length;
+        final int grid = (int) Math.sqrt(n / 2);
+        List<List<Point>> buckets = new ArrayList<List<Point>>(grid * grid);
+        for (int i = 0; i < grid * grid; ++i)
+            buckets.add(new ArrayList<Point>());
+        for (Point p : sites)
+            buckets.get(cell(p.getY(), grid) * grid + cell(p.getX(), grid)).add(p);
+
+        for (Edge e : graph.getEdgeArray()) {
+            for (Point v : new Point[] { e.getVertexA(), e.getVertexB() }) {
+                if (v.isInfinite())
+                    continue;
+                final double r = v.dist(e.getDatumA());
+                if (Math.abs(v.dist(e.getDatumB()) - r) > 1e-8)
+                    fail("vertex " + v + " not equidistant");
+
+                // Search the buckets which overlap the circle.
+                final int x0 = cell(v.getX() - r, grid);
+                final int x1 = cell(v.getX() + r, grid);
+                final int y0 = cell(v.getY() - r, grid);
+                final int y1 = cell(v.getY() + r, grid);
+                for (int y = y0; y <= y1; ++y)
+                    for (int x = x0; x <= x1; ++x)
+                        for (Point p : buckets.get(y * grid + x))
+                            if (v.dist(p) < r - 1e-8)
+                                fail("site " + p + " inside circle of " + v);
+            }
+        }
+    }
+
+
+    private static int cell(double c, int grid) {
+        return Math.max(0, Math.min(grid - 1, (int) (c * grid)));
+    }
+
+
+    /**
+     * Check that a diagram of random sites has about the right number
+     * of edges.  There are 2n - 2 - h vertices for n sites, h on the
+     * hull, and each is on 3 edges.
+     */
+    private static void checkRandomEdges(int n, Graph graph) {
+        assertTrue("too few edges: " + graph.getNumEdges(),
+                   graph.getNumEdges() > n * 3 - 3 - 4 * Math.sqrt(n));
+    }
+
+
+    // ******************************************************************** //
+    // Tests.
+    // ******************************************************************** //
+
+    public void testRandom1k() {
+        Point[] sites = randomSites(1000, 1000);
+        Graph graph = Fortune.ComputeVoronoiGraph(sites);
+        checkRandomEdges(sites.length, graph);
+        checkDiagram(sites, graph);
+    }
+
+
+    /**
+     * At this size, new sites regularly fall within rounding distance
+     * of a breakpoint, which used to lose circle events.
+     */
+    public void testRandom20k() {
+        Point[] sites = randomSites(20000, 20000);
+        Graph graph = Fortune.ComputeVoronoiGraph(sites);
+        checkRandomEdges(sites.length, graph);
+        checkDiagram(sites, graph);
+    }
+
+
+    /**
+     * Sites on a convex curve, sorted in X.  Each new site lands at
+     * the end of the beach line, which without balancing makes the
+     * tree a list, and the run quadratic.
+     */
+    public void testSortedConvex() {
+        final int n = 10000;
+        Point[] sites = new Point[n];
+        for (int i = 0; i < n; ++i) {
+            double x = (double) i / n;
+            sites[i] = new Point(x, x * x);
+        }
+        Graph graph = Fortune.ComputeVoronoiGraph(sites);
+
+        // All the sites are on the hull, so there are n - 2 vertices.
+        assertEquals(n * 2 - 3, graph.getNumEdges());
+        checkDiagram(sites, graph);
+    }
+
+
+    /**
+     * Duplicate sites should be ignored.
+     */
+    public void testDuplicates() {
+        Point[] sites = randomSites(2000, 2);
+        Point[] doubled = new Point[sites.length * 2];
+        for (int i = 0; i < sites.length; ++i) {
+            doubled[i * 2] = sites[i];
+            doubled[i * 2 + 1] = new Point(sites[i].getX(), sites[i].getY());
+        }
+        Graph graph = Fortune.ComputeVoronoiGraph(doubled);
+        assertEquals(Fortune.ComputeVoronoiGraph(sites).getNumEdges(), graph.getNumEdges());
+        checkDiagram(sites, graph);
+    }
+
+
+    /**
+     * Sites which are equal to within the precision, but either side of
+     * a rounding boundary, should also be treated as duplicates.
+     */
+    public void testNearDuplicates() {
+        Point[] sites = randomSites(200, 3);
+        Point[] near = new Point[sites.length + 2];
+        System.arraycopy(sites, 0, near, 0, sites.length);
+        near[sites.length] = new Point(0.5e-10 - 1e-13, 0.5);
+        near[sites.length + 1] = new Point(0.5e-10 + 1e-13, 0.5);
+        assertEquals(near[sites.length], near[sites.length + 1]);
+
+        Point[] distinct = new Point[sites.length + 1];
+        System.arraycopy(near, 0, distinct, 0, distinct.length);
+        Graph graph = Fortune.ComputeVoronoiGraph(near);
+        assertEquals(Fortune.ComputeVoronoiGraph(distinct).getNumEdges(), graph.getNumEdges());
+        checkDiagram(distinct, graph);
+    }
+
+
+    // ******************************************************************** //
+    // Main.
+    // ******************************************************************** //
+
+    /**
+     * Run the scaling benchmark.  The time per site should grow only
+     * as log n.
+     *
+     * @param   args        Optionally, the largest number of sites to
+     *                      run; default one million.
+     */
+    public static void main(String[] args) {
+        final int max = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+        // Warm up the JIT.
+        for (int i = 0; i < 5; ++i)
+            Fortune.ComputeVoronoiGraph(randomSites(10000, i));
+
+        for (int n = 1000; n <= max; n *= 10) {
+            Point[] sites = randomSites(n, n);
+            long start = System.nanoTime();
+            Graph graph = Fortune.ComputeVoronoiGraph(sites);
+            long time = System.nanoTime() - start;
+            System.out.format("%8d sites: %9.1f ms  %6.2f us/site  %8d edges\n",
+                              n, time / 1e6, time / 1e3 / n, graph.getNumEdges());
+        }
+    }
+
+}
+
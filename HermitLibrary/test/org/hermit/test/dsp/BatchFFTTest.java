@@ -0,0 +1,130 @@
+
+/**
+ * test: test code.
+ * <br>Copyright 2004-2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
+ * 02111-1307, USA.
+ */
+
+package org.hermit.test.dsp;
+
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+
+import org.hermit.dsp.BatchFFTTransformer;
+import org.hermit.dsp.FFTTransformer;
+import org.hermit.dsp.Window;
+
+
+/**
+ * Test the batch FFT transformer against the single-block transformer.
+ */
+public class BatchFFTTest
+    extends TestCase
+{
+
+    // ******************************************************************** //
+    // Test Data.
+    // ******************************************************************** //
+
+    private static final int BLOCK = 256;
+    private static final int FRAMES = 37;
+
+    private static float[] makeInput() {
+        Random rand = new Random(1234);
+        float[] buf = new float[BLOCK * FRAMES];
+        for (int i = 0; i < buf.length; ++i)
+            buf[i] = (float) (Math.sin(i * 0.07) * 0.5 + rand.nextGaussian() * 0.1);
+        return buf;
+    }
+
+
+    /**
+     * Compute the reference results with a plain FFTTransformer.
+     */
+    private static float[] reference(float[] input) {
+        FFTTransformer fft = new FFTTransformer(BLOCK, Window.Function.BLACKMAN_HARRIS);
+        float[] spec = new float[BLOCK / 2];
+        float[] out = new float[FRAMES * BLOCK / 2];
+        for (int f = 0; f < FRAMES; ++f) {
+            fft.setInput(input, f * BLOCK, BLOCK);
+            fft.transform();
+            fft.getResults(spec);
+            System.arraycopy(spec, 0, out, f * BLOCK / 2, BLOCK / 2);
+        }
+        return out;
+    }
+
+
+    private static void assertSame(float[] expect, float[] actual) {
+        assertEquals(expect.length, actual.length);
+        for (int i = 0; i < expect.length; ++i)
+            assertEquals("value " + i, expect[i], actual[i], 0f);
+    }
+
+
+    // ******************************************************************** //
+    // Tests.
+    // ******************************************************************** //
+
+    /**
+     * Test a batch in arrays on the calling thread.
+     */
+    public void testArray() {
+        float[] input = makeInput();
+        float[] expect = reference(input);
+
+        BatchFFTTransformer batch =
+                    new BatchFFTTransformer(BLOCK, Window.Function.BLACKMAN_HARRIS);
+        float[] out = new float[FRAMES * BLOCK / 2];
+        batch.transform(input, 0, FRAMES, out, 0);
+        assertSame(expect, out);
+    }
+
+
+    /**
+     * Test a batch in direct buffers, split across a pool.
+     */
+    public void testBufferParallel() {
+        float[] input = makeInput();
+        float[] expect = reference(input);
+
+        FloatBuffer inBuf = ByteBuffer.allocateDirect(input.length * 4)
+                                      .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        inBuf.put(input);
+        FloatBuffer outBuf = ByteBuffer.allocateDirect(expect.length * 4)
+                                       .order(ByteOrder.nativeOrder()).asFloatBuffer();
+
+        BatchFFTTransformer batch =
+                    new BatchFFTTransformer(BLOCK, Window.Function.BLACKMAN_HARRIS);
+        ForkJoinPool pool = new ForkJoinPool(5);
+        try {
+            batch.transform(inBuf, 0, FRAMES, outBuf, 0, pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        float[] out = new float[expect.length];
+        outBuf.get(out);
+        assertSame(expect, out);
+    }
+
+}
@@ -0,0 +1,197 @@
+/**
+ * dsp: various digital signal processing algorithms
+ * <br>Copyright 2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+
+package org.hermit.test.dsp;
+
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.hermit.dsp.Correlator;
+import org.hermit.dsp.FastConvolver;
+
+
+/**
+ * Test the FFT convolver and correlator against direct calculation.
+ */
+public class ConvolutionTest
+    extends TestCase
+{
+
+    // ******************************************************************** //
+    // Support.
+    // ******************************************************************** //
+
+    private static float[] noise(Random rand, int len) {
+        float[] x = new float[len];
+        for (int i = 0; i < len; ++i)
+            x[i] = (float) rand.nextGaussian();
+        return x;
+    }
+
+
+    /**
+     * Run a signal through a FastConvolver in random-sized chunks, and
+     * compare against direct convolution.
+     */
+    private static void checkConvolver(int kernelLen, int block) {
+        Random rand = new Random(kernelLen * 31 + block);
+        final int len = kernelLen * 3 + block * 5;
+        float[] h = noise(rand, kernelLen);
+        float[] x = noise(rand, len);
+
+        FastConvolver conv = new FastConvolver(h, block);
+        float[] y = new float[len];
+        int pos = 0;
+        while (pos < len) {
+            int n = Math.min(len - pos, rand.nextInt(block * 2 + 1));
+            conv.process(x, pos, n, y, pos);
+            pos += n;
+        }
+
+        final int lat = conv.getLatency();
+        for (int i = 0; i < len; ++i) {
+            double expect = 0;
+            final int t = i - lat;
+            for (int k = 0; k < kernelLen && k <= t; ++k)
+                expect += h[k] * x[t - k];
+            assertEquals("sample " + i, expect, y[i], 1e-4 * Math.sqrt(kernelLen));
+        }
+    }
+
+
+    // ******************************************************************** //
+    // Tests.
+    // ******************************************************************** //
+
+    public void testShortKernel() {
+        checkConvolver(5, 64);
+    }
+
+
+    public void testBlockKernel() {
+        checkConvolver(64, 64);
+    }
+
+
+    public void testLongKernel() {
+        checkConvolver(1000, 64);
+    }
+
+
+    public void testOddBlock() {
+        checkConvolver(77, 10);
+    }
+
+
+    /**
+     * Reset should clear all the filter state.
+     */
+    public void testReset() {
+        float[] h = { 1f, 0.5f, 0.25f };
+        FastConvolver conv = new FastConvolver(h, 4);
+        float[] x = { 1, 1, 1, 1, 1, 1, 1, 1 };
+        float[] y = new float[8];
+        conv.process(x, 0, 6, y, 0);
+        conv.reset();
+        float[] z = new float[8];
+        conv.process(new float[8], 0, 8, z, 0);
+        for (int i = 0; i < 8; ++i)
+            assertEquals(0f, z[i], 1e-6f);
+    }
+
+
+    public void testCrossCorrelate() {
+        Random rand = new Random(7);
+        final int len = 300;
+        final int maxLag = 40;
+        float[] x = noise(rand, len);
+        float[] y = noise(rand, len);
+
+        Correlator corr = new Correlator(len, maxLag);
+        float[] r = new float[maxLag * 2 + 1];
+        corr.crossCorrelate(x, 0, y, 0, r);
+        for (int t = -maxLag; t <= maxLag; ++t) {
+            double expect = 0;
+            for (int i = 0; i < len; ++i)
+                if (i + t >= 0 && i + t < len)
+                    expect += x[i + t] * y[i];
+            assertEquals("lag " + t, expect, r[maxLag + t], 1e-3);
+        }
+    }
+
+
+    public void testAutocorrelate() {
+        Random rand = new Random(8);
+        final int len = 250;
+        final int maxLag = 100;
+        float[] x = noise(rand, len + 10);
+
+        Correlator corr = new Correlator(len, maxLag);
+        float[] r = new float[maxLag + 1];
+        corr.autocorrelate(x, 10, r);
+        for (int t = 0; t <= maxLag; ++t) {
+            double expect = 0;
+            for (int i = 0; i + t < len; ++i)
+                expect += x[10 + i + t] * x[10 + i];
+            assertEquals("lag " + t, expect, r[t], 1e-3);
+        }
+    }
+
+
+    /**
+     * Delay a noise signal by a whole number of samples, add some
+     * independent noise, and check that the delay is found both ways
+     * round.
+     */
+    public void testDelay() {
+        Random rand = new Random(9);
+        final int len = 1024;
+        final int delay = 23;
+        float[] src = noise(rand, len + delay);
+        float[] a = new float[len];
+        float[] b = new float[len];
+        for (int i = 0; i < len; ++i) {
+            a[i] = src[i] + 0.3f * (float) rand.nextGaussian();
+            b[i] = src[i + delay] + 0.3f * (float) rand.nextGaussian();
+        }
+
+        // a is b delayed by delay samples.
+        Correlator corr = new Correlator(len, 64);
+        assertEquals(delay, corr.estimateDelay(a, 0, b, 0, false), 0.25);
+        assertEquals(delay, corr.estimateDelay(a, 0, b, 0, true), 0.25);
+        assertEquals(-delay, corr.estimateDelay(b, 0, a, 0, true), 0.25);
+    }
+
+
+    /**
+     * Check sub-sample delay estimation on a band-limited signal.
+     */
+    public void testFractionalDelay() {
+        final int len = 1024;
+        final double delay = 5.4;
+        float[] a = new float[len];
+        float[] b = new float[len];
+        for (int i = 0; i < len; ++i) {
+            a[i] = (float) (Math.sin(0.05 * (i - delay)) + Math.sin(0.13 * (i - delay)));
+            b[i] = (float) (Math.sin(0.05 * i) + Math.sin(0.13 * i));
+        }
+
+        Correlator corr = new Correlator(len, 20);
+        assertEquals(delay, corr.estimateDelay(a, 0, b, 0, false), 0.1);
+    }
+
+}
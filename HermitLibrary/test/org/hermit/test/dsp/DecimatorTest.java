@@ -0,0 +1,116 @@
+/**
+ * dsp: various digital signal processing algorithms
+ * <br>Copyright 2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+
+package org.hermit.test.dsp;
+
+
+import junit.framework.TestCase;
+
+import org.hermit.dsp.Decimator;
+
+
+/**
+ * Test the streaming decimator.
+ */
+public class DecimatorTest
+    extends TestCase
+{
+
+    // ******************************************************************** //
+    // Support.
+    // ******************************************************************** //
+
+    /**
+     * Decimate a sine wave, in blocks of the given size, and return the
+     * RMS level of the output, skipping the filter start-up.
+     * 
+     * @param   factor      Decimation factor.
+     * @param   freq        Frequency of the input, as a fraction of the
+     *                      input sample rate.
+     * @param   block       Input block size.
+     */
+    private static double decimatedRms(int factor, double freq, int block) {
+        Decimator dec = new Decimator(factor);
+        final int blocks = 64;
+        short[] in = new short[block];
+        float[] out = new float[block / factor + 1];
+        final int skip = dec.getDelay() * 2 / factor + 1;
+
+        double sum = 0;
+        int count = 0;
+        int t = 0;
+        for (int b = 0; b < blocks; ++b) {
+            for (int i = 0; i < block; ++i, ++t)
+                in[i] = (short) Math.round(16384 * Math.sin(2 * Math.PI * freq * t));
+            int n = dec.process(in, 0, block, out, 0);
+            for (int i = 0; i < n; ++i) {
+                if (count++ < skip)
+                    continue;
+                sum += out[i] * out[i];
+            }
+        }
+        return Math.sqrt(sum / (count - skip)) / (0.5 / Math.sqrt(2));
+    }
+
+
+    // ******************************************************************** //
+    // Tests.
+    // ******************************************************************** //
+
+    /**
+     * Blocks which are a multiple of the factor should give exactly
+     * block / factor outputs.
+     */
+    public void testCount() {
+        Decimator dec = new Decimator(12);
+        short[] in = new short[1200];
+        float[] out = new float[101];
+        for (int i = 0; i < 5; ++i)
+            assertEquals(100, dec.process(in, 0, in.length, out, 0));
+
+        // Odd-sized blocks balance out.
+        dec.reset();
+        int total = 0;
+        for (int i = 0; i < 12; ++i)
+            total += dec.process(in, 0, 7, out, 0);
+        assertEquals(7, total);
+    }
+
+
+    /**
+     * Signals in the passband should come through at unity gain.
+     */
+    public void testPassband() {
+        for (int factor : new int[] { 2, 3, 8, 10 }) {
+            // 10% and 75% of the output Nyquist frequency.
+            assertEquals(1.0, decimatedRms(factor, 0.05 / factor, 960), 0.01);
+            assertEquals(1.0, decimatedRms(factor, 0.375 / factor, 960), 0.01);
+        }
+    }
+
+
+    /**
+     * Signals which would alias into the passband should be removed.
+     */
+    public void testStopband() {
+        for (int factor : new int[] { 2, 3, 8, 10 }) {
+            // Just above the output sample rate minus the passband edge,
+            // and well above.
+            assertTrue(decimatedRms(factor, 0.61 / factor, 960) < 1e-4);
+            assertTrue(decimatedRms(factor, 0.3, 960) < 1e-4);
+        }
+    }
+
+}
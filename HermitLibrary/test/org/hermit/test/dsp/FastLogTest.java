@@ -0,0 +1,94 @@
+
+/**
+ * test: test code.
+ * <br>Copyright 2004-2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
+ * 02111-1307, USA.
+ */
+
+package org.hermit.test.dsp;
+
+
+import junit.framework.TestCase;
+
+import org.hermit.dsp.FFTTransformer;
+import org.hermit.dsp.FastLog;
+
+
+/**
+ * Test the fast log approximation, and the FFT output modes which
+ * use it.
+ */
+public class FastLogTest
+    extends TestCase
+{
+
+    /**
+     * Check the documented error bound over a wide range of values.
+     */
+    public void testLog2() {
+        double maxErr = 0;
+        for (double x = 1e-30; x < 1e30; x *= 1.0013) {
+            double err = Math.abs(FastLog.log2((float) x) -
+                                  Math.log((float) x) / Math.log(2));
+            if (err > maxErr)
+                maxErr = err;
+        }
+        assertTrue("log2 error " + maxErr, maxErr < 7.1e-4);
+    }
+
+
+    /**
+     * Check the special cases.
+     */
+    public void testSpecial() {
+        assertEquals(Float.NEGATIVE_INFINITY, FastLog.log2(0f), 0f);
+        assertEquals(Float.NEGATIVE_INFINITY, FastLog.log2(-0f), 0f);
+        assertTrue(Float.isNaN(FastLog.log2(-1f)));
+        assertTrue(Float.isNaN(FastLog.log2(Float.NaN)));
+        assertEquals(Float.POSITIVE_INFINITY,
+                     FastLog.log2(Float.POSITIVE_INFINITY), 0f);
+    }
+
+
+    /**
+     * Check that the FFT output modes agree with each other.
+     */
+    public void testOutputModes() {
+        final int n = 512;
+        float[] input = new float[n];
+        for (int i = 0; i < n; ++i)
+            input[i] = (float) (Math.sin(i * 0.3) * 0.7 + Math.sin(i * 1.1) * 0.01);
+
+        FFTTransformer fft = new FFTTransformer(n);
+        fft.setInput(input, 0, n);
+        fft.transform();
+
+        float[] mag = fft.getResults(new float[n / 2]);
+        float[] pow = fft.getResults(new float[n / 2], FFTTransformer.Output.POWER);
+        float[] db = fft.getResults(new float[n / 2], FFTTransformer.Output.DECIBELS);
+        for (int i = 0; i < n / 2; ++i) {
+            assertEquals("power " + i, mag[i] * mag[i], pow[i], 1e-6 * pow[i] + 1e-12);
+            assertEquals("dB " + i, 20 * Math.log10(mag[i]), db[i], 0.005);
+        }
+
+        // A restricted range must leave the other bins alone.
+        float[] part = new float[n / 2];
+        fft.getResults(part, FFTTransformer.Output.MAGNITUDE, 10, 20);
+        for (int i = 0; i < n / 2; ++i)
+            assertEquals("range " + i, i >= 10 && i < 20 ? mag[i] : 0f, part[i], 0f);
+    }
+
+}
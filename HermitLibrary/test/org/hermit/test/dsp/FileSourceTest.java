@@ -0,0 +1,170 @@
+/**
+ * dsp: various digital signal processing algorithms
+ * <br>Copyright 2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+
+package org.hermit.test.dsp;
+
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import junit.framework.TestCase;
+
+import org.hermit.dsp.FileSampleSource;
+
+
+/**
+ * Test playback of audio files.
+ */
+public class FileSourceTest
+    extends TestCase
+{
+
+    // ******************************************************************** //
+    // Support.
+    // ******************************************************************** //
+
+    /**
+     * Write a file containing the given samples, optionally with a
+     * WAV header.
+     */
+    private static File writeFile(short[] data, int rate, int chans, boolean wav)
+        throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocate(data.length * 2 + 64);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        if (wav) {
+            buf.put("RIFF".getBytes("US-ASCII")).putInt(36 + 10 + data.length * 2);
+            buf.put("WAVE".getBytes("US-ASCII"));
+            buf.put("fmt ".getBytes("US-ASCII")).putInt(16);
+            buf.putShort((short) 1).putShort((short) chans);
+            buf.putInt(rate).putInt(rate * chans * 2);
+            buf.putShort((short) (chans * 2)).putShort((short) 16);
+
+            // An odd-length chunk we don't know, to check padding.
+            buf.put("junk".getBytes("US-ASCII")).putInt(1).put((byte) 0).put((byte) 0);
+
+            buf.put("data".getBytes("US-ASCII")).putInt(data.length * 2);
+        }
+        for (short s : data)
+            buf.putShort(s);
+
+        File file = File.createTempFile("fstest", wav ? ".wav" : ".raw");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(buf.array(), 0, buf.position());
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+
+    private static short[] ramp(int len) {
+        short[] data = new short[len];
+        for (int i = 0; i < len; ++i)
+            data[i] = (short) (i * 7 - 1000);
+        return data;
+    }
+
+
+    // ******************************************************************** //
+    // Tests.
+    // ******************************************************************** //
+
+    public void testWav() throws IOException {
+        short[] data = ramp(1000);
+        FileSampleSource src = new FileSampleSource(writeFile(data, 22050, 1, true));
+        assertEquals(22050, src.getSampleRate());
+        assertEquals(1000, src.getLength());
+
+        src.start(8000);
+        short[] buf = new short[300];
+        int total = 0;
+        int n;
+        while ((n = src.read(buf, 0, buf.length)) >= 0) {
+            for (int i = 0; i < n; ++i)
+                assertEquals(data[total + i], buf[i]);
+            total += n;
+        }
+        assertEquals(1000, total);
+        src.stop();
+    }
+
+
+    public void testStereoLoop() throws IOException {
+        // Left is the ramp, right is the ramp plus 100.
+        short[] mono = ramp(100);
+        short[] data = new short[200];
+        for (int i = 0; i < 100; ++i) {
+            data[i * 2] = mono[i];
+            data[i * 2 + 1] = (short) (mono[i] + 100);
+        }
+        FileSampleSource src = new FileSampleSource(writeFile(data, 8000, 2, false), 8000, 2);
+        src.setLoop(true);
+        assertEquals(100, src.getLength());
+
+        src.start(0);
+        short[] buf = new short[64];
+        int total = 0;
+        while (total < 1000) {
+            int n = src.read(buf, 0, buf.length);
+            assertTrue(n > 0);
+            for (int i = 0; i < n; ++i)
+                assertEquals(mono[(total + i) % 100] + 50, buf[i]);
+            total += n;
+        }
+    }
+
+
+    public void testRealTime() throws IOException {
+        FileSampleSource src = new FileSampleSource(writeFile(ramp(800), 8000, 1, true));
+        src.setRealTime(true);
+        short[] buf = new short[100];
+
+        // 800 samples at 8000/sec should take 100 ms.
+        long start = System.nanoTime();
+        src.start(0);
+        while (src.read(buf, 0, buf.length) >= 0)
+            ;
+        long ms = (System.nanoTime() - start) / 1000000;
+        assertTrue("took " + ms + " ms", ms >= 95);
+    }
+
+
+    public void testNotWav() throws IOException {
+        try {
+            new FileSampleSource(writeFile(ramp(100), 8000, 1, false));
+            fail("raw data accepted as WAV");
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+
+
+    public void testBadChannels() throws IOException {
+        File file = writeFile(ramp(100), 8000, 1, false);
+        try {
+            new FileSampleSource(file, 8000, 0);
+            fail("zero channels accepted");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+}
@@ -0,0 +1,194 @@
+/**
+ * test: test code.
+ * <br>Copyright 2004-2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
+ * 02111-1307, USA.
+ */
+
+package org.hermit.test.dsp;
+
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.hermit.dsp.FilterBank;
+
+
+/**
+ * Test the band layouts and weights of the filter bank.
+ */
+public class FilterBankTest
+    extends TestCase
+{
+
+    // ******************************************************************** //
+    // Test Data.
+    // ******************************************************************** //
+
+    private static final int FFT_SIZE = 4096;
+    private static final int RATE = 48000;
+    private static final float BIN_WIDTH = (float) RATE / FFT_SIZE;
+
+
+    // ******************************************************************** //
+    // Support.
+    // ******************************************************************** //
+
+    private static double log2(double x) {
+        return Math.log(x) / Math.log(2);
+    }
+
+
+    private static double hzToMel(double f) {
+        return 2595.0 * Math.log10(1.0 + f / 700.0);
+    }
+
+
+    /**
+     * Check that adjacent bands meet as they should: the octave bands
+     * abut, and each triangular band runs from the centre of the one
+     * below to the centre of the one above.
+     */
+    private static void checkAdjacent(FilterBank bank, boolean triangular) {
+        for (int b = 0; b < bank.getBandCount(); ++b) {
+            float lo = bank.getLowFreq(b);
+            float c = bank.getCentreFreq(b);
+            float hi = bank.getHighFreq(b);
+            assertTrue(lo < c && c < hi);
+            if (b == 0)
+                continue;
+            if (triangular) {
+                assertEquals(bank.getCentreFreq(b - 1), lo, lo * 1e-5);
+                assertEquals(bank.getHighFreq(b - 1), c, c * 1e-5);
+            } else
+                assertEquals(bank.getHighFreq(b - 1), lo, lo * 1e-5);
+        }
+    }
+
+
+    /**
+     * Put all the energy in one bin at a time, and check that the
+     * total over the bands is the same, for each bin between lo and hi.
+     * So the bank neither loses nor adds energy.
+     */
+    private static void checkEnergy(FilterBank bank, double lo, double hi) {
+        float[] spectrum = new float[FFT_SIZE / 2];
+        float[] bands = new float[bank.getBandCount()];
+        int tested = 0;
+        for (int k = 1; k < spectrum.length; ++k) {
+            if ((k - 0.5) * BIN_WIDTH < lo || (k + 0.5) * BIN_WIDTH > hi)
+                continue;
+            spectrum[k] = 2f;
+            bank.getBands(spectrum, bands, false);
+            spectrum[k] = 0f;
+            float total = 0f;
+            for (float v : bands)
+                total += v;
+            assertEquals("bin " + k, 2f, total, 1e-4f);
+            ++tested;
+        }
+        assertTrue(tested > 100);
+    }
+
+
+    // ******************************************************************** //
+    // Tests.
+    // ******************************************************************** //
+
+    public void testOctave() {
+        FilterBank bank = new FilterBank(FilterBank.Scale.OCTAVE, FFT_SIZE, RATE, 20, 20000);
+        assertEquals(10, bank.getBandCount());
+        final double half = Math.sqrt(2);
+        for (int b = 0; b < 10; ++b) {
+            double fc = 1000.0 * Math.pow(2, b - 5);
+            assertEquals(fc, bank.getCentreFreq(b), fc * 1e-6);
+            assertEquals(fc / half, bank.getLowFreq(b), fc * 1e-6);
+            assertEquals(fc * half, bank.getHighFreq(b), fc * 1e-6);
+        }
+        checkAdjacent(bank, false);
+        checkEnergy(bank, bank.getLowFreq(0), bank.getHighFreq(9));
+
+        // A flat spectrum gives each band its width in bins.
+        float[] flat = new float[FFT_SIZE / 2];
+        Arrays.fill(flat, 1f);
+        float[] bands = bank.getBands(flat, new float[10], false);
+        for (int b = 0; b < 10; ++b) {
+            float width = (bank.getHighFreq(b) - bank.getLowFreq(b)) / BIN_WIDTH;
+            assertEquals(width, bands[b], width * 1e-4);
+        }
+
+        // Averaging gives the level of the flat spectrum.
+        bank.getBands(flat, bands, true);
+        for (float v : bands)
+            assertEquals(1f, v, 1e-5f);
+    }
+
+
+    public void testThirdOctave() {
+        FilterBank bank = new FilterBank(FilterBank.Scale.THIRD_OCTAVE, FFT_SIZE, RATE, 100, 10000);
+        assertEquals(19, bank.getBandCount());
+        final double half = Math.pow(2, 1.0 / 6);
+        for (int b = 0; b < bank.getBandCount(); ++b) {
+            double fc = 1000.0 * Math.pow(2, (b - 9) / 3.0);
+            assertEquals(fc, bank.getCentreFreq(b), fc * 1e-6);
+            assertEquals(fc / half, bank.getLowFreq(b), fc * 1e-6);
+            assertEquals(fc * half, bank.getHighFreq(b), fc * 1e-6);
+        }
+        checkAdjacent(bank, false);
+        checkEnergy(bank, bank.getLowFreq(0), bank.getHighFreq(18));
+    }
+
+
+    public void testMel() {
+        FilterBank bank = new FilterBank(FilterBank.Scale.MEL, 40, FFT_SIZE, RATE, 100, 8000);
+        assertEquals(40, bank.getBandCount());
+        assertEquals(100, bank.getLowFreq(0), 1e-3);
+        assertEquals(8000, bank.getHighFreq(39), 1e-2);
+
+        // The centres are equally spaced in mel.
+        double step = (hzToMel(8000) - hzToMel(100)) / 41;
+        for (int b = 0; b < 40; ++b)
+            assertEquals(hzToMel(100) + (b + 1) * step,
+                         hzToMel(bank.getCentreFreq(b)), 1e-3);
+        checkAdjacent(bank, true);
+
+        // Between the first and last centres, the triangles overlap to
+        // make a flat total.
+        checkEnergy(bank, bank.getCentreFreq(0), bank.getCentreFreq(39));
+    }
+
+
+    public void testConstantQ() {
+        FilterBank bank = new FilterBank(FilterBank.Scale.CONSTANT_Q, 12, FFT_SIZE, RATE, 500, 8000);
+        assertEquals(49, bank.getBandCount());
+        final double step = Math.pow(2, 1.0 / 12);
+        for (int b = 0; b < bank.getBandCount(); ++b) {
+            double fc = 500 * Math.pow(2, b / 12.0);
+            assertEquals(fc, bank.getCentreFreq(b), fc * 1e-6);
+            assertEquals(fc / step, bank.getLowFreq(b), fc * 1e-6);
+            assertEquals(fc * step, bank.getHighFreq(b), fc * 1e-6);
+
+            // The Q is the same for every band.
+            assertEquals(1 / (step - 1 / step),
+                         bank.getCentreFreq(b) / (bank.getHighFreq(b) - bank.getLowFreq(b)),
+                         1e-4);
+        }
+        assertEquals(4, log2(bank.getCentreFreq(48) / bank.getCentreFreq(0)), 1e-6);
+        checkAdjacent(bank, true);
+        checkEnergy(bank, bank.getCentreFreq(0), bank.getCentreFreq(48));
+    }
+
+}
@@ -0,0 +1,157 @@
+/**
+ * dsp: various digital signal processing algorithms
+ * <br>Copyright 2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+
+package org.hermit.test.dsp;
+
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.hermit.dsp.LevelMeter;
+import org.hermit.dsp.SignalPower;
+
+
+/**
+ * Test the streaming level meter.
+ */
+public class LevelMeterTest
+    extends TestCase
+{
+
+    // ******************************************************************** //
+    // Support.
+    // ******************************************************************** //
+
+    private static short[] makeSine(int rate, double freq, double amp,
+                                    double bias, int len)
+    {
+        short[] buf = new short[len];
+        for (int i = 0; i < len; ++i)
+            buf[i] = (short) Math.round(bias + amp * Math.sin(2 * Math.PI * freq * i / rate));
+        return buf;
+    }
+
+
+    /**
+     * Measure the gain of a weighting filter at a given frequency, in dB.
+     */
+    private static double weightingGain(LevelMeter.Weighting w, double freq) {
+        final int rate = 48000;
+        short[] buf = makeSine(rate, freq, 10000, 0, rate);
+        LevelMeter meter = new LevelMeter(rate, rate / 2, w);
+        meter.update(buf, 0, buf.length);
+        return 20 * Math.log10(meter.getRms() / (10000 / Math.sqrt(2)));
+    }
+
+
+    // ******************************************************************** //
+    // Tests.
+    // ******************************************************************** //
+
+    /**
+     * Fed in small pieces, the window statistics should match a full
+     * calculation over the last window of samples.
+     */
+    public void testWindow() {
+        final int window = 1000;
+        Random rand = new Random(42);
+        short[] buf = new short[10000];
+        for (int i = 0; i < buf.length; ++i)
+            buf[i] = (short) (rand.nextGaussian() * 3000 + 500);
+
+        LevelMeter meter = new LevelMeter(8000, window);
+        float[] br = new float[2];
+        int pos = 0;
+        while (pos < buf.length) {
+            int n = Math.min(rand.nextInt(300) + 1, buf.length - pos);
+            meter.update(buf, pos, n);
+            pos += n;
+            if (pos < window)
+                continue;
+
+            final int off = pos - window;
+            SignalPower.biasAndRange(buf, off, window, br);
+            assertEquals(br[0], meter.getBias(), 0.01);
+            assertEquals(SignalPower.calculatePowerDb(buf, off, window),
+                         meter.getPowerDb(), 0.0001);
+
+            int max = Short.MIN_VALUE, min = Short.MAX_VALUE;
+            for (int i = off; i < pos; ++i) {
+                max = Math.max(max, buf[i]);
+                min = Math.min(min, buf[i]);
+            }
+            assertEquals(Math.max(max, -min), meter.getPeak(), 0f);
+            assertEquals(Math.max(max - br[0], br[0] - min), meter.getRange(), 0.01);
+        }
+    }
+
+
+    /**
+     * Check the RMS, range and crest factor of a sine wave.
+     */
+    public void testSine() {
+        short[] buf = makeSine(8000, 500, 10000, 200, 8000);
+        LevelMeter meter = new LevelMeter(8000, 800);
+        meter.update(buf, 0, buf.length);
+        assertEquals(200, meter.getBias(), 0.5);
+        assertEquals(10000 / Math.sqrt(2), meter.getRms(), 1);
+        assertEquals(10000, meter.getRange(), 1);
+        assertEquals(10200, meter.getPeak(), 1);
+        assertEquals(Math.sqrt(2), meter.getCrestFactor(), 0.001);
+    }
+
+
+    /**
+     * Check the weighting filters against the standard curves.
+     */
+    public void testWeighting() {
+        assertEquals(0.0, weightingGain(LevelMeter.Weighting.A, 1000), 0.05);
+        assertEquals(-19.1, weightingGain(LevelMeter.Weighting.A, 100), 0.2);
+        // The bilinear transform squeezes the top octave, so allow
+        // some slack at 10 kHz.
+        assertEquals(-2.5, weightingGain(LevelMeter.Weighting.A, 10000), 0.7);
+        assertEquals(0.0, weightingGain(LevelMeter.Weighting.C, 1000), 0.05);
+        assertEquals(-0.3, weightingGain(LevelMeter.Weighting.C, 100), 0.2);
+        assertEquals(0.0, weightingGain(LevelMeter.Weighting.Z, 100), 0.05);
+    }
+
+
+    /**
+     * The FAST time weighting should reach 1 - 1/e of a step in power
+     * after 125 ms.
+     */
+    public void testTimeWeighting() {
+        final int rate = 8000;
+        short[] buf = new short[rate / 8];
+        for (int i = 0; i < buf.length; ++i)
+            buf[i] = 10000;
+        LevelMeter meter = new LevelMeter(rate, 100);
+        meter.update(buf, 0, buf.length);
+
+        final double full = SignalPower.calculatePowerDb(new short[] { 10000, -10000 }, 0, 2);
+        assertEquals(full + 10 * Math.log10(1 - Math.exp(-1)), meter.getLevelDb(), 0.01);
+
+        // IMPULSE rises faster, but decays slowly.
+        meter = new LevelMeter(rate, 100);
+        meter.setTimeWeighting(LevelMeter.TimeWeighting.IMPULSE);
+        meter.update(buf, 0, buf.length);
+        final double peak = full + 10 * Math.log10(1 - Math.exp(-0.125 / 0.035));
+        assertEquals(peak, meter.getLevelDb(), 0.01);
+        meter.update(new short[rate / 8], 0, rate / 8);
+        assertEquals(peak - 10 * Math.log10(Math.E) / 12, meter.getLevelDb(), 0.1);
+    }
+
+}
@@ -0,0 +1,187 @@
+/**
+ * dsp: various digital signal processing algorithms
+ * <br>Copyright 2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+
+package org.hermit.test.dsp;
+
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.hermit.dsp.FFTTransformer;
+import org.hermit.dsp.PcmConverter;
+import org.hermit.dsp.SampleStats;
+import org.hermit.dsp.SignalPower;
+import org.hermit.dsp.Window;
+
+
+/**
+ * Test the fused PCM conversion kernels.  They should give bit-for-bit
+ * the same results as converting, windowing and measuring separately.
+ */
+public class PcmConverterTest
+    extends TestCase
+{
+
+    // ******************************************************************** //
+    // Support.
+    // ******************************************************************** //
+
+    private static final int N = 512;
+
+
+    /**
+     * Make a buffer of random samples, with some extremes thrown in.
+     */
+    private static short[] samples(int len, int seed) {
+        Random rand = new Random(seed);
+        short[] buf = new short[len];
+        for (int i = 0; i < len; ++i)
+            buf[i] = (short) (rand.nextInt(65536) - 32768);
+        buf[3] = Short.MIN_VALUE;
+        buf[7] = Short.MAX_VALUE;
+        buf[11] = 0;
+        return buf;
+    }
+
+
+    // ******************************************************************** //
+    // Tests.
+    // ******************************************************************** //
+
+    public void testFloat() {
+        final short[] in = samples(N + 5, 1);
+        for (Window.Function f : Window.Function.values()) {
+            final Window win = new Window(N, f);
+
+            // The old way: convert, then window.
+            float[] expect = new float[N];
+            for (int i = 0; i < N; ++i)
+                expect[i] = in[5 + i] / 32768f;
+            win.transform(expect, 0, N);
+
+            float[] got = new float[N + 2];
+            PcmConverter.toFloat(in, 5, N, win, got, 2, null);
+            for (int i = 0; i < N; ++i)
+                assertEquals(f + " " + i, Float.floatToIntBits(expect[i]),
+                             Float.floatToIntBits(got[2 + i]));
+
+            float[] got2 = new float[N];
+            PcmConverter.toFloat(in, 5, N, win, got2, 0, new SampleStats());
+            for (int i = 0; i < N; ++i)
+                assertEquals(f + " " + i, Float.floatToIntBits(expect[i]),
+                             Float.floatToIntBits(got2[i]));
+        }
+    }
+
+
+    public void testDouble() {
+        final short[] in = samples(N, 2);
+        for (Window.Function f : Window.Function.values()) {
+            final Window win = new Window(N, f);
+
+            double[] expect = new double[N];
+            for (int i = 0; i < N; ++i)
+                expect[i] = (double) in[i] / 32768.0;
+            win.transform(expect);
+
+            double[] got = new double[N];
+            PcmConverter.toDouble(in, 0, N, win, got, 0, new SampleStats());
+            for (int i = 0; i < N; ++i)
+                assertEquals(f + " " + i, Double.doubleToLongBits(expect[i]),
+                             Double.doubleToLongBits(got[i]));
+        }
+
+        // No window.
+        double[] got = new double[N];
+        PcmConverter.toDouble(in, 0, N, null, got, 0, null);
+        for (int i = 0; i < N; ++i)
+            assertEquals((double) in[i] / 32768.0, got[i], 0.0);
+    }
+
+
+    /**
+     * The statistics should match SignalPower exactly.
+     */
+    public void testStats() {
+        for (int seed = 0; seed < 10; ++seed) {
+            final short[] in = samples(N, seed);
+
+            // Make some blocks biased, and some quiet.
+            if (seed % 3 == 1)
+                for (int i = 0; i < N; ++i)
+                    in[i] = (short) (in[i] / 4 + 5000);
+            if (seed % 3 == 2)
+                for (int i = 0; i < N; ++i)
+                    in[i] = (short) (in[i] / 1000);
+
+            float[] br = new float[2];
+            SignalPower.biasAndRange(in, 0, N, br);
+            final double db = SignalPower.calculatePowerDb(in, 0, N);
+
+            SampleStats stats = new SampleStats();
+            PcmConverter.accumulate(in, 0, N, stats);
+            assertEquals(br[0], stats.getBias(), 0f);
+            assertEquals(br[1], stats.getRange(), 0f);
+            assertEquals(db, stats.getPowerDb(), 0.0);
+
+            stats.reset();
+            PcmConverter.toFloat(in, 0, N, new Window(N), new float[N], 0, stats);
+            assertEquals(br[0], stats.getBias(), 0f);
+            assertEquals(br[1], stats.getRange(), 0f);
+            assertEquals(db, stats.getPowerDb(), 0.0);
+
+            // Accumulating in two parts gives the same result.
+            stats.reset();
+            PcmConverter.accumulate(in, 0, N / 3, stats);
+            PcmConverter.toDouble(in, N / 3, N - N / 3, null, new double[N], 0, stats);
+            assertEquals(N, stats.getCount());
+            assertEquals(br[0], stats.getBias(), 0f);
+            assertEquals(br[1], stats.getRange(), 0f);
+            assertEquals(db, stats.getPowerDb(), 0.0);
+        }
+    }
+
+
+    /**
+     * The FFT input with and without statistics should be identical.
+     */
+    public void testFftInput() {
+        final short[] in = samples(N, 3);
+        FFTTransformer a = new FFTTransformer(N, Window.Function.HANN);
+        FFTTransformer b = new FFTTransformer(a);
+        a.setInput(in, 0, N);
+        SampleStats stats = new SampleStats();
+        b.setInput(in, 0, N, stats);
+        a.transform();
+        b.transform();
+        float[] ra = a.getResults(new float[N / 2]);
+        float[] rb = b.getResults(new float[N / 2]);
+        for (int i = 0; i < N / 2; ++i)
+            assertEquals(ra[i], rb[i], 0f);
+        assertEquals(SignalPower.calculatePowerDb(in, 0, N), stats.getPowerDb(), 0.0);
+    }
+
+
+    public void testBadCount() {
+        try {
+            PcmConverter.toFloat(new short[N], 0, N - 1, new Window(N),
+                                 new float[N], 0, null);
+            fail("bad count accepted");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+}
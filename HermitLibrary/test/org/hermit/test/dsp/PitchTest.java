@@ -0,0 +1,133 @@
+
+/**
+ * test: test code.
+ * <br>Copyright 2004-2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
+ * 02111-1307, USA.
+ */
+
+package org.hermit.test.dsp;
+
+
+import junit.framework.TestCase;
+
+import org.hermit.dsp.FFTTransformer;
+import org.hermit.dsp.PeakFinder;
+import org.hermit.dsp.PitchDetector;
+import org.hermit.dsp.Window;
+
+
+/**
+ * Test the spectral peak finder and the time-domain pitch detector.
+ */
+public class PitchTest
+    extends TestCase
+{
+
+    // ******************************************************************** //
+    // Signal generation.
+    // ******************************************************************** //
+
+    /**
+     * Make a buffer containing a harmonic series.
+     * 
+     * @param   rate        Sample rate.
+     * @param   f0          Fundamental frequency.
+     * @param   amps        Amplitude of each harmonic, starting with the
+     *                      fundamental.
+     * @param   len         Buffer length.
+     */
+    private static short[] makeTone(int rate, double f0, double[] amps, int len) {
+        short[] buf = new short[len];
+        for (int i = 0; i < len; ++i) {
+            double v = 0;
+            for (int h = 0; h < amps.length; ++h)
+                v += amps[h] * Math.sin(2 * Math.PI * f0 * (h + 1) * i / rate + h);
+            buf[i] = (short) Math.round(v * 12000);
+        }
+        return buf;
+    }
+
+
+    // ******************************************************************** //
+    // Tests.
+    // ******************************************************************** //
+
+    /**
+     * A pure tone between bins should be located to well within a bin.
+     */
+    public void testPeakInterpolation() {
+        final int rate = 8000;
+        final int n = 1024;
+        final double freq = 1000.3;
+        short[] buf = makeTone(rate, freq, new double[] { 1.0 }, n);
+
+        FFTTransformer fft = new FFTTransformer(n, Window.Function.BLACKMAN_HARRIS);
+        float[] spec = new float[n / 2];
+        fft.setInput(buf, 0, n);
+        fft.transform();
+        fft.getResults(spec);
+
+        PeakFinder finder = new PeakFinder(n, rate, 8);
+        assertTrue(finder.findPeaks(spec) >= 1);
+        // The bin spacing is 7.8Hz.
+        assertEquals(freq, finder.getPeakFreq(0), 0.5);
+    }
+
+
+    /**
+     * Harmonic grouping should find the fundamental, even if it is
+     * missing.
+     */
+    public void testFundamental() {
+        final int rate = 8000;
+        final int n = 2048;
+        final double f0 = 220.7;
+        short[] buf = makeTone(rate, f0, new double[] { 0.0, 0.5, 0.3, 0.2, 0.1 }, n);
+
+        FFTTransformer fft = new FFTTransformer(n, Window.Function.BLACKMAN_HARRIS);
+        float[] spec = new float[n / 2];
+        fft.setInput(buf, 0, n);
+        fft.transform();
+        fft.getResults(spec);
+
+        PeakFinder finder = new PeakFinder(n, rate, 8);
+        finder.findPeaks(spec);
+        assertEquals(f0, finder.findFundamental(), 0.5);
+    }
+
+
+    /**
+     * The pitch detector should find the fundamental of a harmonic tone
+     * to within a fraction of a Hz.
+     */
+    public void testPitch() {
+        final int rate = 44100;
+        final int n = 2048;
+        final double[] amps = { 1.0, 0.6, 0.4, 0.3 };
+        PitchDetector det = new PitchDetector(rate, n);
+
+        for (double f0 : new double[] { 82.4, 110.0, 261.6, 440.0, 987.8 }) {
+            short[] buf = makeTone(rate, f0, amps, n);
+            float pitch = det.detect(buf, 0, n);
+            assertEquals("pitch of " + f0, f0, pitch, 0.5);
+            assertTrue(det.getClarity() > 0.9f);
+        }
+
+        // Silence has no pitch.
+        assertEquals(0f, det.detect(new short[n], 0, n), 0f);
+    }
+
+}
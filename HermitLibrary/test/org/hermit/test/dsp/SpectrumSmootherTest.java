@@ -0,0 +1,137 @@
+/**
+ * test: test code.
+ * <br>Copyright 2004-2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
+ * 02111-1307, USA.
+ */
+
+package org.hermit.test.dsp;
+
+
+import junit.framework.TestCase;
+
+import org.hermit.dsp.SpectrumSmoother;
+
+
+/**
+ * Test the step responses of the spectrum smoother.
+ */
+public class SpectrumSmootherTest
+    extends TestCase
+{
+
+    // ******************************************************************** //
+    // Support.
+    // ******************************************************************** //
+
+    /**
+     * Feed a two-bin frame to the smoother, and return the result.
+     */
+    private static float[] step(SpectrumSmoother sm, float a, float b) {
+        return sm.update(new float[] { a, b });
+    }
+
+
+    // ******************************************************************** //
+    // Tests.
+    // ******************************************************************** //
+
+    /**
+     * The exponential average of a step approaches it geometrically,
+     * at the same rate up and down.
+     */
+    public void testExponential() {
+        // A length of 9 frames gives a coefficient of 0.2.
+        SpectrumSmoother sm = new SpectrumSmoother(2, SpectrumSmoother.Mode.EXPONENTIAL, 9);
+        for (int n = 1; n <= 20; ++n) {
+            float[] out = step(sm, 1f, 0f);
+            assertEquals(1 - Math.pow(0.8, n), out[0], 1e-5);
+            assertEquals(0f, out[1], 0f);
+        }
+        float top = step(sm, 0f, 0f)[0];
+        for (int n = 1; n <= 20; ++n)
+            assertEquals(top * Math.pow(0.8, n), step(sm, 0f, 0f)[0], 1e-5);
+
+        // The attack time is ignored in this mode.
+        sm.setAttackRelease(1, 3);
+        sm.reset();
+        assertEquals(0.5f, step(sm, 1f, 0f)[0], 1e-6f);
+
+        // A length of 1 means no smoothing.
+        sm = new SpectrumSmoother(2, SpectrumSmoother.Mode.EXPONENTIAL, 1);
+        assertEquals(7f, step(sm, 7f, 0f)[0], 0f);
+        assertEquals(3f, step(sm, 3f, 0f)[0], 0f);
+    }
+
+
+    /**
+     * Rising and falling values are smoothed at their own rates.
+     */
+    public void testAttackRelease() {
+        // By default the attack is instant.
+        SpectrumSmoother sm = new SpectrumSmoother(2, SpectrumSmoother.Mode.ATTACK_RELEASE, 9);
+        float[] out = step(sm, 1f, 0f);
+        assertEquals(1f, out[0], 0f);
+        for (int n = 1; n <= 10; ++n)
+            assertEquals(Math.pow(0.8, n), step(sm, 0f, 0f)[0], 1e-5);
+
+        // With an attack of 4 and release of 19 frames, one bin rises
+        // at 0.4 while the other falls at 0.1.
+        sm = new SpectrumSmoother(2, SpectrumSmoother.Mode.ATTACK_RELEASE, 9);
+        sm.setAttackRelease(4, 19);
+        step(sm, 0f, 1f);
+        float high = step(sm, 0f, 1f)[1];
+        assertEquals(1 - 0.6 * 0.6, high, 1e-6);
+        for (int n = 1; n <= 10; ++n) {
+            out = step(sm, 1f, 0f);
+            assertEquals(1 - Math.pow(0.6, n), out[0], 1e-5);
+            assertEquals(high * Math.pow(0.9, n), out[1], 1e-5);
+        }
+    }
+
+
+    /**
+     * A peak is held for the hold time, then decays at the release
+     * rate.  A new peak restarts the hold.
+     */
+    public void testPeakHold() {
+        // Hold for 5 frames, then release at a coefficient of 1/3.
+        SpectrumSmoother sm = new SpectrumSmoother(2, SpectrumSmoother.Mode.PEAK_HOLD, 5);
+        assertEquals(1f, step(sm, 1f, 0f)[0], 0f);
+        for (int n = 1; n <= 5; ++n)
+            assertEquals("hold frame " + n, 1f, step(sm, 0.5f, 0f)[0], 0f);
+        for (int n = 1; n <= 10; ++n)
+            assertEquals(0.5 + 0.5 * Math.pow(2.0 / 3, n), step(sm, 0.5f, 0f)[0], 1e-5);
+
+        // A new peak during the decay is held from when it arrives.
+        sm.reset();
+        step(sm, 1f, 0f);
+        step(sm, 0f, 0f);
+        step(sm, 0f, 0f);
+        assertEquals(2f, step(sm, 2f, 0f)[0], 0f);
+        for (int n = 1; n <= 5; ++n)
+            assertEquals(2f, step(sm, 0f, 0f)[0], 0f);
+        assertEquals(2f * 2 / 3, step(sm, 0f, 0f)[0], 1e-6f);
+
+        // A separate hold time.
+        sm.reset();
+        sm.setHold(2);
+        step(sm, 3f, 0f);
+        assertEquals(3f, step(sm, 0f, 0f)[0], 0f);
+        assertEquals(3f, step(sm, 0f, 0f)[0], 0f);
+        assertEquals(2f, step(sm, 0f, 0f)[0], 1e-6f);
+    }
+
+}
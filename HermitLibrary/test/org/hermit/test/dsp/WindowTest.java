@@ -0,0 +1,189 @@
+/**
+ * dsp: various digital signal processing algorithms
+ * <br>Copyright 2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+
+package org.hermit.test.dsp;
+
+
+import junit.framework.TestCase;
+
+import org.hermit.dsp.FFTTransformer;
+import org.hermit.dsp.Window;
+
+
+/**
+ * Test the window functions, and the FFT output scaling which
+ * depends on them.
+ */
+public class WindowTest
+    extends TestCase
+{
+
+    // ******************************************************************** //
+    // Support.
+    // ******************************************************************** //
+
+    private static final int N = 1024;
+
+
+    /**
+     * Get the kernel of a window, by windowing a block of ones.
+     */
+    private static double[] kernel(Window win) {
+        double[] k = new double[win.getBlockSize()];
+        for (int i = 0; i < k.length; ++i)
+            k[i] = 1.0;
+        win.transform(k);
+        return k;
+    }
+
+
+    /**
+     * Transform a full-scale sine at a given frequency in bins, and
+     * return the peak magnitude.
+     */
+    private static float peak(Window.Function func, double bin) {
+        short[] buf = new short[N];
+        for (int i = 0; i < N; ++i)
+            buf[i] = (short) Math.round(32767 * Math.sin(2 * Math.PI * bin * i / N));
+        FFTTransformer fft = new FFTTransformer(N, func);
+        fft.setInput(buf, 0, N);
+        fft.transform();
+        float[] out = fft.getResults(new float[N / 2]);
+        float max = 0;
+        for (float v : out)
+            max = Math.max(max, v);
+        return max;
+    }
+
+
+    // ******************************************************************** //
+    // Tests.
+    // ******************************************************************** //
+
+    /**
+     * Check the gain figures against the textbook values.
+     */
+    public void testGains() {
+        Window w = new Window(N, Window.Function.RECTANGULAR);
+        assertEquals(1.0, w.getCoherentGain(), 1e-9);
+        assertEquals(1.0, w.getEnbw(), 1e-9);
+
+        w = new Window(N, Window.Function.HANN);
+        assertEquals(0.5, w.getCoherentGain(), 1e-3);
+        assertEquals(1.5, w.getEnbw(), 1e-2);
+
+        w = new Window(N, Window.Function.HAMMING);
+        assertEquals(0.54, w.getCoherentGain(), 1e-3);
+        assertEquals(1.36, w.getEnbw(), 1e-2);
+
+        w = new Window(N, Window.Function.BLACKMAN_HARRIS);
+        assertEquals(0.35875, w.getCoherentGain(), 1e-3);
+        assertEquals(2.0, w.getEnbw(), 1e-2);
+
+        w = new Window(N, Window.Function.FLAT_TOP);
+        assertEquals(0.2156, w.getCoherentGain(), 1e-3);
+        assertEquals(3.77, w.getEnbw(), 1e-2);
+    }
+
+
+    public void testShapes() {
+        // All the windows should be symmetrical, and peak in the middle.
+        for (Window.Function f : Window.Function.values()) {
+            if (f == Window.Function.WEEDON_GAUSS)
+                continue;
+            double[] k = kernel(new Window(N + 1, f));
+            for (int i = 0; i <= N; ++i) {
+                assertEquals(f + " symmetry " + i, k[i], k[N - i], 1e-9);
+                assertTrue(f + " peak " + i, k[i] <= k[N / 2] + 1e-9);
+            }
+        }
+
+        // Tukey reduces to rectangular and Hann at the extremes.
+        double[] hann = kernel(new Window(N, Window.Function.HANN));
+        double[] t1 = kernel(new Window(N, Window.Function.TUKEY, 1.0));
+        double[] t0 = kernel(new Window(N, Window.Function.TUKEY, 0.0));
+        for (int i = 0; i < N; ++i) {
+            assertEquals(hann[i], t1[i], 1e-9);
+            assertEquals(1.0, t0[i], 1e-9);
+        }
+
+        // Kaiser with beta 0 is rectangular; its ends are I0(0) / I0(beta).
+        double[] k0 = kernel(new Window(N, Window.Function.KAISER, 0.0));
+        double[] k5 = kernel(new Window(N, Window.Function.KAISER, 5.0));
+        assertEquals(1.0, k0[0], 1e-12);
+        assertEquals(1.0 / 27.239871823604442, k5[0], 1e-12);
+    }
+
+
+    /**
+     * Windows with equal parameters should give identical results,
+     * whether or not their kernels are cached; different parameters
+     * should not.
+     */
+    public void testCache() {
+        Window.Function f = Window.Function.KAISER;
+        double[] d1 = kernel(new Window(N, f));
+        double[] d2 = kernel(new Window(N, f, f.getDefaultParam()));
+        double[] a = kernel(new Window(N, f, 6.0));
+        double[] b = kernel(new Window(N, f, 6.0));
+        double[] c = kernel(new Window(N, f, 7.0));
+        for (int i = 0; i < N; ++i) {
+            assertEquals(d1[i], d2[i]);
+            assertEquals(a[i], b[i]);
+        }
+        assertTrue(a[1] != c[1]);
+    }
+
+
+    public void testFloat() {
+        Window w = new Window(N, Window.Function.HAMMING);
+        double[] k = kernel(w);
+        float[] f = new float[N];
+        for (int i = 0; i < N; ++i)
+            f[i] = 1f;
+        w.transform(f, 0, N);
+        for (int i = 0; i < N; ++i)
+            assertEquals((float) k[i], f[i]);
+    }
+
+
+    public void testBadParams() {
+        try {
+            new Window(N, Window.Function.TUKEY, 1.5);
+            fail("bad Tukey taper accepted");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new FFTTransformer(N, new Window(N / 2));
+            fail("bad window size accepted");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+
+    /**
+     * A full-scale sinusoid centred on a bin should read as 1 with any
+     * window.
+     */
+    public void testAmplitude() {
+        for (Window.Function f : Window.Function.values())
+            assertEquals(f.toString(), 1.0, peak(f, 100), 0.01);
+
+        // Between bins, only the flat-top window is accurate.
+        assertEquals(1.0, peak(Window.Function.FLAT_TOP, 100.5), 0.002);
+        assertTrue(peak(Window.Function.HANN, 100.5) < 0.9);
+    }
+
+}
@@ -64,5 +64,16 @@ public class BitwiseTests
         runBitrev(0xfda91235, 32, 0xac4895bf);
     }
 
+
+    public void testNextPowerOf2() {
+        assertEquals(1, Bitwise.nextPowerOf2(0));
+        assertEquals(1, Bitwise.nextPowerOf2(1));
+        assertEquals(2, Bitwise.nextPowerOf2(2));
+        assertEquals(4, Bitwise.nextPowerOf2(3));
+        assertEquals(1024, Bitwise.nextPowerOf2(1024));
+        assertEquals(2048, Bitwise.nextPowerOf2(1025));
+        assertEquals(1 << 30, Bitwise.nextPowerOf2((1 << 29) + 1));
+    }
+
 }
 
@@ -0,0 +1,116 @@
+/**
+ * utils: general utility functions.
+ * <br>Copyright 2004-2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
+ * 02111-1307, USA.
+ */
+
+
+package org.hermit.test.utils;
+
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.hermit.utils.LatencyHistogram;
+
+
+/**
+ * Test the latency histogram.
+ *
+ * @author	Ian Cameron Smith
+ */
+public class LatencyHistogramTests
+    extends TestCase
+{
+
+    // ******************************************************************** //
+    // Tests.
+    // ******************************************************************** //
+
+    public void testEmpty() {
+        LatencyHistogram h = new LatencyHistogram(1000000);
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMin());
+        assertEquals(0, h.getMax());
+        assertEquals(0.0, h.getMean());
+        assertEquals(0, h.getPercentile(50));
+    }
+
+
+    /**
+     * Small values are counted exactly.
+     */
+    public void testExact() {
+        LatencyHistogram h = new LatencyHistogram(1000);
+        for (int i = 1; i <= 100; ++i)
+            h.record(i);
+        assertEquals(100, h.getCount());
+        assertEquals(1, h.getMin());
+        assertEquals(100, h.getMax());
+        assertEquals(50.5, h.getMean(), 1e-9);
+        assertEquals(50, h.getPercentile(50));
+        assertEquals(99, h.getPercentile(99));
+        assertEquals(100, h.getPercentile(100));
+        assertEquals(1, h.getPercentile(0));
+    }
+
+
+    /**
+     * Percentiles of widely-spread values should be within the bucket
+     * resolution of the true values.
+     */
+    public void testResolution() {
+        final long max = 60000000000L;
+        LatencyHistogram h = new LatencyHistogram(max);
+        Random rand = new Random(1);
+        long[] vals = new long[20000];
+        for (int i = 0; i < vals.length; ++i) {
+            vals[i] = (long) Math.exp(rand.nextDouble() * Math.log(max));
+            h.record(vals[i]);
+        }
+        Arrays.sort(vals);
+
+        final double[] pcts = { 1, 10, 50, 90, 99, 99.9 };
+        for (double p : pcts) {
+            long expect = vals[(int) Math.ceil(p / 100 * vals.length) - 1];
+            long got = h.getPercentile(p);
+            assertTrue(p + "%: " + got + " < " + expect, got >= expect);
+            assertTrue(p + "%: " + got + " >> " + expect, got <= expect + expect / 64 + 1);
+        }
+        assertEquals(vals[0], h.getMin());
+        assertEquals(vals[vals.length - 1], h.getMax());
+    }
+
+
+    public void testClampAndReset() {
+        LatencyHistogram h = new LatencyHistogram(5000);
+        h.record(-5);
+        assertEquals(0, h.getCount());
+        h.record(1000000);
+        assertEquals(1, h.getCount());
+        assertEquals(5000, h.getMax());
+        assertEquals(5000, h.getPercentile(50));
+
+        h.reset();
+        assertEquals(0, h.getCount());
+        h.record(300);
+        assertEquals(300, h.getMin());
+        assertEquals(300, h.getPercentile(100));
+    }
+
+}
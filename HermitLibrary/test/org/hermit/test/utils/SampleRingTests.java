@@ -0,0 +1,186 @@
+
+/**
+ * utils: general utility functions.
+ * <br>Copyright 2004-2009 Ian Cameron Smith
+ *
+ * <p>This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation (see COPYING).
+ *
+ * <p>This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * <p>You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
+ * 02111-1307, USA.
+ */
+
+
+package org.hermit.test.utils;
+
+
+import junit.framework.TestCase;
+
+import org.hermit.utils.SampleRingBuffer;
+
+
+/**
+ * Test the sample ring buffer.
+ *
+ * @author	Ian Cameron Smith
+ */
+public class SampleRingTests
+    extends TestCase
+{
+
+    // ******************************************************************** //
+    // Test Framework.
+    // ******************************************************************** //
+
+    private static short[] sequence(int start, int len) {
+        short[] buf = new short[len];
+        for (int i = 0; i < len; ++i)
+            buf[i] = (short) (start + i);
+        return buf;
+    }
+
+
+    private static void checkSequence(short[] buf, int off, int len, int start) {
+        for (int i = 0; i < len; ++i)
+            assertEquals("sample " + i, (short) (start + i), buf[off + i]);
+    }
+
+    
+    // ******************************************************************** //
+    // Tests.
+    // ******************************************************************** //
+
+    public void testWrap() {
+        SampleRingBuffer ring = new SampleRingBuffer(10);
+        assertEquals(16, ring.getCapacity());
+
+        short[] out = new short[16];
+        int next = 0;
+        for (int i = 0; i < 20; ++i) {
+            assertEquals(7, ring.write(sequence(next, 7), 0, 7));
+            assertEquals(7, ring.available());
+            assertEquals(7, ring.read(out, 0, 16));
+            checkSequence(out, 0, 7, next);
+            next += 7;
+        }
+        assertEquals(0, ring.getOverruns());
+        assertEquals(0, ring.getUnderruns());
+    }
+
+
+    public void testOverrun() {
+        SampleRingBuffer ring = new SampleRingBuffer(16);
+        short[] out = new short[16];
+
+        assertEquals(10, ring.write(sequence(0, 10), 0, 10));
+        assertEquals(10, ring.write(sequence(10, 10), 0, 10));
+        assertEquals(4, ring.getOverruns());
+        assertEquals(16, ring.available());
+
+        // We get the newest data; the oldest was dropped.
+        assertEquals(16, ring.read(out, 0, 16));
+        checkSequence(out, 0, 16, 4);
+
+        // A write bigger than the buffer keeps its last samples.
+        assertEquals(16, ring.write(sequence(100, 20), 0, 20));
+        assertEquals(8, ring.getOverruns());
+        assertEquals(16, ring.read(out, 0, 16));
+        checkSequence(out, 0, 16, 104);
+    }
+
+
+    /**
+     * After the consumer stalls, the latest window must be the most
+     * recent input, with no gap in it.
+     */
+    public void testLatestAfterStall() {
+        SampleRingBuffer ring = new SampleRingBuffer(32);
+        short[] out = new short[8];
+
+        for (int n = 0; n < 100; n += 10)
+            ring.write(sequence(n, 10), 0, 10);
+        assertEquals(68, ring.getOverruns());
+        assertEquals(24, ring.readLatest(out, 0, 8));
+        checkSequence(out, 0, 8, 92);
+        assertEquals(0, ring.available());
+    }
+
+
+    public void testUnderrun() {
+        SampleRingBuffer ring = new SampleRingBuffer(16);
+        short[] out = new short[16];
+
+        assertEquals(0, ring.read(out, 0, 16));
+        ring.write(sequence(0, 5), 0, 5);
+        assertEquals(-1, ring.readLatest(out, 0, 8));
+        assertEquals(2, ring.getUnderruns());
+
+        // The failed read didn't consume anything.
+        assertEquals(5, ring.available());
+    }
+
+
+    public void testLatest() {
+        SampleRingBuffer ring = new SampleRingBuffer(32);
+        short[] out = new short[8];
+
+        ring.write(sequence(0, 13), 0, 13);
+        ring.write(sequence(13, 12), 0, 12);
+        assertEquals(17, ring.readLatest(out, 0, 8));
+        checkSequence(out, 0, 8, 17);
+        assertEquals(0, ring.available());
+    }
+
+
+    /**
+     * Run a producer and consumer in parallel, and check that every
+     * sample either arrives in order or is counted as an overrun.
+     */
+    public void testThreads() throws InterruptedException {
+        final SampleRingBuffer ring = new SampleRingBuffer(256);
+        final int total = 2000000;
+
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                short[] buf = new short[37];
+                for (int n = 0; n < total; n += buf.length) {
+                    for (int i = 0; i < buf.length; ++i)
+                        buf[i] = (short) (n + i);
+                    ring.write(buf, 0, buf.length);
+                }
+            }
+        };
+        producer.start();
+
+        short[] buf = new short[64];
+        long received = 0;
+        short expect = 0;
+        boolean first = true;
+        while (producer.isAlive() || ring.available() > 0) {
+            int n = ring.read(buf, 0, buf.length);
+            for (int i = 0; i < n; ++i) {
+                // After an overrun we can jump forward, but otherwise
+                // samples must be consecutive.
+                if (!first && buf[i] != expect)
+                    assertTrue(ring.getOverruns() > 0);
+                first = false;
+                expect = (short) (buf[i] + 1);
+            }
+            received += n;
+        }
+        producer.join();
+
+        final int written = (total + 36) / 37 * 37;
+        assertEquals(written, received + ring.getOverruns());
+    }
+
+}